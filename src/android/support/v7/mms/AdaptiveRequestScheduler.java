@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.appcompat.mms;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs MMS requests from a send queue and a download queue with a concurrency limit per queue
+ * that adapts to how the MMSC is coping (AIMD): each request completed quickly while the queue
+ * was using its whole limit raises the limit by one, and each HTTP failure or slow request
+ * halves it. Both queues share a thread budget of twice the initial limit. Sends go first: a
+ * download doesn't start while a send could take its slot, and long running download batches
+ * give up their slot at the next request boundary (see {@link #shouldYield}). A send held back
+ * by the send limit doesn't hold up downloads.
+ */
+class AdaptiveRequestScheduler {
+    static final int QUEUE_SEND = 0;
+    static final int QUEUE_DOWNLOAD = 1;
+    private static final int QUEUE_COUNT = 2;
+
+    private static final String[] QUEUE_NAMES = new String[] { "send", "download" };
+
+    // A request whose HTTP exchange takes longer than this counts as a sign of congestion
+    private static final long SLOW_REQUEST_MS = 20 * 1000;
+    // Factor applied to the initial limit to get the maximum a queue may grow to, which is also
+    // the most requests that run at once across both queues
+    private static final int MAX_LIMIT_FACTOR = 2;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final ArrayDeque<Runnable>[] mQueues;
+    private final int[] mInFlight = new int[QUEUE_COUNT];
+    private final int[] mLimits = new int[QUEUE_COUNT];
+    private final int mMaxLimit;
+    private boolean mShutdown;
+
+    /**
+     * @param initialLimit the starting concurrency of each queue
+     */
+    @SuppressWarnings("unchecked")
+    AdaptiveRequestScheduler(final int initialLimit) {
+        final int limit = Math.max(1, initialLimit);
+        mMaxLimit = limit * MAX_LIMIT_FACTOR;
+        mQueues = new ArrayDeque[QUEUE_COUNT];
+        for (int i = 0; i < QUEUE_COUNT; i++) {
+            mQueues[i] = new ArrayDeque<>();
+            mLimits[i] = limit;
+        }
+    }
+
+    /**
+     * Queue a task to run when its queue has capacity
+     *
+     * @param queue QUEUE_SEND or QUEUE_DOWNLOAD
+     * @param task the task to run
+     * @throws RejectedExecutionException if the scheduler has been shut down
+     */
+    void submit(final int queue, final Runnable task) {
+        synchronized (this) {
+            if (mShutdown) {
+                throw new RejectedExecutionException("Scheduler shut down");
+            }
+            mQueues[queue].add(task);
+            dispatchLocked();
+        }
+    }
+
+    /**
+     * Feed the outcome of a request back into its queue's limit
+     *
+     * @param queue the queue the request ran from
+     * @param failed whether the request failed talking to the network or MMSC
+     * @param httpElapsedMs how long the HTTP exchange took
+     */
+    void onRequestComplete(final int queue, final boolean failed, final long httpElapsedMs) {
+        synchronized (this) {
+            final int oldLimit = mLimits[queue];
+            if (failed || httpElapsedMs > SLOW_REQUEST_MS) {
+                mLimits[queue] = Math.max(1, oldLimit / 2);
+            } else if (mInFlight[queue] >= oldLimit && oldLimit < mMaxLimit) {
+                // Only grow when the limit is what's holding the queue back
+                mLimits[queue] = oldLimit + 1;
+            }
+            if (mLimits[queue] != oldLimit) {
+                Log.d(MmsService.TAG, "Scheduler: " + QUEUE_NAMES[queue] + " limit "
+                        + oldLimit + " -> " + mLimits[queue]
+                        + (failed ? " (failure)" : " (" + httpElapsedMs + "ms)"));
+                dispatchLocked();
+            }
+        }
+    }
+
+    /**
+     * Whether a long running task on the queue, like a download batch, should give up its slot
+     * because the queue is over its limit or a send is waiting only for a thread
+     */
+    boolean shouldYield(final int queue) {
+        synchronized (this) {
+            return mInFlight[queue] > mLimits[queue]
+                    || (queue == QUEUE_DOWNLOAD && hasDispatchableSendLocked());
+        }
+    }
+
+    /**
+     * Stop accepting tasks. Tasks already running are left to finish.
+     *
+     * @return the queued tasks that haven't started, sends first, which the caller must fail
+     */
+    List<Runnable> shutdown() {
+        final ArrayList<Runnable> dropped = new ArrayList<>();
+        synchronized (this) {
+            mShutdown = true;
+            for (ArrayDeque<Runnable> queue : mQueues) {
+                dropped.addAll(queue);
+                queue.clear();
+            }
+        }
+        mExecutor.shutdown();
+        return dropped;
+    }
+
+    int getQueueDepth(final int queue) {
+        synchronized (this) {
+            return mQueues[queue].size();
+        }
+    }
+
+    int getInFlightCount(final int queue) {
+        synchronized (this) {
+            return mInFlight[queue];
+        }
+    }
+
+    int getLimit(final int queue) {
+        synchronized (this) {
+            return mLimits[queue];
+        }
+    }
+
+    private void dispatchLocked() {
+        if (mShutdown) {
+            return;
+        }
+        final ArrayDeque<Runnable> sends = mQueues[QUEUE_SEND];
+        while (!sends.isEmpty() && mInFlight[QUEUE_SEND] < mLimits[QUEUE_SEND]
+                && getTotalInFlightLocked() < mMaxLimit) {
+            startLocked(QUEUE_SEND, sends.poll());
+        }
+        final ArrayDeque<Runnable> downloads = mQueues[QUEUE_DOWNLOAD];
+        while (!hasDispatchableSendLocked() && !downloads.isEmpty()
+                && mInFlight[QUEUE_DOWNLOAD] < mLimits[QUEUE_DOWNLOAD]
+                && getTotalInFlightLocked() < mMaxLimit) {
+            startLocked(QUEUE_DOWNLOAD, downloads.poll());
+        }
+    }
+
+    /**
+     * Whether a send is queued that its own limit would let start
+     */
+    private boolean hasDispatchableSendLocked() {
+        return !mQueues[QUEUE_SEND].isEmpty() && mInFlight[QUEUE_SEND] < mLimits[QUEUE_SEND];
+    }
+
+    private int getTotalInFlightLocked() {
+        return mInFlight[QUEUE_SEND] + mInFlight[QUEUE_DOWNLOAD];
+    }
+
+    private void startLocked(final int queue, final Runnable task) {
+        mInFlight[queue]++;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    synchronized (AdaptiveRequestScheduler.this) {
+                        mInFlight[queue]--;
+                        dispatchLocked();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -37,6 +37,11 @@ import java.util.concurrent.TimeUnit;
  * Request to download an MMS
  */
 class DownloadRequest extends MmsRequest {
+    // Returned from doHttp when the response has already been written to the PDU Uri
+    private static final byte[] STREAMED_RESPONSE = new byte[0];
+
+    // Whether the last response was streamed straight to the PDU Uri
+    private boolean mResponseStreamed;
 
     DownloadRequest(final String locationUrl, final Uri pduUri,
             final PendingIntent sentIntent) {
@@ -51,6 +56,9 @@ class DownloadRequest extends MmsRequest {
 
     @Override
     protected boolean transferResponse(Context context, Intent fillIn, byte[] response) {
+        if (mResponseStreamed) {
+            return true;
+        }
         return writePduToContentUri(context, mPduUri, response);
     }
 
@@ -58,10 +66,48 @@ class DownloadRequest extends MmsRequest {
     protected byte[] doHttp(Context context, MmsNetworkManager netMgr, ApnSettingsLoader.Apn apn,
             Bundle mmsConfig, String userAgent, String uaProfUrl) throws MmsHttpException {
         final MmsHttpClient httpClient = netMgr.getHttpClient();
+        mResponseStreamed = false;
+        // Stream the response straight into the download file so a large retrieve-conf is
+        // never held in memory. Opening in "w" mode truncates anything a previous APN left.
+        final ParcelFileDescriptor pduFd = openPduForWrite(context);
+        if (pduFd != null) {
+            final ParcelFileDescriptor.AutoCloseOutputStream outStream =
+                    new ParcelFileDescriptor.AutoCloseOutputStream(pduFd);
+            try {
+                httpClient.execute(getHttpRequestUrl(apn), null/*pdu*/, MmsHttpClient.METHOD_GET,
+                        !TextUtils.isEmpty(apn.getMmsProxy()), apn.getMmsProxy(),
+                        apn.getMmsProxyPort(), mmsConfig, userAgent, uaProfUrl, outStream);
+            } finally {
+                try {
+                    outStream.close();
+                } catch (IOException ex) {
+                    // Ignore
+                }
+            }
+            mResponseStreamed = true;
+            return STREAMED_RESPONSE;
+        }
         return httpClient.execute(getHttpRequestUrl(apn), null/*pdu*/, MmsHttpClient.METHOD_GET,
                 !TextUtils.isEmpty(apn.getMmsProxy()), apn.getMmsProxy(), apn.getMmsProxyPort(),
                 mmsConfig, userAgent, uaProfUrl);
+    }
 
+    /**
+     * Open the PDU Uri for writing the downloaded response
+     *
+     * @return the file descriptor, or null if the Uri can't be opened, in which case the
+     *         response is buffered and written once the download completes
+     */
+    private ParcelFileDescriptor openPduForWrite(final Context context) {
+        if (mPduUri == null) {
+            return null;
+        }
+        try {
+            return context.getContentResolver().openFileDescriptor(mPduUri, "w");
+        } catch (IOException | SecurityException e) {
+            Log.w(MmsService.TAG, "Can't open PDU Uri for streaming, buffering response", e);
+            return null;
+        }
     }
 
     @Override
@@ -26,7 +26,6 @@ import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -40,6 +39,8 @@ import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -80,6 +81,15 @@ public class MmsHttpClient {
     // The possible NAI system property name
     private static final String NAI_PROPERTY = "persist.radio.cdma.nai";
 
+    // Size of the buffers used to move response bodies from the network to their destination
+    private static final int TRANSFER_BUFFER_SIZE = 16 * 1024;
+    // Enough pooled buffers to cover the request executors running concurrently
+    private static final int MAX_POOLED_TRANSFER_BUFFERS = 8;
+    // Above this a Content-Length is not trusted for a single up-front allocation
+    private static final int MAX_PRESIZED_RESPONSE_SIZE = 8 * 1024 * 1024;
+
+    private static final ArrayDeque<byte[]> sTransferBufferPool = new ArrayDeque<byte[]>();
+
     private final Context mContext;
     private final TelephonyManager mTelephonyManager;
 
@@ -96,6 +106,10 @@ public class MmsHttpClient {
     /**
      * Execute an MMS HTTP request, either a POST (sending) or a GET (downloading)
      *
+     * A connection whose response is read to the end is closed without being disconnected, so
+     * the platform's keep-alive pool can hand its socket to the next request to the same MMSC
+     * through the same proxy, i.e. the same APN. Failed connections are disconnected.
+     *
      * @param urlString The request URL, for sending it is usually the MMSC, and for downloading
      *                  it is the message URL
      * @param pdu For POST (sending) only, the PDU to send
@@ -112,19 +126,94 @@ public class MmsHttpClient {
     public byte[] execute(String urlString, byte[] pdu, String method, boolean isProxySet,
             String proxyHost, int proxyPort, Bundle mmsConfig, String userAgent, String uaProfUrl)
             throws MmsHttpException {
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(urlString, pdu, method, isProxySet, proxyHost, proxyPort,
+                    mmsConfig, userAgent, uaProfUrl);
+            final byte[] responseBody = readResponse(connection);
+            Log.d(MmsService.TAG, "HTTP: response size="
+                    + (responseBody != null ? responseBody.length : 0));
+            // The body has been read to the end, so leave the socket for the next request
+            connection = null;
+            return responseBody;
+        } catch (IOException e) {
+            throw toMmsHttpException(urlString, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Execute an MMS HTTP request, writing the response body to the given sink as it arrives
+     * rather than holding it in memory. The sink is not closed.
+     *
+     * @param urlString The request URL, for sending it is usually the MMSC, and for downloading
+     *                  it is the message URL
+     * @param pdu For POST (sending) only, the PDU to send
+     * @param method HTTP method, POST for sending and GET for downloading
+     * @param isProxySet Is there a proxy for the MMSC
+     * @param proxyHost The proxy host
+     * @param proxyPort The proxy port
+     * @param mmsConfig The MMS config to use
+     * @param userAgent The user agent header value
+     * @param uaProfUrl The UA Prof URL header value
+     * @param responseSink Where to write the HTTP response body
+     * @return The number of response body bytes written to the sink
+     * @throws MmsHttpException For any failures, including failing to write to the sink
+     */
+    public long execute(String urlString, byte[] pdu, String method, boolean isProxySet,
+            String proxyHost, int proxyPort, Bundle mmsConfig, String userAgent, String uaProfUrl,
+            OutputStream responseSink) throws MmsHttpException {
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(urlString, pdu, method, isProxySet, proxyHost, proxyPort,
+                    mmsConfig, userAgent, uaProfUrl);
+            final InputStream in = connection.getInputStream();
+            final long responseSize;
+            try {
+                responseSize = copyResponse(in, responseSink);
+            } finally {
+                in.close();
+            }
+            responseSink.flush();
+            Log.d(MmsService.TAG, "HTTP: streamed response size=" + responseSize);
+            // The body has been read to the end, so leave the socket for the next request
+            connection = null;
+            return responseSize;
+        } catch (IOException e) {
+            throw toMmsHttpException(urlString, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Open the connection, send the request and check the response status
+     *
+     * @return The connection, ready for the response body to be read
+     * @throws MmsHttpException For a bad request or a non-2xx response
+     * @throws IOException For network failures
+     */
+    private HttpURLConnection openConnection(String urlString, byte[] pdu, String method,
+            boolean isProxySet, String proxyHost, int proxyPort, Bundle mmsConfig,
+            String userAgent, String uaProfUrl) throws MmsHttpException, IOException {
         Log.d(MmsService.TAG, "HTTP: " + method + " " + Utils.redactUrlForNonVerbose(urlString)
                 + (isProxySet ? (", proxy=" + proxyHost + ":" + proxyPort) : "")
                 + ", PDU size=" + (pdu != null ? pdu.length : 0));
         checkMethod(method);
-        HttpURLConnection connection = null;
+        Proxy proxy = Proxy.NO_PROXY;
+        if (isProxySet) {
+            proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
+        }
+        final URL url = new URL(urlString);
+        // Now get the connection
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection(proxy);
+        boolean success = false;
         try {
-            Proxy proxy = Proxy.NO_PROXY;
-            if (isProxySet) {
-                proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-            }
-            final URL url = new URL(urlString);
-            // Now get the connection
-            connection = (HttpURLConnection) url.openConnection(proxy);
             connection.setDoInput(true);
             connection.setConnectTimeout(
                     mmsConfig.getInt(CarrierConfigValuesLoader.CONFIG_HTTP_SOCKET_TIMEOUT,
@@ -191,32 +280,105 @@ public class MmsHttpClient {
             if (responseCode / 100 != 2) {
                 throw new MmsHttpException(responseCode, responseMessage);
             }
-            final InputStream in = new BufferedInputStream(connection.getInputStream());
-            final ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-            final byte[] buf = new byte[4096];
-            int count = 0;
-            while ((count = in.read(buf)) > 0) {
-                byteOut.write(buf, 0, count);
+            success = true;
+            return connection;
+        } finally {
+            if (!success) {
+                connection.disconnect();
             }
-            in.close();
-            final byte[] responseBody = byteOut.toByteArray();
-            Log.d(MmsService.TAG, "HTTP: response size="
-                    + (responseBody != null ? responseBody.length : 0));
-            return responseBody;
-        } catch (MalformedURLException e) {
+        }
+    }
+
+    private static MmsHttpException toMmsHttpException(String urlString, IOException e) {
+        if (e instanceof MalformedURLException) {
             final String redactedUrl = Utils.redactUrlForNonVerbose(urlString);
             Log.e(MmsService.TAG, "HTTP: invalid URL " + redactedUrl, e);
-            throw new MmsHttpException(0/*statusCode*/, "Invalid URL " + redactedUrl, e);
-        } catch (ProtocolException e) {
+            return new MmsHttpException(0/*statusCode*/, "Invalid URL " + redactedUrl, e);
+        } else if (e instanceof ProtocolException) {
             final String redactedUrl = Utils.redactUrlForNonVerbose(urlString);
             Log.e(MmsService.TAG, "HTTP: invalid URL protocol " + redactedUrl, e);
-            throw new MmsHttpException(0/*statusCode*/, "Invalid URL protocol " + redactedUrl, e);
-        } catch (IOException e) {
-            Log.e(MmsService.TAG, "HTTP: IO failure", e);
-            throw new MmsHttpException(0/*statusCode*/, e);
+            return new MmsHttpException(0/*statusCode*/, "Invalid URL protocol " + redactedUrl, e);
+        }
+        Log.e(MmsService.TAG, "HTTP: IO failure", e);
+        return new MmsHttpException(0/*statusCode*/, e);
+    }
+
+    /**
+     * Read the whole response body into memory. When the server declares a Content-Length the
+     * body is read straight into an array of that size, so a well-behaved response costs a
+     * single allocation instead of the doubling copies of a ByteArrayOutputStream.
+     */
+    private static byte[] readResponse(HttpURLConnection connection) throws IOException {
+        final InputStream in = connection.getInputStream();
+        try {
+            final int contentLength = connection.getContentLength();
+            if (contentLength <= 0 || contentLength > MAX_PRESIZED_RESPONSE_SIZE) {
+                final ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+                copyResponse(in, byteOut);
+                return byteOut.toByteArray();
+            }
+            final byte[] body = new byte[contentLength];
+            int offset = 0;
+            int count;
+            while (offset < contentLength
+                    && (count = in.read(body, offset, contentLength - offset)) > 0) {
+                offset += count;
+            }
+            if (offset < contentLength) {
+                Log.w(MmsService.TAG, "HTTP: response shorter than Content-Length "
+                        + offset + " < " + contentLength);
+                return Arrays.copyOf(body, offset);
+            }
+            final int next = in.read();
+            if (next < 0) {
+                return body;
+            }
+            // The server sent more than it declared; keep everything it sent
+            Log.w(MmsService.TAG, "HTTP: response longer than Content-Length " + contentLength);
+            final ByteArrayOutputStream byteOut = new ByteArrayOutputStream(contentLength * 2);
+            byteOut.write(body);
+            byteOut.write(next);
+            copyResponse(in, byteOut);
+            return byteOut.toByteArray();
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            in.close();
+        }
+    }
+
+    /**
+     * Copy the response body to the sink through a pooled transfer buffer
+     *
+     * @return The number of bytes copied
+     */
+    private static long copyResponse(InputStream in, OutputStream sink) throws IOException {
+        final byte[] buf = acquireTransferBuffer();
+        try {
+            long total = 0;
+            int count;
+            while ((count = in.read(buf)) > 0) {
+                sink.write(buf, 0, count);
+                total += count;
+            }
+            return total;
+        } finally {
+            releaseTransferBuffer(buf);
+        }
+    }
+
+    private static byte[] acquireTransferBuffer() {
+        synchronized (sTransferBufferPool) {
+            final byte[] buf = sTransferBufferPool.poll();
+            if (buf != null) {
+                return buf;
+            }
+        }
+        return new byte[TRANSFER_BUFFER_SIZE];
+    }
+
+    private static void releaseTransferBuffer(byte[] buf) {
+        synchronized (sTransferBufferPool) {
+            if (sTransferBufferPool.size() < MAX_POOLED_TRANSFER_BUFFERS) {
+                sTransferBufferPool.offer(buf);
             }
         }
     }
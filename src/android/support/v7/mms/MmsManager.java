@@ -48,7 +48,8 @@ public class MmsManager {
     }
 
     /**
-     * Set the size of thread pool for request execution.
+     * Set the size of thread pool for request execution. This is the starting concurrency of
+     * the send and download queues, which then adapts to how the MMSC responds.
      *
      * Default is 4
      *
@@ -60,6 +61,18 @@ public class MmsManager {
         MmsService.setThreadPoolSize(size);
     }
 
+    /**
+     * Get a snapshot of the queued, running and maximum concurrent requests for sending and for
+     * downloading.
+     *
+     * Note: if system MMS API is used, requests don't go through these queues
+     *
+     * @return the stats, or null if no request has started the legacy MMS service
+     */
+    public static RequestQueueStats getRequestQueueStats() {
+        return MmsService.getRequestQueueStats();
+    }
+
     /**
      * Set whether to use wake lock while sending or downloading MMS.
      *
@@ -177,6 +177,18 @@ class MmsNetworkManager {
         }
     }
 
+    /**
+     * Keep the MMS network up between requests without acquiring it. Unlike acquireNetwork,
+     * this neither starts nor waits for connectivity; it only holds a reference so that once a
+     * request has acquired the network, it is not torn down until the matching releaseNetwork.
+     */
+    void retainNetwork() {
+        Log.i(MmsService.TAG, "Retain MMS network");
+        synchronized (this) {
+            mUseCount++;
+        }
+    }
+
     /**
      * Release MMS network connectivity. This is ref counted. So it only disconnect
      * when the ref count is 0.
@@ -25,10 +25,8 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import androidx.appcompat.mms.pdu.GenericPdu;
-import androidx.appcompat.mms.pdu.PduHeaders;
-import androidx.appcompat.mms.pdu.PduParser;
-import androidx.appcompat.mms.pdu.SendConf;
+import android.os.SystemClock;
+import androidx.appcompat.mms.pdu.WspDecoder;
 import android.telephony.SmsManager;
 import android.text.TextUtils;
 import android.util.Log;
@@ -37,6 +35,7 @@ import java.lang.reflect.Method;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -73,7 +72,8 @@ abstract class MmsRequest implements Parcelable {
      * @param mmsConfig The carrier configuration values to use
      * @param userAgent The User-Agent header value
      * @param uaProfUrl The UA Prof URL header value
-     * @return The HTTP response data
+     * @return The HTTP response data, or an empty array if the request already streamed the
+     *         response to its destination
      * @throws MmsHttpException If any network error happens
      */
     protected abstract byte[] doHttp(Context context, MmsNetworkManager netMgr,
@@ -91,6 +91,13 @@ abstract class MmsRequest implements Parcelable {
     // Maximum time to spend waiting to read data from a content provider before failing with error.
     protected static final int TASK_TIMEOUT_MS = 30 * 1000;
 
+    // MMS encapsulation values needed to check the m-send.conf status (OMA-MMS-ENC-V1_3)
+    private static final int HEADER_MESSAGE_TYPE = 0x8C;
+    private static final int HEADER_RESPONSE_STATUS = 0x92;
+    private static final int MESSAGE_TYPE_SEND_CONF = 0x81;
+    private static final int RESPONSE_STATUS_ERROR_SENDING_ADDRESS_UNRESOLVED = 0x84;
+    private static final int RESPONSE_STATUS_ERROR_PERMANENT_SENDING_ADDRESS_UNRESOLVED = 0xE3;
+
     protected final String mLocationUrl;
     protected final Uri mPduUri;
     protected final PendingIntent mPendingIntent;
@@ -99,6 +106,8 @@ abstract class MmsRequest implements Parcelable {
 
     // Whether this request should acquire wake lock
     private boolean mUseWakeLock;
+    // Duration of the last HTTP exchange, reported to the request scheduler
+    private long mHttpElapsedMs;
 
     protected MmsRequest(final String locationUrl, final Uri pduUri,
             final PendingIntent pendingIntent) {
@@ -124,8 +133,9 @@ abstract class MmsRequest implements Parcelable {
      * @param apnSettingsLoader the APN loader
      * @param carrierConfigValuesLoader the carrier config loader
      * @param userAgentInfoLoader the user agent info loader
+     * @return the result code sent back to the caller
      */
-    void execute(final Context context, final MmsNetworkManager networkManager,
+    int execute(final Context context, final MmsNetworkManager networkManager,
             final ApnSettingsLoader apnSettingsLoader,
             final CarrierConfigValuesLoader carrierConfigValuesLoader,
             final UserAgentInfoLoader userAgentInfoLoader) {
@@ -169,8 +179,13 @@ abstract class MmsRequest implements Parcelable {
                         // Request a global route for the host to connect
                         requestRoute(networkManager.getConnectivityManager(), apn, url);
                         // Perform the HTTP request
-                        response = doHttp(
-                                context, networkManager, apn, mmsConfig, userAgent, uaProfUrl);
+                        final long httpStartMs = SystemClock.elapsedRealtime();
+                        try {
+                            response = doHttp(context, networkManager, apn, mmsConfig, userAgent,
+                                    uaProfUrl);
+                        } finally {
+                            mHttpElapsedMs = SystemClock.elapsedRealtime() - httpStartMs;
+                        }
                         // Additional check of whether this is a success
                         if (isWrongApnResponse(response, mmsConfig)) {
                             throw new MmsHttpException(0/*statusCode*/, "Invalid sending address");
@@ -207,6 +222,14 @@ abstract class MmsRequest implements Parcelable {
         }
         // Process result and send back via PendingIntent
         returnResult(context, result, response, httpStatusCode);
+        return result;
+    }
+
+    /**
+     * @return how long the last HTTP exchange of this request took, 0 if none was made
+     */
+    long getHttpElapsedMs() {
+        return mHttpElapsedMs;
     }
 
     /**
@@ -222,25 +245,15 @@ abstract class MmsRequest implements Parcelable {
      */
     static boolean isWrongApnResponse(final byte[] response, final Bundle mmsConfig) {
         if (response != null && response.length > 0) {
-            try {
-                final GenericPdu pdu = new PduParser(
-                        response,
-                        mmsConfig.getBoolean(
-                                CarrierConfigValuesLoader
-                                        .CONFIG_SUPPORT_MMS_CONTENT_DISPOSITION,
-                                CarrierConfigValuesLoader
-                                        .CONFIG_SUPPORT_MMS_CONTENT_DISPOSITION_DEFAULT))
-                        .parse();
-                if (pdu != null && pdu instanceof SendConf) {
-                    final SendConf sendConf = (SendConf) pdu;
-                    final int responseStatus = sendConf.getResponseStatus();
-                    return responseStatus ==
-                            PduHeaders.RESPONSE_STATUS_ERROR_PERMANENT_SENDING_ADDRESS_UNRESOLVED ||
-                            responseStatus ==
-                                    PduHeaders.RESPONSE_STATUS_ERROR_SENDING_ADDRESS_UNRESOLVED;
-                }
-            } catch (RuntimeException e) {
-                Log.w(MmsService.TAG, "Parsing response failed", e);
+            // Only the message type and status are needed, so look them up in place rather
+            // than parsing the whole PDU
+            final ByteBuffer pdu = ByteBuffer.wrap(response);
+            if (WspDecoder.findOctetHeader(pdu, HEADER_MESSAGE_TYPE)
+                    == MESSAGE_TYPE_SEND_CONF) {
+                final int responseStatus = WspDecoder.findOctetHeader(pdu, HEADER_RESPONSE_STATUS);
+                return responseStatus ==
+                        RESPONSE_STATUS_ERROR_PERMANENT_SENDING_ADDRESS_UNRESOLVED ||
+                        responseStatus == RESPONSE_STATUS_ERROR_SENDING_ADDRESS_UNRESOLVED;
             }
         }
         return false;
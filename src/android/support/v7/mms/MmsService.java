@@ -19,6 +19,7 @@ package androidx.appcompat.mms;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
@@ -26,8 +27,11 @@ import android.os.Process;
 import android.telephony.SmsManager;
 import android.util.Log;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.RejectedExecutionException;
 
 /**
@@ -47,10 +51,15 @@ public class MmsService extends Service {
     private static final String WAKELOCK_ID = "mmslib_wakelock";
 
     /**
-     * Thread pool size for each request queue
+     * Initial concurrency of each request queue
      */
     private static volatile int sThreadPoolSize = DEFAULT_THREAD_POOL_SIZE;
 
+    /**
+     * The running service, for reporting request queue stats
+     */
+    private static volatile MmsService sRunningService = null;
+
     /**
      * Optional wake lock to use
      */
@@ -74,7 +83,8 @@ public class MmsService extends Service {
     private static volatile UserAgentInfoLoader sUserAgentInfoLoader = null;
 
     /**
-     * Set the size of thread pool for request execution.
+     * Set the initial concurrency of each request queue. The scheduler adapts it between 1 and
+     * twice this value as requests complete.
      * Default is DEFAULT_THREAD_POOL_SIZE
      *
      * @param size thread pool size
@@ -83,6 +93,16 @@ public class MmsService extends Service {
         sThreadPoolSize = size;
     }
 
+    /**
+     * Get a snapshot of the request queues
+     *
+     * @return the stats, or null if the service is not running
+     */
+    static RequestQueueStats getRequestQueueStats() {
+        final MmsService service = sRunningService;
+        return service != null ? service.getStats() : null;
+    }
+
     /**
      * Set whether to use wake lock
      *
@@ -235,10 +255,11 @@ public class MmsService extends Service {
         return pid == getMyPid();
     }
 
-    // Request execution thread pools. One thread pool for sending and one for downloading.
-    // The size of the thread pool controls the parallelism of request execution.
-    // See {@link setThreadPoolSize}
-    private ExecutorService[] mExecutors = new ExecutorService[2];
+    // Runs sends and download batches with adaptive concurrency. See {@link setThreadPoolSize}
+    private AdaptiveRequestScheduler mScheduler;
+
+    // Queued download requests, keyed by MMSC. See {@link DownloadBatchWorker}
+    private final Map<String, DownloadQueue> mDownloadQueues = new HashMap<>();
 
     // Active request count
     private int mActiveRequestCount;
@@ -266,9 +287,7 @@ public class MmsService extends Service {
     public static void startRequest(final Context context, final MmsRequest request) {
         final boolean useWakeLock = sUseWakeLock;
         request.setUseWakeLock(useWakeLock);
-        final Intent intent = new Intent(context, MmsService.class);
-        intent.putExtra(EXTRA_REQUEST, request);
-        intent.putExtra(EXTRA_MYPID, getMyPid());
+        final Intent intent = makeRequestIntent(context, request);
         if (useWakeLock) {
             acquireWakeLock(context);
         }
@@ -279,31 +298,53 @@ public class MmsService extends Service {
         }
     }
 
+    /**
+     * Make the intent that starts the service with a request
+     *
+     * @param context the Context to use
+     * @param request the request to start
+     * @return the intent
+     */
+    static Intent makeRequestIntent(final Context context, final MmsRequest request) {
+        final Intent intent = new Intent(context, MmsService.class);
+        intent.putExtra(EXTRA_REQUEST, request);
+        intent.putExtra(EXTRA_MYPID, getMyPid());
+        return intent;
+    }
+
+    /**
+     * Create the network manager requests use to set up the MMS network. Tests override this
+     * to watch how the network is held across requests.
+     *
+     * @return the network manager
+     */
+    MmsNetworkManager createNetworkManager() {
+        return new MmsNetworkManager(this);
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
 
         ensureLoaders(this);
 
-        for (int i = 0; i < mExecutors.length; i++) {
-            mExecutors[i] = Executors.newFixedThreadPool(sThreadPoolSize);
-        }
+        mScheduler = new AdaptiveRequestScheduler(sThreadPoolSize);
 
-        mNetworkManager = new MmsNetworkManager(this);
+        mNetworkManager = createNetworkManager();
 
         synchronized (this) {
             mActiveRequestCount = 0;
             mLastStartId = -1;
         }
+        sRunningService = this;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
 
-        for (ExecutorService executor : mExecutors) {
-            executor.shutdown();
-        }
+        sRunningService = null;
+        failDroppedTasks(mScheduler.shutdown());
     }
 
     @Override
@@ -324,26 +365,7 @@ public class MmsService extends Service {
                 final MmsRequest request = intent.getParcelableExtra(EXTRA_REQUEST);
                 if (request != null) {
                     try {
-                        retainService(request, new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    request.execute(
-                                            MmsService.this,
-                                            mNetworkManager,
-                                            getApnSettingsLoader(),
-                                            getCarrierConfigValuesLoader(),
-                                            getUserAgentInfoLoader());
-                                } catch (Exception e) {
-                                    Log.w(TAG, "Unexpected execution failure", e);
-                                } finally {
-                                    if (request.getUseWakeLock()) {
-                                        releaseWakeLock();
-                                    }
-                                    releaseService();
-                                }
-                            }
-                        });
+                        retainService(request, new RequestTask(request));
                         scheduled = true;
                     } catch (RejectedExecutionException e) {
                         // Rare thing happened. Send back failure using the pending intent
@@ -372,20 +394,237 @@ public class MmsService extends Service {
         return START_NOT_STICKY;
     }
 
+    /**
+     * Runs a request in the service thread pool
+     */
+    private class RequestTask implements Runnable {
+        private final MmsRequest mRequest;
+
+        RequestTask(final MmsRequest request) {
+            mRequest = request;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final int result = mRequest.execute(
+                        MmsService.this,
+                        mNetworkManager,
+                        getApnSettingsLoader(),
+                        getCarrierConfigValuesLoader(),
+                        getUserAgentInfoLoader());
+                mScheduler.onRequestComplete(getRequestQueue(mRequest),
+                        isNetworkFailure(result), mRequest.getHttpElapsedMs());
+            } catch (Exception e) {
+                Log.w(TAG, "Unexpected execution failure", e);
+            } finally {
+                if (mRequest.getUseWakeLock()) {
+                    releaseWakeLock();
+                }
+                releaseService();
+            }
+        }
+
+        /**
+         * Send back failure for a request the service is shutting down without running, using
+         * the pending intent, and release its wake lock
+         */
+        void fail() {
+            mRequest.returnResult(MmsService.this, SmsManager.MMS_ERROR_UNSPECIFIED,
+                    null/*response*/, 0/*httpStatusCode*/);
+            if (mRequest.getUseWakeLock()) {
+                releaseWakeLock();
+            }
+        }
+    }
+
     /**
      * Retain the service for executing the request in service thread pool
      *
      * @param request The request to execute
-     * @param runnable The runnable to run the request in thread pool
+     * @param task The task to run the request in thread pool
      */
-    private void retainService(final MmsRequest request, final Runnable runnable) {
-        final ExecutorService executor = getRequestExecutor(request);
+    private void retainService(final MmsRequest request, final RequestTask task) {
         synchronized (this) {
-            executor.execute(runnable);
+            if (request instanceof DownloadRequest) {
+                scheduleDownloadLocked(request, task);
+            } else {
+                mScheduler.submit(AdaptiveRequestScheduler.QUEUE_SEND, task);
+            }
             mActiveRequestCount++;
         }
     }
 
+    /**
+     * Fail the requests the scheduler dropped when it shut down, so their senders hear back
+     * rather than wait for results that will never come
+     *
+     * @param dropped The sends and download batch workers that never started
+     */
+    private void failDroppedTasks(final List<Runnable> dropped) {
+        final ArrayList<RequestTask> failed = new ArrayList<>();
+        synchronized (this) {
+            for (final Runnable task : dropped) {
+                if (task instanceof DownloadBatchWorker) {
+                    final DownloadQueue queue = ((DownloadBatchWorker) task).mQueue;
+                    queue.mWorkerCount--;
+                    if (queue.mWorkerCount == 0) {
+                        // No running worker is left to take these
+                        failed.addAll(queue.mPending);
+                        queue.mPending.clear();
+                        mDownloadQueues.remove(queue.mMmsc);
+                    }
+                } else {
+                    failed.add((RequestTask) task);
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            Log.w(TAG, "Failing " + failed.size() + " requests dropped at shutdown");
+        }
+        for (final RequestTask task : failed) {
+            task.fail();
+        }
+    }
+
+    /**
+     * Queue a download behind others to the same MMSC, submitting another batch worker for that
+     * MMSC if fewer than the thread pool size are running or waiting
+     *
+     * @param request The download request
+     * @param task The task to run the request
+     */
+    private void scheduleDownloadLocked(final MmsRequest request, final RequestTask task) {
+        final String mmsc = getMmscKey(request);
+        DownloadQueue queue = mDownloadQueues.get(mmsc);
+        if (queue == null) {
+            queue = new DownloadQueue(mmsc);
+            mDownloadQueues.put(mmsc, queue);
+        }
+        queue.mPending.add(task);
+        if (queue.mWorkerCount < sThreadPoolSize) {
+            try {
+                mScheduler.submit(AdaptiveRequestScheduler.QUEUE_DOWNLOAD,
+                        new DownloadBatchWorker(queue));
+                queue.mWorkerCount++;
+            } catch (RejectedExecutionException e) {
+                if (queue.mWorkerCount == 0) {
+                    // Nobody is left to run it
+                    queue.mPending.remove(task);
+                    mDownloadQueues.remove(mmsc);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the next queued download for a batch worker. When there is none, the worker is
+     * retired. When the scheduler wants the worker's slot back, the worker is resubmitted to
+     * the back of the download queue and retired from this run.
+     *
+     * @param worker The batch worker
+     * @return The task of the next download, or null if the worker should exit
+     */
+    private RequestTask pollPendingDownload(final DownloadBatchWorker worker) {
+        final DownloadQueue queue = worker.mQueue;
+        synchronized (this) {
+            if (!queue.mPending.isEmpty()
+                    && mScheduler.shouldYield(AdaptiveRequestScheduler.QUEUE_DOWNLOAD)) {
+                try {
+                    mScheduler.submit(AdaptiveRequestScheduler.QUEUE_DOWNLOAD, worker);
+                    return null;
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, keep going with this run
+                }
+            }
+            final RequestTask task = queue.mPending.poll();
+            if (task == null) {
+                queue.mWorkerCount--;
+                if (queue.mWorkerCount == 0) {
+                    mDownloadQueues.remove(queue.mMmsc);
+                }
+            }
+            return task;
+        }
+    }
+
+    private RequestQueueStats getStats() {
+        int pendingDownloads = 0;
+        synchronized (this) {
+            for (DownloadQueue queue : mDownloadQueues.values()) {
+                pendingDownloads += queue.mPending.size();
+            }
+        }
+        final AdaptiveRequestScheduler scheduler = mScheduler;
+        return new RequestQueueStats(
+                scheduler.getQueueDepth(AdaptiveRequestScheduler.QUEUE_SEND),
+                scheduler.getInFlightCount(AdaptiveRequestScheduler.QUEUE_SEND),
+                scheduler.getLimit(AdaptiveRequestScheduler.QUEUE_SEND),
+                pendingDownloads,
+                scheduler.getInFlightCount(AdaptiveRequestScheduler.QUEUE_DOWNLOAD),
+                scheduler.getLimit(AdaptiveRequestScheduler.QUEUE_DOWNLOAD));
+    }
+
+    /**
+     * Whether a request result points at trouble with the MMS network or MMSC, as opposed to
+     * a problem with the request itself
+     */
+    private static boolean isNetworkFailure(final int result) {
+        return result == SmsManager.MMS_ERROR_HTTP_FAILURE
+                || result == SmsManager.MMS_ERROR_UNABLE_CONNECT_MMS;
+    }
+
+    private static String getMmscKey(final MmsRequest request) {
+        final String authority = request.mLocationUrl != null ?
+                Uri.parse(request.mLocationUrl).getAuthority() : null;
+        return authority != null ? authority : "";
+    }
+
+    /**
+     * Download requests queued for one MMSC
+     */
+    private static class DownloadQueue {
+        final String mMmsc;
+        final ArrayDeque<RequestTask> mPending = new ArrayDeque<>();
+        // Number of batch workers draining this queue
+        int mWorkerCount;
+
+        DownloadQueue(final String mmsc) {
+            mMmsc = mmsc;
+        }
+    }
+
+    /**
+     * Runs queued downloads to one MMSC back to back. The MMS network is retained for the whole
+     * batch, so after a long offline period a backlog of downloads doesn't bring the network up
+     * and down for each message, and consecutive requests find the previous request's
+     * keep-alive connection to the MMSC still usable.
+     */
+    private class DownloadBatchWorker implements Runnable {
+        private final DownloadQueue mQueue;
+
+        DownloadBatchWorker(final DownloadQueue queue) {
+            mQueue = queue;
+        }
+
+        @Override
+        public void run() {
+            int count = 0;
+            mNetworkManager.retainNetwork();
+            try {
+                RequestTask task;
+                while ((task = pollPendingDownload(this)) != null) {
+                    task.run();
+                    count++;
+                }
+            } finally {
+                mNetworkManager.releaseNetwork();
+            }
+            Log.i(TAG, "Downloaded batch of " + count + " from " + mQueue.mMmsc);
+        }
+    }
+
     /**
      * Release the service from the request. If nobody is using it, schedule service stop.
      */
@@ -448,13 +687,13 @@ public class MmsService extends Service {
         }
     }
 
-    private ExecutorService getRequestExecutor(final MmsRequest request) {
+    private static int getRequestQueue(final MmsRequest request) {
         if (request instanceof SendRequest) {
             // Send
-            return mExecutors[0];
+            return AdaptiveRequestScheduler.QUEUE_SEND;
         } else {
             // Download
-            return mExecutors[1];
+            return AdaptiveRequestScheduler.QUEUE_DOWNLOAD;
         }
     }
 
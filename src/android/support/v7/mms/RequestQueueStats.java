@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.appcompat.mms;
+
+/**
+ * Snapshot of the legacy MMS request queues: how many requests are waiting, how many are
+ * running and the current concurrency limit of each queue
+ */
+public final class RequestQueueStats {
+    private final int mSendQueueDepth;
+    private final int mSendInFlight;
+    private final int mSendLimit;
+    private final int mDownloadQueueDepth;
+    private final int mDownloadInFlight;
+    private final int mDownloadLimit;
+
+    RequestQueueStats(final int sendQueueDepth, final int sendInFlight, final int sendLimit,
+            final int downloadQueueDepth, final int downloadInFlight, final int downloadLimit) {
+        mSendQueueDepth = sendQueueDepth;
+        mSendInFlight = sendInFlight;
+        mSendLimit = sendLimit;
+        mDownloadQueueDepth = downloadQueueDepth;
+        mDownloadInFlight = downloadInFlight;
+        mDownloadLimit = downloadLimit;
+    }
+
+    public int getSendQueueDepth() {
+        return mSendQueueDepth;
+    }
+
+    public int getSendInFlight() {
+        return mSendInFlight;
+    }
+
+    public int getSendLimit() {
+        return mSendLimit;
+    }
+
+    public int getDownloadQueueDepth() {
+        return mDownloadQueueDepth;
+    }
+
+    public int getDownloadInFlight() {
+        return mDownloadInFlight;
+    }
+
+    public int getDownloadLimit() {
+        return mDownloadLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "send[queued=" + mSendQueueDepth + ", running=" + mSendInFlight
+                + ", limit=" + mSendLimit + "] download[queued=" + mDownloadQueueDepth
+                + ", running=" + mDownloadInFlight + ", limit=" + mDownloadLimit + "]";
+    }
+}
@@ -107,6 +107,26 @@ class SendRequest extends MmsRequest {
                     final ContentResolver cr = context.getContentResolver();
                     final ParcelFileDescriptor pduFd = cr.openFileDescriptor(contentUri, "r");
                     inStream = new ParcelFileDescriptor.AutoCloseInputStream(pduFd);
+                    final long statSize = pduFd.getStatSize();
+                    if (statSize > maxSize) {
+                        Log.e(MmsService.TAG, "Reading PDU from sender: PDU too large");
+                        return null;
+                    }
+                    if (statSize > 0) {
+                        // Regular file of known size: read it into an exact-size array
+                        final byte[] result = new byte[(int) statSize];
+                        int bytesRead = 0;
+                        while (bytesRead < result.length) {
+                            final int len = inStream.read(result, bytesRead,
+                                    result.length - bytesRead);
+                            if (len < 0) {
+                                Log.e(MmsService.TAG, "Reading PDU from sender: truncated PDU");
+                                return null;
+                            }
+                            bytesRead += len;
+                        }
+                        return result;
+                    }
                     // Request one extra byte to make sure file not bigger than maxSize
                     final byte[] readBuf = new byte[maxSize+1];
                     final int bytesRead = inStream.read(readBuf, 0, maxSize+1);
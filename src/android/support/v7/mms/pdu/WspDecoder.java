@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.appcompat.mms.pdu;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The WSP / MMS encapsulation decoding primitives shared by every PDU parser in the app.
+ *
+ * There are two sets of methods here:
+ * <ul>
+ * <li>Stream primitives, which read one WSP value from a {@link ByteArrayInputStream}. These are
+ * what a full parser (e.g. com.android.messaging.mmslib.pdu.PduParser) is built from.</li>
+ * <li>Header lookups, which find a single top-level header in an encoded PDU without building
+ * any objects. They rely on every WSP value being self-delimiting, so headers we don't care
+ * about can be skipped without knowing their type. Use these when only one or two header
+ * values are needed, e.g. the status of an m-send.conf.</li>
+ * </ul>
+ */
+public final class WspDecoder {
+    /**
+     * The next are WAP values defined in WSP specification.
+     */
+    public static final int QUOTE = 127;
+    public static final int LENGTH_QUOTE = 31;
+    public static final int TEXT_MIN = 32;
+    public static final int TEXT_MAX = 127;
+    public static final int SHORT_INTEGER_MAX = 127;
+    public static final int SHORT_LENGTH_MAX = 30;
+    public static final int LONG_INTEGER_LENGTH_MAX = 8;
+    public static final int QUOTED_STRING_FLAG = 34;
+    public static final int END_STRING_FLAG = 0x00;
+
+    /**
+     * String types understood by {@link #getWapString}.
+     */
+    public static final int TYPE_TEXT_STRING = 0;
+    public static final int TYPE_QUOTED_STRING = 1;
+    public static final int TYPE_TOKEN_STRING = 2;
+
+    /**
+     * Content-Type header field. Per the MMS encapsulation it is always the last header,
+     * and the message body follows it.
+     */
+    private static final int CONTENT_TYPE = 0x84;
+
+    /** Returned by the header lookups when the header is absent or the PDU is malformed */
+    public static final int NOT_FOUND = -1;
+
+    private WspDecoder() {
+    }
+
+    /**
+     * Parse unsigned integer.
+     *
+     * @param pduDataStream pdu data input stream
+     * @return the integer, -1 when failed
+     */
+    public static int parseUnsignedInt(ByteArrayInputStream pduDataStream) {
+        /**
+         * From wap-230-wsp-20010705-a.pdf
+         * The maximum size of a uintvar is 32 bits.
+         * So it will be encoded in no more than 5 octets.
+         */
+        assert (null != pduDataStream);
+        int result = 0;
+        int temp = pduDataStream.read();
+        if (temp == -1) {
+            return temp;
+        }
+
+        while ((temp & 0x80) != 0) {
+            result = result << 7;
+            result |= temp & 0x7F;
+            temp = pduDataStream.read();
+            if (temp == -1) {
+                return temp;
+            }
+        }
+
+        result = result << 7;
+        result |= temp & 0x7F;
+
+        return result;
+    }
+
+    /**
+     * Parse value length.
+     *
+     * @param pduDataStream pdu data input stream
+     * @return the integer
+     */
+    public static int parseValueLength(ByteArrayInputStream pduDataStream) {
+        /**
+         * From wap-230-wsp-20010705-a.pdf
+         * Value-length = Short-length | (Length-quote Length)
+         * Short-length = <Any octet 0-30>
+         * Length-quote = <Octet 31>
+         * Length = Uintvar-integer
+         * Uintvar-integer = 1*5 OCTET
+         */
+        assert (null != pduDataStream);
+        int temp = pduDataStream.read();
+        assert (-1 != temp);
+        int first = temp & 0xFF;
+
+        if (first <= SHORT_LENGTH_MAX) {
+            return first;
+        } else if (first == LENGTH_QUOTE) {
+            return parseUnsignedInt(pduDataStream);
+        }
+
+        throw new RuntimeException("Value length > LENGTH_QUOTE!");
+    }
+
+    /**
+     * Check TOKEN data defined in RFC2616.
+     *
+     * @param ch checking data
+     * @return true when ch is TOKEN, false when ch is not TOKEN
+     */
+    public static boolean isTokenCharacter(int ch) {
+        /**
+         * Token      = 1*<any CHAR except CTLs or separators>
+         * separators = "("(40) | ")"(41) | "<"(60) | ">"(62) | "@"(64)
+         *            | ","(44) | ";"(59) | ":"(58) | "\"(92) | <">(34)
+         *            | "/"(47) | "["(91) | "]"(93) | "?"(63) | "="(61)
+         *            | "{"(123) | "}"(125) | SP(32) | HT(9)
+         * CHAR       = <any US-ASCII character (octets 0 - 127)>
+         * CTL        = <any US-ASCII control character
+         *            (octets 0 - 31) and DEL (127)>
+         * SP         = <US-ASCII SP, space (32)>
+         * HT         = <US-ASCII HT, horizontal-tab (9)>
+         */
+        if ((ch < 33) || (ch > 126)) {
+            return false;
+        }
+
+        switch (ch) {
+            case '"': /* '"' */
+            case '(': /* '(' */
+            case ')': /* ')' */
+            case ',': /* ',' */
+            case '/': /* '/' */
+            case ':': /* ':' */
+            case ';': /* ';' */
+            case '<': /* '<' */
+            case '=': /* '=' */
+            case '>': /* '>' */
+            case '?': /* '?' */
+            case '@': /* '@' */
+            case '[': /* '[' */
+            case '\\': /* '\' */
+            case ']': /* ']' */
+            case '{': /* '{' */
+            case '}': /* '}' */
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check TEXT data defined in RFC2616.
+     *
+     * @param ch checking data
+     * @return true when ch is TEXT, false when ch is not TEXT
+     */
+    public static boolean isText(int ch) {
+        /**
+         * TEXT = <any OCTET except CTLs,
+         *      but including LWS>
+         * CTL  = <any US-ASCII control character
+         *      (octets 0 - 31) and DEL (127)>
+         * LWS  = [CRLF] 1*( SP | HT )
+         * CRLF = CR LF
+         * CR   = <US-ASCII CR, carriage return (13)>
+         * LF   = <US-ASCII LF, linefeed (10)>
+         */
+        if (((ch >= 32) && (ch <= 126)) || ((ch >= 128) && (ch <= 255))) {
+            return true;
+        }
+
+        switch (ch) {
+            case '\t': /* '\t' */
+            case '\n': /* '\n' */
+            case '\r': /* '\r' */
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Read the characters of a string up to and including its End-of-string, dropping any
+     * that are not valid for the string type.
+     *
+     * The string is scanned once to size the result and then copied, so the only allocation
+     * is the returned array.
+     *
+     * @param pduDataStream pdu data input stream, positioned after any Quote
+     * @param stringType    TYPE_TEXT_STRING, TYPE_QUOTED_STRING or TYPE_TOKEN_STRING
+     * @return the string without End-of-string, or null if it is empty
+     */
+    public static byte[] getWapString(ByteArrayInputStream pduDataStream, int stringType) {
+        assert (null != pduDataStream);
+        pduDataStream.mark(0);
+        int count = 0;
+        int temp = pduDataStream.read();
+        assert (-1 != temp);
+        while ((-1 != temp) && ('\0' != temp)) {
+            if (isStringCharacter(temp, stringType)) {
+                count++;
+            }
+            temp = pduDataStream.read();
+            assert (-1 != temp);
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        pduDataStream.reset();
+        final byte[] result = new byte[count];
+        int index = 0;
+        temp = pduDataStream.read();
+        while ((-1 != temp) && ('\0' != temp)) {
+            if (isStringCharacter(temp, stringType)) {
+                result[index++] = (byte) temp;
+            }
+            temp = pduDataStream.read();
+        }
+        return result;
+    }
+
+    private static boolean isStringCharacter(int ch, int stringType) {
+        return (stringType == TYPE_TOKEN_STRING) ? isTokenCharacter(ch) : isText(ch);
+    }
+
+    /**
+     * Extract a byte value from the input stream.
+     *
+     * @param pduDataStream pdu data input stream
+     * @return the byte
+     */
+    public static int extractByteValue(ByteArrayInputStream pduDataStream) {
+        assert (null != pduDataStream);
+        int temp = pduDataStream.read();
+        assert (-1 != temp);
+        return temp & 0xFF;
+    }
+
+    /**
+     * Parse Short-Integer.
+     *
+     * @param pduDataStream pdu data input stream
+     * @return the byte
+     */
+    public static int parseShortInteger(ByteArrayInputStream pduDataStream) {
+        /**
+         * From wap-230-wsp-20010705-a.pdf
+         * Short-integer = OCTET
+         * Integers in range 0-127 shall be encoded as a one
+         * octet value with the most significant bit set to one (1xxx xxxx)
+         * and with the value in the remaining least significant bits.
+         */
+        assert (null != pduDataStream);
+        int temp = pduDataStream.read();
+        assert (-1 != temp);
+        return temp & 0x7F;
+    }
+
+    /**
+     * Parse Long-Integer.
+     *
+     * @param pduDataStream pdu data input stream
+     * @return long integer
+     */
+    public static long parseLongInteger(ByteArrayInputStream pduDataStream) {
+        /**
+         * From wap-230-wsp-20010705-a.pdf
+         * Long-integer = Short-length Multi-octet-integer
+         * The Short-length indicates the length of the Multi-octet-integer
+         * Multi-octet-integer = 1*30 OCTET
+         * The content octets shall be an unsigned integer value
+         * with the most significant octet encoded first (big-endian representation).
+         * The minimum number of octets must be used to encode the value.
+         * Short-length = <Any octet 0-30>
+         */
+        assert (null != pduDataStream);
+        int temp = pduDataStream.read();
+        assert (-1 != temp);
+        int count = temp & 0xFF;
+
+        if (count > LONG_INTEGER_LENGTH_MAX) {
+            throw new RuntimeException("Octet count greater than 8 and I can't represent that!");
+        }
+
+        long result = 0;
+
+        for (int i = 0; i < count; i++) {
+            temp = pduDataStream.read();
+            assert (-1 != temp);
+            result <<= 8;
+            result += (temp & 0xFF);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse Integer-Value.
+     *
+     * @param pduDataStream pdu data input stream
+     * @return long integer
+     */
+    public static long parseIntegerValue(ByteArrayInputStream pduDataStream) {
+        /**
+         * From wap-230-wsp-20010705-a.pdf
+         * Integer-Value = Short-integer | Long-integer
+         */
+        assert (null != pduDataStream);
+        pduDataStream.mark(1);
+        int temp = pduDataStream.read();
+        assert (-1 != temp);
+        pduDataStream.reset();
+        if (temp > SHORT_INTEGER_MAX) {
+            return parseShortInteger(pduDataStream);
+        } else {
+            return parseLongInteger(pduDataStream);
+        }
+    }
+
+    /**
+     * To skip length of the wap value.
+     *
+     * @param pduDataStream pdu data input stream
+     * @param length        area size
+     * @return the skipped length, or -1 if the stream ended first
+     */
+    public static int skipWapValue(ByteArrayInputStream pduDataStream, int length) {
+        assert (null != pduDataStream);
+        long skipped = pduDataStream.skip(length);
+        if (skipped < length) { //The actually skipped length is lower than the length
+            return -1;
+        } else {
+            return length;
+        }
+    }
+
+    /**
+     * Find the value of a top-level header whose value is a single octet (message type,
+     * status fields, yes/no fields and so on).
+     *
+     * @param pdu   the encoded PDU between the buffer's position and limit; the buffer's
+     *              position is not changed
+     * @param field the header field, e.g. 0x8C for X-Mms-Message-Type
+     * @return the octet value (0-255), or NOT_FOUND
+     */
+    public static int findOctetHeader(ByteBuffer pdu, int field) {
+        final int offset = findHeaderValue(pdu, field);
+        return (offset == NOT_FOUND) ? NOT_FOUND : (pdu.get(offset) & 0xFF);
+    }
+
+    /**
+     * Find a top-level header and return the absolute buffer index where its value starts.
+     * Nothing is allocated and the buffer's position is not changed.
+     *
+     * @param pdu   the encoded PDU between the buffer's position and limit
+     * @param field the header field
+     * @return the index of the first octet of the value, or NOT_FOUND
+     */
+    public static int findHeaderValue(ByteBuffer pdu, int field) {
+        final int limit = pdu.limit();
+        int index = pdu.position();
+        while (index < limit) {
+            final int headerField = pdu.get(index++) & 0xFF;
+            if (headerField >= TEXT_MIN && headerField <= TEXT_MAX) {
+                // Application-header = Token-text Application-specific-value
+                index = skipTextString(pdu, index - 1, limit);
+                if (index == NOT_FOUND) {
+                    return NOT_FOUND;
+                }
+                index = skipTextString(pdu, index, limit);
+            } else if (headerField < TEXT_MIN) {
+                // Not a header field; we have walked off the end of the headers
+                return NOT_FOUND;
+            } else {
+                if (headerField == field) {
+                    return (index < limit) ? index : NOT_FOUND;
+                }
+                if (headerField == CONTENT_TYPE) {
+                    // The body follows, there are no more headers
+                    return NOT_FOUND;
+                }
+                index = skipValue(pdu, index, limit);
+            }
+            if (index == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Skip over one self-delimiting WSP value starting at index.
+     *
+     * @return the index after the value, or NOT_FOUND if it runs past limit
+     */
+    private static int skipValue(ByteBuffer pdu, int index, int limit) {
+        if (index >= limit) {
+            return NOT_FOUND;
+        }
+        final int first = pdu.get(index) & 0xFF;
+        if (first <= SHORT_LENGTH_MAX) {
+            // Short-length followed by that many octets
+            return checkedIndex(index + 1 + first, limit);
+        } else if (first == LENGTH_QUOTE) {
+            // Length-quote Uintvar-integer followed by that many octets
+            index++;
+            long length = 0;
+            int octet;
+            int count = 0;
+            do {
+                if (index >= limit || ++count > 5) {
+                    return NOT_FOUND;
+                }
+                octet = pdu.get(index++) & 0xFF;
+                length = (length << 7) | (octet & 0x7F);
+            } while ((octet & 0x80) != 0);
+            return checkedIndex(index + length, limit);
+        } else if (first <= TEXT_MAX) {
+            // Text-string, Quoted-string or Token-text
+            return skipTextString(pdu, index, limit);
+        }
+        // Short-integer or well-known octet value
+        return index + 1;
+    }
+
+    private static int skipTextString(ByteBuffer pdu, int index, int limit) {
+        while (index < limit) {
+            if (pdu.get(index++) == END_STRING_FLAG) {
+                return index;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static int checkedIndex(long index, int limit) {
+        return (index <= limit) ? (int) index : NOT_FOUND;
+    }
+}
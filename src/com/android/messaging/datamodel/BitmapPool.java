@@ -28,11 +28,18 @@ import com.android.messaging.util.Assert;
 import com.android.messaging.util.LogUtil;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
 
 /**
  * Class for creating / loading / reusing bitmaps. This class allow the user to create a new bitmap,
  * reuse an bitmap from the pool and to return a bitmap for future reuse.  The pool of bitmaps
  * allows for faster decode and more efficient memory usage.
+ *
+ * Bitmaps are pooled by allocation size rather than by dimensions: since KitKat a bitmap can be
+ * reconfigured, or decoded into with inBitmap, for any size that needs no more bytes than it has.
+ * Allocation sizes are rounded up to size classes, so a request is served from its own class or
+ * the next one up and never gets a bitmap much larger than it needs.
  * Note: consumers should not create BitmapPool directly, but instead get the pool they want from
  * the BitmapPoolManager.
  */
@@ -41,6 +48,17 @@ public class BitmapPool implements MemoryCache {
 
     protected static final boolean VERBOSE = false;
 
+    // Default budget for the bytes held by the pool
+    private static final int DEFAULT_MAX_POOL_BYTES = 4 * 1024 * 1024;  // 4MB
+
+    // Size classes step by a quarter of a power of two, so a class wastes at most a fifth of its
+    // bytes. Everything up to the smallest class shares it.
+    private static final int SIZE_CLASSES_PER_DOUBLING = 4;
+    private static final int MIN_SIZE_CLASS_BYTES = 4 * 1024;
+
+    // Bitmaps are created as ARGB_8888
+    private static final int BYTES_PER_PIXEL = 4;
+
     /**
      * Number of reuse failures to skip before reporting.
      */
@@ -52,57 +70,95 @@ public class BitmapPool implements MemoryCache {
     private static volatile int sFailedBitmapReuseCount = 0;
 
     /**
-     * Overall pool data structure which currently only supports rectangular bitmaps. The size of
-     * one of the sides is used to index into the SparseArray.
+     * Overall pool data structure, mapping each size class to the bitmaps in it. Guarded by
+     * mPoolLock, as are all the fields below that track pool contents.
      */
-    private final SparseArray<SingleSizePool> mPool;
+    private final SparseArray<ArrayList<Bitmap>> mPool;
+    // Every pooled bitmap, least recently reclaimed first, for trimming to the byte budget
+    private final LinkedList<Bitmap> mBitmapsByAge = new LinkedList<Bitmap>();
+    private int mPooledBytes;
+    private int mHitCount;
+    private int mMissCount;
     private final Object mPoolLock = new Object();
     private final String mPoolName;
     private final int mMaxSize;
-
-    /**
-     * Inner structure which holds a pool of bitmaps all the same size (i.e. all have the same
-     * width as each other and height as each other, but not necessarily the same).
-     */
-    private class SingleSizePool {
-        int mNumItems;
-        final Bitmap[] mBitmaps;
-
-        SingleSizePool(final int maxPoolSize) {
-            mNumItems = 0;
-            mBitmaps = new Bitmap[maxPoolSize];
-        }
-    }
+    private final int mMaxBytes;
 
     /**
      * Creates a pool of reused bitmaps with helper decode methods which will attempt to use the
      * reclaimed bitmaps. This will help speed up the creation of bitmaps by using already allocated
      * bitmaps.
-     * @param maxSize The overall max size of the pool. When the pool exceeds this size, all calls
-     * to reclaimBitmap(Bitmap) will result in recycling the bitmap.
+     * @param maxSize The max number of bitmaps pooled per size class. When a size class is full,
+     * all calls to reclaimBitmap(Bitmap) for it will result in recycling the bitmap.
      * @param name Name of the bitmap pool and only used for logging. Can not be null.
      */
     BitmapPool(final int maxSize, @NonNull final String name) {
+        this(maxSize, DEFAULT_MAX_POOL_BYTES, name);
+    }
+
+    /**
+     * @param maxSize The max number of bitmaps pooled per size class.
+     * @param maxBytes The max total bytes of the pooled bitmaps. The least recently reclaimed
+     * bitmaps are recycled to stay within it.
+     * @param name Name of the bitmap pool and only used for logging. Can not be null.
+     */
+    BitmapPool(final int maxSize, final int maxBytes, @NonNull final String name) {
         Assert.isTrue(maxSize > 0);
+        Assert.isTrue(maxBytes > 0);
         Assert.isTrue(!TextUtils.isEmpty(name));
         mPoolName = name;
         mMaxSize = maxSize;
-        mPool = new SparseArray<SingleSizePool>();
+        mMaxBytes = maxBytes;
+        mPool = new SparseArray<ArrayList<Bitmap>>();
     }
 
     @Override
     public void reclaim() {
         synchronized (mPoolLock) {
-            for (int p = 0; p < mPool.size(); p++) {
-                final SingleSizePool singleSizePool = mPool.valueAt(p);
-                for (int i = 0; i < singleSizePool.mNumItems; i++) {
-                    singleSizePool.mBitmaps[i].recycle();
-                    singleSizePool.mBitmaps[i] = null;
-                }
-                singleSizePool.mNumItems = 0;
+            for (final Bitmap bitmap : mBitmapsByAge) {
+                bitmap.recycle();
             }
+            mBitmapsByAge.clear();
             mPool.clear();
+            mPooledBytes = 0;
+        }
+    }
+
+    @Override
+    public String getStats() {
+        synchronized (mPoolLock) {
+            final int requests = mHitCount + mMissCount;
+            return "BitmapPool(" + mPoolName + "): reuse hits=" + mHitCount + " misses="
+                    + mMissCount + " hit rate="
+                    + (requests == 0 ? 0 : mHitCount * 100 / requests) + "% pooled="
+                    + mPooledBytes + "/" + mMaxBytes + " bytes in " + mBitmapsByAge.size()
+                    + " bitmaps";
+        }
+    }
+
+    /**
+     * @return the size class for bitmaps allocating the given number of bytes. Classes step by a
+     * quarter of a power of two, so a bitmap from a class can hold anything needing less than
+     * the class below it.
+     */
+    public static int getSizeClass(final int byteCount) {
+        if (byteCount <= MIN_SIZE_CLASS_BYTES) {
+            return MIN_SIZE_CLASS_BYTES;
+        }
+        final int step = Integer.highestOneBit(byteCount - 1) / SIZE_CLASSES_PER_DOUBLING;
+        return (int) Math.min(Integer.MAX_VALUE, ((long) byteCount + step - 1) / step * step);
+    }
+
+    /**
+     * @return the number of bytes an ARGB_8888 bitmap of the given dimensions needs, or -1 if
+     * either dimension is greater than the max supported image dimension.
+     */
+    public static int getByteCount(final int width, final int height) {
+        if (width > MAX_SUPPORTED_IMAGE_DIMENSION || height > MAX_SUPPORTED_IMAGE_DIMENSION) {
+            return -1;
         }
+        final long byteCount = (long) width * height * BYTES_PER_PIXEL;
+        return byteCount > Integer.MAX_VALUE ? -1 : (int) byteCount;
     }
 
     /**
@@ -121,32 +177,46 @@ public class BitmapPool implements MemoryCache {
     }
 
     /**
-     * @return The pool key for the provided image dimensions or 0 if either width or height is
-     * greater than the max supported image dimension.
+     *
+     * @return A bitmap in the pool large enough for the specified dimensions or null if none is
+     * available. The bitmap keeps its own dimensions until reconfigured or decoded into.
      */
-    private int getPoolKey(final int width, final int height) {
-        if (width > MAX_SUPPORTED_IMAGE_DIMENSION || height > MAX_SUPPORTED_IMAGE_DIMENSION) {
-            return 0;
+    private Bitmap findPoolBitmap(final int width, final int height) {
+        final int byteCount = getByteCount(width, height);
+        synchronized (mPoolLock) {
+            Bitmap foundBitmap = null;
+            if (byteCount >= 0) {
+                // Take a bitmap from the pool if one is available, looking one class up so that
+                // a request just past a class boundary can still be served
+                final int sizeClass = getSizeClass(byteCount);
+                foundBitmap = takePoolBitmap(sizeClass, byteCount);
+                if (foundBitmap == null && sizeClass < Integer.MAX_VALUE) {
+                    foundBitmap = takePoolBitmap(getSizeClass(sizeClass + 1), byteCount);
+                }
+            }
+            if (foundBitmap != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+            return foundBitmap;
         }
-        return (width << 16) | height;
     }
 
     /**
-     *
-     * @return A bitmap in the pool with the specified dimensions or null if no bitmap with the
-     * specified dimension is available.
+     * Removes the most recently reclaimed bitmap of a size class that has at least the given
+     * number of bytes. Must hold mPoolLock.
      */
-    private Bitmap findPoolBitmap(final int width, final int height) {
-        final int poolKey = getPoolKey(width, height);
-        if (poolKey != 0) {
-            synchronized (mPoolLock) {
-                // Take a bitmap from the pool if one is available
-                final SingleSizePool singlePool = mPool.get(poolKey);
-                if (singlePool != null && singlePool.mNumItems > 0) {
-                    singlePool.mNumItems--;
-                    final Bitmap foundBitmap = singlePool.mBitmaps[singlePool.mNumItems];
-                    singlePool.mBitmaps[singlePool.mNumItems] = null;
-                    return foundBitmap;
+    private Bitmap takePoolBitmap(final int sizeClass, final int byteCount) {
+        final ArrayList<Bitmap> bitmaps = mPool.get(sizeClass);
+        if (bitmaps != null) {
+            for (int i = bitmaps.size() - 1; i >= 0; i--) {
+                final Bitmap bitmap = bitmaps.get(i);
+                if (bitmap.getAllocationByteCount() >= byteCount) {
+                    bitmaps.remove(i);
+                    mBitmapsByAge.remove(bitmap);
+                    mPooledBytes -= bitmap.getAllocationByteCount();
+                    return bitmap;
                 }
             }
         }
@@ -303,7 +373,9 @@ public class BitmapPool implements MemoryCache {
      */
     public Bitmap createOrReuseBitmap(final int width, final int height) {
         Bitmap b = findPoolBitmap(width, height);
-        if (b == null) {
+        if (b != null) {
+            b.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        } else {
             b = createBitmap(width, height);
         }
         return b;
@@ -326,23 +398,33 @@ public class BitmapPool implements MemoryCache {
      */
     public void reclaimBitmap(@NonNull final Bitmap b) {
         Assert.notNull(b);
-        final int poolKey = getPoolKey(b.getWidth(), b.getHeight());
-        if (poolKey == 0 || !b.isMutable()) {
-            // Unsupported image dimensions or a immutable bitmap.
+        if (getByteCount(b.getWidth(), b.getHeight()) < 0 || !b.isMutable()
+                || b.getAllocationByteCount() > mMaxBytes) {
+            // Unsupported image dimensions, a immutable bitmap or one larger than the pool.
             b.recycle();
             return;
         }
+        final int byteCount = b.getAllocationByteCount();
         synchronized (mPoolLock) {
-            SingleSizePool singleSizePool = mPool.get(poolKey);
-            if (singleSizePool == null) {
-                singleSizePool = new SingleSizePool(mMaxSize);
-                mPool.append(poolKey, singleSizePool);
+            final int sizeClass = getSizeClass(byteCount);
+            ArrayList<Bitmap> bitmaps = mPool.get(sizeClass);
+            if (bitmaps == null) {
+                bitmaps = new ArrayList<Bitmap>(mMaxSize);
+                mPool.put(sizeClass, bitmaps);
             }
-            if (singleSizePool.mNumItems < singleSizePool.mBitmaps.length) {
-                singleSizePool.mBitmaps[singleSizePool.mNumItems] = b;
-                singleSizePool.mNumItems++;
-            } else {
+            if (bitmaps.size() >= mMaxSize) {
                 b.recycle();
+                return;
+            }
+            bitmaps.add(b);
+            mBitmapsByAge.addLast(b);
+            mPooledBytes += byteCount;
+            while (mPooledBytes > mMaxBytes) {
+                final Bitmap eldest = mBitmapsByAge.removeFirst();
+                final int eldestByteCount = eldest.getAllocationByteCount();
+                mPool.get(getSizeClass(eldestByteCount)).remove(eldest);
+                mPooledBytes -= eldestByteCount;
+                eldest.recycle();
             }
         }
     }
@@ -351,14 +433,13 @@ public class BitmapPool implements MemoryCache {
      * @return whether the pool is full for a given width and height.
      */
     public boolean isFull(final int width, final int height) {
-        final int poolKey = getPoolKey(width, height);
-        synchronized (mPoolLock) {
-            final SingleSizePool singleSizePool = mPool.get(poolKey);
-            if (singleSizePool != null &&
-                    singleSizePool.mNumItems >= singleSizePool.mBitmaps.length) {
-                return true;
-            }
+        final int byteCount = getByteCount(width, height);
+        if (byteCount < 0) {
             return false;
         }
+        synchronized (mPoolLock) {
+            final ArrayList<Bitmap> bitmaps = mPool.get(getSizeClass(byteCount));
+            return bitmaps != null && bitmaps.size() >= mMaxSize;
+        }
     }
 }
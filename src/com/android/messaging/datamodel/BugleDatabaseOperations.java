@@ -38,6 +38,7 @@ import com.android.messaging.datamodel.data.ConversationListItemData;
 import com.android.messaging.datamodel.data.MessageData;
 import com.android.messaging.datamodel.data.MessagePartData;
 import com.android.messaging.datamodel.data.ParticipantData;
+import com.android.messaging.datamodel.media.MediaCacheManager;
 import com.android.messaging.sms.MmsUtils;
 import com.android.messaging.ui.UIIntents;
 import com.android.messaging.util.Assert;
@@ -55,6 +56,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 
@@ -475,12 +477,18 @@ public class BugleDatabaseOperations {
         try {
             // Delete existing messages
             if (cutoffTimestamp == Long.MAX_VALUE) {
+                removeImagesFromDiskCachesAfterTransaction(dbWrapper,
+                        MessageColumns.CONVERSATION_ID + "=?", new String[] { conversationId });
                 // Delete parts and messages
                 dbWrapper.delete(DatabaseHelper.MESSAGES_TABLE,
                         MessageColumns.CONVERSATION_ID + "=?", new String[] { conversationId });
                 conversationMessagesDeleted = true;
             } else {
                 // Delete all messages prior to the cutoff
+                removeImagesFromDiskCachesAfterTransaction(dbWrapper,
+                        MessageColumns.CONVERSATION_ID + "=? AND "
+                                + MessageColumns.RECEIVED_TIMESTAMP + "<=?",
+                                new String[] { conversationId, Long.toString(cutoffTimestamp) });
                 dbWrapper.delete(DatabaseHelper.MESSAGES_TABLE,
                         MessageColumns.CONVERSATION_ID + "=? AND "
                                 + MessageColumns.RECEIVED_TIMESTAMP + "<=?",
@@ -517,6 +525,7 @@ public class BugleDatabaseOperations {
             }
 
             if (conversationMessagesDeleted) {
+                removeConversationIconFromDiskCachesAfterTransaction(dbWrapper, conversationId);
                 // Delete conversation row
                 final int count = dbWrapper.delete(DatabaseHelper.CONVERSATIONS_TABLE,
                         ConversationColumns._ID + "=?", new String[] { conversationId });
@@ -554,6 +563,26 @@ public class BugleDatabaseOperations {
         return 0;
     }
 
+    private static String getConversationIcon(final DatabaseWrapper dbWrapper,
+            final String conversationId) {
+        final Cursor cursor = dbWrapper.query(
+                DatabaseHelper.CONVERSATIONS_TABLE,
+                new String[]{ ConversationColumns.ICON },
+                ConversationColumns._ID + "=?",
+                new String[]{ conversationId },
+                null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    return cursor.getString(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+
     @DoesNotRunOnMainThread
     public static void updateConversationMetadataInTransaction(final DatabaseWrapper dbWrapper,
             final String conversationId, final String messageId, final long latestTimestamp,
@@ -1178,6 +1207,85 @@ public class BugleDatabaseOperations {
         }
     }
 
+    // Rows of the smaller multi-row inserts that take what is left after the full size ones.
+    // Anything less is inserted a row at a time, so each table needs only three cached
+    // statements whatever the batch size.
+    @VisibleForTesting
+    static final int SMALL_INSERT_ROWS = 8;
+
+    /**
+     * @param remainingRows rows still to insert
+     * @param maxRowsPerInsert rows that fit in one statement under the bind argument limit
+     * @return the number of rows the next multi-row insert should take
+     */
+    @VisibleForTesting
+    static int getInsertRowCount(final int remainingRows, final int maxRowsPerInsert) {
+        if (remainingRows >= maxRowsPerInsert) {
+            return maxRowsPerInsert;
+        } else if (remainingRows >= SMALL_INSERT_ROWS) {
+            return SMALL_INSERT_ROWS;
+        }
+        return 1;
+    }
+
+    /**
+     * Insert messages and their parts into the tables with multi-row statements. Messages keep
+     * the order of the list. Does not touch conversation metadata, callers refresh the affected
+     * conversations once the whole batch is in. If a statement fails with a constraint violation
+     * the messages of that and later statements are left without message id.
+     */
+    @DoesNotRunOnMainThread
+    public static void insertNewMessagesInTransaction(final DatabaseWrapper dbWrapper,
+            final List<MessageData> messages) {
+        Assert.isNotMainThread();
+        Assert.isTrue(dbWrapper.getDatabase().inTransaction());
+
+        final ArrayList<MessagePartData> parts = new ArrayList<MessagePartData>();
+        final ArrayList<String> partConversationIds = new ArrayList<String>();
+        final int messagesPerInsert = DatabaseWrapper.MAX_BIND_ARGS
+                / MessageData.INSERT_COLUMN_COUNT;
+        int count;
+        for (int start = 0; start < messages.size(); start += count) {
+            count = getInsertRowCount(messages.size() - start, messagesPerInsert);
+            final SQLiteStatement insert =
+                    dbWrapper.getStatementInTransaction(MessageData.getBulkInsertSql(count));
+            for (int i = 0; i < count; i++) {
+                messages.get(start + i).bindInsertRow(insert, i);
+            }
+            // Rows of one statement get consecutive ids as the tables use AUTOINCREMENT and
+            // nothing else writes inside the transaction
+            final long lastRowNumber = insert.executeInsert();
+            Assert.inRange(lastRowNumber, count, Long.MAX_VALUE);
+            for (int i = 0; i < count; i++) {
+                final MessageData message = messages.get(start + i);
+                final String messageId = Long.toString(lastRowNumber - count + 1 + i);
+                message.updateMessageId(messageId);
+                for (final MessagePartData messagePart : message.getParts()) {
+                    messagePart.updateMessageId(messageId);
+                    parts.add(messagePart);
+                    partConversationIds.add(message.getConversationId());
+                }
+            }
+        }
+
+        final int partsPerInsert = DatabaseWrapper.MAX_BIND_ARGS
+                / MessagePartData.INSERT_COLUMN_COUNT;
+        for (int start = 0; start < parts.size(); start += count) {
+            count = getInsertRowCount(parts.size() - start, partsPerInsert);
+            final SQLiteStatement insert =
+                    dbWrapper.getStatementInTransaction(MessagePartData.getBulkInsertSql(count));
+            for (int i = 0; i < count; i++) {
+                parts.get(start + i).bindInsertRow(insert, i,
+                        partConversationIds.get(start + i));
+            }
+            final long lastRowNumber = insert.executeInsert();
+            Assert.inRange(lastRowNumber, count, Long.MAX_VALUE);
+            for (int i = 0; i < count; i++) {
+                parts.get(start + i).updatePartId(Long.toString(lastRowNumber - count + 1 + i));
+            }
+        }
+    }
+
     /**
      * Update a message and add its parts into the table
      */
@@ -1249,13 +1357,16 @@ public class BugleDatabaseOperations {
             int count = 0;
             if (message != null) {
                 final String conversationId = message.getConversationId();
+                removeImagesFromDiskCachesAfterTransaction(dbWrapper,
+                        MessageColumns._ID + "=?", new String[] { messageId });
                 // Delete message
                 count = dbWrapper.delete(DatabaseHelper.MESSAGES_TABLE,
                         MessageColumns._ID + "=?", new String[] { messageId });
 
                 if (!deleteConversationIfEmptyInTransaction(dbWrapper, conversationId)) {
                     // TODO: Should we leave the conversation sort timestamp alone?
-                    refreshConversationMetadataInTransaction(dbWrapper, conversationId,
+                    refreshConversationMetadataOnCommit(dbWrapper, conversationId,
+                            false /*onlyIfLatestMessageChanged*/,
                             false/* shouldAutoSwitchSelfId */, false/*archived*/);
                 }
             }
@@ -1266,6 +1377,75 @@ public class BugleDatabaseOperations {
         }
     }
 
+    /**
+     * Sources to remove from the media disk caches once the outermost transaction ends, gathered
+     * from every message and conversation deleted in it
+     */
+    private static class DeferredDiskCacheRemoval implements Runnable {
+        static final String KEY = "remove_from_media_disk_caches";
+
+        final HashSet<String> mSources = new HashSet<String>();
+
+        @Override
+        public void run() {
+            final MediaCacheManager mediaCacheManager = MediaCacheManager.get();
+            if (mediaCacheManager != null) {
+                mediaCacheManager.removeSourcesFromDiskCaches(mSources);
+            }
+        }
+    }
+
+    private static DeferredDiskCacheRemoval getDeferredDiskCacheRemoval() {
+        DeferredDiskCacheRemoval removal = (DeferredDiskCacheRemoval)
+                DatabaseWrapper.getAfterTransactionTask(DeferredDiskCacheRemoval.KEY);
+        if (removal == null) {
+            removal = new DeferredDiskCacheRemoval();
+            DatabaseWrapper.putAfterTransactionTask(DeferredDiskCacheRemoval.KEY, removal);
+        }
+        return removal;
+    }
+
+    /**
+     * Queue the images of the parts of the messages about to be deleted for removal from the
+     * media disk caches, so that their thumbnails don't outlive them. They are removed even if
+     * the transaction fails, which just costs a reload.
+     * @param messageSelection selects the messages in the messages table
+     */
+    private static void removeImagesFromDiskCachesAfterTransaction(
+            final DatabaseWrapper dbWrapper, final String messageSelection,
+            final String[] selectionArgs) {
+        Assert.isTrue(dbWrapper.getDatabase().inTransaction());
+        final DeferredDiskCacheRemoval removal = getDeferredDiskCacheRemoval();
+        Cursor cursor = null;
+        try {
+            cursor = dbWrapper.query(DatabaseHelper.PARTS_TABLE,
+                    new String[] { PartColumns.CONTENT_URI },
+                    PartColumns.CONTENT_URI + " IS NOT NULL AND " + PartColumns.MESSAGE_ID
+                            + " IN (SELECT " + MessageColumns._ID + " FROM "
+                            + DatabaseHelper.MESSAGES_TABLE + " WHERE " + messageSelection + ")",
+                    selectionArgs, null, null, null);
+            while (cursor.moveToNext()) {
+                removal.mSources.add(cursor.getString(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Queue the icon of a conversation about to be deleted for removal from the media disk
+     * caches
+     */
+    private static void removeConversationIconFromDiskCachesAfterTransaction(
+            final DatabaseWrapper dbWrapper, final String conversationId) {
+        final String icon = getConversationIcon(dbWrapper, conversationId);
+        if (!TextUtils.isEmpty(icon)) {
+            getDeferredDiskCacheRemoval().mSources.add(icon);
+        }
+    }
+
     /**
      * Deletes the conversation if there are zero non-draft messages left.
      * <p>
@@ -1352,6 +1532,87 @@ public class BugleDatabaseOperations {
         }
     }
 
+    // Refreshes of conversation metadata requested and actually run at transaction commit
+    private static final AtomicLong sDeferredRefreshesRequested = new AtomicLong();
+    private static final AtomicLong sDeferredRefreshesRun = new AtomicLong();
+
+    /**
+     * Conversation metadata refresh deferred to the commit of the current transaction. Requests
+     * for the same conversation are merged into one refresh.
+     */
+    private static class DeferredConversationRefresh implements Runnable {
+        private final DatabaseWrapper mDbWrapper;
+        private final String mConversationId;
+        private boolean mOnlyIfLatestMessageChanged;
+        private boolean mShouldAutoSwitchSelfId;
+        private boolean mKeepArchived;
+
+        DeferredConversationRefresh(final DatabaseWrapper dbWrapper,
+                final String conversationId, final boolean onlyIfLatestMessageChanged,
+                final boolean shouldAutoSwitchSelfId, final boolean keepArchived) {
+            mDbWrapper = dbWrapper;
+            mConversationId = conversationId;
+            mOnlyIfLatestMessageChanged = onlyIfLatestMessageChanged;
+            mShouldAutoSwitchSelfId = shouldAutoSwitchSelfId;
+            mKeepArchived = keepArchived;
+        }
+
+        void merge(final boolean onlyIfLatestMessageChanged,
+                final boolean shouldAutoSwitchSelfId, final boolean keepArchived) {
+            // The most thorough of the requested refreshes wins
+            mOnlyIfLatestMessageChanged &= onlyIfLatestMessageChanged;
+            mShouldAutoSwitchSelfId |= shouldAutoSwitchSelfId;
+            mKeepArchived &= keepArchived;
+        }
+
+        @Override
+        public void run() {
+            sDeferredRefreshesRun.incrementAndGet();
+            if (mOnlyIfLatestMessageChanged) {
+                maybeRefreshConversationMetadataInTransaction(mDbWrapper, mConversationId,
+                        mShouldAutoSwitchSelfId, mKeepArchived);
+            } else {
+                refreshConversationMetadataInTransaction(mDbWrapper, mConversationId,
+                        mShouldAutoSwitchSelfId, mKeepArchived);
+            }
+        }
+    }
+
+    /**
+     * Mark conversation metadata (snippet, timestamp and optionally self id) as needing a
+     * refresh. The refresh runs once per conversation just before the outermost transaction is
+     * marked successful, however many messages of the conversation change before then.
+     * @param onlyIfLatestMessageChanged only refresh if the latest message of the conversation
+     *        is not the one its metadata is based on
+     */
+    @DoesNotRunOnMainThread
+    public static void refreshConversationMetadataOnCommit(final DatabaseWrapper dbWrapper,
+            final String conversationId, final boolean onlyIfLatestMessageChanged,
+            final boolean shouldAutoSwitchSelfId, final boolean keepArchived) {
+        Assert.isNotMainThread();
+        Assert.isTrue(dbWrapper.getDatabase().inTransaction());
+        sDeferredRefreshesRequested.incrementAndGet();
+        final String key = "refresh_conversation_metadata:" + conversationId;
+        final DeferredConversationRefresh refresh =
+                (DeferredConversationRefresh) dbWrapper.getBeforeCommitTask(key);
+        if (refresh != null) {
+            refresh.merge(onlyIfLatestMessageChanged, shouldAutoSwitchSelfId, keepArchived);
+        } else {
+            dbWrapper.putBeforeCommitTask(key, new DeferredConversationRefresh(dbWrapper,
+                    conversationId, onlyIfLatestMessageChanged, shouldAutoSwitchSelfId,
+                    keepArchived));
+        }
+    }
+
+    /**
+     * @return counts of deferred conversation metadata refreshes requested, run and saved
+     */
+    public static String getDeferredRefreshStats() {
+        final long requested = sDeferredRefreshesRequested.get();
+        final long run = sDeferredRefreshesRun.get();
+        return "requested " + requested + ", run " + run + ", saved " + (requested - run);
+    }
+
     /**
      * When moving/removing an existing message update conversation metadata if necessary
      * @param dbWrapper      db wrapper
@@ -1410,7 +1671,6 @@ public class BugleDatabaseOperations {
             final DatabaseWrapper db, final String conversationId) {
         Assert.isNotMainThread();
         final SQLiteStatement query = db.getStatementInTransaction(
-                DatabaseWrapper.INDEX_QUERY_CONVERSATIONS_LATEST_MESSAGE,
                 QUERY_CONVERSATIONS_LATEST_MESSAGE_SQL);
         query.clearBindings();
         query.bindString(1, conversationId);
@@ -1432,7 +1692,6 @@ public class BugleDatabaseOperations {
             final DatabaseWrapper db, final String conversationId) {
         Assert.isNotMainThread();
         final SQLiteStatement query = db.getStatementInTransaction(
-                DatabaseWrapper.INDEX_QUERY_MESSAGES_LATEST_MESSAGE,
                 QUERY_MESSAGES_LATEST_MESSAGE_SQL);
         query.clearBindings();
         query.bindString(1, conversationId);
@@ -1636,12 +1895,35 @@ public class BugleDatabaseOperations {
         Assert.notNull(participantId);
 
         // Add the participant to the conversation participants table
-        final ContentValues values = new ContentValues();
-        values.put(ConversationParticipantsColumns.CONVERSATION_ID, conversationId);
-        values.put(ConversationParticipantsColumns.PARTICIPANT_ID, participantId);
-        dbWrapper.insert(DatabaseHelper.CONVERSATION_PARTICIPANTS_TABLE, null, values);
+        dbWrapper.executeInsertInTransaction(INSERT_CONVERSATION_PARTICIPANT_SQL,
+                new Object[] { conversationId, participantId });
     }
 
+    private static final String INSERT_CONVERSATION_PARTICIPANT_SQL = "INSERT INTO "
+            + DatabaseHelper.CONVERSATION_PARTICIPANTS_TABLE + " ("
+            + ConversationParticipantsColumns.CONVERSATION_ID + ","
+            + ConversationParticipantsColumns.PARTICIPANT_ID + ") VALUES (?,?)";
+
+    private static final String SELF_PARTICIPANT_SELECTION = " FROM "
+            + DatabaseHelper.PARTICIPANTS_TABLE + " WHERE " + ParticipantColumns.SUB_ID + "=?";
+
+    private static final String PARTICIPANT_SELECTION = " FROM "
+            + DatabaseHelper.PARTICIPANTS_TABLE + " WHERE "
+            + ParticipantColumns.NORMALIZED_DESTINATION + "=? AND "
+            + ParticipantColumns.SUB_ID + "=?";
+
+    private static final String QUERY_SELF_PARTICIPANT_ID_SQL = "SELECT "
+            + ParticipantColumns._ID + SELF_PARTICIPANT_SELECTION;
+
+    private static final String QUERY_SELF_PARTICIPANT_COUNT_SQL = "SELECT COUNT(*)"
+            + SELF_PARTICIPANT_SELECTION;
+
+    private static final String QUERY_PARTICIPANT_ID_SQL = "SELECT "
+            + ParticipantColumns._ID + PARTICIPANT_SELECTION;
+
+    private static final String QUERY_PARTICIPANT_COUNT_SQL = "SELECT COUNT(*)"
+            + PARTICIPANT_SELECTION;
+
     /**
      * Get string used as canonical recipient for participant cache for sub id
      */
@@ -1649,6 +1931,24 @@ public class BugleDatabaseOperations {
         return "SELF(" + subId + ")";
     }
 
+    /**
+     * Get a participant lookup statement bound to the sub id, and to the phone number when
+     * looking up a participant other than self
+     */
+    private static SQLiteStatement getParticipantQuery(final DatabaseWrapper dbWrapper,
+            final String sql, final int subId, final String canonicalRecipient) {
+        final SQLiteStatement query = dbWrapper.getStatementInTransaction(sql);
+        if (subId != ParticipantData.OTHER_THAN_SELF_SUB_ID) {
+            // Now look for an existing participant in the db with this sub id.
+            query.bindLong(1, subId);
+        } else {
+            // Look for existing participant with this normalized phone number and no subId.
+            query.bindString(1, canonicalRecipient);
+            query.bindLong(2, subId);
+        }
+        return query;
+    }
+
     /**
      * Maps from a sub id or phone number to a participant id if there is one.
      *
@@ -1668,42 +1968,29 @@ public class BugleDatabaseOperations {
             return participantId;
         }
 
-        // This code will only be executed for incremental additions.
-        Cursor cursor = null;
+        // This code will only be executed for incremental additions. Called in transaction
+        // so the lookup can use a cached statement.
+        final boolean self = subId != ParticipantData.OTHER_THAN_SELF_SUB_ID;
+        final SQLiteStatement query = getParticipantQuery(dbWrapper, self ?
+                QUERY_SELF_PARTICIPANT_ID_SQL : QUERY_PARTICIPANT_ID_SQL, subId,
+                canonicalRecipient);
         try {
-            if (subId != ParticipantData.OTHER_THAN_SELF_SUB_ID) {
-                // Now look for an existing participant in the db with this sub id.
-                cursor = dbWrapper.query(DatabaseHelper.PARTICIPANTS_TABLE,
-                        new String[] {ParticipantColumns._ID},
-                        ParticipantColumns.SUB_ID + "=?",
-                        new String[] { Integer.toString(subId) }, null, null, null);
-            } else {
-                // Look for existing participant with this normalized phone number and no subId.
-                cursor = dbWrapper.query(DatabaseHelper.PARTICIPANTS_TABLE,
-                        new String[] {ParticipantColumns._ID},
-                        ParticipantColumns.NORMALIZED_DESTINATION + "=? AND "
-                                + ParticipantColumns.SUB_ID + "=?",
-                                new String[] {canonicalRecipient, Integer.toString(subId)},
-                                null, null, null);
-            }
-
-            if (cursor.moveToFirst()) {
-                // TODO Is this assert correct for multi-sim where a new sim was put in?
-                Assert.isTrue(cursor.getCount() == 1);
-
-                // We found an existing participant in the database
-                participantId = cursor.getString(0);
+            // We found an existing participant in the database
+            participantId = query.simpleQueryForString();
+        } catch (final SQLiteDoneException e) {
+            // No such participant yet
+            return null;
+        }
+        // simpleQueryForString takes the first row, so check there is no other. Only cache
+        // misses get here, which makes the extra count cheap.
+        // TODO Is this assert correct for multi-sim where a new sim was put in?
+        Assert.isTrue(getParticipantQuery(dbWrapper, self ? QUERY_SELF_PARTICIPANT_COUNT_SQL
+                : QUERY_PARTICIPANT_COUNT_SQL, subId, canonicalRecipient)
+                        .simpleQueryForLong() == 1);
 
-                synchronized (sNormalizedPhoneNumberToParticipantIdCache) {
-                    // Add it to the cache for next time
-                    sNormalizedPhoneNumberToParticipantIdCache.put(canonicalRecipient,
-                            participantId);
-                }
-            }
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+        synchronized (sNormalizedPhoneNumberToParticipantIdCache) {
+            // Add it to the cache for next time
+            sNormalizedPhoneNumberToParticipantIdCache.put(canonicalRecipient, participantId);
         }
         return participantId;
     }
@@ -1893,27 +2180,46 @@ public class BugleDatabaseOperations {
     public static boolean updateRowIfExists(final DatabaseWrapper db, final String table,
             final String rowKey, final String rowId, final ContentValues values) {
         Assert.isNotMainThread();
+        final StringBuilder set = new StringBuilder();
         final StringBuilder sb = new StringBuilder();
         final ArrayList<String> whereValues = new ArrayList<String>(values.size() + 1);
         whereValues.add(rowId);
+        final ArrayList<Object> bindArgs = new ArrayList<Object>(values.size() * 2 + 1);
+        final ArrayList<Object> whereArgs = new ArrayList<Object>(values.size());
 
         for (final String key : values.keySet()) {
             if (sb.length() > 0) {
+                set.append(",");
                 sb.append(" OR ");
             }
             final Object value = values.get(key);
+            set.append(key).append("=?");
+            bindArgs.add(value);
             sb.append(key);
             if (value != null) {
                 sb.append(" IS NOT ?");
                 whereValues.add(value.toString());
+                whereArgs.add(value);
             } else {
                 sb.append(" IS NOT NULL");
             }
         }
 
         final String whereClause = rowKey + "=?" + " AND (" + sb.toString() + ")";
-        final String [] whereValuesArray = whereValues.toArray(new String[whereValues.size()]);
-        final int count = db.update(table, values, whereClause, whereValuesArray);
+        final int count;
+        if (db.getDatabase().inTransaction()) {
+            // Rows are mostly updated with the same few sets of columns, so the statement for
+            // each set is compiled once and reused
+            bindArgs.add(rowId);
+            bindArgs.addAll(whereArgs);
+            count = db.executeUpdateDeleteInTransaction(
+                    "UPDATE " + table + " SET " + set + " WHERE " + whereClause,
+                    bindArgs.toArray());
+        } else {
+            final String [] whereValuesArray =
+                    whereValues.toArray(new String[whereValues.size()]);
+            count = db.update(table, values, whereClause, whereValuesArray);
+        }
         if (count > 1) {
             LogUtil.w(LogUtil.BUGLE_TAG, "Updated more than 1 row " + count + "; " + table +
                     " for " + rowKey + " = " + rowId + " (deleted?)");
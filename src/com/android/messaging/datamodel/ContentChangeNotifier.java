@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import com.android.messaging.Factory;
+import com.android.messaging.util.ThreadUtil;
+import com.android.messaging.widget.BugleWidgetProvider;
+import com.android.messaging.widget.WidgetConversationProvider;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches content change notifications so that each distinct one is sent once. Changes made
+ * inside a database transaction are sent when the outermost transaction ends, so a sync batch
+ * reloads the conversation list once instead of once per message. Changes made outside a
+ * transaction are held for a short window to coalesce bursts.
+ */
+final class ContentChangeNotifier {
+    private static final String TRANSACTION_TASK_KEY = "content_change_notifications";
+
+    // How long notifications made outside a transaction are held for
+    private static final long NOTIFY_WINDOW_MILLIS = 50;
+
+    /**
+     * Where notifications are sent once coalesced
+     */
+    interface Sink {
+        void notifyChange(Uri uri);
+        void notifyConversationListWidget();
+        /**
+         * @param conversationId the conversation or null for all conversations
+         */
+        void notifyConversationWidget(String conversationId);
+    }
+
+    private static final Sink DEFAULT_SINK = new Sink() {
+        @Override
+        public void notifyChange(final Uri uri) {
+            final ContentResolver cr = Factory.get().getApplicationContext().getContentResolver();
+            cr.notifyChange(uri, null);
+        }
+
+        @Override
+        public void notifyConversationListWidget() {
+            BugleWidgetProvider.notifyConversationListChanged(
+                    Factory.get().getApplicationContext());
+        }
+
+        @Override
+        public void notifyConversationWidget(final String conversationId) {
+            WidgetConversationProvider.notifyMessagesChanged(
+                    Factory.get().getApplicationContext(), conversationId);
+        }
+    };
+
+    private static volatile Sink sSink = DEFAULT_SINK;
+
+    /**
+     * Notifications waiting to be sent
+     */
+    private static class PendingNotifications implements Runnable {
+        private final LinkedHashSet<Uri> mUris = new LinkedHashSet<Uri>();
+        private boolean mConversationListWidget;
+        private boolean mAllConversationWidgets;
+        private final HashSet<String> mConversationWidgets = new HashSet<String>();
+
+        private void addConversationWidget(final String conversationId) {
+            if (conversationId == null) {
+                mAllConversationWidgets = true;
+            } else {
+                mConversationWidgets.add(conversationId);
+            }
+        }
+
+        @Override
+        public void run() {
+            final Sink sink = sSink;
+            for (final Uri uri : mUris) {
+                if (!isCoveredByAncestor(uri)) {
+                    sink.notifyChange(uri);
+                    sSent.incrementAndGet();
+                }
+            }
+            if (mConversationListWidget) {
+                sink.notifyConversationListWidget();
+            }
+            if (mAllConversationWidgets) {
+                sink.notifyConversationWidget(null /*conversationId*/);
+            } else {
+                for (final String conversationId : mConversationWidgets) {
+                    sink.notifyConversationWidget(conversationId);
+                }
+            }
+        }
+
+        /**
+         * Observers of a uri are also told about changes to its ancestors, so a uri whose
+         * ancestor is pending doesn't need a notification of its own
+         */
+        private boolean isCoveredByAncestor(final Uri uri) {
+            final List<String> segments = uri.getPathSegments();
+            for (final Uri other : mUris) {
+                final List<String> otherSegments = other.getPathSegments();
+                if (otherSegments.size() < segments.size()
+                        && other.getAuthority().equals(uri.getAuthority())
+                        && otherSegments.equals(segments.subList(0, otherSegments.size()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final Object sLock = new Object();
+    // Notifications made outside a transaction, guarded by sLock
+    private static PendingNotifications sWindowPending;
+    private static final AtomicLong sRequested = new AtomicLong();
+    private static final AtomicLong sSent = new AtomicLong();
+
+    private static final Runnable sFlushWindow = new Runnable() {
+        @Override
+        public void run() {
+            final PendingNotifications pending;
+            synchronized (sLock) {
+                pending = sWindowPending;
+                sWindowPending = null;
+            }
+            if (pending != null) {
+                pending.run();
+            }
+        }
+    };
+
+    private ContentChangeNotifier() {
+    }
+
+    /**
+     * Notify observers of the uri (and its descendants) that its content changed
+     */
+    static void notifyChange(final Uri uri) {
+        sRequested.incrementAndGet();
+        final PendingNotifications inTransaction = getTransactionPending();
+        if (inTransaction != null) {
+            inTransaction.mUris.add(uri);
+            return;
+        }
+        synchronized (sLock) {
+            getWindowPending().mUris.add(uri);
+        }
+    }
+
+    /**
+     * Tell the conversation list widgets to update
+     */
+    static void notifyConversationListWidget() {
+        final PendingNotifications inTransaction = getTransactionPending();
+        if (inTransaction != null) {
+            inTransaction.mConversationListWidget = true;
+            return;
+        }
+        synchronized (sLock) {
+            getWindowPending().mConversationListWidget = true;
+        }
+    }
+
+    /**
+     * Tell the widgets of a conversation to update
+     * @param conversationId the conversation or null for all conversations
+     */
+    static void notifyConversationWidget(final String conversationId) {
+        final PendingNotifications inTransaction = getTransactionPending();
+        if (inTransaction != null) {
+            inTransaction.addConversationWidget(conversationId);
+            return;
+        }
+        synchronized (sLock) {
+            getWindowPending().addConversationWidget(conversationId);
+        }
+    }
+
+    /**
+     * Redirects notifications, or restores the default with null
+     */
+    @VisibleForTesting
+    static void setSinkForTesting(final Sink sink) {
+        sSink = sink == null ? DEFAULT_SINK : sink;
+    }
+
+    /**
+     * @return a summary of requested versus sent uri notifications, for dumpsys
+     */
+    static String getStats() {
+        return "requested=" + sRequested.get() + " sent=" + sSent.get();
+    }
+
+    /**
+     * @return the notifications deferred to the end of this thread's transaction or null if the
+     *     thread isn't in one
+     */
+    private static PendingNotifications getTransactionPending() {
+        PendingNotifications pending = (PendingNotifications)
+                DatabaseWrapper.getAfterTransactionTask(TRANSACTION_TASK_KEY);
+        if (pending == null) {
+            pending = new PendingNotifications();
+            if (!DatabaseWrapper.putAfterTransactionTask(TRANSACTION_TASK_KEY, pending)) {
+                return null;
+            }
+        }
+        return pending;
+    }
+
+    private static PendingNotifications getWindowPending() {
+        if (sWindowPending == null) {
+            sWindowPending = new PendingNotifications();
+            ThreadUtil.getMainThreadHandler().postDelayed(sFlushWindow, NOTIFY_WINDOW_MILLIS);
+        }
+        return sWindowPending;
+    }
+}
@@ -63,6 +63,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String PARTS_TABLE = "parts";
     public static final String PARTICIPANTS_TABLE = "participants";
     public static final String CONVERSATION_PARTICIPANTS_TABLE = "conversation_participants";
+    public static final String THREAD_FINGERPRINTS_TABLE = "thread_fingerprints";
 
     // Views
     static final String DRAFT_PARTS_VIEW = "draft_parts_view";
@@ -505,6 +506,30 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + " ON " +  CONVERSATION_PARTICIPANTS_TABLE
                     + "(" + ConversationParticipantsColumns.CONVERSATION_ID + ")";
 
+    // Thread fingerprints table schema - a summary of the telephony messages of each thread as
+    // of the last sync, used to find the threads that changed since
+    public static class ThreadFingerprintColumns {
+        /* telephony thread id */
+        public static final String THREAD_ID = "thread_id";
+
+        /* number of sms and mms messages in the thread */
+        public static final String MESSAGE_COUNT = "message_count";
+
+        /* largest sms or mms id in the thread */
+        public static final String MAX_MESSAGE_ID = "max_message_id";
+
+        /* order independent hash over the ids and dates of the messages in the thread */
+        public static final String HASH = "hash";
+    }
+
+    // Thread fingerprints table SQL
+    static final String CREATE_THREAD_FINGERPRINTS_TABLE_SQL =
+            "CREATE TABLE " + THREAD_FINGERPRINTS_TABLE + "("
+                    + ThreadFingerprintColumns.THREAD_ID + " INTEGER PRIMARY KEY,"
+                    + ThreadFingerprintColumns.MESSAGE_COUNT + " INT,"
+                    + ThreadFingerprintColumns.MAX_MESSAGE_ID + " INT,"
+                    + ThreadFingerprintColumns.HASH + " INT);";
+
     // View for getting parts which are for draft messages.
     static final String DRAFT_PARTS_VIEW_SQL = "CREATE VIEW " +
             DRAFT_PARTS_VIEW + " AS SELECT "
@@ -538,6 +563,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         CREATE_PARTS_TABLE_SQL,
         CREATE_PARTICIPANTS_TABLE_SQL,
         CREATE_CONVERSATION_PARTICIPANTS_TABLE_SQL,
+        CREATE_THREAD_FINGERPRINTS_TABLE_SQL,
     };
 
     // List of all our indices
@@ -596,6 +622,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private DatabaseHelper(final Context context) {
         super(context, DATABASE_NAME, null, getDatabaseVersion(context), null);
         mApplicationContext = context;
+        // With write-ahead logging, queries made outside a transaction (cursor loaders going
+        // through MessagingContentProvider) run on the framework's pool of read-only
+        // connections and aren't blocked by sync writing on the primary connection.
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
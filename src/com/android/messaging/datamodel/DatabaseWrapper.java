@@ -24,7 +24,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
-import android.util.SparseArray;
+import android.util.LruCache;
 
 import com.android.messaging.Factory;
 import com.android.messaging.R;
@@ -34,7 +34,11 @@ import com.android.messaging.util.DebugUtils;
 import com.android.messaging.util.LogUtil;
 import com.android.messaging.util.UiUtils;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Stack;
 import java.util.regex.Pattern;
 
@@ -51,17 +55,25 @@ public class DatabaseWrapper {
     // See
     private final String mExplainQueryPlanRegexp;
     private static final int sTimingThreshold = 50;        // in milliseconds
+    // Most arguments SQLite binds in one statement (SQLITE_MAX_VARIABLE_NUMBER)
+    public static final int MAX_BIND_ARGS = 999;
 
-    public static final int INDEX_INSERT_MESSAGE_PART = 0;
-    public static final int INDEX_INSERT_MESSAGE = 1;
-    public static final int INDEX_QUERY_CONVERSATIONS_LATEST_MESSAGE = 2;
-    public static final int INDEX_QUERY_MESSAGES_LATEST_MESSAGE = 3;
+    // Number of compiled statements kept, enough for all the fixed statements of the write
+    // paths plus the update statements of the common ContentValues shapes
+    private static final int STATEMENT_CACHE_SIZE = 48;
 
-    private final SparseArray<SQLiteStatement> mCompiledStatements;
+    private final LruCache<String, SQLiteStatement> mCompiledStatements;
+    // Statements dropped from the cache that a transaction may still hold, closed once no
+    // transaction is open
+    private final ArrayList<SQLiteStatement> mRetiredStatements;
 
     static class TransactionData {
         long time;
         boolean transactionSuccessful;
+        // Work deferred to the commit of the outermost transaction, by key
+        LinkedHashMap<String, Runnable> beforeCommitTasks;
+        // Work deferred until the outermost transaction has ended, by key
+        LinkedHashMap<String, Runnable> afterTransactionTasks;
     }
 
     // track transaction on a per thread basis
@@ -85,21 +97,51 @@ public class DatabaseWrapper {
                 BugleGservicesKeys.EXPLAIN_QUERY_PLAN_REGEXP, null);
         mDatabase = db;
         mContext = context;
-        mCompiledStatements = new SparseArray<SQLiteStatement>();
+        mRetiredStatements = new ArrayList<SQLiteStatement>();
+        mCompiledStatements = new LruCache<String, SQLiteStatement>(STATEMENT_CACHE_SIZE) {
+            @Override
+            protected void entryRemoved(final boolean evicted, final String sql,
+                    final SQLiteStatement oldValue, final SQLiteStatement newValue) {
+                synchronized (mRetiredStatements) {
+                    mRetiredStatements.add(oldValue);
+                }
+            }
+        };
     }
 
-    public SQLiteStatement getStatementInTransaction(final int index, final String statement) {
+    /**
+     * Get the compiled statement for the given SQL, compiling it on first use. Statements are
+     * shared, so the returned statement is only valid until the end of the current transaction,
+     * which also serializes access to it. Its bindings are cleared.
+     */
+    public SQLiteStatement getStatementInTransaction(final String sql) {
         // Use transaction to serialize access to statements
         Assert.isTrue(mDatabase.inTransaction());
-        SQLiteStatement compiled = mCompiledStatements.get(index);
+        SQLiteStatement compiled = mCompiledStatements.get(sql);
         if (compiled == null) {
-            compiled = mDatabase.compileStatement(statement);
-            Assert.isTrue(compiled.toString().contains(statement.trim()));
-            mCompiledStatements.put(index, compiled);
+            compiled = mDatabase.compileStatement(sql);
+            mCompiledStatements.put(sql, compiled);
         }
+        compiled.clearBindings();
         return compiled;
     }
 
+    /**
+     * @return hit and miss counts of the compiled statement cache
+     */
+    public String getStatementCacheStats() {
+        return mCompiledStatements.toString();
+    }
+
+    private void closeRetiredStatements() {
+        synchronized (mRetiredStatements) {
+            for (final SQLiteStatement statement : mRetiredStatements) {
+                statement.close();
+            }
+            mRetiredStatements.clear();
+        }
+    }
+
     private void maybePlayDebugNoise() {
         DebugUtils.maybePlayDebugNoise(mContext, DebugUtils.DEBUG_SOUND_DB_OP);
     }
@@ -128,15 +170,88 @@ public class DatabaseWrapper {
         f.time = t1;
         sTransactionDepth.get().push(f);
 
-        mDatabase.beginTransaction();
+        // Readers use their own connections under write-ahead logging, only writers need to wait
+        mDatabase.beginTransactionNonExclusive();
     }
 
     public void setTransactionSuccessful() {
-        final TransactionData f = sTransactionDepth.get().peek();
+        final Stack<TransactionData> transactions = sTransactionDepth.get();
+        final TransactionData f = transactions.peek();
+        if (transactions.size() == 1) {
+            // Outermost transaction is about to commit, do the work deferred until now
+            runBeforeCommitTasks(f);
+        }
         f.transactionSuccessful = true;
         mDatabase.setTransactionSuccessful();
     }
 
+    /**
+     * @return the task deferred under the given key in this thread's transaction, or null if
+     *     there is none
+     */
+    public Runnable getBeforeCommitTask(final String key) {
+        final TransactionData outermost = sTransactionDepth.get().firstElement();
+        return outermost.beforeCommitTasks == null ? null
+                : outermost.beforeCommitTasks.get(key);
+    }
+
+    /**
+     * Defer a task until just before this thread's outermost transaction is marked successful,
+     * replacing any task already deferred under the same key. The task runs inside the
+     * transaction and is dropped if the transaction does not succeed.
+     */
+    public void putBeforeCommitTask(final String key, final Runnable task) {
+        Assert.isTrue(mDatabase.inTransaction());
+        final TransactionData outermost = sTransactionDepth.get().firstElement();
+        if (outermost.beforeCommitTasks == null) {
+            outermost.beforeCommitTasks = new LinkedHashMap<String, Runnable>();
+        }
+        outermost.beforeCommitTasks.put(key, task);
+    }
+
+    /**
+     * @return the task deferred under the given key until this thread's transaction ends, or
+     *     null if there is none
+     */
+    static Runnable getAfterTransactionTask(final String key) {
+        final Stack<TransactionData> transactions = sTransactionDepth.get();
+        if (transactions.isEmpty()) {
+            return null;
+        }
+        final TransactionData outermost = transactions.firstElement();
+        return outermost.afterTransactionTasks == null ? null
+                : outermost.afterTransactionTasks.get(key);
+    }
+
+    /**
+     * Defer a task until this thread's outermost transaction has ended, successfully or not,
+     * replacing any task already deferred under the same key
+     * @return false if this thread is not in a transaction, in which case nothing is deferred
+     */
+    static boolean putAfterTransactionTask(final String key, final Runnable task) {
+        final Stack<TransactionData> transactions = sTransactionDepth.get();
+        if (transactions.isEmpty()) {
+            return false;
+        }
+        final TransactionData outermost = transactions.firstElement();
+        if (outermost.afterTransactionTasks == null) {
+            outermost.afterTransactionTasks = new LinkedHashMap<String, Runnable>();
+        }
+        outermost.afterTransactionTasks.put(key, task);
+        return true;
+    }
+
+    private static void runBeforeCommitTasks(final TransactionData f) {
+        // Tasks may defer more tasks, so take them one at a time
+        while (f.beforeCommitTasks != null && !f.beforeCommitTasks.isEmpty()) {
+            final Iterator<Map.Entry<String, Runnable>> iterator =
+                    f.beforeCommitTasks.entrySet().iterator();
+            final Runnable task = iterator.next().getValue();
+            iterator.remove();
+            task.run();
+        }
+    }
+
     public void endTransaction() {
         long t1 = 0;
         long transactionStartTime = 0;
@@ -157,6 +272,15 @@ public class DatabaseWrapper {
             LogUtil.e(TAG, "Database full, unable to endTransaction", ex);
             UiUtils.showToastAtBottom(R.string.db_full);
         }
+        if (!mDatabase.inTransaction()) {
+            // No one can be holding an evicted statement any more
+            closeRetiredStatements();
+        }
+        if (sTransactionDepth.get().isEmpty() && f.afterTransactionTasks != null) {
+            for (final Runnable task : f.afterTransactionTasks.values()) {
+                task.run();
+            }
+        }
         if (mLog) {
             printTiming(t1, String.format(Locale.US,
                     ">>> endTransaction (total for this transaction: %d)",
@@ -476,6 +600,86 @@ public class DatabaseWrapper {
         return rowsUpdated;
     }
 
+    /**
+     * Run an INSERT through the statement cache, must be called in a transaction
+     * @return the row id of the inserted row or -1 on failure
+     */
+    public long executeInsertInTransaction(final String sql, final Object[] bindArgs) {
+        long t1 = 0;
+        if (mLog) {
+            t1 = System.currentTimeMillis();
+        }
+        maybePlayDebugNoise();
+        final SQLiteStatement statement = getStatementInTransaction(sql);
+        bindAll(statement, bindArgs);
+        long rowId = -1;
+        try {
+            rowId = statement.executeInsert();
+        } catch (SQLiteFullException ex) {
+            LogUtil.e(TAG, "Database full, unable to executeInsertInTransaction", ex);
+            UiUtils.showToastAtBottom(R.string.db_full);
+        }
+        if (mLog) {
+            printTiming(t1, String.format(Locale.US, "executeInsertInTransaction %s", sql));
+        }
+        return rowId;
+    }
+
+    /**
+     * Run an UPDATE or DELETE through the statement cache, must be called in a transaction
+     * @return the number of rows changed
+     */
+    public int executeUpdateDeleteInTransaction(final String sql, final Object[] bindArgs) {
+        long t1 = 0;
+        if (mLog) {
+            t1 = System.currentTimeMillis();
+        }
+        maybePlayDebugNoise();
+        final SQLiteStatement statement = getStatementInTransaction(sql);
+        bindAll(statement, bindArgs);
+        int rowsUpdated = 0;
+        try {
+            rowsUpdated = statement.executeUpdateDelete();
+        } catch (SQLiteFullException ex) {
+            LogUtil.e(TAG, "Database full, unable to executeUpdateDeleteInTransaction", ex);
+            UiUtils.showToastAtBottom(R.string.db_full);
+        }
+        if (mLog) {
+            printTiming(t1, String.format(Locale.US,
+                    "executeUpdateDeleteInTransaction %s ==> %d", sql, rowsUpdated));
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * @return the VALUES list of a multi-row INSERT, e.g. "(?,?),(?,?)" for 2 columns and 2 rows
+     */
+    public static String getMultiRowValuesSql(final int columns, final int rows) {
+        final StringBuilder sb = new StringBuilder(rows * (columns * 2 + 2));
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                sb.append(',');
+            }
+            sb.append('(');
+            for (int column = 0; column < columns; column++) {
+                if (column > 0) {
+                    sb.append(',');
+                }
+                sb.append('?');
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private static void bindAll(final SQLiteStatement statement, final Object[] bindArgs) {
+        if (bindArgs != null) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+            }
+        }
+    }
+
     public SQLiteDatabase getDatabase() {
         return mDatabase;
     }
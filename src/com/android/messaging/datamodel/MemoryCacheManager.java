@@ -18,6 +18,7 @@ package com.android.messaging.datamodel;
 
 import com.android.messaging.Factory;
 
+import java.io.PrintWriter;
 import java.util.HashSet;
 
 /**
@@ -37,6 +38,12 @@ public class MemoryCacheManager {
      */
     public interface MemoryCache {
         void reclaim();
+
+        /**
+         * @return a one line summary of what the cache holds and how often it is reused, for
+         * dumpsys
+         */
+        String getStats();
     }
 
     /**
@@ -60,16 +67,28 @@ public class MemoryCacheManager {
     /**
      * Reclaim memory in all the memory caches in the application.
      */
-    @SuppressWarnings("unchecked")
     public void reclaimMemory() {
         // We're creating a cache copy in the lock to ensure we're not working on a concurrently
         // modified set, then reclaim outside of the lock to minimize the time within the lock.
-        final HashSet<MemoryCache> shallowCopy;
-        synchronized (mMemoryCacheLock) {
-            shallowCopy = (HashSet<MemoryCache>) mMemoryCaches.clone();
-        }
-        for (final MemoryCache cache : shallowCopy) {
+        for (final MemoryCache cache : getMemoryCaches()) {
             cache.reclaim();
         }
     }
+
+    /**
+     * Dump the statistics of all the memory caches in the application.
+     */
+    public void dump(final PrintWriter writer) {
+        writer.println("Memory caches:");
+        for (final MemoryCache cache : getMemoryCaches()) {
+            writer.println("  " + cache.getStats());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashSet<MemoryCache> getMemoryCaches() {
+        synchronized (mMemoryCacheLock) {
+            return (HashSet<MemoryCache>) mMemoryCaches.clone();
+        }
+    }
 }
@@ -16,9 +16,7 @@
 package com.android.messaging.datamodel;
 
 import android.content.ContentProvider;
-import android.content.ContentResolver;
 import android.content.ContentValues;
-import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteQueryBuilder;
@@ -27,10 +25,10 @@ import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 
 import com.android.messaging.BugleApplication;
-import com.android.messaging.Factory;
 import com.android.messaging.datamodel.DatabaseHelper.ConversationColumns;
 import com.android.messaging.datamodel.DatabaseHelper.ConversationParticipantsColumns;
 import com.android.messaging.datamodel.DatabaseHelper.ParticipantColumns;
+import com.android.messaging.datamodel.action.ActionCoalescer;
 import com.android.messaging.datamodel.data.ConversationListItemData;
 import com.android.messaging.datamodel.data.ConversationMessageData;
 import com.android.messaging.datamodel.data.MessageData;
@@ -39,8 +37,6 @@ import com.android.messaging.util.Assert;
 import com.android.messaging.util.LogUtil;
 import com.android.messaging.util.OsUtil;
 import com.android.messaging.util.PhoneUtils;
-import com.android.messaging.widget.BugleWidgetProvider;
-import com.android.messaging.widget.WidgetConversationProvider;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.io.FileDescriptor;
@@ -104,15 +100,13 @@ public class MessagingContentProvider extends ContentProvider {
      */
     public static void notifyEverythingChanged() {
         final Uri uri = Uri.parse(CONTENT_AUTHORITY);
-        final Context context = Factory.get().getApplicationContext();
-        final ContentResolver cr = context.getContentResolver();
-        cr.notifyChange(uri, null);
+        ContentChangeNotifier.notifyChange(uri);
 
         // Notify any conversations widgets the conversation list has changed.
-        BugleWidgetProvider.notifyConversationListChanged(context);
+        ContentChangeNotifier.notifyConversationListWidget();
 
         // Notify all conversation widgets to update.
-        WidgetConversationProvider.notifyMessagesChanged(context, null /*conversationId*/);
+        ContentChangeNotifier.notifyConversationWidget(null /*conversationId*/);
     }
 
     /**
@@ -126,18 +120,15 @@ public class MessagingContentProvider extends ContentProvider {
 
     public static void notifyParticipantsChanged(final String conversationId) {
         final Uri uri = buildConversationParticipantsUri(conversationId);
-        final ContentResolver cr = Factory.get().getApplicationContext().getContentResolver();
-        cr.notifyChange(uri, null);
+        ContentChangeNotifier.notifyChange(uri);
     }
 
     public static void notifyAllMessagesChanged() {
-        final ContentResolver cr = Factory.get().getApplicationContext().getContentResolver();
-        cr.notifyChange(CONVERSATION_MESSAGES_URI, null);
+        ContentChangeNotifier.notifyChange(CONVERSATION_MESSAGES_URI);
     }
 
     public static void notifyAllParticipantsChanged() {
-        final ContentResolver cr = Factory.get().getApplicationContext().getContentResolver();
-        cr.notifyChange(CONVERSATION_PARTICIPANTS_URI, null);
+        ContentChangeNotifier.notifyChange(CONVERSATION_PARTICIPANTS_URI);
     }
 
     // Default value for unknown dimension of image
@@ -180,13 +171,11 @@ public class MessagingContentProvider extends ContentProvider {
 
     public static void notifyMessagesChanged(final String conversationId) {
         final Uri uri = buildConversationMessagesUri(conversationId);
-        final Context context = Factory.get().getApplicationContext();
-        final ContentResolver cr = context.getContentResolver();
-        cr.notifyChange(uri, null);
+        ContentChangeNotifier.notifyChange(uri);
         notifyConversationListChanged();
 
         // Notify the widget the messages changed
-        WidgetConversationProvider.notifyMessagesChanged(context, conversationId);
+        ContentChangeNotifier.notifyConversationWidget(conversationId);
     }
 
     /**
@@ -200,23 +189,19 @@ public class MessagingContentProvider extends ContentProvider {
 
     public static void notifyConversationMetadataChanged(final String conversationId) {
         final Uri uri = buildConversationMetadataUri(conversationId);
-        final ContentResolver cr = Factory.get().getApplicationContext().getContentResolver();
-        cr.notifyChange(uri, null);
+        ContentChangeNotifier.notifyChange(uri);
         notifyConversationListChanged();
     }
 
     public static void notifyPartsChanged() {
-        final ContentResolver cr = Factory.get().getApplicationContext().getContentResolver();
-        cr.notifyChange(PARTS_URI, null);
+        ContentChangeNotifier.notifyChange(PARTS_URI);
     }
 
     public static void notifyConversationListChanged() {
-        final Context context = Factory.get().getApplicationContext();
-        final ContentResolver cr = context.getContentResolver();
-        cr.notifyChange(CONVERSATIONS_URI, null);
+        ContentChangeNotifier.notifyChange(CONVERSATIONS_URI);
 
         // Notify the widget the conversation list changed
-        BugleWidgetProvider.notifyConversationListChanged(context);
+        ContentChangeNotifier.notifyConversationListWidget();
     }
 
     /**
@@ -462,6 +447,19 @@ public class MessagingContentProvider extends ContentProvider {
             }
         }
         writer.println("Default SMS app: " + defaultSmsApp);
+        // Recent sync batch sizes and timings
+        DataModel.get().getSyncManager().getBatchSizer().dump(writer);
+        writer.println("Sync thread info cache: "
+                + DataModel.get().getSyncManager().getThreadInfoCache().getStats());
+        writer.println("Conversation metadata refreshes: "
+                + BugleDatabaseOperations.getDeferredRefreshStats());
+        writer.println("Content change notifications: " + ContentChangeNotifier.getStats());
+        writer.println("Coalesced action starts: " + ActionCoalescer.getStats());
+        writer.println("Database statement cache: "
+                + DataModel.get().getDatabase().getStatementCacheStats());
+        writer.println("Database write-ahead logging: "
+                + DataModel.get().getDatabase().getDatabase().isWriteAheadLoggingEnabled());
+        MemoryCacheManager.get().dump(writer);
         // Now dump logs
         LogUtil.dump(writer);
     }
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import com.android.messaging.sms.DatabaseMessages.MmsMessage;
+import com.android.messaging.sms.DatabaseMessages.MmsPart;
+import com.android.messaging.sms.DatabaseMessages.SmsMessage;
+import com.android.messaging.util.BugleGservices;
+import com.android.messaging.util.BugleGservicesKeys;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+
+/**
+ * Picks the size of each sync batch from how fast previous batches were scanned and written and
+ * how much heap their messages took, and keeps the timing of recent batches for diagnostics.
+ *
+ * The Gservices batch sizes are used until there are measurements. After that the update limit
+ * is whatever can be written within the batch time limit, capped by the share of free heap a
+ * batch may take, and the scan limit is whatever can be scanned within the same time.
+ */
+public class SyncBatchSizer {
+    // Rough heap cost of a scanned message or MMS part besides its text
+    private static final int MESSAGE_OVERHEAD_BYTES = 512;
+    private static final int PART_OVERHEAD_BYTES = 256;
+    // A batch may use at most this fraction of the heap left free
+    private static final int HEAP_BUDGET_DIVISOR = 8;
+    // Fewest messages to update in a batch however tight memory is
+    private static final int MIN_MESSAGES_TO_UPDATE = 10;
+    // How far past the Gservices scan limit the scan limit may grow on fast devices
+    private static final int MAX_SCAN_LIMIT_FACTOR = 4;
+    private static final int MAX_TIMINGS = 16;
+
+    /**
+     * Measurements of one completed sync batch
+     */
+    public static class BatchTiming {
+        public final long mUpperBoundTimestamp;
+        public final int mRowsScanned;
+        public final int mMessagesUpdated;
+        public final long mBytes;
+        public final long mScanMillis;
+        public final long mWriteMillis;
+
+        BatchTiming(final long upperBoundTimestamp, final int rowsScanned,
+                final int messagesUpdated, final long bytes, final long scanMillis,
+                final long writeMillis) {
+            mUpperBoundTimestamp = upperBoundTimestamp;
+            mRowsScanned = rowsScanned;
+            mMessagesUpdated = messagesUpdated;
+            mBytes = bytes;
+            mScanMillis = scanMillis;
+            mWriteMillis = writeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "batch to " + mUpperBoundTimestamp + ": scanned " + mRowsScanned + " in "
+                    + mScanMillis + " ms, wrote " + mMessagesUpdated + " (" + mBytes
+                    + " bytes) in " + mWriteMillis + " ms";
+        }
+    }
+
+    // Smoothed throughput, negative until measured
+    private double mScanRowsPerMilli = -1;
+    private double mWriteRowsPerMilli = -1;
+    // Totals for the average heap cost of a message
+    private long mTotalMessageBytes;
+    private long mTotalMessages;
+    private final ArrayDeque<BatchTiming> mTimings = new ArrayDeque<BatchTiming>();
+
+    SyncBatchSizer() {
+    }
+
+    /**
+     * Called from data model thread after a sync batch has been written
+     * @param upperBoundTimestamp upper bound timestamp of the batch
+     * @param rowsScanned local and remote rows scanned
+     * @param messagesUpdated messages added or deleted
+     * @param bytes estimated heap used by the messages added
+     * @param scanMillis time the scan took in ms
+     * @param writeMillis time the local database transaction took in ms
+     */
+    public synchronized void onBatchComplete(final long upperBoundTimestamp,
+            final int rowsScanned, final int messagesUpdated, final long bytes,
+            final long scanMillis, final long writeMillis) {
+        if (scanMillis > 0 && rowsScanned > 0) {
+            mScanRowsPerMilli = smooth(mScanRowsPerMilli, (double) rowsScanned / scanMillis);
+        }
+        if (writeMillis > 0 && messagesUpdated > 0) {
+            mWriteRowsPerMilli = smooth(mWriteRowsPerMilli,
+                    (double) messagesUpdated / writeMillis);
+        }
+        if (bytes > 0) {
+            mTotalMessageBytes += bytes;
+            mTotalMessages += messagesUpdated;
+        }
+        if (mTimings.size() >= MAX_TIMINGS) {
+            mTimings.removeFirst();
+        }
+        mTimings.addLast(new BatchTiming(upperBoundTimestamp, rowsScanned, messagesUpdated,
+                bytes, scanMillis, writeMillis));
+    }
+
+    /**
+     * @return the number of messages that can be written within the batch time limit, or 0 if
+     *     no batch has been measured yet
+     */
+    public synchronized int getTargetBatchSize() {
+        if (mWriteRowsPerMilli <= 0) {
+            return 0;
+        }
+        return (int) (mWriteRowsPerMilli * getBatchTimeLimitMillis());
+    }
+
+    /**
+     * @param requested the update limit requested for a batch
+     * @return the update limit clamped to the Gservices bounds and the heap budget
+     */
+    public synchronized int getMaxMessagesToUpdate(final int requested) {
+        final BugleGservices bugleGservices = BugleGservices.get();
+        final int min = bugleGservices.getInt(
+                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MIN,
+                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MIN_DEFAULT);
+        final int max = bugleGservices.getInt(
+                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MAX,
+                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MAX_DEFAULT);
+        final int size = Math.max(min, Math.min(requested, max));
+        if (mTotalMessages == 0) {
+            return size;
+        }
+        final long averageBytes = Math.max(1, mTotalMessageBytes / mTotalMessages);
+        final long memoryLimit = getFreeHeapBytes() / HEAP_BUDGET_DIVISOR / averageBytes;
+        return (int) Math.min(size, Math.max(MIN_MESSAGES_TO_UPDATE, memoryLimit));
+    }
+
+    /**
+     * @param maxMessagesToUpdate the update limit of the batch
+     * @return the number of local and remote rows the batch should scan at most
+     */
+    public synchronized int getMaxMessagesToScan(final int maxMessagesToUpdate) {
+        final int configured = BugleGservices.get().getInt(
+                BugleGservicesKeys.SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN,
+                BugleGservicesKeys.SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN_DEFAULT);
+        if (mScanRowsPerMilli <= 0) {
+            return configured;
+        }
+        final long measured = (long) (mScanRowsPerMilli * getBatchTimeLimitMillis());
+        return (int) Math.max(maxMessagesToUpdate,
+                Math.min(measured, (long) configured * MAX_SCAN_LIMIT_FACTOR));
+    }
+
+    public synchronized void dump(final PrintWriter writer) {
+        writer.println("Sync batches: scan " + formatRate(mScanRowsPerMilli) + ", write "
+                + formatRate(mWriteRowsPerMilli) + ", average message "
+                + (mTotalMessages > 0 ? mTotalMessageBytes / mTotalMessages : 0) + " bytes");
+        for (final BatchTiming timing : mTimings) {
+            writer.println("  " + timing);
+        }
+    }
+
+    /**
+     * @return rough heap used by a scanned SMS message
+     */
+    public static long estimateSize(final SmsMessage sms) {
+        return MESSAGE_OVERHEAD_BYTES + 2L * (length(sms.mBody) + length(sms.mAddress));
+    }
+
+    /**
+     * @return rough heap used by a scanned MMS message and its parts (media is not loaded)
+     */
+    public static long estimateSize(final MmsMessage mms) {
+        long size = MESSAGE_OVERHEAD_BYTES + 2L * length(mms.mSubject);
+        for (final MmsPart part : mms.getParts()) {
+            size += PART_OVERHEAD_BYTES + 2L * length(part.mText);
+        }
+        return size;
+    }
+
+    private static int length(final String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static double smooth(final double previous, final double sample) {
+        return previous < 0 ? sample : (previous + sample) / 2;
+    }
+
+    private static String formatRate(final double rowsPerMilli) {
+        return rowsPerMilli < 0 ? "unmeasured" : (long) (rowsPerMilli * 1000) + " rows/s";
+    }
+
+    private static long getBatchTimeLimitMillis() {
+        return BugleGservices.get().getLong(
+                BugleGservicesKeys.SMS_SYNC_BATCH_TIME_LIMIT_MILLIS,
+                BugleGservicesKeys.SMS_SYNC_BATCH_TIME_LIMIT_MILLIS_DEFAULT);
+    }
+
+    private static long getFreeHeapBytes() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+}
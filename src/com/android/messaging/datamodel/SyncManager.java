@@ -21,6 +21,7 @@ import android.content.pm.PackageManager;
 import android.database.ContentObserver;
 import android.net.Uri;
 import android.provider.Telephony;
+import android.util.LruCache;
 import androidx.collection.LongSparseArray;
 
 import com.android.messaging.datamodel.action.SyncMessagesAction;
@@ -34,11 +35,15 @@ import com.android.messaging.util.BuglePrefsKeys;
 import com.android.messaging.util.LogUtil;
 import com.android.messaging.util.OsUtil;
 import com.android.messaging.util.PhoneUtils;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This class manages message sync with the Telephony SmsProvider/MmsProvider.
@@ -98,6 +103,15 @@ public class SyncManager {
      */
     private long mMaxRecentChangeTimestamp = -1L;
 
+    /**
+     * Failed batch writes retried during the sync in progress
+     */
+    private int mWriteRetries = 0;
+
+    private static final int MAX_WRITE_RETRIES = 1;
+
+    private final SyncBatchSizer mBatchSizer = new SyncBatchSizer();
+
     private final ThreadInfoCache mThreadInfoCache = new ThreadInfoCache();
 
     /**
@@ -160,6 +174,24 @@ public class SyncManager {
         return dirty;
     }
 
+    /**
+     * Called from data model thread to abandon the current sync batch, so that its response is
+     * ignored as an orphan
+     */
+    public synchronized void abandonSyncBatch() {
+        mCurrentUpperBoundTimestamp = -1L;
+        mMaxRecentChangeTimestamp = -1L;
+    }
+
+    /**
+     * Called from data model thread when writing a sync batch failed
+     * @return true if the batch should be read and written again, false if the sync should give
+     *     up as too many writes have failed
+     */
+    public synchronized boolean shouldRetryFailedWrite() {
+        return mWriteRetries++ < MAX_WRITE_RETRIES;
+    }
+
     /**
      * Called from data model or background worker thread to indicate start of message add process
      * (add must complete on that thread before action transitions to new thread/stage)
@@ -278,6 +310,7 @@ public class SyncManager {
                     + " marked as complete");
         }
         mSyncInProgressTimestamp = -1L;
+        mWriteRetries = 0;
         // Conversation customization only used once
         mCustomization = null;
     }
@@ -384,31 +417,71 @@ public class SyncManager {
         return mThreadInfoCache;
     }
 
+    public SyncBatchSizer getBatchSizer() {
+        return mBatchSizer;
+    }
+
+    /**
+     * Cache of the thread to conversation and thread to recipients mappings used while syncing.
+     * Both maps are LRU caches bounded in size, recipients by the characters they hold, and
+     * reads don't wait for a conversation being created. Recipient strings are interned since
+     * the same numbers show up in many threads.
+     */
     public static class ThreadInfoCache {
+        private static final int MAX_CONVERSATION_IDS = 2000;
+        // Characters of recipient strings to keep, each char taking 2 bytes
+        private static final int MAX_RECIPIENT_CHARS = 128 * 1024;
+        // Rough per entry cost of a recipient list besides its strings, in chars
+        private static final int RECIPIENT_ENTRY_OVERHEAD = 32;
+
         // Cache of thread->conversationId map
-        private final LongSparseArray<String> mThreadToConversationId =
-                new LongSparseArray<String>();
+        private final LruCache<Long, String> mThreadToConversationId =
+                new LruCache<Long, String>(MAX_CONVERSATION_IDS);
 
         // Cache of thread->recipients map
-        private final LongSparseArray<List<String>> mThreadToRecipients =
-                new LongSparseArray<List<String>>();
+        private final LruCache<Long, List<String>> mThreadToRecipients =
+                new LruCache<Long, List<String>>(MAX_RECIPIENT_CHARS) {
+                    @Override
+                    protected int sizeOf(final Long threadId, final List<String> recipients) {
+                        int size = RECIPIENT_ENTRY_OVERHEAD;
+                        for (final String recipient : recipients) {
+                            size += (recipient == null ? 0 : recipient.length());
+                        }
+                        return size;
+                    }
+                };
+
+        private final Interner<String> mRecipientInterner = Interners.newWeakInterner();
 
         // Remember the conversation ids that need to be archived
-        private final HashSet<String> mArchivedConversations = new HashSet<>();
+        private final Set<String> mArchivedConversations =
+                Collections.synchronizedSet(new HashSet<String>());
 
-        public synchronized void clear() {
+        public void clear() {
             if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
-                LogUtil.d(TAG, "SyncManager: Cleared ThreadInfoCache");
+                LogUtil.d(TAG, "SyncManager: Cleared ThreadInfoCache; " + getStats());
             }
-            mThreadToConversationId.clear();
-            mThreadToRecipients.clear();
+            mThreadToConversationId.evictAll();
+            mThreadToRecipients.evictAll();
             mArchivedConversations.clear();
         }
 
-        public synchronized boolean isArchived(final String conversationId) {
+        public boolean isArchived(final String conversationId) {
             return mArchivedConversations.contains(conversationId);
         }
 
+        /**
+         * @return hit and miss counts of the two maps
+         */
+        public String getStats() {
+            return "conversation ids: " + mThreadToConversationId.size() + " cached, "
+                    + mThreadToConversationId.hitCount() + " hits, "
+                    + mThreadToConversationId.missCount() + " misses; recipients: "
+                    + mThreadToRecipients.size() + " chars cached, "
+                    + mThreadToRecipients.hitCount() + " hits, "
+                    + mThreadToRecipients.missCount() + " misses";
+        }
+
         /**
          * Get or create a conversation based on the message's thread id
          *
@@ -462,10 +535,12 @@ public class SyncManager {
          *
          * @param threadId
          */
-        public synchronized List<String> getThreadRecipients(final long threadId) {
+        public List<String> getThreadRecipients(final long threadId) {
             List<String> recipients = mThreadToRecipients.get(threadId);
             if (recipients == null) {
-                recipients = MmsUtils.getRecipientsByThread(threadId);
+                // Not holding any lock here, two threads may both load the same thread which is
+                // harmless
+                recipients = internRecipients(MmsUtils.getRecipientsByThread(threadId));
                 if (recipients != null && recipients.size() > 0) {
                     mThreadToRecipients.put(threadId, recipients);
                 }
@@ -483,5 +558,17 @@ public class SyncManager {
 
             return recipients;
         }
+
+        private List<String> internRecipients(final List<String> recipients) {
+            if (recipients == null) {
+                return null;
+            }
+            final ArrayList<String> interned = new ArrayList<String>(recipients.size());
+            for (final String recipient : recipients) {
+                interned.add(recipient == null ? null : mRecipientInterner.intern(recipient));
+            }
+            // Shared by every caller asking about the thread
+            return Collections.unmodifiableList(interned);
+        }
     }
 }
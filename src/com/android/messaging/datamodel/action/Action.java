@@ -59,6 +59,26 @@ public abstract class Action implements Parcelable {
         return null;
     }
 
+    /**
+     * Key under which repeated starts of this action collapse into one execution, or null if
+     * every start should run (the default). Starting an action while another with the same key
+     * is queued but not yet executing drops the new one, so only return a key when the queued
+     * action, running later, does everything the dropped one would have. Actions started with
+     * an {@link ActionMonitor} always run.
+     */
+    protected String getCoalescingKey() {
+        return null;
+    }
+
+    /**
+     * Whether the action and its background worker results may be handed to an already running
+     * ActionService in process rather than sent in an Intent. Work handed over in process is
+     * lost if the process dies before it runs, so only return true when that is harmless.
+     */
+    protected boolean canQueueInProcess() {
+        return false;
+    }
+
     /**
      * Queues up background work ie. {@link #doBackgroundWork} will be called on the
      * background worker thread.
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import androidx.collection.SimpleArrayMap;
+
+import com.android.messaging.util.LogUtil;
+
+/**
+ * Tracks actions with a coalescing key (see {@link Action#getCoalescingKey}) between being
+ * started and beginning execution, so that starting an action while an equivalent one is still
+ * queued is dropped instead of queueing a redundant execution.
+ */
+public final class ActionCoalescer {
+    private static final String TAG = LogUtil.BUGLE_DATAMODEL_TAG;
+
+    // Coalescing key -> key of the queued action holding it
+    private static final SimpleArrayMap<String, String> sQueuedActions =
+            new SimpleArrayMap<String, String>();
+    // Action class name -> number of starts dropped
+    private static final SimpleArrayMap<String, Integer> sDroppedCounts =
+            new SimpleArrayMap<String, Integer>();
+    private static int sTotalDroppedCount;
+    // Number of starts with a coalescing key that were queued
+    private static int sTrackedCount;
+
+    private ActionCoalescer() {
+    }
+
+    /**
+     * Called when an action is started
+     * @return false if an equivalent action is already queued and this one should be dropped
+     */
+    static boolean onStart(final Action action) {
+        final String key = action.getCoalescingKey();
+        if (key == null || ActionMonitor.lookupActionMonitor(action.actionKey) != null) {
+            // Someone is waiting on this particular action so it has to run
+            return true;
+        }
+        final String name = action.getClass().getSimpleName();
+        synchronized (sQueuedActions) {
+            if (!sQueuedActions.containsKey(key)) {
+                sQueuedActions.put(key, action.actionKey);
+                sTrackedCount++;
+                return true;
+            }
+            final Integer count = sDroppedCounts.get(name);
+            sDroppedCounts.put(name, count == null ? 1 : count + 1);
+            sTotalDroppedCount++;
+        }
+        if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
+            LogUtil.v(TAG, "ActionCoalescer: dropped " + action.actionKey + ", " + key
+                    + " already queued");
+        }
+        return false;
+    }
+
+    /**
+     * Called when an action begins executing. From here on it may miss changes, so further
+     * starts with the same key need to queue again.
+     */
+    static void onExecute(final Action action) {
+        final String key = action.getCoalescingKey();
+        if (key == null) {
+            return;
+        }
+        synchronized (sQueuedActions) {
+            if (action.actionKey.equals(sQueuedActions.get(key))) {
+                sQueuedActions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the number of action starts dropped since the process started
+     */
+    static int getDroppedCount() {
+        synchronized (sQueuedActions) {
+            return sTotalDroppedCount;
+        }
+    }
+
+    /**
+     * @return the counts of coalescable starts queued and dropped, per action class, for dumpsys
+     */
+    public static String getStats() {
+        synchronized (sQueuedActions) {
+            final StringBuilder stats = new StringBuilder();
+            stats.append("queued ").append(sTrackedCount).append(", dropped ")
+                    .append(sTotalDroppedCount).append(", pending ").append(sQueuedActions.size());
+            for (int i = 0; i < sDroppedCounts.size(); i++) {
+                stats.append(i == 0 ? " (" : ", ").append(sDroppedCounts.keyAt(i)).append(' ')
+                        .append(sDroppedCounts.valueAt(i));
+            }
+            if (sDroppedCounts.size() > 0) {
+                stats.append(')');
+            }
+            return stats.toString();
+        }
+    }
+
+    /**
+     * @return the number of action starts dropped for the given action class
+     */
+    static int getDroppedCount(final Class<? extends Action> actionClass) {
+        synchronized (sQueuedActions) {
+            final Integer count = sDroppedCounts.get(actionClass.getSimpleName());
+            return count == null ? 0 : count;
+        }
+    }
+}
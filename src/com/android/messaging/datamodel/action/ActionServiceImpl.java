@@ -22,6 +22,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Process;
 import android.os.SystemClock;
 
 import androidx.core.app.JobIntentService;
@@ -49,16 +50,15 @@ public class ActionServiceImpl extends JobIntentService {
     }
 
     /**
-     * Start action by sending intent to the service
+     * Start action by queuing it for the service
      * @param action - action to start
      */
     protected static void startAction(final Action action) {
-        final Intent intent = makeIntent(OP_START_ACTION);
-        final Bundle actionBundle = new Bundle();
-        actionBundle.putParcelable(BUNDLE_ACTION, action);
-        intent.putExtra(EXTRA_ACTION_BUNDLE, actionBundle);
+        if (!ActionCoalescer.onStart(action)) {
+            return;
+        }
         action.markStart();
-        startServiceWithIntent(intent);
+        sQueue.queue(OP_START_ACTION, action, null);
     }
 
     /**
@@ -84,14 +84,7 @@ public class ActionServiceImpl extends JobIntentService {
      */
     protected static void handleResponseFromBackgroundWorker(final Action action,
             final Bundle response) {
-        final Intent intent = makeIntent(OP_RECEIVE_BACKGROUND_RESPONSE);
-
-        final Bundle actionBundle = new Bundle();
-        actionBundle.putParcelable(BUNDLE_ACTION, action);
-        intent.putExtra(EXTRA_ACTION_BUNDLE, actionBundle);
-        intent.putExtra(EXTRA_WORKER_RESPONSE, response);
-
-        startServiceWithIntent(intent);
+        sQueue.queue(OP_RECEIVE_BACKGROUND_RESPONSE, action, response);
     }
 
     /**
@@ -100,14 +93,10 @@ public class ActionServiceImpl extends JobIntentService {
      */
     protected static void handleFailureFromBackgroundWorker(final Action action,
             final Exception exception) {
-        final Intent intent = makeIntent(OP_RECEIVE_BACKGROUND_FAILURE);
-
-        final Bundle actionBundle = new Bundle();
-        actionBundle.putParcelable(BUNDLE_ACTION, action);
-        intent.putExtra(EXTRA_ACTION_BUNDLE, actionBundle);
-        intent.putExtra(EXTRA_WORKER_EXCEPTION, exception);
-
-        startServiceWithIntent(intent);
+        LogUtil.w(TAG, "ActionService: background work failed for " + action.actionKey,
+                exception);
+        // Actions only learn that their background work failed, so the exception ends here
+        sQueue.queue(OP_RECEIVE_BACKGROUND_FAILURE, action, null);
     }
 
     // ops
@@ -131,9 +120,33 @@ public class ActionServiceImpl extends JobIntentService {
     protected static final String EXTRA_WORKER_UPDATE = "worker_update";
     @VisibleForTesting
     protected static final String BUNDLE_ACTION = "bundle_action";
+    // Pid of the process that sent the Intent, to tell Intents redelivered after a restart
+    private static final String EXTRA_SENDER_PID = "sender_pid";
 
     private BackgroundWorker mBackgroundWorker;
 
+    // Hands work to a job that is already running where the action allows it, saving an Intent
+    // for each of a burst of work (e.g. the batches of a sync). Everything else goes in an
+    // Intent, which is redelivered if the process dies. Either way actions run one at a time
+    // on the service thread, in the order they were sent: actions rely on not running
+    // concurrently with each other, so a single thread is the bound on how many run at once.
+    private static final InProcessActionQueue sQueue = new InProcessActionQueue(
+            new InProcessActionQueue.IntentSender() {
+                @Override
+                public void sendIntent(final int opcode, final Action action,
+                        final Bundle response) {
+                    final Intent intent = makeIntent(opcode);
+                    final Bundle actionBundle = new Bundle();
+                    actionBundle.putParcelable(BUNDLE_ACTION, action);
+                    intent.putExtra(EXTRA_ACTION_BUNDLE, actionBundle);
+                    if (response != null) {
+                        intent.putExtra(EXTRA_WORKER_RESPONSE, response);
+                    }
+                    intent.putExtra(EXTRA_SENDER_PID, Process.myPid());
+                    startServiceWithIntent(intent);
+                }
+            });
+
     /**
      * Allocate an intent with a specific opcode.
      */
@@ -244,25 +257,38 @@ public class ActionServiceImpl extends JobIntentService {
         }
         final int opcode = intent.getIntExtra(EXTRA_OP_CODE, 0);
 
-        Action action;
-        final Bundle actionBundle = intent.getBundleExtra(EXTRA_ACTION_BUNDLE);
-        actionBundle.setClassLoader(getClassLoader());
+        sQueue.beginWork(intent.getIntExtra(EXTRA_SENDER_PID, 0) == Process.myPid());
+        boolean drained = false;
+        try {
+            final Bundle actionBundle = intent.getBundleExtra(EXTRA_ACTION_BUNDLE);
+            actionBundle.setClassLoader(getClassLoader());
+            final Action action = (Action) actionBundle.getParcelable(BUNDLE_ACTION);
+            final Bundle response = (opcode == OP_RECEIVE_BACKGROUND_RESPONSE) ?
+                    intent.getBundleExtra(EXTRA_WORKER_RESPONSE) : null;
+            handleOp(opcode, action, response);
+            drainQueue();
+            drained = true;
+        } finally {
+            if (!drained) {
+                // This job is going away, send whatever it left queued so that it still runs
+                sQueue.abandonWork();
+            }
+        }
+    }
+
+    private void handleOp(final int opcode, final Action action, final Bundle response) {
         switch(opcode) {
             case OP_START_ACTION: {
-                action = (Action) actionBundle.getParcelable(BUNDLE_ACTION);
                 executeAction(action);
                 break;
             }
 
             case OP_RECEIVE_BACKGROUND_RESPONSE: {
-                action = (Action) actionBundle.getParcelable(BUNDLE_ACTION);
-                final Bundle response = intent.getBundleExtra(EXTRA_WORKER_RESPONSE);
                 processBackgroundResponse(action, response);
                 break;
             }
 
             case OP_RECEIVE_BACKGROUND_FAILURE: {
-                action = (Action) actionBundle.getParcelable(BUNDLE_ACTION);
                 processBackgroundFailure(action);
                 break;
             }
@@ -274,11 +300,28 @@ public class ActionServiceImpl extends JobIntentService {
         action.sendBackgroundActions(mBackgroundWorker);
     }
 
+    /**
+     * Run the work queued in process, including anything queued while it runs, until there is
+     * none left
+     */
+    private void drainQueue() {
+        int count = 0;
+        InProcessActionQueue.PendingOp op;
+        while ((op = sQueue.next()) != null) {
+            handleOp(op.mOpcode, op.mAction, op.mResponse);
+            count++;
+        }
+        if (VERBOSE && count > 0) {
+            LogUtil.v(TAG, "ActionService: ran " + count + " queued ops");
+        }
+    }
+
     private static final long EXECUTION_TIME_WARN_LIMIT_MS = 1000; // 1 second
     /**
      * Local execution of action on ActionService thread
      */
     private void executeAction(final Action action) {
+        ActionCoalescer.onExecute(action);
         action.markBeginExecute();
 
         final LoggingTimer timer = createLoggingTimer(action, "#executeAction");
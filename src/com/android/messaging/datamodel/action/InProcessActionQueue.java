@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import android.os.Bundle;
+
+import com.android.messaging.util.LogUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Hands actions and background worker results to the ActionService job that is already running,
+ * saving the Intent they would otherwise be sent in.
+ *
+ * Intents are the durable path: JobScheduler redelivers them if the process dies. Work queued
+ * here is lost with the process, so only actions that allow it
+ * ({@link Action#canQueueInProcess}) are queued, and only while a job is running to drain them
+ * before it finishes. The running job keeps the process alive just as it would for an Intent.
+ *
+ * Work is handled in the order it was sent, whichever path it took. Work is queued here only
+ * when no Intent sent by this queue is still waiting, and the running job drains the queue
+ * before the service takes its next Intent.
+ *
+ * Queued actions are handed over by reference, not parceled. Actions are built and started by
+ * static helpers that drop their reference once started, and the background worker only posts
+ * results for actions it is done with, so nothing changes an action after it is queued.
+ */
+class InProcessActionQueue {
+    private static final String TAG = LogUtil.BUGLE_DATAMODEL_TAG;
+
+    /**
+     * Sends work to the ActionService in an Intent
+     */
+    interface IntentSender {
+        void sendIntent(int opcode, Action action, Bundle response);
+    }
+
+    /**
+     * An action or background worker result queued for the running job
+     */
+    static class PendingOp {
+        final int mOpcode;
+        final Action mAction;
+        final Bundle mResponse;
+
+        PendingOp(final int opcode, final Action action, final Bundle response) {
+            mOpcode = opcode;
+            mAction = action;
+            mResponse = response;
+        }
+    }
+
+    private final IntentSender mIntentSender;
+    private final ArrayDeque<PendingOp> mPendingOps = new ArrayDeque<PendingOp>();
+    // Whether a job is handling work and will drain the queue before it finishes
+    private boolean mHandlingWork;
+    // Intents sent by this queue that no job has started handling yet
+    private int mOutstandingIntents;
+
+    InProcessActionQueue(final IntentSender intentSender) {
+        mIntentSender = intentSender;
+    }
+
+    /**
+     * Queue work for the running job, or send it in an Intent if it can't be queued
+     */
+    void queue(final int opcode, final Action action, final Bundle response) {
+        synchronized (this) {
+            if (mHandlingWork && mOutstandingIntents == 0 && action.canQueueInProcess()) {
+                mPendingOps.add(new PendingOp(opcode, action, response));
+                return;
+            }
+            mOutstandingIntents++;
+        }
+        sendIntent(opcode, action, response);
+    }
+
+    /**
+     * Called as a job starts handling an Intent
+     * @param sentByQueue whether the Intent was sent by this queue in this process
+     */
+    synchronized void beginWork(final boolean sentByQueue) {
+        mHandlingWork = true;
+        if (sentByQueue && mOutstandingIntents > 0) {
+            mOutstandingIntents--;
+        }
+    }
+
+    /**
+     * Take the next queued work for the running job. Returns null once the queue is empty, and
+     * from then on work goes in Intents until the next job begins.
+     */
+    synchronized PendingOp next() {
+        final PendingOp op = mPendingOps.poll();
+        if (op == null) {
+            mHandlingWork = false;
+        }
+        return op;
+    }
+
+    /**
+     * Called when a job fails part way through. Whatever it left queued is sent in Intents so
+     * that it still runs.
+     */
+    void abandonWork() {
+        final ArrayList<PendingOp> ops;
+        synchronized (this) {
+            mHandlingWork = false;
+            ops = new ArrayList<PendingOp>(mPendingOps);
+            mPendingOps.clear();
+            mOutstandingIntents += ops.size();
+        }
+        for (final PendingOp op : ops) {
+            try {
+                sendIntent(op.mOpcode, op.mAction, op.mResponse);
+            } catch (final RuntimeException e) {
+                LogUtil.e(TAG, "InProcessActionQueue: failed to send "
+                        + op.mAction.actionKey + " to ActionService", e);
+            }
+        }
+    }
+
+    private void sendIntent(final int opcode, final Action action, final Bundle response) {
+        boolean sent = false;
+        try {
+            mIntentSender.sendIntent(opcode, action, response);
+            sent = true;
+        } finally {
+            if (!sent) {
+                // No job will handle it, so it mustn't hold work back from the queue
+                synchronized (this) {
+                    mOutstandingIntents--;
+                }
+            }
+        }
+    }
+}
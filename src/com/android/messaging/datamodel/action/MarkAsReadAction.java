@@ -16,7 +16,6 @@
 
 package com.android.messaging.datamodel.action;
 
-import android.content.ContentValues;
 import android.os.Parcel;
 import android.os.Parcelable;
 
@@ -38,6 +37,12 @@ public class MarkAsReadAction extends Action implements Parcelable {
 
     private static final String KEY_CONVERSATION_ID = "conversation_id";
 
+    // If they read it, they saw it
+    private static final String MARK_AS_READ_SQL = "UPDATE " + DatabaseHelper.MESSAGES_TABLE
+            + " SET " + MessageColumns.READ + "=1," + MessageColumns.SEEN + "=1 WHERE ("
+            + MessageColumns.READ + " !=1 OR " + MessageColumns.SEEN + " !=1 ) AND "
+            + MessageColumns.CONVERSATION_ID + "=?";
+
     /**
      * Mark all the messages as read for a particular conversation.
      */
@@ -66,16 +71,8 @@ public class MarkAsReadAction extends Action implements Parcelable {
         // Update local db
         db.beginTransaction();
         try {
-            final ContentValues values = new ContentValues();
-            values.put(MessageColumns.CONVERSATION_ID, conversationId);
-            values.put(MessageColumns.READ, 1);
-            values.put(MessageColumns.SEEN, 1);     // if they read it, they saw it
-
-            final int count = db.update(DatabaseHelper.MESSAGES_TABLE, values,
-                    "(" + MessageColumns.READ + " !=1 OR " +
-                            MessageColumns.SEEN + " !=1 ) AND " +
-                            MessageColumns.CONVERSATION_ID + "=?",
-                    new String[] { conversationId });
+            final int count = db.executeUpdateDeleteInTransaction(MARK_AS_READ_SQL,
+                    new Object[] { conversationId });
             if (count > 0) {
                 MessagingContentProvider.notifyMessagesChanged(conversationId);
             }
@@ -16,7 +16,6 @@
 
 package com.android.messaging.datamodel.action;
 
-import android.content.ContentValues;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.TextUtils;
@@ -36,6 +35,11 @@ public class MarkAsSeenAction extends Action implements Parcelable {
     private static final String TAG = LogUtil.BUGLE_DATAMODEL_TAG;
     private static final String KEY_CONVERSATION_ID = "conversation_id";
 
+    private static final String MARK_ALL_AS_SEEN_SQL = "UPDATE " + DatabaseHelper.MESSAGES_TABLE
+            + " SET " + MessageColumns.SEEN + "=1 WHERE " + MessageColumns.SEEN + " != 1";
+    private static final String MARK_AS_SEEN_SQL = MARK_ALL_AS_SEEN_SQL + " AND "
+            + MessageColumns.CONVERSATION_ID + "=?";
+
     /**
      * Mark all messages as seen.
      */
@@ -61,6 +65,12 @@ public class MarkAsSeenAction extends Action implements Parcelable {
         actionParameters.putString(KEY_CONVERSATION_ID, conversationId);
     }
 
+    @Override
+    protected String getCoalescingKey() {
+        // Marking reads the database when it runs, so one queued pass per conversation is enough
+        return "MarkAsSeen:" + actionParameters.getString(KEY_CONVERSATION_ID);
+    }
+
     @Override
     protected Object executeAction() {
         final String conversationId =
@@ -76,20 +86,14 @@ public class MarkAsSeenAction extends Action implements Parcelable {
         db.beginTransaction();
 
         try {
-            final ContentValues values = new ContentValues();
-            values.put(MessageColumns.SEEN, 1);
-
             if (hasSpecificConversation) {
-                final int count = db.update(DatabaseHelper.MESSAGES_TABLE, values,
-                        MessageColumns.SEEN + " != 1 AND " +
-                                MessageColumns.CONVERSATION_ID + "=?",
-                        new String[] { conversationId });
+                final int count = db.executeUpdateDeleteInTransaction(MARK_AS_SEEN_SQL,
+                        new Object[] { conversationId });
                 if (count > 0) {
                     MessagingContentProvider.notifyMessagesChanged(conversationId);
                 }
             } else {
-                db.update(DatabaseHelper.MESSAGES_TABLE, values,
-                        MessageColumns.SEEN + " != 1", null/*selectionArgs*/);
+                db.executeUpdateDeleteInTransaction(MARK_ALL_AS_SEEN_SQL, null/*bindArgs*/);
             }
 
             db.setTransactionSuccessful();
@@ -51,6 +51,7 @@ import com.google.common.io.Files;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
 import java.util.List;
 
 /**
@@ -245,9 +246,12 @@ public class ProcessDownloadedMmsAction extends Action {
             if (resultCode == Activity.RESULT_OK) {
                 final Uri contentUri = actionParameters.getParcelable(KEY_CONTENT_URI);
                 final File downloadedFile = MmsFileProvider.getFile(contentUri);
-                byte[] downloadedData = null;
+                // Map rather than read the file: the parser leaves part bodies in the mapping
+                // and the persister streams them out of it, so a large retrieve-conf is never
+                // copied onto the heap. The mapping outlives the file deletion below.
+                MappedByteBuffer downloadedData = null;
                 try {
-                    downloadedData = Files.toByteArray(downloadedFile);
+                    downloadedData = Files.map(downloadedFile);
                 } catch (final FileNotFoundException e) {
                     LogUtil.e(TAG, "ProcessDownloadedMmsAction: MMS download file not found: "
                             + downloadedFile.getAbsolutePath());
@@ -269,7 +273,9 @@ public class ProcessDownloadedMmsAction extends Action {
                     final RetrieveConf retrieveConf =
                             MmsSender.parseRetrieveConf(downloadedData, subId);
                     if (MmsUtils.isDumpMmsEnabled()) {
-                        MmsUtils.dumpPdu(downloadedData, retrieveConf);
+                        final byte[] rawPdu = new byte[downloadedData.remaining()];
+                        downloadedData.duplicate().get(rawPdu);
+                        MmsUtils.dumpPdu(rawPdu, retrieveConf);
                     }
                     if (retrieveConf != null) {
                         // Insert the downloaded MMS into telephony
@@ -508,8 +514,9 @@ public class ProcessDownloadedMmsAction extends Action {
                     }
                 }
 
-                BugleDatabaseOperations.refreshConversationMetadataInTransaction(db, conversationId,
-                        true /*shouldAutoSwitchSelfId*/, blockedSender /*keepArchived*/);
+                BugleDatabaseOperations.refreshConversationMetadataOnCommit(db, conversationId,
+                        false /*onlyIfLatestMessageChanged*/, true /*shouldAutoSwitchSelfId*/,
+                        blockedSender /*keepArchived*/);
             } else {
                 messageInFocusedConversation =
                         DataModel.get().isFocusedConversation(notificationConversationId);
@@ -529,9 +536,9 @@ public class ProcessDownloadedMmsAction extends Action {
                 final int httpStatusCode = actionParameters.getInt(KEY_HTTP_STATUS_CODE);
 
                 // Just in case this was the latest message update the summary data
-                BugleDatabaseOperations.refreshConversationMetadataInTransaction(db,
-                        notificationConversationId, true /*shouldAutoSwitchSelfId*/,
-                        false /*keepArchived*/);
+                BugleDatabaseOperations.refreshConversationMetadataOnCommit(db,
+                        notificationConversationId, false /*onlyIfLatestMessageChanged*/,
+                        true /*shouldAutoSwitchSelfId*/, false /*keepArchived*/);
             }
 
             db.setTransactionSuccessful();
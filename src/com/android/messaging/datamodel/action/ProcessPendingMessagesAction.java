@@ -294,6 +294,13 @@ public class ProcessPendingMessagesAction extends Action implements Parcelable {
         return succeeded;
     }
 
+    @Override
+    protected String getCoalescingKey() {
+        // The queued action picks the first pending message when it runs
+        return "ProcessPendingMessages:"
+                + actionParameters.getInt(KEY_SUB_ID, ParticipantData.DEFAULT_SELF_SUB_ID);
+    }
+
     @Override
     protected Object executeAction() {
         final int subId = actionParameters.getInt(KEY_SUB_ID, ParticipantData.DEFAULT_SELF_SUB_ID);
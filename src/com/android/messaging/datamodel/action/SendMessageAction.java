@@ -392,9 +392,9 @@ public class SendMessageAction extends Action implements Parcelable {
             if (updatedMessageUri != null) {
                 // Update all message and part fields
                 BugleDatabaseOperations.updateMessageInTransaction(db, message);
-                BugleDatabaseOperations.refreshConversationMetadataInTransaction(
-                        db, message.getConversationId(), false/* shouldAutoSwitchSelfId */,
-                        false/*archived*/);
+                BugleDatabaseOperations.refreshConversationMetadataOnCommit(
+                        db, message.getConversationId(), false /*onlyIfLatestMessageChanged*/,
+                        false/* shouldAutoSwitchSelfId */, false/*archived*/);
             } else {
                 final ContentValues values = new ContentValues();
                 values.put(MessageColumns.STATUS, message.getStatus());
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import androidx.collection.SimpleArrayMap;
+
+import com.android.messaging.sms.DatabaseMessages.LocalDatabaseMessage;
+import com.android.messaging.sms.DatabaseMessages.MmsMessage;
+import com.android.messaging.sms.DatabaseMessages.SmsMessage;
+
+import java.util.ArrayList;
+
+/**
+ * Holds the messages scanned by a sync batch in the background worker until the action service
+ * picks them up, so they are handed over by reference instead of being parceled through the
+ * response bundle. Entries are keyed by action key and owned by the one pending response, which
+ * takes them back out. The store is bounded; when it is full batches go through the bundle.
+ */
+final class SyncBatchStore {
+    // Only one batch is read ahead of the one being written, leave some slack for orphans
+    private static final int MAX_PENDING_BATCHES = 4;
+
+    private static final SimpleArrayMap<String, Batch> sBatches =
+            new SimpleArrayMap<String, Batch>();
+
+    /**
+     * Messages to add and delete for one sync batch
+     */
+    static class Batch {
+        final ArrayList<SmsMessage> mSmsToAdd;
+        final ArrayList<MmsMessage> mMmsToAdd;
+        final ArrayList<LocalDatabaseMessage> mMessagesToDelete;
+
+        Batch(final ArrayList<SmsMessage> smsToAdd, final ArrayList<MmsMessage> mmsToAdd,
+                final ArrayList<LocalDatabaseMessage> messagesToDelete) {
+            mSmsToAdd = smsToAdd;
+            mMmsToAdd = mmsToAdd;
+            mMessagesToDelete = messagesToDelete;
+        }
+    }
+
+    private SyncBatchStore() {
+    }
+
+    /**
+     * Store a batch for the action with the given key
+     * @return false if the store is full and the batch has to be parceled instead
+     */
+    static boolean put(final String actionKey, final Batch batch) {
+        synchronized (sBatches) {
+            if (sBatches.size() >= MAX_PENDING_BATCHES && !sBatches.containsKey(actionKey)) {
+                return false;
+            }
+            sBatches.put(actionKey, batch);
+            return true;
+        }
+    }
+
+    /**
+     * Remove and return the batch stored for the action with the given key
+     * @return the batch or null if there is none (e.g. the process was restarted in between)
+     */
+    static Batch take(final String actionKey) {
+        synchronized (sBatches) {
+            return sBatches.remove(actionKey);
+        }
+    }
+}
@@ -102,25 +102,35 @@ class SyncCursorPair {
                 null /* threadColumn */, null /* threadId */);
     }
 
-    SyncCursorPair(final long threadId, final String conversationId) {
-        mLocalSelection = getTimeConstrainedQuery(
-                LOCAL_MESSAGES_SELECTION,
-                MessageColumns.RECEIVED_TIMESTAMP,
-                -1L,
-                -1L,
-                MessageColumns.CONVERSATION_ID, conversationId);
+    /**
+     * @param threadId telephony thread to sync
+     * @param conversationId local conversation of the thread or null if there is none yet
+     * @param lowerBound inclusive lower bound of the messages to sync or -1 for none
+     * @param upperBound exclusive upper bound of the messages to sync or -1 for none
+     */
+    SyncCursorPair(final long threadId, final String conversationId, final long lowerBound,
+            final long upperBound) {
+        // Without a conversation there are no local messages for the thread (an empty
+        // conversation id would otherwise select the local messages of all threads)
+        mLocalSelection = (conversationId == null) ? NO_LOCAL_MESSAGES_SELECTION :
+                getTimeConstrainedQuery(
+                        LOCAL_MESSAGES_SELECTION,
+                        MessageColumns.RECEIVED_TIMESTAMP,
+                        lowerBound,
+                        upperBound,
+                        MessageColumns.CONVERSATION_ID, conversationId);
         // Find all SMS messages (excluding drafts) within the sync window
         mRemoteSmsSelection = getTimeConstrainedQuery(
                 getSmsTypeSelectionSql(),
                 "date",
-                -1L,
-                -1L,
+                lowerBound,
+                upperBound,
                 Sms.THREAD_ID, Long.toString(threadId));
         mRemoteMmsSelection = getTimeConstrainedQuery(
                 getMmsTypeSelectionSql(),
                 "date",
-                -1L, /*seconds*/
-                -1L,  /*seconds*/
+                ((lowerBound < 0) ? lowerBound : (lowerBound + 999) / 1000), /*seconds*/
+                ((upperBound < 0) ? upperBound : (upperBound + 999) / 1000),  /*seconds*/
                 Mms.THREAD_ID, Long.toString(threadId));
     }
 
@@ -329,6 +339,8 @@ class SyncCursorPair {
             "(%s NOTNULL)",
             MessageColumns.SMS_MESSAGE_URI);
 
+    private static final String NO_LOCAL_MESSAGES_SELECTION = "0";
+
     private static final String ORDER_BY_TIMESTAMP_DESC =
             MessageColumns.RECEIVED_TIMESTAMP + " DESC";
 
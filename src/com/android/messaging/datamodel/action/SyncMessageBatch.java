@@ -63,6 +63,10 @@ class SyncMessageBatch {
     private final ArrayList<MmsMessage> mMmsToAdd;
     // Set of local messages to delete
     private final ArrayList<LocalDatabaseMessage> mMessagesToDelete;
+    // Messages built from the SMS/MMS to add, inserted together
+    private final ArrayList<MessageData> mMessagesToInsert;
+    // Telephony thread of each message to insert
+    private final ArrayList<Long> mThreadIdsToInsert;
 
     SyncMessageBatch(final ArrayList<SmsMessage> smsToAdd,
             final ArrayList<MmsMessage> mmsToAdd,
@@ -73,6 +77,8 @@ class SyncMessageBatch {
         mMessagesToDelete = messagesToDelete;
         mCache = cache;
         mConversationsToUpdate = new HashSet<String>();
+        mMessagesToInsert = new ArrayList<MessageData>(smsToAdd.size() + mmsToAdd.size());
+        mThreadIdsToInsert = new ArrayList<Long>(smsToAdd.size() + mmsToAdd.size());
     }
 
     void updateLocalDatabase() {
@@ -88,6 +94,7 @@ class SyncMessageBatch {
             for (final MmsMessage mms : mMmsToAdd) {
                 storeMms(db, mms);
             }
+            insertMessages(db);
             // Keep track of conversations with messages deleted
             for (final LocalDatabaseMessage message : mMessagesToDelete) {
                 mConversationsToUpdate.add(message.getConversationId());
@@ -178,19 +185,9 @@ class SyncMessageBatch {
                 sms.mTimestampInMillis,
                 sms.mBody);
 
-        // Inserting sms content into messages table
-        try {
-            BugleDatabaseOperations.insertNewMessageInTransaction(db, message);
-        } catch (SQLiteConstraintException e) {
-            rethrowSQLiteConstraintExceptionWithDetails(e, db, sms.mUri, sms.mThreadId,
-                    conversationId, selfId, participantId);
-        }
-
-        if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
-            LogUtil.v(TAG, "SyncMessageBatch: Inserted new message " + message.getMessageId()
-                    + " for SMS " + message.getSmsMessageUri() + " received at "
-                    + message.getReceivedTimeStamp());
-        }
+        // Sms content is inserted into messages table with the rest of the batch
+        mMessagesToInsert.add(message);
+        mThreadIdsToInsert.add(sms.mThreadId);
 
         // Keep track of updated conversation for later updating the conversation snippet, etc.
         mConversationsToUpdate.add(conversationId);
@@ -268,22 +265,48 @@ class SyncMessageBatch {
         final MessageData message = MmsUtils.createMmsMessage(mms, conversationId, participantId,
                 selfId, bugleStatus);
 
-        // Inserting mms content into messages table
+        // Mms content is inserted into messages table with the rest of the batch
+        mMessagesToInsert.add(message);
+        mThreadIdsToInsert.add(mms.mThreadId);
+
+        // Keep track of updated conversation for later updating the conversation snippet, etc.
+        mConversationsToUpdate.add(conversationId);
+    }
+
+    /**
+     * Insert the messages of all SMS/MMS stored with multi-row statements
+     */
+    private void insertMessages(final DatabaseWrapper db) {
         try {
-            BugleDatabaseOperations.insertNewMessageInTransaction(db, message);
+            BugleDatabaseOperations.insertNewMessagesInTransaction(db, mMessagesToInsert);
         } catch (SQLiteConstraintException e) {
-            rethrowSQLiteConstraintExceptionWithDetails(e, db, mms.mUri, mms.mThreadId,
-                    conversationId, selfId, participantId);
+            // Insert the messages that did not make it one by one to find the culprit
+            for (int i = 0; i < mMessagesToInsert.size(); i++) {
+                final MessageData message = mMessagesToInsert.get(i);
+                if (message.getMessageId() != null) {
+                    continue;
+                }
+                try {
+                    BugleDatabaseOperations.insertNewMessageInTransaction(db, message);
+                } catch (SQLiteConstraintException messageException) {
+                    rethrowSQLiteConstraintExceptionWithDetails(messageException, db,
+                            String.valueOf(message.getSmsMessageUri()), mThreadIdsToInsert.get(i),
+                            message.getConversationId(), message.getSelfId(),
+                            message.getParticipantId());
+                }
+            }
+            // No message fails on its own, pass the original failure on
+            throw e;
         }
 
         if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
-            LogUtil.v(TAG, "SyncMessageBatch: Inserted new message " + message.getMessageId()
-                    + " for MMS " + message.getSmsMessageUri() + " received at "
-                    + message.getReceivedTimeStamp());
+            for (final MessageData message : mMessagesToInsert) {
+                LogUtil.v(TAG, "SyncMessageBatch: Inserted new message " + message.getMessageId()
+                        + " for " + (message.getProtocol() == MessageData.PROTOCOL_SMS ?
+                                "SMS " : "MMS ") + message.getSmsMessageUri()
+                        + " received at " + message.getReceivedTimeStamp());
+            }
         }
-
-        // Keep track of updated conversation for later updating the conversation snippet, etc.
-        mConversationsToUpdate.add(conversationId);
     }
 
     // TODO: Remove this after we no longer see this crash (b/18375758)
@@ -333,7 +356,7 @@ class SyncMessageBatch {
 
     /**
      * Use the tracked latest message info to update conversations, including
-     * latest chat message and sort timestamp.
+     * latest chat message and sort timestamp. The refresh runs when the batch commits.
      */
     private void updateConversations(final DatabaseWrapper db) {
         for (final String conversationId : mConversationsToUpdate) {
@@ -344,8 +367,9 @@ class SyncMessageBatch {
 
             final boolean archived = mCache.isArchived(conversationId);
             // Always attempt to auto-switch conversation self id for sync/import case.
-            BugleDatabaseOperations.maybeRefreshConversationMetadataInTransaction(db,
-                    conversationId, true /*shouldAutoSwitchSelfId*/, archived /*keepArchived*/);
+            BugleDatabaseOperations.refreshConversationMetadataOnCommit(db, conversationId,
+                    true /*onlyIfLatestMessageChanged*/, true /*shouldAutoSwitchSelfId*/,
+                    archived /*keepArchived*/);
         }
     }
 
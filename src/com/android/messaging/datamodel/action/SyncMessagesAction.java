@@ -27,14 +27,20 @@ import android.provider.Telephony.Mms;
 import androidx.collection.LongSparseArray;
 
 import com.android.messaging.Factory;
+import com.android.messaging.datamodel.BugleDatabaseOperations;
 import com.android.messaging.datamodel.DataModel;
+import com.android.messaging.datamodel.DatabaseHelper;
+import com.android.messaging.datamodel.DatabaseHelper.MessageColumns;
 import com.android.messaging.datamodel.DatabaseWrapper;
 import com.android.messaging.datamodel.MessagingContentProvider;
+import com.android.messaging.datamodel.SyncBatchSizer;
 import com.android.messaging.datamodel.SyncManager;
 import com.android.messaging.datamodel.SyncManager.ThreadInfoCache;
+import com.android.messaging.datamodel.action.ThreadFingerprints.Fingerprint;
 import com.android.messaging.datamodel.data.ParticipantData;
 import com.android.messaging.mmslib.SqliteWrapper;
 import com.android.messaging.sms.DatabaseMessages;
+import com.android.messaging.sms.DatabaseMessages.DatabaseMessage;
 import com.android.messaging.sms.DatabaseMessages.LocalDatabaseMessage;
 import com.android.messaging.sms.DatabaseMessages.MmsMessage;
 import com.android.messaging.sms.DatabaseMessages.SmsMessage;
@@ -47,8 +53,11 @@ import com.android.messaging.util.BuglePrefsKeys;
 import com.android.messaging.util.ContentType;
 import com.android.messaging.util.LogUtil;
 import com.android.messaging.util.OsUtil;
+import com.google.common.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
@@ -64,10 +73,23 @@ public class SyncMessagesAction extends Action implements Parcelable {
     private static final String KEY_MAX_UPDATE = "max_update";
     private static final String KEY_LOWER_BOUND = "lower_bound";
     private static final String KEY_UPPER_BOUND = "upper_bound";
+    private static final String KEY_OVERLAP_TIMESTAMP = "overlap_timestamp";
+    private static final String KEY_DELTA = "delta";
+    private static final String KEY_PARTITIONED = "partitioned";
+    private static final String KEY_RESUME_THREADS = "resume_threads";
+    private static final String KEY_RESUME_UPPER_BOUNDS = "resume_upper_bounds";
     private static final String BUNDLE_KEY_LAST_TIMESTAMP = "last_timestamp";
     private static final String BUNDLE_KEY_SMS_MESSAGES = "sms_to_add";
     private static final String BUNDLE_KEY_MMS_MESSAGES = "mms_to_add";
     private static final String BUNDLE_KEY_MESSAGES_TO_DELETE = "messages_to_delete";
+    private static final String BUNDLE_KEY_BATCH_STORED = "batch_stored";
+    private static final String BUNDLE_KEY_ROWS_SCANNED = "rows_scanned";
+    private static final String BUNDLE_KEY_SCAN_MILLIS = "scan_millis";
+    private static final String BUNDLE_KEY_BATCH_BYTES = "batch_bytes";
+    private static final String BUNDLE_KEY_DELTA_THREADS = "delta_threads";
+    private static final String BUNDLE_KEY_DELTA_MORE = "delta_more";
+    private static final String BUNDLE_KEY_RESUME_THREADS = "resume_threads";
+    private static final String BUNDLE_KEY_RESUME_UPPER_BOUNDS = "resume_upper_bounds";
 
     /**
      * Start a full sync (backed off a few seconds to avoid pulling sending/receiving messages).
@@ -137,6 +159,22 @@ public class SyncMessagesAction extends Action implements Parcelable {
         actionParameters.putLong(KEY_UPPER_BOUND, upperBound);
         actionParameters.putInt(KEY_MAX_UPDATE, maxMessagesToUpdate);
         actionParameters.putLong(KEY_START_TIMESTAMP, startTimestamp);
+        actionParameters.putLong(KEY_OVERLAP_TIMESTAMP, -1L);
+    }
+
+    @Override
+    protected String getCoalescingKey() {
+        // A queued sync checks for messages that arrived after its upper bound once it
+        // completes, so a second sync of the same kind adds nothing. Full and incremental syncs
+        // are kept apart as a full sync covers more.
+        return actionParameters.getLong(KEY_LOWER_BOUND) < 0 ?
+                "SyncMessages:full" : "SyncMessages:incremental";
+    }
+
+    @Override
+    protected boolean canQueueInProcess() {
+        // Losing a sync with the process is harmless, every process start runs another
+        return true;
     }
 
     @Override
@@ -161,7 +199,15 @@ public class SyncMessagesAction extends Action implements Parcelable {
             final SyncCursorPair cursors = new SyncCursorPair(-1L, lowerBoundTimeMillis);
             final boolean inSync = cursors.isSynchronized(db);
             if (!inSync) {
-                if (syncManager.delayUntilFullSync(startTimestamp) == 0) {
+                if (ThreadFingerprints.hasStored(db)) {
+                    // Only rescan the threads that changed since the last sync
+                    actionParameters.putBoolean(KEY_DELTA, true);
+
+                    if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
+                        LogUtil.d(TAG, "SyncMessagesAction: Messages before "
+                                + lowerBoundTimeMillis + " not in sync; will do delta sync");
+                    }
+                } else if (syncManager.delayUntilFullSync(startTimestamp) == 0) {
                     lowerBoundTimeMillis = -1;
                     actionParameters.putLong(KEY_LOWER_BOUND, lowerBoundTimeMillis);
 
@@ -183,6 +229,13 @@ public class SyncMessagesAction extends Action implements Parcelable {
 
         // Check if sync allowed (can be too soon after last or one is already running)
         if (syncManager.shouldSync(lowerBoundTimeMillis < 0, startTimestamp)) {
+            if (lowerBoundTimeMillis < 0 && ThreadPartitionScanner.getPartitionCount() > 1) {
+                // Compare the full history thread by thread in parallel. With no fingerprints
+                // stored every thread counts as changed.
+                ThreadFingerprints.clearStored(db);
+                actionParameters.putBoolean(KEY_DELTA, true);
+                actionParameters.putBoolean(KEY_PARTITIONED, true);
+            }
             syncManager.startSyncBatch(upperBoundTimeMillis);
             requestBackgroundWork();
         }
@@ -192,39 +245,31 @@ public class SyncMessagesAction extends Action implements Parcelable {
 
     @Override
     protected Bundle doBackgroundWork() {
-        final BugleGservices bugleGservices = BugleGservices.get();
         final DatabaseWrapper db = DataModel.get().getDatabase();
+        final SyncManager syncManager = DataModel.get().getSyncManager();
+        final SyncBatchSizer sizer = syncManager.getBatchSizer();
 
-        final int maxMessagesToScan = bugleGservices.getInt(
-                BugleGservicesKeys.SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN,
-                BugleGservicesKeys.SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN_DEFAULT);
-
+        // Cap sync size to GServices limits and to what fits in memory right now
         final int initialMaxMessagesToUpdate = actionParameters.getInt(KEY_MAX_UPDATE);
-        final int smsSyncSubsequentBatchSizeMin = bugleGservices.getInt(
-                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MIN,
-                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MIN_DEFAULT);
-        final int smsSyncSubsequentBatchSizeMax = bugleGservices.getInt(
-                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MAX,
-                BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MAX_DEFAULT);
-
-        // Cap sync size to GServices limits
-        final int maxMessagesToUpdate = Math.max(smsSyncSubsequentBatchSizeMin,
-                Math.min(initialMaxMessagesToUpdate, smsSyncSubsequentBatchSizeMax));
+        final int maxMessagesToUpdate = sizer.getMaxMessagesToUpdate(initialMaxMessagesToUpdate);
+        final int maxMessagesToScan = sizer.getMaxMessagesToScan(maxMessagesToUpdate);
 
         final long lowerBoundTimeMillis = actionParameters.getLong(KEY_LOWER_BOUND);
         final long upperBoundTimeMillis = actionParameters.getLong(KEY_UPPER_BOUND);
+        final long startTimestamp = actionParameters.getLong(KEY_START_TIMESTAMP);
+        final boolean delta = actionParameters.getBoolean(KEY_DELTA);
 
-        LogUtil.i(TAG, "SyncMessagesAction: Starting batch for messages from "
-                + lowerBoundTimeMillis + " to " + upperBoundTimeMillis
+        LogUtil.i(TAG, "SyncMessagesAction: Starting " + (delta ? "delta " : "")
+                + "batch for messages from " + lowerBoundTimeMillis + " to " + upperBoundTimeMillis
                 + " (message update limit = " + maxMessagesToUpdate + ", message scan limit = "
                 + maxMessagesToScan + ")");
 
-        // Clear last change time so that we can work out if this batch is dirty when it completes
-        final SyncManager syncManager = DataModel.get().getSyncManager();
-
-        // Clear the singleton cache that maps threads to recipients and to conversations.
+        // Clear the singleton cache that maps threads to recipients and to conversations. Not
+        // for a prefetched batch though, the previous batch may still be writing through it.
         final SyncManager.ThreadInfoCache cache = syncManager.getThreadInfoCache();
-        cache.clear();
+        if (actionParameters.getLong(KEY_OVERLAP_TIMESTAMP) < 0) {
+            cache.clear();
+        }
 
         // Sms messages to store
         final ArrayList<SmsMessage> smsToAdd = new ArrayList<SmsMessage>();
@@ -234,29 +279,64 @@ public class SyncMessagesAction extends Action implements Parcelable {
         final ArrayList<LocalDatabaseMessage> messagesToDelete =
                 new ArrayList<LocalDatabaseMessage>();
 
+        final Bundle response = new Bundle();
         long lastTimestampMillis = SYNC_FAILED;
         if (syncManager.isSyncing(upperBoundTimeMillis)) {
-            // Cursors
-            final SyncCursorPair cursors = new SyncCursorPair(lowerBoundTimeMillis,
-                    upperBoundTimeMillis);
+            if (upperBoundTimeMillis == startTimestamp
+                    && ThreadFingerprints.getSnapshot(startTimestamp) == null
+                    && (lowerBoundTimeMillis < 0 || ThreadFingerprints.hasStored(db))) {
+                // First batch of a full sync, or of an incremental sync that has fingerprints to
+                // keep up to date. Fingerprint the threads before anything is read so they can be
+                // stored once the sync completes.
+                try {
+                    takeFingerprintSnapshot(startTimestamp);
+                } catch (final SQLiteException e) {
+                    // Later syncs will have to fall back to full syncs
+                    LogUtil.e(TAG, "SyncMessagesAction: Failed to fingerprint threads", e);
+                }
+            }
 
-            // Actually compare the messages using cursor pair
-            lastTimestampMillis = syncCursorPair(db, cursors, smsToAdd, mmsToAdd,
-                    messagesToDelete, maxMessagesToScan, maxMessagesToUpdate, cache);
+            if (delta) {
+                lastTimestampMillis = syncChangedThreads(db, startTimestamp, smsToAdd, mmsToAdd,
+                        messagesToDelete, maxMessagesToScan, maxMessagesToUpdate, cache,
+                        response);
+            } else {
+                // Cursors
+                final SyncCursorPair cursors = new SyncCursorPair(lowerBoundTimeMillis,
+                        upperBoundTimeMillis);
+
+                // Actually compare the messages using cursor pair
+                lastTimestampMillis = syncCursorPair(db, cursors, smsToAdd, mmsToAdd,
+                        messagesToDelete, maxMessagesToScan, maxMessagesToUpdate, cache,
+                        response);
+            }
         }
-        final Bundle response = new Bundle();
 
-        // If comparison succeeds bundle up the changes for processing in ActionService
+        // If comparison succeeds hand the changes over for processing in ActionService
         if (lastTimestampMillis > SYNC_FAILED) {
             final ArrayList<MmsMessage> mmsToAddList = new ArrayList<MmsMessage>();
+            long batchBytes = 0;
             for (int i = 0; i < mmsToAdd.size(); i++) {
                 final MmsMessage mms = mmsToAdd.valueAt(i);
                 mmsToAddList.add(mms);
+                batchBytes += SyncBatchSizer.estimateSize(mms);
             }
+            for (final SmsMessage sms : smsToAdd) {
+                batchBytes += SyncBatchSizer.estimateSize(sms);
+            }
+            response.putLong(BUNDLE_KEY_BATCH_BYTES, batchBytes);
 
-            response.putParcelableArrayList(BUNDLE_KEY_SMS_MESSAGES, smsToAdd);
-            response.putParcelableArrayList(BUNDLE_KEY_MMS_MESSAGES, mmsToAddList);
-            response.putParcelableArrayList(BUNDLE_KEY_MESSAGES_TO_DELETE, messagesToDelete);
+            final SyncBatchStore.Batch batch =
+                    new SyncBatchStore.Batch(smsToAdd, mmsToAddList, messagesToDelete);
+            if (SyncBatchStore.put(actionKey, batch)) {
+                // Both phases run in this process, skip parceling every message
+                response.putBoolean(BUNDLE_KEY_BATCH_STORED, true);
+            } else {
+                response.putParcelableArrayList(BUNDLE_KEY_SMS_MESSAGES, smsToAdd);
+                response.putParcelableArrayList(BUNDLE_KEY_MMS_MESSAGES, mmsToAddList);
+                response.putParcelableArrayList(BUNDLE_KEY_MESSAGES_TO_DELETE,
+                        messagesToDelete);
+            }
         }
         response.putLong(BUNDLE_KEY_LAST_TIMESTAMP, lastTimestampMillis);
 
@@ -273,12 +353,13 @@ public class SyncMessagesAction extends Action implements Parcelable {
      * @param maxMessagesToScan max messages to scan for changes
      * @param maxMessagesToUpdate max messages to return for updates
      * @param cache cache for conversation id / thread id / recipient set mapping
+     * @param response bundle to record rows scanned and scan time in
      * @return timestamp of the oldest message seen during the sync scan
      */
     private long syncCursorPair(final DatabaseWrapper db, final SyncCursorPair cursors,
             final ArrayList<SmsMessage> smsToAdd, final LongSparseArray<MmsMessage> mmsToAdd,
             final ArrayList<LocalDatabaseMessage> messagesToDelete, final int maxMessagesToScan,
-            final int maxMessagesToUpdate, final ThreadInfoCache cache) {
+            final int maxMessagesToUpdate, final ThreadInfoCache cache, final Bundle response) {
         long lastTimestampMillis;
         final long startTimeMillis = SystemClock.elapsedRealtime();
 
@@ -335,6 +416,8 @@ public class SyncMessagesAction extends Action implements Parcelable {
         }
 
         final long endTimeMillis = SystemClock.elapsedRealtime();
+        response.putInt(BUNDLE_KEY_ROWS_SCANNED, localPos + remotePos);
+        response.putLong(BUNDLE_KEY_SCAN_MILLIS, endTimeMillis - startTimeMillis);
 
         if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
             LogUtil.d(TAG, "SyncMessagesAction: Scan complete (took "
@@ -347,19 +430,181 @@ public class SyncMessagesAction extends Action implements Parcelable {
         return lastTimestampMillis;
     }
 
+    /**
+     * Fingerprint the threads in the telephony provider as of the start of a sync
+     */
+    private static LongSparseArray<Fingerprint> takeFingerprintSnapshot(
+            final long startTimestamp) {
+        final long startTimeMillis = SystemClock.elapsedRealtime();
+        final LongSparseArray<Fingerprint> snapshot = ThreadFingerprints.queryRemote();
+        ThreadFingerprints.setSnapshot(startTimestamp, snapshot);
+        if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
+            LogUtil.d(TAG, "SyncMessagesAction: Fingerprinted " + snapshot.size()
+                    + " threads (took " + (SystemClock.elapsedRealtime() - startTimeMillis)
+                    + " ms)");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Compare the messages of the threads whose fingerprint changed since the last sync, thread
+     * after thread until the scan or update limit is reached. Threads stopped part way through
+     * by the previous batch are resumed first. For a partitioned full sync threads that only have
+     * local messages left are compared too, and the threads are compared in parallel.
+     * <p>
+     * A partitioned full sync compares the threads up to the upper bound of the sync. An
+     * incremental sync compares them up to its lower bound, which is where the messages before
+     * its window went out of sync; the time window batches that follow cover the rest.
+     * @param db local database wrapper
+     * @param startTimestamp start timestamp of the sync
+     * @param smsToAdd newly found sms messages to add
+     * @param mmsToAdd newly found mms messages to add
+     * @param messagesToDelete messages not found needing deletion
+     * @param maxMessagesToScan max messages to scan for changes
+     * @param maxMessagesToUpdate max messages to return for updates
+     * @param cache cache for conversation id / thread id / recipient set mapping
+     * @param response bundle to record the threads compared and whether any are left in
+     * @return SYNC_COMPLETE or SYNC_FAILED
+     */
+    private long syncChangedThreads(final DatabaseWrapper db, final long startTimestamp,
+            final ArrayList<SmsMessage> smsToAdd, final LongSparseArray<MmsMessage> mmsToAdd,
+            final ArrayList<LocalDatabaseMessage> messagesToDelete, final int maxMessagesToScan,
+            final int maxMessagesToUpdate, final ThreadInfoCache cache, final Bundle response) {
+        final long startTimeMillis = SystemClock.elapsedRealtime();
+        int rowsScanned = 0;
+        try {
+            LongSparseArray<Fingerprint> remote = ThreadFingerprints.getSnapshot(startTimestamp);
+            if (remote == null) {
+                remote = takeFingerprintSnapshot(startTimestamp);
+            }
+            final LongSparseArray<Fingerprint> stored = ThreadFingerprints.queryStored(db);
+            long[] changedThreads = ThreadFingerprints.getChangedThreads(remote, stored);
+            final boolean partitioned = actionParameters.getBoolean(KEY_PARTITIONED);
+            if (partitioned) {
+                changedThreads = addLocalOnlyThreads(db, changedThreads, remote, stored);
+            }
+            final LongSparseArray<Long> resumeUpperBounds = getResumeUpperBounds(
+                    actionParameters.getLongArray(KEY_RESUME_THREADS),
+                    actionParameters.getLongArray(KEY_RESUME_UPPER_BOUNDS));
+            changedThreads = putResumedThreadsFirst(changedThreads, resumeUpperBounds);
+
+            final long scanUpperBound = partitioned ? actionParameters.getLong(KEY_UPPER_BOUND)
+                    : actionParameters.getLong(KEY_LOWER_BOUND);
+            final ThreadPartitionScanner.Progress progress = ThreadPartitionScanner.scan(db,
+                    changedThreads, -1L /* lowerBound */, scanUpperBound, resumeUpperBounds,
+                    maxMessagesToScan, maxMessagesToUpdate,
+                    partitioned ? ThreadPartitionScanner.getPartitionCount() : 1,
+                    smsToAdd, mmsToAdd, messagesToDelete, cache);
+            rowsScanned = progress.mRowsScanned;
+            final int threadCount = progress.mCompletedThreadIds.length;
+            response.putLongArray(BUNDLE_KEY_DELTA_THREADS, progress.mCompletedThreadIds);
+            response.putBoolean(BUNDLE_KEY_DELTA_MORE, threadCount < changedThreads.length);
+            final LongSparseArray<Long> resumed = progress.mResumeUpperBounds;
+            final long[] resumeThreads = new long[resumed.size()];
+            final long[] resumeBounds = new long[resumed.size()];
+            for (int i = 0; i < resumed.size(); i++) {
+                resumeThreads[i] = resumed.keyAt(i);
+                resumeBounds[i] = resumed.valueAt(i);
+            }
+            response.putLongArray(BUNDLE_KEY_RESUME_THREADS, resumeThreads);
+            response.putLongArray(BUNDLE_KEY_RESUME_UPPER_BOUNDS, resumeBounds);
+
+            LogUtil.i(TAG, "SyncMessagesAction: Compared " + threadCount + " of "
+                    + changedThreads.length + " changed threads, " + resumed.size()
+                    + " left part way");
+
+            // Batch loading the parts of the MMS messages in this batch
+            loadMmsParts(mmsToAdd);
+            // Lookup senders for incoming mms messages
+            setMmsSenders(mmsToAdd, cache);
+        } catch (final SQLiteException e) {
+            LogUtil.e(TAG, "SyncMessagesAction: Database exception", e);
+            return SYNC_FAILED;
+        } catch (final Exception e) {
+            LogUtil.wtf(TAG, "SyncMessagesAction: unexpected failure in delta scan", e);
+            return SYNC_FAILED;
+        }
+        response.putInt(BUNDLE_KEY_ROWS_SCANNED, rowsScanned);
+        response.putLong(BUNDLE_KEY_SCAN_MILLIS, SystemClock.elapsedRealtime() - startTimeMillis);
+        return SyncCursorPair.SYNC_COMPLETE;
+    }
+
+    /**
+     * @return the upper bounds to resume threads from, keyed by thread id
+     */
+    @VisibleForTesting
+    static LongSparseArray<Long> getResumeUpperBounds(final long[] threadIds,
+            final long[] upperBounds) {
+        final LongSparseArray<Long> resumeUpperBounds = new LongSparseArray<Long>();
+        if (threadIds != null && upperBounds != null) {
+            for (int i = 0; i < Math.min(threadIds.length, upperBounds.length); i++) {
+                resumeUpperBounds.put(threadIds[i], upperBounds[i]);
+            }
+        }
+        return resumeUpperBounds;
+    }
+
+    /**
+     * Order the threads so that those to resume come first, the rest keep their order
+     */
+    @VisibleForTesting
+    static long[] putResumedThreadsFirst(final long[] threadIds,
+            final LongSparseArray<Long> resumeUpperBounds) {
+        final long[] result = new long[threadIds.length];
+        int count = 0;
+        for (final long threadId : threadIds) {
+            if (resumeUpperBounds.indexOfKey(threadId) >= 0) {
+                result[count++] = threadId;
+            }
+        }
+        for (final long threadId : threadIds) {
+            if (resumeUpperBounds.indexOfKey(threadId) < 0) {
+                result[count++] = threadId;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add the threads that only have local messages left, which a full sync has to clean up
+     * even though no fingerprint was stored for them
+     */
+    private static long[] addLocalOnlyThreads(final DatabaseWrapper db, final long[] threadIds,
+            final LongSparseArray<Fingerprint> remote, final LongSparseArray<Fingerprint> stored) {
+        final long[] localThreadIds = ThreadPartitionScanner.queryLocalThreadIds(db);
+        final long[] result = Arrays.copyOf(threadIds, threadIds.length + localThreadIds.length);
+        int count = threadIds.length;
+        for (final long threadId : localThreadIds) {
+            // Threads in either set are already in the list when changed
+            if (remote.indexOfKey(threadId) < 0 && stored.indexOfKey(threadId) < 0) {
+                result[count++] = threadId;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
     /**
      * Perform local database updates and schedule follow on sync actions
      */
     @Override
     protected Object processBackgroundResponse(final Bundle response) {
-        final long lastTimestampMillis = response.getLong(BUNDLE_KEY_LAST_TIMESTAMP);
+        // Always claim the stored batch so that orphaned batches don't linger in the store
+        final SyncBatchStore.Batch scanned = getScannedBatch(response);
+        long lastTimestampMillis = response.getLong(BUNDLE_KEY_LAST_TIMESTAMP);
+        if (lastTimestampMillis > SYNC_FAILED && scanned == null) {
+            LogUtil.w(TAG, "SyncMessagesAction: Scanned messages for batch not found");
+            lastTimestampMillis = SYNC_FAILED;
+        }
         final long lowerBoundTimeMillis = actionParameters.getLong(KEY_LOWER_BOUND);
         final long upperBoundTimeMillis = actionParameters.getLong(KEY_UPPER_BOUND);
         final int maxMessagesToUpdate = actionParameters.getInt(KEY_MAX_UPDATE);
         final long startTimestamp = actionParameters.getLong(KEY_START_TIMESTAMP);
+        final boolean delta = actionParameters.getBoolean(KEY_DELTA);
+        final boolean partitioned = actionParameters.getBoolean(KEY_PARTITIONED);
 
         // Check with the sync manager if any conflicting updates have been made to databases
         final SyncManager syncManager = DataModel.get().getSyncManager();
+        final SyncBatchSizer sizer = syncManager.getBatchSizer();
         final boolean orphan = !syncManager.isSyncing(upperBoundTimeMillis);
 
         // lastTimestampMillis used to indicate failure
@@ -388,17 +633,57 @@ public class SyncMessagesAction extends Action implements Parcelable {
                 final SyncMessagesAction nextBatch =
                         new SyncMessagesAction(lowerBoundTimeMillis, upperBoundTimeMillis,
                                 maxMessagesToUpdate, startTimestamp);
+                nextBatch.actionParameters.putBoolean(KEY_DELTA, delta);
+                nextBatch.actionParameters.putBoolean(KEY_PARTITIONED, partitioned);
+                nextBatch.actionParameters.putLongArray(KEY_RESUME_THREADS,
+                        actionParameters.getLongArray(KEY_RESUME_THREADS));
+                nextBatch.actionParameters.putLongArray(KEY_RESUME_UPPER_BOUNDS,
+                        actionParameters.getLongArray(KEY_RESUME_UPPER_BOUNDS));
 
                 syncManager.startSyncBatch(upperBoundTimeMillis);
                 requestBackgroundWork(nextBatch);
             } else {
                 // Succeeded
-                final ArrayList<SmsMessage> smsToAdd =
-                        response.getParcelableArrayList(BUNDLE_KEY_SMS_MESSAGES);
-                final ArrayList<MmsMessage> mmsToAdd =
-                        response.getParcelableArrayList(BUNDLE_KEY_MMS_MESSAGES);
+                final ArrayList<SmsMessage> smsToAdd = scanned.mSmsToAdd;
+                final ArrayList<MmsMessage> mmsToAdd = scanned.mMmsToAdd;
                 final ArrayList<LocalDatabaseMessage> messagesToDelete =
-                        response.getParcelableArrayList(BUNDLE_KEY_MESSAGES_TO_DELETE);
+                        scanned.mMessagesToDelete;
+
+                final DatabaseWrapper db = DataModel.get().getDatabase();
+                final long overlapTimestampMillis =
+                        actionParameters.getLong(KEY_OVERLAP_TIMESTAMP);
+                if (overlapTimestampMillis >= 0) {
+                    // This batch was read while the previous one was being written, so it may
+                    // have picked up messages from their shared millisecond a second time
+                    removeAlreadySynced(db, overlapTimestampMillis, smsToAdd);
+                    removeAlreadySynced(db, overlapTimestampMillis, mmsToAdd);
+                }
+
+                // Determine if there are more messages that need to be scanned
+                final boolean moreToSync = !delta
+                        && lastTimestampMillis >= 0 && lastTimestampMillis >= lowerBoundTimeMillis;
+                // Include final millisecond of last sync in next sync
+                final long newUpperBoundTimeMillis = lastTimestampMillis + 1;
+                if (moreToSync) {
+                    if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
+                        LogUtil.d(TAG, "SyncMessagesAction: More messages to sync; scheduling next "
+                                + "sync batch now.");
+                    }
+
+                    final SyncMessagesAction nextBatch =
+                            new SyncMessagesAction(lowerBoundTimeMillis, newUpperBoundTimeMillis,
+                                    sizer.getTargetBatchSize(), startTimestamp);
+                    nextBatch.actionParameters.putLong(KEY_OVERLAP_TIMESTAMP,
+                            lastTimestampMillis);
+
+                    // Send the next batch to the background worker before writing this one so
+                    // that reading it overlaps with the local database update below. Batches
+                    // are still processed in order as the action service runs one at a time.
+                    // Should the update fail, the next batch is dropped and this one redone.
+                    syncManager.startSyncBatch(newUpperBoundTimeMillis);
+                    requestBackgroundWork(nextBatch);
+                    sendBackgroundActions(DataModel.get().getBackgroundWorkerForActionService());
+                }
 
                 final int messagesUpdated = smsToAdd.size() + mmsToAdd.size()
                         + messagesToDelete.size();
@@ -409,12 +694,24 @@ public class SyncMessagesAction extends Action implements Parcelable {
                     final long startTimeMillis = SystemClock.elapsedRealtime();
                     final SyncMessageBatch batch = new SyncMessageBatch(smsToAdd, mmsToAdd,
                             messagesToDelete, syncManager.getThreadInfoCache());
-                    batch.updateLocalDatabase();
+                    try {
+                        batch.updateLocalDatabase();
+                    } catch (final SQLiteException e) {
+                        if (moreToSync && retryFailedWrite(syncManager, newUpperBoundTimeMillis)) {
+                            LogUtil.e(TAG, "SyncMessagesAction: Failed to update local database; "
+                                    + "redoing sync batch of messages from " + lowerBoundTimeMillis
+                                    + " to " + upperBoundTimeMillis, e);
+                            return null;
+                        }
+                        throw e;
+                    }
                     final long endTimeMillis = SystemClock.elapsedRealtime();
                     txnTimeMillis = endTimeMillis - startTimeMillis;
 
                     LogUtil.i(TAG, "SyncMessagesAction: Updated local database "
-                            + "(took " + txnTimeMillis + " ms). Added "
+                            + "(took " + txnTimeMillis + " ms, "
+                            + (messagesUpdated * 1000L / Math.max(1, txnTimeMillis))
+                            + " messages/s). Added "
                             + smsToAdd.size() + " SMS, added " + mmsToAdd.size() + " MMS, deleted "
                             + messagesToDelete.size() + " messages.");
 
@@ -433,26 +730,43 @@ public class SyncMessagesAction extends Action implements Parcelable {
                         MessagingContentProvider.notifyPartsChanged();
                     }
                 }
-                // Determine if there are more messages that need to be scanned
-                if (lastTimestampMillis >= 0 && lastTimestampMillis >= lowerBoundTimeMillis) {
-                    if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
-                        LogUtil.d(TAG, "SyncMessagesAction: More messages to sync; scheduling next "
-                                + "sync batch now.");
+                // Feed this batch's throughput into the size of the batch after next
+                sizer.onBatchComplete(upperBoundTimeMillis,
+                        response.getInt(BUNDLE_KEY_ROWS_SCANNED), messagesUpdated,
+                        response.getLong(BUNDLE_KEY_BATCH_BYTES),
+                        response.getLong(BUNDLE_KEY_SCAN_MILLIS), txnTimeMillis);
+
+                final boolean moreThreads = response.getBoolean(BUNDLE_KEY_DELTA_MORE);
+                if (delta && (moreThreads || !partitioned)) {
+                    // The compared threads now match their fingerprint
+                    final LongSparseArray<Fingerprint> snapshot =
+                            ThreadFingerprints.getSnapshot(startTimestamp);
+                    final long[] threadIds = response.getLongArray(BUNDLE_KEY_DELTA_THREADS);
+                    if (snapshot != null && threadIds != null) {
+                        for (final long threadId : threadIds) {
+                            ThreadFingerprints.store(db, threadId, snapshot.get(threadId));
+                        }
                     }
 
-                    // Include final millisecond of last sync in next sync
-                    final long newUpperBoundTimeMillis = lastTimestampMillis + 1;
-                    final int newMaxMessagesToUpdate = nextBatchSize(messagesUpdated,
-                            txnTimeMillis);
-
+                    // Go on with the rest of the changed threads, then with the sync window
                     final SyncMessagesAction nextBatch =
-                            new SyncMessagesAction(lowerBoundTimeMillis, newUpperBoundTimeMillis,
-                                    newMaxMessagesToUpdate, startTimestamp);
+                            new SyncMessagesAction(lowerBoundTimeMillis, upperBoundTimeMillis,
+                                    sizer.getTargetBatchSize(), startTimestamp);
+                    nextBatch.actionParameters.putBoolean(KEY_DELTA, moreThreads);
+                    nextBatch.actionParameters.putBoolean(KEY_PARTITIONED,
+                            moreThreads && partitioned);
+                    if (moreThreads) {
+                        nextBatch.actionParameters.putLongArray(KEY_RESUME_THREADS,
+                                response.getLongArray(BUNDLE_KEY_RESUME_THREADS));
+                        nextBatch.actionParameters.putLongArray(KEY_RESUME_UPPER_BOUNDS,
+                                response.getLongArray(BUNDLE_KEY_RESUME_UPPER_BOUNDS));
+                    }
 
-                    // Proceed with next batch
-                    syncManager.startSyncBatch(newUpperBoundTimeMillis);
+                    syncManager.startSyncBatch(upperBoundTimeMillis);
                     requestBackgroundWork(nextBatch);
-                } else {
+                } else if (!moreToSync) {
+                    // Also reached by a partitioned full sync once it has compared every
+                    // thread, which leaves nothing for the time window batches to do
                     final BuglePrefs prefs = BuglePrefs.getApplicationPrefs();
                     // Save sync completion time so next sync will start from here
                     prefs.putLong(BuglePrefsKeys.LAST_SYNC_TIME, startTimestamp);
@@ -466,7 +780,6 @@ public class SyncMessagesAction extends Action implements Parcelable {
                     // After any sync check if new messages have arrived
                     final SyncCursorPair recents = new SyncCursorPair(startTimestamp, now);
                     final SyncCursorPair olders = new SyncCursorPair(-1L, startTimestamp);
-                    final DatabaseWrapper db = DataModel.get().getDatabase();
                     if (!recents.isSynchronized(db)) {
                         LogUtil.i(TAG, "SyncMessagesAction: Changed messages after sync; "
                                 + "scheduling an incremental sync now.");
@@ -490,12 +803,15 @@ public class SyncMessagesAction extends Action implements Parcelable {
                     } else {
                         LogUtil.i(TAG, "SyncMessagesAction: All messages now in sync");
 
+                        // Everything before the start of this sync matches its fingerprints
+                        ThreadFingerprints.storeSnapshot(db, startTimestamp);
+
                         // All done, in sync
                         syncManager.complete();
                     }
                 }
                 // Either sync should be complete or we should have a follow up request
-                Assert.isTrue(hasBackgroundActions() || !syncManager.isSyncing());
+                Assert.isTrue(moreToSync || hasBackgroundActions() || !syncManager.isSyncing());
             }
         }
 
@@ -503,25 +819,80 @@ public class SyncMessagesAction extends Action implements Parcelable {
     }
 
     /**
-     * Decide the next batch size based on the stats we collected with past batch
-     * @param messagesUpdated number of messages updated in this batch
-     * @param txnTimeMillis time the transaction took in ms
-     * @return Target number of messages to sync for next batch
+     * Recover from a failed write of this batch after the next batch was already read ahead. The
+     * next batch was read on the assumption that this one would land, so it is dropped and this
+     * batch's window is read again, unless the sync has already retried a write.
+     * @param nextUpperBoundTimeMillis upper bound of the batch read ahead
+     * @return true if the batch is being redone, false if the sync was given up instead
      */
-    private static int nextBatchSize(final int messagesUpdated, final long txnTimeMillis) {
-        final BugleGservices bugleGservices = BugleGservices.get();
-        final long smsSyncSubsequentBatchTimeLimitMillis = bugleGservices.getLong(
-                BugleGservicesKeys.SMS_SYNC_BATCH_TIME_LIMIT_MILLIS,
-                BugleGservicesKeys.SMS_SYNC_BATCH_TIME_LIMIT_MILLIS_DEFAULT);
+    private boolean retryFailedWrite(final SyncManager syncManager,
+            final long nextUpperBoundTimeMillis) {
+        final long upperBoundTimeMillis = actionParameters.getLong(KEY_UPPER_BOUND);
+        if (!syncManager.shouldRetryFailedWrite()) {
+            syncManager.abandonSyncBatch();
+            syncManager.complete();
+            return false;
+        }
+        if (nextUpperBoundTimeMillis == upperBoundTimeMillis) {
+            // The batch read ahead covers this whole window, so it already is the redo. It was
+            // read before this write or was held off by it, and the write was rolled back.
+            return true;
+        }
+        syncManager.abandonSyncBatch();
+        final SyncMessagesAction redo = new SyncMessagesAction(
+                actionParameters.getLong(KEY_LOWER_BOUND), upperBoundTimeMillis,
+                actionParameters.getInt(KEY_MAX_UPDATE),
+                actionParameters.getLong(KEY_START_TIMESTAMP));
+        redo.actionParameters.putLong(KEY_OVERLAP_TIMESTAMP,
+                actionParameters.getLong(KEY_OVERLAP_TIMESTAMP));
+        syncManager.startSyncBatch(upperBoundTimeMillis);
+        requestBackgroundWork(redo);
+        return true;
+    }
+
+    /**
+     * Get the messages scanned by the background work, from the batch store if they were handed
+     * over in process or from the response bundle otherwise
+     * @return the scanned messages or null if the scan failed or they are no longer available
+     */
+    private SyncBatchStore.Batch getScannedBatch(final Bundle response) {
+        if (response.getBoolean(BUNDLE_KEY_BATCH_STORED)) {
+            return SyncBatchStore.take(actionKey);
+        }
+        final ArrayList<SmsMessage> smsToAdd =
+                response.getParcelableArrayList(BUNDLE_KEY_SMS_MESSAGES);
+        final ArrayList<MmsMessage> mmsToAdd =
+                response.getParcelableArrayList(BUNDLE_KEY_MMS_MESSAGES);
+        final ArrayList<LocalDatabaseMessage> messagesToDelete =
+                response.getParcelableArrayList(BUNDLE_KEY_MESSAGES_TO_DELETE);
+        if (smsToAdd == null || mmsToAdd == null || messagesToDelete == null) {
+            return null;
+        }
+        return new SyncBatchStore.Batch(smsToAdd, mmsToAdd, messagesToDelete);
+    }
 
-        if (txnTimeMillis <= 0) {
-            return 0;
+    /**
+     * Drop messages at the given timestamp that are already in the local database
+     * @param db local database wrapper
+     * @param timestampMillis timestamp shared with the previous batch
+     * @param messages sms or mms messages to add
+     */
+    private static void removeAlreadySynced(final DatabaseWrapper db, final long timestampMillis,
+            final List<? extends DatabaseMessage> messages) {
+        final Iterator<? extends DatabaseMessage> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            final DatabaseMessage message = iterator.next();
+            if (message.getTimestampInMillis() == timestampMillis
+                    && db.queryNumEntries(DatabaseHelper.MESSAGES_TABLE,
+                            MessageColumns.SMS_MESSAGE_URI + "=?",
+                            new String[] { message.getUri() }) > 0) {
+                if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
+                    LogUtil.v(TAG, "SyncMessagesAction: " + message.getUri()
+                            + " already synced by previous batch");
+                }
+                iterator.remove();
+            }
         }
-        // Number of messages we can sync within the batch time limit using
-        // the average sync time calculated based on the stats we collected
-        // in previous batch
-        return (int) ((double) (messagesUpdated) / (double) txnTimeMillis
-                        * smsSyncSubsequentBatchTimeLimitMillis);
     }
 
     /**
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.provider.Telephony.Mms;
+import android.provider.Telephony.Sms;
+import androidx.collection.LongSparseArray;
+
+import com.android.messaging.Factory;
+import com.android.messaging.datamodel.DatabaseHelper;
+import com.android.messaging.datamodel.DatabaseHelper.ThreadFingerprintColumns;
+import com.android.messaging.datamodel.DatabaseWrapper;
+import com.android.messaging.datamodel.data.MessageData;
+import com.android.messaging.mmslib.SqliteWrapper;
+import com.android.messaging.util.LogUtil;
+
+import java.util.Arrays;
+
+/**
+ * Per thread fingerprints (message count, max message id and an order independent hash of the
+ * message ids and dates) of the telephony SMS/MMS tables. The fingerprints as of the last
+ * completed sync are kept in the local database so that a delta sync only has to rescan the
+ * threads whose fingerprint has changed since.
+ */
+final class ThreadFingerprints {
+    private static final String TAG = LogUtil.BUGLE_DATAMODEL_TAG;
+
+    private static final String[] REMOTE_PROJECTION = new String[] {
+            Sms.THREAD_ID,
+            Sms._ID,
+            Sms.DATE,
+    };
+    private static final int INDEX_THREAD_ID = 0;
+    private static final int INDEX_ID = 1;
+    private static final int INDEX_DATE = 2;
+
+    private static final String[] STORED_PROJECTION = new String[] {
+            ThreadFingerprintColumns.THREAD_ID,
+            ThreadFingerprintColumns.MESSAGE_COUNT,
+            ThreadFingerprintColumns.MAX_MESSAGE_ID,
+            ThreadFingerprintColumns.HASH,
+    };
+    private static final int INDEX_STORED_THREAD_ID = 0;
+    private static final int INDEX_STORED_MESSAGE_COUNT = 1;
+    private static final int INDEX_STORED_MAX_MESSAGE_ID = 2;
+    private static final int INDEX_STORED_HASH = 3;
+
+    /**
+     * Fingerprint of the messages of one thread
+     */
+    static class Fingerprint {
+        private int mCount;
+        private long mMaxId = -1;
+        private long mHash;
+
+        Fingerprint() {
+        }
+
+        Fingerprint(final int count, final long maxId, final long hash) {
+            mCount = count;
+            mMaxId = maxId;
+            mHash = hash;
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        void add(final int protocol, final long id, final long date) {
+            mCount++;
+            mMaxId = Math.max(mMaxId, id);
+            // Summing mixed values keeps the hash independent of the order messages are seen in
+            long h = (id * 31 + protocol) * 0x9E3779B97F4A7C15L + date;
+            h ^= (h >>> 31);
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= (h >>> 29);
+            mHash += h;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            final Fingerprint other = (Fingerprint) o;
+            return mCount == other.mCount && mMaxId == other.mMaxId && mHash == other.mHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (mHash ^ (mHash >>> 32));
+        }
+    }
+
+    // Remote fingerprints taken when the sync now running started, stored once it completes
+    private static long sSnapshotTimestamp = -1;
+    private static LongSparseArray<Fingerprint> sSnapshot;
+
+    private ThreadFingerprints() {
+    }
+
+    /**
+     * Compute the fingerprints of all threads in the telephony provider
+     * @throws SQLiteException if the telephony provider can't be read
+     */
+    static LongSparseArray<Fingerprint> queryRemote() {
+        final LongSparseArray<Fingerprint> fingerprints = new LongSparseArray<Fingerprint>();
+        addRemote(fingerprints, Sms.CONTENT_URI, SyncCursorPair.getSmsTypeSelectionSql(),
+                MessageData.PROTOCOL_SMS);
+        addRemote(fingerprints, Mms.CONTENT_URI, SyncCursorPair.getMmsTypeSelectionSql(),
+                MessageData.PROTOCOL_MMS);
+        return fingerprints;
+    }
+
+    private static void addRemote(final LongSparseArray<Fingerprint> fingerprints,
+            final Uri uri, final String selection, final int protocol) {
+        final Context context = Factory.get().getApplicationContext();
+        final Cursor cursor = SqliteWrapper.query(context, context.getContentResolver(), uri,
+                REMOTE_PROJECTION, selection, null/*selectionArgs*/, null/*sortOrder*/);
+        if (cursor == null) {
+            // Treating this as no messages would rescan every thread, fail the sync instead
+            throw new SQLiteException("Failed to query " + uri + " for thread fingerprints");
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final long threadId = cursor.getLong(INDEX_THREAD_ID);
+                Fingerprint fingerprint = fingerprints.get(threadId);
+                if (fingerprint == null) {
+                    fingerprint = new Fingerprint();
+                    fingerprints.put(threadId, fingerprint);
+                }
+                fingerprint.add(protocol, cursor.getLong(INDEX_ID), cursor.getLong(INDEX_DATE));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read the fingerprints stored by the last completed sync
+     */
+    static LongSparseArray<Fingerprint> queryStored(final DatabaseWrapper db) {
+        final LongSparseArray<Fingerprint> fingerprints = new LongSparseArray<Fingerprint>();
+        final Cursor cursor = db.query(DatabaseHelper.THREAD_FINGERPRINTS_TABLE,
+                STORED_PROJECTION, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                fingerprints.put(cursor.getLong(INDEX_STORED_THREAD_ID), new Fingerprint(
+                        cursor.getInt(INDEX_STORED_MESSAGE_COUNT),
+                        cursor.getLong(INDEX_STORED_MAX_MESSAGE_ID),
+                        cursor.getLong(INDEX_STORED_HASH)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @return true if a completed sync has stored fingerprints that a delta sync can use
+     */
+    static boolean hasStored(final DatabaseWrapper db) {
+        return db.queryNumEntries(DatabaseHelper.THREAD_FINGERPRINTS_TABLE, null, null) > 0;
+    }
+
+    /**
+     * Drop the stored fingerprints so that every thread is compared again
+     */
+    static void clearStored(final DatabaseWrapper db) {
+        db.delete(DatabaseHelper.THREAD_FINGERPRINTS_TABLE, null, null);
+    }
+
+    /**
+     * @return the ids of threads whose remote fingerprint differs from the stored one, including
+     *     threads that only exist on one side
+     */
+    static long[] getChangedThreads(final LongSparseArray<Fingerprint> remote,
+            final LongSparseArray<Fingerprint> stored) {
+        final long[] changed = new long[remote.size() + stored.size()];
+        int count = 0;
+        for (int i = 0; i < remote.size(); i++) {
+            if (!remote.valueAt(i).equals(stored.get(remote.keyAt(i)))) {
+                changed[count++] = remote.keyAt(i);
+            }
+        }
+        for (int i = 0; i < stored.size(); i++) {
+            if (remote.indexOfKey(stored.keyAt(i)) < 0) {
+                changed[count++] = stored.keyAt(i);
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    /**
+     * Store the fingerprint of one thread
+     * @param fingerprint the fingerprint or null if the thread no longer exists
+     */
+    static void store(final DatabaseWrapper db, final long threadId,
+            final Fingerprint fingerprint) {
+        if (fingerprint == null) {
+            db.delete(DatabaseHelper.THREAD_FINGERPRINTS_TABLE,
+                    ThreadFingerprintColumns.THREAD_ID + "=?",
+                    new String[] { Long.toString(threadId) });
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(ThreadFingerprintColumns.THREAD_ID, threadId);
+        values.put(ThreadFingerprintColumns.MESSAGE_COUNT, fingerprint.mCount);
+        values.put(ThreadFingerprintColumns.MAX_MESSAGE_ID, fingerprint.mMaxId);
+        values.put(ThreadFingerprintColumns.HASH, fingerprint.mHash);
+        db.replace(DatabaseHelper.THREAD_FINGERPRINTS_TABLE, null, values);
+    }
+
+    /**
+     * Remember the remote fingerprints taken at the start of a sync
+     */
+    static synchronized void setSnapshot(final long syncStartTimestamp,
+            final LongSparseArray<Fingerprint> fingerprints) {
+        sSnapshotTimestamp = syncStartTimestamp;
+        sSnapshot = fingerprints;
+    }
+
+    /**
+     * @return the remote fingerprints taken at the start of the given sync or null if none
+     */
+    static synchronized LongSparseArray<Fingerprint> getSnapshot(final long syncStartTimestamp) {
+        return sSnapshotTimestamp == syncStartTimestamp ? sSnapshot : null;
+    }
+
+    /**
+     * Replace the stored fingerprints with the snapshot taken at the start of the given sync,
+     * once that sync has brought all messages before its start in sync
+     */
+    static void storeSnapshot(final DatabaseWrapper db, final long syncStartTimestamp) {
+        final LongSparseArray<Fingerprint> snapshot;
+        synchronized (ThreadFingerprints.class) {
+            snapshot = getSnapshot(syncStartTimestamp);
+            sSnapshotTimestamp = -1;
+            sSnapshot = null;
+        }
+        if (snapshot == null) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            db.delete(DatabaseHelper.THREAD_FINGERPRINTS_TABLE, null, null);
+            for (int i = 0; i < snapshot.size(); i++) {
+                store(db, snapshot.keyAt(i), snapshot.valueAt(i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (LogUtil.isLoggable(TAG, LogUtil.DEBUG)) {
+            LogUtil.d(TAG, "ThreadFingerprints: Stored fingerprints of " + snapshot.size()
+                    + " threads");
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import android.database.Cursor;
+import androidx.collection.LongSparseArray;
+
+import com.android.messaging.datamodel.BugleDatabaseOperations;
+import com.android.messaging.datamodel.DatabaseHelper;
+import com.android.messaging.datamodel.DatabaseHelper.ConversationColumns;
+import com.android.messaging.datamodel.DatabaseHelper.MessageColumns;
+import com.android.messaging.datamodel.DatabaseWrapper;
+import com.android.messaging.datamodel.SyncManager.ThreadInfoCache;
+import com.android.messaging.sms.DatabaseMessages.LocalDatabaseMessage;
+import com.android.messaging.sms.DatabaseMessages.MmsMessage;
+import com.android.messaging.sms.DatabaseMessages.SmsMessage;
+import com.android.messaging.util.BugleGservices;
+import com.android.messaging.util.BugleGservicesKeys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares whole telephony threads with their local conversations. The threads are split into
+ * contiguous thread id ranges which are compared concurrently on a bounded pool, so a full sync
+ * of a large history can use more than one core.
+ */
+final class ThreadPartitionScanner {
+    // Local telephony threads that still have messages synced from telephony
+    private static final String LOCAL_THREADS_QUERY = "SELECT DISTINCT "
+            + DatabaseHelper.CONVERSATIONS_TABLE + "." + ConversationColumns.SMS_THREAD_ID
+            + " FROM " + DatabaseHelper.MESSAGES_TABLE + " JOIN "
+            + DatabaseHelper.CONVERSATIONS_TABLE + " ON "
+            + DatabaseHelper.MESSAGES_TABLE + "." + MessageColumns.CONVERSATION_ID + "="
+            + DatabaseHelper.CONVERSATIONS_TABLE + "." + ConversationColumns._ID
+            + " WHERE " + DatabaseHelper.MESSAGES_TABLE + "." + MessageColumns.SMS_MESSAGE_URI
+            + " NOTNULL AND " + DatabaseHelper.CONVERSATIONS_TABLE + "."
+            + ConversationColumns.SMS_THREAD_ID + " NOTNULL";
+
+    private static ExecutorService sExecutor;
+    private static int sExecutorThreads;
+
+    private ThreadPartitionScanner() {
+    }
+
+    /**
+     * @return the number of partitions a full sync should be scanned in, 1 or less meaning the
+     *     serial full sync is used
+     */
+    static int getPartitionCount() {
+        final int configured = BugleGservices.get().getInt(
+                BugleGservicesKeys.SMS_SYNC_PARALLEL_PARTITIONS,
+                BugleGservicesKeys.SMS_SYNC_PARALLEL_PARTITIONS_DEFAULT);
+        return Math.min(configured, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return ids of the telephony threads that have messages in the local database
+     */
+    static long[] queryLocalThreadIds(final DatabaseWrapper db) {
+        final Cursor cursor = db.rawQuery(LOCAL_THREADS_QUERY, null);
+        try {
+            final long[] threadIds = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext()) {
+                threadIds[count++] = cursor.getLong(0);
+            }
+            return Arrays.copyOf(threadIds, count);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * How far a scan got: the threads it compared all the way down to its lower bound, and the
+     * threads it stopped part way through at its limits, with the upper bound to resume each from
+     */
+    static final class Progress {
+        int mRowsScanned;
+        long[] mCompletedThreadIds = new long[0];
+        final LongSparseArray<Long> mResumeUpperBounds = new LongSparseArray<Long>();
+
+        private void add(final Progress other) {
+            mRowsScanned += other.mRowsScanned;
+            final int count = mCompletedThreadIds.length;
+            mCompletedThreadIds = Arrays.copyOf(mCompletedThreadIds,
+                    count + other.mCompletedThreadIds.length);
+            System.arraycopy(other.mCompletedThreadIds, 0, mCompletedThreadIds, count,
+                    other.mCompletedThreadIds.length);
+            mResumeUpperBounds.putAll(other.mResumeUpperBounds);
+        }
+    }
+
+    /**
+     * Compare the messages of the given threads within [lowerBound, upperBound), thread after
+     * thread until the scan or update limit is reached. A thread cut short by the limits is
+     * resumed by the next batch from where it stopped, the threads not reached are left as is.
+     * @param db local database wrapper
+     * @param threadIds threads to compare
+     * @param lowerBound inclusive lower bound of the messages to compare or -1 for none
+     * @param upperBound exclusive upper bound of the messages to compare
+     * @param resumeUpperBounds upper bounds of threads a previous batch stopped part way through
+     * @param maxMessagesToScan max local and remote messages to scan
+     * @param maxMessagesToUpdate max messages to return for updates
+     * @param partitions number of thread id ranges to compare concurrently
+     * @param smsToAdd newly found sms messages to add
+     * @param mmsToAdd newly found mms messages to add
+     * @param messagesToDelete messages not found needing deletion
+     * @param cache cache for conversation id / thread id / recipient set mapping
+     * @return how far the scan got, including the resume bounds of threads it didn't reach
+     */
+    static Progress scan(final DatabaseWrapper db, final long[] threadIds, final long lowerBound,
+            final long upperBound, final LongSparseArray<Long> resumeUpperBounds,
+            final int maxMessagesToScan, final int maxMessagesToUpdate, final int partitions,
+            final ArrayList<SmsMessage> smsToAdd, final LongSparseArray<MmsMessage> mmsToAdd,
+            final ArrayList<LocalDatabaseMessage> messagesToDelete, final ThreadInfoCache cache)
+            throws Exception {
+        final Progress progress;
+        if (partitions <= 1 || threadIds.length <= 1) {
+            progress = scanThreads(db, threadIds, lowerBound, upperBound, resumeUpperBounds,
+                    maxMessagesToScan, maxMessagesToUpdate, smsToAdd, mmsToAdd,
+                    messagesToDelete, cache);
+        } else {
+            progress = scanPartitions(db, threadIds, lowerBound, upperBound, resumeUpperBounds,
+                    maxMessagesToScan, maxMessagesToUpdate, partitions, smsToAdd, mmsToAdd,
+                    messagesToDelete, cache);
+        }
+
+        // Keep the place of threads stopped by an earlier batch that this one didn't reach
+        final long[] completed = progress.mCompletedThreadIds.clone();
+        Arrays.sort(completed);
+        for (int i = 0; i < resumeUpperBounds.size(); i++) {
+            final long threadId = resumeUpperBounds.keyAt(i);
+            if (Arrays.binarySearch(completed, threadId) < 0
+                    && progress.mResumeUpperBounds.indexOfKey(threadId) < 0) {
+                progress.mResumeUpperBounds.put(threadId, resumeUpperBounds.valueAt(i));
+            }
+        }
+        return progress;
+    }
+
+    private static Progress scanPartitions(final DatabaseWrapper db, final long[] threadIds,
+            final long lowerBound, final long upperBound,
+            final LongSparseArray<Long> resumeUpperBounds, final int maxMessagesToScan,
+            final int maxMessagesToUpdate, final int partitions,
+            final ArrayList<SmsMessage> smsToAdd, final LongSparseArray<MmsMessage> mmsToAdd,
+            final ArrayList<LocalDatabaseMessage> messagesToDelete, final ThreadInfoCache cache)
+            throws Exception {
+        final long[] sorted = threadIds.clone();
+        Arrays.sort(sorted);
+        final int partitionCount = Math.min(partitions, sorted.length);
+        final List<Future<Progress>> futures = new ArrayList<Future<Progress>>(partitionCount);
+        final List<ArrayList<SmsMessage>> smsLists = new ArrayList<ArrayList<SmsMessage>>();
+        final List<LongSparseArray<MmsMessage>> mmsLists =
+                new ArrayList<LongSparseArray<MmsMessage>>();
+        final List<ArrayList<LocalDatabaseMessage>> deleteLists =
+                new ArrayList<ArrayList<LocalDatabaseMessage>>();
+        // Each partition gets its share of the batch limits
+        final int partitionMaxMessagesToScan = Math.max(1, maxMessagesToScan / partitionCount);
+        final int partitionMaxMessagesToUpdate =
+                Math.max(1, maxMessagesToUpdate / partitionCount);
+        final ExecutorService executor = getExecutor(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            final long[] range = Arrays.copyOfRange(sorted,
+                    i * sorted.length / partitionCount, (i + 1) * sorted.length / partitionCount);
+            final ArrayList<SmsMessage> sms = new ArrayList<SmsMessage>();
+            final LongSparseArray<MmsMessage> mms = new LongSparseArray<MmsMessage>();
+            final ArrayList<LocalDatabaseMessage> deletes = new ArrayList<LocalDatabaseMessage>();
+            smsLists.add(sms);
+            mmsLists.add(mms);
+            deleteLists.add(deletes);
+            futures.add(executor.submit(new Callable<Progress>() {
+                @Override
+                public Progress call() {
+                    return scanThreads(db, range, lowerBound, upperBound, resumeUpperBounds,
+                            partitionMaxMessagesToScan, partitionMaxMessagesToUpdate, sms, mms,
+                            deletes, cache);
+                }
+            }));
+        }
+
+        final Progress progress = new Progress();
+        try {
+            for (final Future<Progress> future : futures) {
+                progress.add(future.get());
+            }
+        } catch (final ExecutionException e) {
+            cancel(futures);
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        } catch (final InterruptedException e) {
+            // Don't leave the other partitions scanning for a batch nobody waits on
+            cancel(futures);
+            throw e;
+        }
+
+        // Merge in thread id order
+        for (int i = 0; i < partitionCount; i++) {
+            smsToAdd.addAll(smsLists.get(i));
+            final LongSparseArray<MmsMessage> mms = mmsLists.get(i);
+            for (int j = 0; j < mms.size(); j++) {
+                mmsToAdd.put(mms.keyAt(j), mms.valueAt(j));
+            }
+            messagesToDelete.addAll(deleteLists.get(i));
+        }
+        return progress;
+    }
+
+    private static Progress scanThreads(final DatabaseWrapper db, final long[] threadIds,
+            final long lowerBound, final long upperBound,
+            final LongSparseArray<Long> resumeUpperBounds, final int maxMessagesToScan,
+            final int maxMessagesToUpdate, final ArrayList<SmsMessage> smsToAdd,
+            final LongSparseArray<MmsMessage> mmsToAdd,
+            final ArrayList<LocalDatabaseMessage> messagesToDelete, final ThreadInfoCache cache) {
+        final Progress progress = new Progress();
+        final long[] completed = new long[threadIds.length];
+        int completedCount = 0;
+        for (final long threadId : threadIds) {
+            if (progress.mRowsScanned >= maxMessagesToScan || smsToAdd.size() + mmsToAdd.size()
+                    + messagesToDelete.size() >= maxMessagesToUpdate) {
+                // The threads not reached are left for the next batch
+                break;
+            }
+            final String conversationId = BugleDatabaseOperations.getExistingConversation(
+                    db, threadId, false /*senderBlocked*/);
+            final SyncCursorPair cursors = new SyncCursorPair(threadId, conversationId,
+                    lowerBound, resumeUpperBounds.get(threadId, upperBound));
+            try {
+                cursors.query(db);
+                final long lastTimestampMillis = cursors.scan(
+                        maxMessagesToScan - progress.mRowsScanned, maxMessagesToUpdate,
+                        smsToAdd, mmsToAdd, messagesToDelete, cache);
+                progress.mRowsScanned += Math.max(0, cursors.getLocalPosition())
+                        + Math.max(0, cursors.getRemotePosition());
+                if (lastTimestampMillis == SyncCursorPair.SYNC_COMPLETE) {
+                    completed[completedCount++] = threadId;
+                } else {
+                    // Cut short by the limits. Like the time window batches, the next batch
+                    // compares the oldest millisecond seen again.
+                    progress.mResumeUpperBounds.put(threadId, lastTimestampMillis + 1);
+                    break;
+                }
+            } finally {
+                cursors.close();
+            }
+        }
+        progress.mCompletedThreadIds = Arrays.copyOf(completed, completedCount);
+        return progress;
+    }
+
+    private static void cancel(final List<Future<Progress>> futures) {
+        for (final Future<Progress> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * @return a pool of the given number of threads, replacing the pool of an earlier scan if
+     *     the partition count has changed since
+     */
+    private static synchronized ExecutorService getExecutor(final int partitions) {
+        if (sExecutor == null || sExecutorThreads != partitions) {
+            if (sExecutor != null) {
+                // Scans are one batch at a time, so the old pool is idle
+                sExecutor.shutdown();
+            }
+            sExecutor = Executors.newFixedThreadPool(partitions);
+            sExecutorThreads = partitions;
+        }
+        return sExecutor;
+    }
+}
@@ -82,12 +82,18 @@ public class MessageData implements Parcelable {
     private static final int INDEX_RAW_TELEPHONY_STATUS = 17;
     private static final int INDEX_RETRY_START_TIMESTAMP = 18;
 
-    // SQL statement to insert a "complete" message row (columns based on the projection above).
-    private static final String INSERT_MESSAGE_SQL =
+    // Number of columns of an inserted message row, all of the projection but the id
+    public static final int INSERT_COLUMN_COUNT = INDEX_RETRY_START_TIMESTAMP;
+
+    private static final String INSERT_MESSAGE_PREFIX_SQL =
             "INSERT INTO " + DatabaseHelper.MESSAGES_TABLE + " ( "
                     + TextUtils.join(", ", Arrays.copyOfRange(sProjection, 1,
                             INDEX_RETRY_START_TIMESTAMP + 1))
-                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    + ") VALUES ";
+
+    // SQL statement to insert a "complete" message row (columns based on the projection above).
+    private static final String INSERT_MESSAGE_SQL = INSERT_MESSAGE_PREFIX_SQL
+            + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     private String mMessageId;
     private String mConversationId;
@@ -442,36 +448,52 @@ public class MessageData implements Parcelable {
      * while they call this and use the returned value.
      */
     public SQLiteStatement getInsertStatement(final DatabaseWrapper db) {
-        final SQLiteStatement insert = db.getStatementInTransaction(
-                DatabaseWrapper.INDEX_INSERT_MESSAGE, INSERT_MESSAGE_SQL);
+        final SQLiteStatement insert = db.getStatementInTransaction(INSERT_MESSAGE_SQL);
         insert.clearBindings();
-        insert.bindString(INDEX_CONVERSATION_ID, mConversationId);
-        insert.bindString(INDEX_PARTICIPANT_ID, mParticipantId);
-        insert.bindString(INDEX_SELF_ID, mSelfId);
-        insert.bindLong(INDEX_SENT_TIMESTAMP, mSentTimestamp);
-        insert.bindLong(INDEX_RECEIVED_TIMESTAMP, mReceivedTimestamp);
-        insert.bindLong(INDEX_SEEN, mSeen ? 1 : 0);
-        insert.bindLong(INDEX_READ, mRead ? 1 : 0);
-        insert.bindLong(INDEX_PROTOCOL, mProtocol);
-        insert.bindLong(INDEX_BUGLE_STATUS, mStatus);
+        bindInsertRow(insert, 0);
+        return insert;
+    }
+
+    /**
+     * @return SQL statement inserting the given number of message rows at once
+     */
+    public static String getBulkInsertSql(final int rows) {
+        return INSERT_MESSAGE_PREFIX_SQL
+                + DatabaseWrapper.getMultiRowValuesSql(INSERT_COLUMN_COUNT, rows);
+    }
+
+    /**
+     * Bind this message as one row of an insert statement
+     * @param row index of the row within the statement
+     */
+    public void bindInsertRow(final SQLiteStatement insert, final int row) {
+        final int offset = row * INSERT_COLUMN_COUNT;
+        insert.bindString(offset + INDEX_CONVERSATION_ID, mConversationId);
+        insert.bindString(offset + INDEX_PARTICIPANT_ID, mParticipantId);
+        insert.bindString(offset + INDEX_SELF_ID, mSelfId);
+        insert.bindLong(offset + INDEX_SENT_TIMESTAMP, mSentTimestamp);
+        insert.bindLong(offset + INDEX_RECEIVED_TIMESTAMP, mReceivedTimestamp);
+        insert.bindLong(offset + INDEX_SEEN, mSeen ? 1 : 0);
+        insert.bindLong(offset + INDEX_READ, mRead ? 1 : 0);
+        insert.bindLong(offset + INDEX_PROTOCOL, mProtocol);
+        insert.bindLong(offset + INDEX_BUGLE_STATUS, mStatus);
         if (mSmsMessageUri != null) {
-            insert.bindString(INDEX_SMS_MESSAGE_URI, mSmsMessageUri.toString());
+            insert.bindString(offset + INDEX_SMS_MESSAGE_URI, mSmsMessageUri.toString());
         }
-        insert.bindLong(INDEX_SMS_PRIORITY, mSmsPriority);
-        insert.bindLong(INDEX_SMS_MESSAGE_SIZE, mSmsMessageSize);
-        insert.bindLong(INDEX_MMS_EXPIRY, mMmsExpiry);
+        insert.bindLong(offset + INDEX_SMS_PRIORITY, mSmsPriority);
+        insert.bindLong(offset + INDEX_SMS_MESSAGE_SIZE, mSmsMessageSize);
+        insert.bindLong(offset + INDEX_MMS_EXPIRY, mMmsExpiry);
         if (mMmsSubject != null) {
-            insert.bindString(INDEX_MMS_SUBJECT, mMmsSubject);
+            insert.bindString(offset + INDEX_MMS_SUBJECT, mMmsSubject);
         }
         if (mMmsTransactionId != null) {
-            insert.bindString(INDEX_MMS_TRANSACTION_ID, mMmsTransactionId);
+            insert.bindString(offset + INDEX_MMS_TRANSACTION_ID, mMmsTransactionId);
         }
         if (mMmsContentLocation != null) {
-            insert.bindString(INDEX_MMS_CONTENT_LOCATION, mMmsContentLocation);
+            insert.bindString(offset + INDEX_MMS_CONTENT_LOCATION, mMmsContentLocation);
         }
-        insert.bindLong(INDEX_RAW_TELEPHONY_STATUS, mRawStatus);
-        insert.bindLong(INDEX_RETRY_START_TIMESTAMP, mRetryStartTimestamp);
-        return insert;
+        insert.bindLong(offset + INDEX_RAW_TELEPHONY_STATUS, mRawStatus);
+        insert.bindLong(offset + INDEX_RETRY_START_TIMESTAMP, mRetryStartTimestamp);
     }
 
     public final String getMessageId() {
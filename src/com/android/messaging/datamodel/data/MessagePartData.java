@@ -89,12 +89,18 @@ public class MessagePartData implements Parcelable {
     // This isn't part of the projection
     private static final int INDEX_CONVERSATION_ID = 7;
 
-    // SQL statement to insert a "complete" message part row (columns based on projection above).
-    private static final String INSERT_MESSAGE_PART_SQL =
+    // Number of columns of an inserted part row, the projection but the id plus conversation id
+    public static final int INSERT_COLUMN_COUNT = INDEX_CONVERSATION_ID;
+
+    private static final String INSERT_MESSAGE_PART_PREFIX_SQL =
             "INSERT INTO " + DatabaseHelper.PARTS_TABLE + " ( "
                     + TextUtils.join(",", Arrays.copyOfRange(sProjection, 1, INDEX_CONVERSATION_ID))
                     + ", " + PartColumns.CONVERSATION_ID
-                    + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+                    + ") VALUES ";
+
+    // SQL statement to insert a "complete" message part row (columns based on projection above).
+    private static final String INSERT_MESSAGE_PART_SQL = INSERT_MESSAGE_PART_PREFIX_SQL
+            + "(?, ?, ?, ?, ?, ?, ?)";
 
     // Used for stuff that's ignored or arbitrarily compressed.
     private static final long NO_MINIMUM_SIZE = 0;
@@ -266,23 +272,40 @@ public class MessagePartData implements Parcelable {
      */
     public SQLiteStatement getInsertStatement(final DatabaseWrapper db,
                                               final String conversationId) {
-        final SQLiteStatement insert = db.getStatementInTransaction(
-                DatabaseWrapper.INDEX_INSERT_MESSAGE_PART, INSERT_MESSAGE_PART_SQL);
+        final SQLiteStatement insert = db.getStatementInTransaction(INSERT_MESSAGE_PART_SQL);
         insert.clearBindings();
-        insert.bindString(INDEX_MESSAGE_ID, mMessageId);
+        bindInsertRow(insert, 0, conversationId);
+        return insert;
+    }
+
+    /**
+     * @return SQL statement inserting the given number of part rows at once
+     */
+    public static String getBulkInsertSql(final int rows) {
+        return INSERT_MESSAGE_PART_PREFIX_SQL
+                + DatabaseWrapper.getMultiRowValuesSql(INSERT_COLUMN_COUNT, rows);
+    }
+
+    /**
+     * Bind this part as one row of an insert statement
+     * @param row index of the row within the statement
+     */
+    public void bindInsertRow(final SQLiteStatement insert, final int row,
+            final String conversationId) {
+        final int offset = row * INSERT_COLUMN_COUNT;
+        insert.bindString(offset + INDEX_MESSAGE_ID, mMessageId);
         if (mText != null) {
-            insert.bindString(INDEX_TEXT, mText);
+            insert.bindString(offset + INDEX_TEXT, mText);
         }
         if (mContentUri != null) {
-            insert.bindString(INDEX_CONTENT_URI, mContentUri.toString());
+            insert.bindString(offset + INDEX_CONTENT_URI, mContentUri.toString());
         }
         if (mContentType != null) {
-            insert.bindString(INDEX_CONTENT_TYPE, mContentType);
+            insert.bindString(offset + INDEX_CONTENT_TYPE, mContentType);
         }
-        insert.bindLong(INDEX_WIDTH, mWidth);
-        insert.bindLong(INDEX_HEIGHT, mHeight);
-        insert.bindString(INDEX_CONVERSATION_ID, conversationId);
-        return insert;
+        insert.bindLong(offset + INDEX_WIDTH, mWidth);
+        insert.bindLong(offset + INDEX_HEIGHT, mHeight);
+        insert.bindString(offset + INDEX_CONVERSATION_ID, conversationId);
     }
 
     public final String getPartId() {
@@ -27,7 +27,12 @@ import com.android.messaging.datamodel.media.MediaResourceManager.MediaResourceL
 public abstract class BindableMediaRequest<T extends RefCountedMediaResource>
         extends BindableOnceData
         implements MediaRequest<T>, MediaResourceLoadListener<T> {
+    /** Loading priorities, higher priority requests are loaded first */
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_VISIBLE = 1;
+
     private MediaResourceLoadListener<T> mListener;
+    private int mPriority = PRIORITY_DEFAULT;
 
     public BindableMediaRequest(final MediaResourceLoadListener<T> listener) {
         mListener = listener;
@@ -56,6 +61,18 @@ public abstract class BindableMediaRequest<T extends RefCountedMediaResource>
         }
     }
 
+    /**
+     * Sets the loading priority, e.g. {@link #PRIORITY_VISIBLE} for media shown on screen. Must be
+     * set before the request is made.
+     */
+    public void setPriority(final int priority) {
+        mPriority = priority;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
     @Override
     protected void unregisterListeners() {
         mListener = null;
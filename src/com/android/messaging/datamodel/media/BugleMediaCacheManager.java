@@ -15,7 +15,13 @@
  */
 package com.android.messaging.datamodel.media;
 
+import com.android.messaging.Factory;
 import com.android.messaging.util.Assert;
+import com.android.messaging.util.SafeAsyncTask;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * An implementation of {@link MediaCacheManager} that creates caches specific to Bugle's needs.
@@ -33,14 +39,32 @@ public class BugleMediaCacheManager extends MediaCacheManager {
     private static final int VCARD_CACHE_SIZE = 5;
     private static final int SHARED_IMAGE_CACHE_SIZE = 1024 * 10;   // 10MB
 
+    // Disk tiers beneath the image caches, in bytes.
+    private static final String DISK_CACHE_DIR = "media_cache";
+    private static final long SHARED_IMAGE_DISK_CACHE_SIZE = 1024 * 1024 * 20;  // 20MB
+    private static final long AVATAR_IMAGE_DISK_CACHE_SIZE = 1024 * 1024 * 5;   // 5MB
+    // Contact photos can change without their uris changing, so avatars are reloaded daily.
+    private static final long AVATAR_IMAGE_DISK_CACHE_MAX_AGE = 24 * 60 * 60 * 1000;
+
+    // The disk tiers outlive the memory caches, which are dropped on reclaim().
+    private MediaDiskCache mSharedImageDiskCache;
+    private MediaDiskCache mAvatarImageDiskCache;
+
     @Override
     protected MediaCache<?> createMediaCacheById(final int id) {
         switch (id) {
-            case DEFAULT_IMAGE_CACHE:
-                return new PoolableImageCache(SHARED_IMAGE_CACHE_SIZE, id, "DefaultImageCache");
+            case DEFAULT_IMAGE_CACHE: {
+                final MediaCache<?> cache =
+                        new PoolableImageCache(SHARED_IMAGE_CACHE_SIZE, id, "DefaultImageCache");
+                cache.setDiskCache(getSharedImageDiskCache());
+                return cache;
+            }
 
-            case AVATAR_IMAGE_CACHE:
-                return new PoolableImageCache(id, "AvatarImageCache");
+            case AVATAR_IMAGE_CACHE: {
+                final MediaCache<?> cache = new PoolableImageCache(id, "AvatarImageCache");
+                cache.setDiskCache(getAvatarImageDiskCache());
+                return cache;
+            }
 
             case VCARD_CACHE:
                 return new MediaCache<VCardResource>(VCARD_CACHE_SIZE, id, "VCardCache");
@@ -51,4 +75,45 @@ public class BugleMediaCacheManager extends MediaCacheManager {
         }
         return null;
     }
+
+    @Override
+    public void removeSourcesFromDiskCaches(final Collection<String> sources) {
+        if (sources.isEmpty()) {
+            return;
+        }
+        // Open the tiers even if no image has been loaded in this process yet
+        final MediaDiskCache sharedImageDiskCache = getSharedImageDiskCache();
+        final MediaDiskCache avatarImageDiskCache = getAvatarImageDiskCache();
+        final ArrayList<String> sourcesToRemove = new ArrayList<String>(sources);
+        SafeAsyncTask.executeOnThreadPool(new Runnable() {
+            @Override
+            public void run() {
+                sharedImageDiskCache.removeSources(sourcesToRemove);
+                avatarImageDiskCache.removeSources(sourcesToRemove);
+            }
+        });
+    }
+
+    private synchronized MediaDiskCache getSharedImageDiskCache() {
+        if (mSharedImageDiskCache == null) {
+            mSharedImageDiskCache = createDiskCache("images", SHARED_IMAGE_DISK_CACHE_SIZE,
+                    0 /* maxAgeMillis */);
+        }
+        return mSharedImageDiskCache;
+    }
+
+    private synchronized MediaDiskCache getAvatarImageDiskCache() {
+        if (mAvatarImageDiskCache == null) {
+            mAvatarImageDiskCache = createDiskCache("avatars", AVATAR_IMAGE_DISK_CACHE_SIZE,
+                    AVATAR_IMAGE_DISK_CACHE_MAX_AGE);
+        }
+        return mAvatarImageDiskCache;
+    }
+
+    private static MediaDiskCache createDiskCache(final String name, final long maxSizeBytes,
+            final long maxAgeMillis) {
+        final File directory = new File(new File(
+                Factory.get().getApplicationContext().getCacheDir(), DISK_CACHE_DIR), name);
+        return new MediaDiskCache(directory, maxSizeBytes, maxAgeMillis);
+    }
 }
@@ -26,6 +26,7 @@ import com.android.messaging.util.ImageUtils;
 import com.android.messaging.util.LogUtil;
 import com.android.messaging.util.OsUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 
 
@@ -164,6 +165,67 @@ public class DecodedImageResource extends ImageResource {
         return new EncodeImageRequest((MediaRequest<ImageResource>) originalRequest);
     }
 
+    /**
+     * Gets the image scaled down to the size the original request asked for and compressed, for
+     * storing in a {@link MediaDiskCache}. Images with alpha, such as avatars cropped to a circle,
+     * are compressed losslessly.
+     * @return the compressed image, or null if it couldn't be compressed
+     */
+    @DoesNotRunOnMainThread
+    byte[] getThumbnailBytes(
+            final MediaRequest<? extends RefCountedMediaResource> originalRequest) {
+        Assert.isNotMainThread();
+        acquireLock();
+        Bitmap scaledBitmap = null;
+        try {
+            if (mBitmap == null) {
+                return null;
+            }
+            scaledBitmap = scaleToDesiredSize(mBitmap, originalRequest);
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            scaledBitmap.compress(scaledBitmap.hasAlpha() ? Bitmap.CompressFormat.PNG
+                    : Bitmap.CompressFormat.JPEG, COMPRESS_QUALITY, os);
+            return os.toByteArray();
+        } catch (final OutOfMemoryError e) {
+            LogUtil.w(LogUtil.BUGLE_IMAGE_TAG, "Out of memory compressing bitmap for disk cache");
+            return null;
+        } finally {
+            if (scaledBitmap != null && scaledBitmap != mBitmap) {
+                scaledBitmap.recycle();
+            }
+            releaseLock();
+        }
+    }
+
+    /**
+     * The original bitmap was loaded using sub-sampling which was fast in terms of loading speed,
+     * but not optimized for caching, encoding and rendering (since bitmap resizing to fit the UI
+     * image views happens on the UI thread and should be avoided if possible). Therefore, try to
+     * resize the bitmap to the exact desired size before compressing it.
+     * @return the scaled bitmap, or the given one if it needn't be scaled down
+     */
+    private static Bitmap scaleToDesiredSize(final Bitmap bitmap,
+            final MediaRequest<? extends RefCountedMediaResource> originalRequest) {
+        final int bitmapWidth = bitmap.getWidth();
+        final int bitmapHeight = bitmap.getHeight();
+        if (bitmapWidth > 0 && bitmapHeight > 0
+                && originalRequest.getDescriptor() instanceof ImageRequestDescriptor) {
+            final ImageRequestDescriptor descriptor =
+                    (ImageRequestDescriptor) originalRequest.getDescriptor();
+            final float targetScale = Math.max(
+                    (float) descriptor.desiredWidth / bitmapWidth,
+                    (float) descriptor.desiredHeight / bitmapHeight);
+            final int targetWidth = (int) (bitmapWidth * targetScale);
+            final int targetHeight = (int) (bitmapHeight * targetScale);
+            // Only try to scale down the image to the desired size.
+            if (targetScale < 1.0f && targetWidth > 0 && targetHeight > 0 &&
+                    targetWidth != bitmapWidth && targetHeight != bitmapHeight) {
+                return Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, false);
+            }
+        }
+        return bitmap;
+    }
+
     /**
      * A MediaRequest that encodes the contained image resource.
      */
@@ -191,29 +253,7 @@ public class DecodedImageResource extends ImageResource {
             try {
                 Bitmap bitmap = getBitmap();
                 Assert.isFalse(bitmap.hasAlpha());
-                final int bitmapWidth = bitmap.getWidth();
-                final int bitmapHeight = bitmap.getHeight();
-                // The original bitmap was loaded using sub-sampling which was fast in terms of
-                // loading speed, but not optimized for caching, encoding and rendering (since
-                // bitmap resizing to fit the UI image views happens on the UI thread and should
-                // be avoided if possible). Therefore, try to resize the bitmap to the exact desired
-                // size before compressing it.
-                if (bitmapWidth > 0 && bitmapHeight > 0 &&
-                        mOriginalImageRequest instanceof ImageRequest<?>) {
-                    final ImageRequestDescriptor descriptor =
-                            ((ImageRequest<?>) mOriginalImageRequest).getDescriptor();
-                    final float targetScale = Math.max(
-                            (float) descriptor.desiredWidth / bitmapWidth,
-                            (float) descriptor.desiredHeight / bitmapHeight);
-                    final int targetWidth = (int) (bitmapWidth * targetScale);
-                    final int targetHeight = (int) (bitmapHeight * targetScale);
-                    // Only try to scale down the image to the desired size.
-                    if (targetScale < 1.0f && targetWidth > 0 && targetHeight > 0 &&
-                            targetWidth != bitmapWidth && targetHeight != bitmapHeight) {
-                        scaledBitmap = bitmap =
-                                Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, false);
-                    }
-                }
+                scaledBitmap = bitmap = scaleToDesiredSize(bitmap, mOriginalImageRequest);
                 byte[] encodedBytes = ImageUtils.bitmapToBytes(bitmap, COMPRESS_QUALITY);
                 return new EncodedImageResource(getKey(), encodedBytes, getOrientation());
             } catch (Exception ex) {
@@ -15,38 +15,102 @@
  */
 package com.android.messaging.datamodel.media;
 
-import android.util.LruCache;
-
 import com.android.messaging.util.LogUtil;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * A modified LruCache that is able to hold RefCountedMediaResource instances. It releases
- * ref on the entries as they are evicted from the cache, and it uses the media resource
- * size in kilobytes, instead of the entry count, as the size of the cache.
+ * A cache that is able to hold RefCountedMediaResource instances. It releases ref on the entries
+ * as they are evicted from the cache, and it uses the media resource size in kilobytes, instead
+ * of the entry count, as the size of the cache.
  *
  * This class is used by the MediaResourceManager class to maintain a number of caches for
  * holding different types of {@link RefCountedMediaResource}
+ *
+ * The cache is read by every media loading thread and the UI thread at once, so lookups take no
+ * cache lock: entries live in a {@link ConcurrentHashMap} and a hit only sets the entry's
+ * referenced bit. Eviction follows the clock (second chance) algorithm instead of strict LRU.
+ * Entries are striped by key into segments, each with its own lock and clock queue, and the
+ * clock hand steps through the segments in turn, locking one at a time.
  */
-public class MediaCache<T extends RefCountedMediaResource> extends LruCache<String, T> {
+public class MediaCache<T extends RefCountedMediaResource> {
     private static final String TAG = LogUtil.BUGLE_IMAGE_TAG;
 
     // Default memory cache size in kilobytes
     protected static final int DEFAULT_MEDIA_RESOURCE_CACHE_SIZE_IN_KILOBYTES = 1024 * 5;  // 5MB
 
+    private static final int MAX_SEGMENT_COUNT = 8;
+    // Caches smaller than this per segment hold only a handful of entries and gain nothing from
+    // striping, so they get fewer segments, down to a single one evicting in exact clock order.
+    private static final int MIN_SEGMENT_SIZE_IN_KILOBYTES = 512;
+    // Removed entries are dropped from the clock queues lazily, unless they pile up beyond this
+    private static final int MAX_REMOVED_ENTRIES_PER_SEGMENT = 16;
+
+    private static class Entry<T> {
+        final String key;
+        final T value;
+        final int size;
+        // Set on every hit without a lock and cleared by the clock hand. A new entry starts
+        // referenced so that it gets one pass of the hand before it can be evicted.
+        volatile boolean referenced = true;
+        // Set under the segment lock once the entry has left the map
+        boolean removed;
+
+        Entry(final String key, final T value, final int size) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The entries for a stripe of keys in clock order, the head being the next under the hand.
+     * Every change to the map for a key is made holding the lock of its segment.
+     */
+    private static class Segment<T> {
+        final ArrayDeque<Entry<T>> clock = new ArrayDeque<Entry<T>>();
+        int liveCount;
+    }
+
     // Unique identifier for the cache.
     private final int mId;
     // Descriptive name given to the cache for debugging purposes.
     private final String mName;
+    // Optional disk tier holding encoded copies of the images in this cache.
+    private MediaDiskCache mDiskCache;
+
+    private final int mMaxSize;
+    private final ConcurrentHashMap<String, Entry<T>> mEntries;
+    private final Segment<T>[] mSegments;
+    private final AtomicInteger mClockHand = new AtomicInteger();
+    private final AtomicInteger mSize = new AtomicInteger();
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
 
     // Convenience constructor that uses the default cache size.
     public MediaCache(final int id, final String name) {
         this(DEFAULT_MEDIA_RESOURCE_CACHE_SIZE_IN_KILOBYTES, id, name);
     }
 
+    @SuppressWarnings("unchecked")
     public MediaCache(final int maxSize, final int id, final String name) {
-        super(maxSize);
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
         mId = id;
         mName = name;
+        final int segmentCount = Math.max(1,
+                Math.min(MAX_SEGMENT_COUNT, maxSize / MIN_SEGMENT_SIZE_IN_KILOBYTES));
+        mEntries = new ConcurrentHashMap<String, Entry<T>>(16, 0.75f, segmentCount);
+        mSegments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            mSegments[i] = new Segment<T>();
+        }
     }
 
     public void destroy() {
@@ -62,49 +126,232 @@ public class MediaCache<T extends RefCountedMediaResource> extends LruCache<Stri
     }
 
     /**
-     * Gets a media resource from this cache. Must use this method to get resource instead of get()
-     * to ensure addRef() on the resource.
+     * Sets the disk tier consulted by the MediaResourceManager on a miss in this cache. Only
+     * caches of {@link ImageResource}s may have one.
+     */
+    public void setDiskCache(final MediaDiskCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * @return the disk tier beneath this cache, or null if it has none
      */
-    public synchronized T fetchResourceFromCache(final String key) {
-        final T ret = get(key);
-        if (ret != null) {
+    public MediaDiskCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    /**
+     * Gets a media resource from this cache, with a ref added on it for the caller to release.
+     */
+    public T fetchResourceFromCache(final String key) {
+        final Entry<T> entry = mEntries.get(key);
+        // The entry may be evicted and released by another thread once we've found it. If its
+        // last ref went before we could add ours, it's closed and counts as a miss.
+        if (entry != null && entry.value.addRefIfNotClosed()) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            mHitCount.incrementAndGet();
             if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
                 LogUtil.v(TAG, "cache hit in mediaCache @ " + getName() +
                         ", total cache hit = " + hitCount() +
                         ", total cache miss = " + missCount());
             }
-            ret.addRef();
-        } else if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
+            return entry.value;
+        }
+        mMissCount.incrementAndGet();
+        if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
             LogUtil.v(TAG, "cache miss in mediaCache @ " + getName() +
                     ", total cache hit = " + hitCount() +
                     ", total cache miss = " + missCount());
         }
-        return ret;
+        return null;
     }
 
     /**
-     * Add a media resource to this cache. Must use this method to add resource instead of put()
-     * to ensure addRef() on the resource.
+     * Add a media resource to this cache. The cache adds its own ref on the resource.
+     * @return the resource previously cached for the key, if any
      */
-    public synchronized T addResourceToCache(final String key, final T mediaResource) {
+    public T addResourceToCache(final String key, final T mediaResource) {
         mediaResource.addRef();
-        return put(key, mediaResource);
+        final Entry<T> entry = new Entry<T>(key, mediaResource, safeSizeOf(key, mediaResource));
+        final Segment<T> segment = getSegment(key);
+        final Entry<T> previous;
+        synchronized (segment) {
+            previous = mEntries.put(key, entry);
+            if (previous != null) {
+                removeLocked(segment, previous);
+            }
+            segment.clock.addLast(entry);
+            segment.liveCount++;
+            mSize.addAndGet(entry.size);
+        }
+        if (previous != null) {
+            entryRemoved(false, key, previous.value, mediaResource);
+        }
+        trimToSize();
+        return previous == null ? null : previous.value;
+    }
+
+    /**
+     * Removes the entry for a key, releasing the cache's ref on it
+     * @return the removed resource or null if the key wasn't cached
+     */
+    public T remove(final String key) {
+        final Segment<T> segment = getSegment(key);
+        final Entry<T> entry;
+        synchronized (segment) {
+            entry = mEntries.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            removeLocked(segment, entry);
+        }
+        entryRemoved(false, key, entry.value, null);
+        return entry.value;
+    }
+
+    /**
+     * Removes the entry for a key only if it still holds the given resource
+     * @return true if it was removed
+     */
+    public boolean remove(final String key, final T mediaResource) {
+        final Segment<T> segment = getSegment(key);
+        final Entry<T> entry;
+        synchronized (segment) {
+            entry = mEntries.get(key);
+            if (entry == null || entry.value != mediaResource) {
+                return false;
+            }
+            mEntries.remove(key);
+            removeLocked(segment, entry);
+        }
+        entryRemoved(false, key, entry.value, null);
+        return true;
+    }
+
+    /**
+     * Evicts every entry, releasing the cache's ref on each
+     */
+    public void evictAll() {
+        for (final Segment<T> segment : mSegments) {
+            final ArrayList<Entry<T>> evicted = new ArrayList<Entry<T>>();
+            synchronized (segment) {
+                for (final Entry<T> entry : segment.clock) {
+                    if (!entry.removed) {
+                        mEntries.remove(entry.key);
+                        entry.removed = true;
+                        mSize.addAndGet(-entry.size);
+                        evicted.add(entry);
+                    }
+                }
+                segment.clock.clear();
+                segment.liveCount = 0;
+            }
+            for (final Entry<T> entry : evicted) {
+                entryRemoved(true, entry.key, entry.value, null);
+            }
+        }
     }
 
     /**
-     * Notify the removed entry that is no longer being cached
+     * @return the size of the cached resources, in kilobytes
      */
-    @Override
-    protected synchronized void entryRemoved(final boolean evicted, final String key,
+    public int size() {
+        return mSize.get();
+    }
+
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+    public int hitCount() {
+        return mHitCount.get();
+    }
+
+    public int missCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Notify the removed entry that is no longer being cached. Called without any cache lock
+     * held.
+     */
+    protected void entryRemoved(final boolean evicted, final String key,
             final T oldValue, final T newValue) {
         oldValue.release();
     }
 
+    /**
+     * Moves the clock hand through the segments, evicting unreferenced entries until the cache
+     * fits its size
+     */
+    private void trimToSize() {
+        int emptySegmentsInARow = 0;
+        while (mSize.get() > mMaxSize && emptySegmentsInARow < mSegments.length) {
+            final Segment<T> segment = mSegments[
+                    (mClockHand.getAndIncrement() & Integer.MAX_VALUE) % mSegments.length];
+            final Entry<T> evicted;
+            synchronized (segment) {
+                Entry<T> head = segment.clock.pollFirst();
+                while (head != null && head.removed) {
+                    head = segment.clock.pollFirst();
+                }
+                if (head == null) {
+                    emptySegmentsInARow++;
+                    continue;
+                }
+                emptySegmentsInARow = 0;
+                if (head.referenced) {
+                    // Second chance
+                    head.referenced = false;
+                    segment.clock.addLast(head);
+                    continue;
+                }
+                mEntries.remove(head.key);
+                head.removed = true;
+                segment.liveCount--;
+                mSize.addAndGet(-head.size);
+                evicted = head;
+            }
+            entryRemoved(true, evicted.key, evicted.value, null);
+        }
+    }
+
+    /**
+     * Accounts for an entry that has been taken out of the map. Must hold the segment lock.
+     */
+    private void removeLocked(final Segment<T> segment, final Entry<T> entry) {
+        entry.removed = true;
+        segment.liveCount--;
+        mSize.addAndGet(-entry.size);
+        if (segment.clock.size() - segment.liveCount > MAX_REMOVED_ENTRIES_PER_SEGMENT) {
+            final Iterator<Entry<T>> iterator = segment.clock.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().removed) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private Segment<T> getSegment(final String key) {
+        final int hash = key.hashCode();
+        return mSegments[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % mSegments.length];
+    }
+
+    private int safeSizeOf(final String key, final T value) {
+        final int size = sizeOf(key, value);
+        if (size < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return size;
+    }
+
     /**
      * Measure item size in kilobytes rather than units which is more practical
      * for a media resource cache
      */
-    @Override
     protected int sizeOf(final String key, final T value) {
         final int mediaSizeInKilobytes = value.getMediaSize() / 1024;
         // Never zero-count any resource, count as at least 1KB.
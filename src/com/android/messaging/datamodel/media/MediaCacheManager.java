@@ -22,6 +22,8 @@ import com.android.messaging.datamodel.MemoryCacheManager;
 import com.android.messaging.datamodel.MemoryCacheManager.MemoryCache;
 import com.android.messaging.datamodel.media.PoolableImageCache.ReusableImageResourcePool;
 
+import java.util.Collection;
+
 /**
  * Manages a set of media caches by id.
  */
@@ -46,6 +48,24 @@ public abstract class MediaCacheManager implements MemoryCache {
         mCaches.clear();
     }
 
+    @Override
+    public synchronized String getStats() {
+        final StringBuilder stats = new StringBuilder("MediaCaches:");
+        final int count = mCaches.size();
+        for (int i = 0; i < count; i++) {
+            final MediaCache<?> cache = mCaches.valueAt(i);
+            stats.append(' ').append(cache.getName()).append("(size=").append(cache.size())
+                    .append('/').append(cache.maxSize()).append("KB hits=")
+                    .append(cache.hitCount()).append(" misses=").append(cache.missCount());
+            if (cache instanceof PoolableImageCache) {
+                stats.append(' ').append(((PoolableImageCache) cache).asReusableBitmapPool()
+                        .getStats());
+            }
+            stats.append(')');
+        }
+        return stats.toString();
+    }
+
     public synchronized MediaCache<?> getOrCreateMediaCacheById(final int id) {
         MediaCache<?> cache = mCaches.get(id);
         if (cache == null) {
@@ -65,5 +85,12 @@ public abstract class MediaCacheManager implements MemoryCache {
         return null;
     }
 
+    /**
+     * Removes the images loaded from the given source uris from the disk tiers beneath the
+     * caches, in the background. Caches have no disk tier unless a subclass gives them one.
+     */
+    public void removeSourcesFromDiskCaches(final Collection<String> sources) {
+    }
+
     protected abstract MediaCache<?> createMediaCacheById(final int id);
 }
\ No newline at end of file
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.datamodel.media;
+
+import com.android.messaging.util.Assert;
+import com.android.messaging.util.Assert.DoesNotRunOnMainThread;
+import com.android.messaging.util.LogUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded, least recently used cache of encoded images on disk, keyed by media request
+ * key. It sits beneath a {@link MediaCache} so that thumbnails and avatars survive a process
+ * restart without being decoded again from their full size sources.
+ *
+ * <p>Each entry is a file named after the hashes of its source, the uri the image was loaded
+ * from, and its key, so that every size of an image can be removed once its source is deleted.
+ * Entries may also be given a maximum age, for sources that change without changing uri.
+ * The directory also holds a journal
+ * with a line for every entry written ("W name size"), read ("R name") or removed ("D name");
+ * replaying it on open restores the entries in least recently used order. Once the journal is
+ * much longer than the live entries it is rewritten with just those.</p>
+ */
+public class MediaDiskCache {
+    private static final String TAG = LogUtil.BUGLE_IMAGE_TAG;
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int ENTRY_VERSION = 2;
+    // Enough of the source hash to tell sources apart within one cache
+    private static final int SOURCE_HASH_LENGTH = 16;
+    private static final char SOURCE_SEPARATOR = '-';
+    private static final int MIN_JOURNAL_LINES_TO_COMPACT = 256;
+
+    /**
+     * An image read back from the cache
+     */
+    public static class Entry {
+        public final byte[] bytes;
+        public final int orientation;
+
+        Entry(final byte[] bytes, final int orientation) {
+            this.bytes = bytes;
+            this.orientation = orientation;
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxSizeBytes;
+    private final long mMaxAgeMillis;
+
+    // Entry file names to sizes in least recently used order. All fields below are protected
+    // by this.
+    private LinkedHashMap<String, Long> mEntries;
+    private long mSizeBytes;
+    private Writer mJournal;
+    private int mJournalLines;
+    private int mHitCount;
+    private int mMissCount;
+    private int mWriteCount;
+
+    public MediaDiskCache(final File directory, final long maxSizeBytes) {
+        this(directory, maxSizeBytes, 0 /* maxAgeMillis */);
+    }
+
+    /**
+     * @param maxAgeMillis how long an entry is served after it's written, or 0 for no limit
+     */
+    public MediaDiskCache(final File directory, final long maxSizeBytes,
+            final long maxAgeMillis) {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Reads an image from the cache
+     * @param source the uri the image was loaded from
+     * @return the image or null if it isn't cached
+     */
+    @DoesNotRunOnMainThread
+    public Entry get(final String source, final String key) {
+        Assert.isNotMainThread();
+        final String name = getFileName(source, key);
+        synchronized (this) {
+            if (!open() || mEntries.get(name) == null) {
+                mMissCount++;
+                return null;
+            }
+            appendToJournal("R " + name);
+        }
+        // Read outside the lock so that loads don't wait on each other. The file may be evicted
+        // in the meantime, which reads as a miss.
+        final File file = new File(mDirectory, name);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != ENTRY_VERSION || !key.equals(in.readUTF())) {
+                // Written by another version or a hash collision
+                removeAsMiss(name);
+                return null;
+            }
+            final long writeTimeMillis = in.readLong();
+            if (mMaxAgeMillis > 0
+                    && Math.abs(System.currentTimeMillis() - writeTimeMillis) > mMaxAgeMillis) {
+                removeAsMiss(name);
+                return null;
+            }
+            final int orientation = in.readInt();
+            final int length = in.readInt();
+            if (length < 0 || length > file.length()) {
+                // Don't trust a corrupt length with an allocation
+                LogUtil.w(TAG, "MediaDiskCache: bad length " + length + " in " + name);
+                removeAsMiss(name);
+                return null;
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            synchronized (this) {
+                mHitCount++;
+            }
+            return new Entry(bytes, orientation);
+        } catch (final FileNotFoundException e) {
+            removeAsMiss(name);
+            return null;
+        } catch (final IOException e) {
+            LogUtil.w(TAG, "MediaDiskCache: failed to read " + name, e);
+            removeAsMiss(name);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes an image to the cache, evicting the least recently used images to make room
+     * @param source the uri the image was loaded from
+     */
+    @DoesNotRunOnMainThread
+    public void put(final String source, final String key, final byte[] bytes,
+            final int orientation) {
+        Assert.isNotMainThread();
+        final String name = getFileName(source, key);
+        final File temp = new File(mDirectory,
+                name + TEMP_SUFFIX + Thread.currentThread().getId());
+        DataOutputStream out = null;
+        try {
+            synchronized (this) {
+                if (!open()) {
+                    return;
+                }
+            }
+            out = new DataOutputStream(new FileOutputStream(temp));
+            out.writeInt(ENTRY_VERSION);
+            out.writeUTF(key);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(orientation);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.close();
+            out = null;
+            final long size = temp.length();
+            synchronized (this) {
+                if (!temp.renameTo(new File(mDirectory, name))) {
+                    throw new IOException("Failed to rename " + temp);
+                }
+                removeEntrySize(name);
+                mEntries.put(name, size);
+                mSizeBytes += size;
+                mWriteCount++;
+                appendToJournal("W " + name + " " + size);
+                trimToSize();
+            }
+        } catch (final IOException e) {
+            LogUtil.w(TAG, "MediaDiskCache: failed to write " + name, e);
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Removes every image loaded from the given sources, such as once they are deleted
+     */
+    @DoesNotRunOnMainThread
+    public synchronized void removeSources(final Collection<String> sources) {
+        Assert.isNotMainThread();
+        if (sources.isEmpty() || !open()) {
+            return;
+        }
+        final HashSet<String> sourceHashes = new HashSet<String>(sources.size());
+        for (final String source : sources) {
+            sourceHashes.add(getSourceHash(source));
+        }
+        final ArrayList<String> names = new ArrayList<String>();
+        for (final String name : mEntries.keySet()) {
+            final int separator = name.indexOf(SOURCE_SEPARATOR);
+            if (separator > 0 && sourceHashes.contains(name.substring(0, separator))) {
+                names.add(name);
+            }
+        }
+        for (final String name : names) {
+            removeEntry(name);
+        }
+    }
+
+    synchronized int getEntryCount() {
+        return mEntries == null ? 0 : mEntries.size();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return a summary of the cache size and hit rate, for debugging
+     */
+    public synchronized String getStats() {
+        return "size=" + mSizeBytes + "/" + mMaxSizeBytes + " entries=" + getEntryCount()
+                + " hits=" + mHitCount
+                + " misses=" + mMissCount + " writes=" + mWriteCount;
+    }
+
+    /**
+     * Opens the cache, replaying the journal, if not done yet
+     * @return false if the cache directory can't be used
+     */
+    private boolean open() {
+        if (mJournal != null) {
+            return true;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            LogUtil.w(TAG, "MediaDiskCache: can't create " + mDirectory);
+            return false;
+        }
+        mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true /* accessOrder */);
+        mSizeBytes = 0;
+        mJournalLines = 0;
+        final File journalFile = new File(mDirectory, JOURNAL_FILE);
+        if (journalFile.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(journalFile));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replayJournalLine(line);
+                    mJournalLines++;
+                }
+            } catch (final IOException e) {
+                LogUtil.w(TAG, "MediaDiskCache: failed to read journal, keeping what was read",
+                        e);
+            } finally {
+                closeQuietly(reader);
+            }
+        }
+        // Drop files the journal doesn't know about, such as interrupted writes
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = file.getName();
+                if (!name.equals(JOURNAL_FILE) && !mEntries.containsKey(name)) {
+                    file.delete();
+                }
+            }
+        }
+        try {
+            rewriteJournal();
+        } catch (final IOException e) {
+            LogUtil.w(TAG, "MediaDiskCache: failed to write journal", e);
+            mEntries = null;
+            return false;
+        }
+        trimToSize();
+        return true;
+    }
+
+    private void replayJournalLine(final String line) {
+        final String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            return;
+        }
+        final String name = parts[1];
+        switch (parts[0]) {
+            case "W":
+                if (parts.length == 3) {
+                    final long size;
+                    try {
+                        size = Long.parseLong(parts[2]);
+                    } catch (final NumberFormatException e) {
+                        // Torn line from a crash, the file it names is dropped
+                        return;
+                    }
+                    removeEntrySize(name);
+                    mEntries.put(name, size);
+                    mSizeBytes += size;
+                }
+                break;
+            case "R":
+                mEntries.get(name);
+                break;
+            case "D":
+                removeEntrySize(name);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void rewriteJournal() throws IOException {
+        if (mJournal != null) {
+            mJournal.close();
+        }
+        final File journalFile = new File(mDirectory, JOURNAL_FILE);
+        final File tempFile = new File(mDirectory, JOURNAL_FILE + TEMP_SUFFIX);
+        final Writer writer = new BufferedWriter(new FileWriter(tempFile));
+        try {
+            for (final Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write("W " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            throw new IOException("Failed to rename " + tempFile);
+        }
+        mJournal = new BufferedWriter(new FileWriter(journalFile, true /* append */));
+        mJournalLines = mEntries.size();
+    }
+
+    private void appendToJournal(final String line) {
+        try {
+            mJournal.write(line + "\n");
+            mJournal.flush();
+            mJournalLines++;
+            if (mJournalLines >= MIN_JOURNAL_LINES_TO_COMPACT
+                    && mJournalLines > 2 * mEntries.size()) {
+                rewriteJournal();
+            }
+        } catch (final IOException e) {
+            // The entries are still valid, they'll just be forgotten on the next open
+            LogUtil.w(TAG, "MediaDiskCache: failed to append to journal", e);
+        }
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > mMaxSizeBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            mSizeBytes -= eldest.getValue();
+            new File(mDirectory, eldest.getKey()).delete();
+            appendToJournal("D " + eldest.getKey());
+        }
+    }
+
+    private synchronized void removeAsMiss(final String name) {
+        removeEntry(name);
+        mMissCount++;
+    }
+
+    private void removeEntry(final String name) {
+        if (mEntries != null && removeEntrySize(name)) {
+            new File(mDirectory, name).delete();
+            appendToJournal("D " + name);
+        }
+    }
+
+    private boolean removeEntrySize(final String name) {
+        final Long size = mEntries.remove(name);
+        if (size != null) {
+            mSizeBytes -= size;
+            return true;
+        }
+        return false;
+    }
+
+    private static String getFileName(final String source, final String key) {
+        return getSourceHash(source) + SOURCE_SEPARATOR + getHash(key);
+    }
+
+    private static String getSourceHash(final String source) {
+        return getHash(source).substring(0, SOURCE_HASH_LENGTH);
+    }
+
+    private static String getHash(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            // Every platform provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+}
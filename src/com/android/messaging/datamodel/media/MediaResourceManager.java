@@ -15,6 +15,8 @@
  */
 package com.android.messaging.datamodel.media;
 
+import android.content.ContentResolver;
+import android.net.Uri;
 import android.os.AsyncTask;
 
 import com.android.messaging.Factory;
@@ -23,16 +25,23 @@ import com.android.messaging.util.Assert.RunsOnAnyThread;
 import com.android.messaging.util.LogUtil;
 import com.google.common.annotations.VisibleForTesting;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Loads and maintains a set of in-memory LRU caches for different types of media resources.
- * Right now we don't utilize any disk cache as all media urls are expected to be resolved to
- * local content.<p/>
+ * Image caches may have a {@link MediaDiskCache} beneath them holding scaled down, encoded copies
+ * of their images, so that a cold start doesn't decode every thumbnail from its full size source
+ * again.<p/>
  *
  * <p>The MediaResourceManager takes media loading requests through one of two ways:</p>
  *
@@ -51,10 +60,10 @@ import java.util.concurrent.ThreadFactory;
  * callback. Meanwhile, MediaResourceManager also pushes the loaded resource onto its dedicated
  * cache.</p>
  *
- * <p>The media resource caches ({@link MediaCache}) are maintained as a set of LRU caches. They are
- * created on demand by the incoming MediaRequest's getCacheId() method. The implementations of
- * MediaRequest (such as {@link ImageRequest}) get to determine the desired cache id. For Bugle,
- * the list of available caches are in {@link BugleMediaCacheManager}</p>
+ * <p>The media resource caches ({@link MediaCache}) are maintained as a set of clock caches. They
+ * are created on demand by the incoming MediaRequest's getCacheId() method. The implementations
+ * of MediaRequest (such as {@link ImageRequest}) get to determine the desired cache id. For
+ * Bugle, the list of available caches are in {@link BugleMediaCacheManager}</p>
  *
  * <p>Optionally, media loading can support on-demand media encoding and decoding.
  * All {@link MediaRequest}'s can opt to chain additional {@link MediaRequest}'s to be executed
@@ -82,6 +91,7 @@ import java.util.concurrent.ThreadFactory;
  */
 public class MediaResourceManager {
     private static final String TAG = LogUtil.BUGLE_TAG;
+    private static final char DISK_CACHE_VERSION_DELIMITER = '|';
 
     public static MediaResourceManager get() {
         return Factory.get().getMediaResourceManager();
@@ -97,7 +107,38 @@ public class MediaResourceManager {
 
     // We use a fixed thread pool for handling media loading tasks. Using a cached thread pool
     // allows for unlimited thread creation which can lead to OOMs so we limit the threads here.
-    private static final Executor MEDIA_LOADING_EXECUTOR = Executors.newFixedThreadPool(10);
+    // Queued loads run highest priority first, and newest first within a priority, so that when
+    // flinging through a list the rows now on screen load before the ones already scrolled past.
+    private static final ThreadPoolExecutor MEDIA_LOADING_EXECUTOR = new ThreadPoolExecutor(
+            10, 10, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+    private static final AtomicLong sMediaLoadingSequence = new AtomicLong();
+
+    /**
+     * A load queued on the media loading executor, ordered by priority and then newest first
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Runnable mRunnable;
+        private final int mPriority;
+        private final long mSequence = sMediaLoadingSequence.getAndIncrement();
+
+        PrioritizedTask(final Runnable runnable, final int priority) {
+            mRunnable = runnable;
+            mPriority = priority;
+        }
+
+        @Override
+        public void run() {
+            mRunnable.run();
+        }
+
+        @Override
+        public int compareTo(final PrioritizedTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return Long.compare(other.mSequence, mSequence);
+        }
+    }
 
     // A dedicated single thread executor for performing background task after loading the resource
     // on the media loading executor. This includes work such as encoding loaded media to be cached.
@@ -113,6 +154,26 @@ public class MediaResourceManager {
                 }
             });
 
+    /**
+     * Requests sharing one load of a media resource
+     */
+    private static class InFlightLoad<T extends RefCountedMediaResource> {
+        // Cache id and key of the resource, or null if the load isn't shared
+        final String inFlightKey;
+        final List<MediaRequest<T>> requests = new ArrayList<>();
+        // The task loading it and its entry in the executor queue, once scheduled
+        AsyncTask<?, ?, ?> task;
+        PrioritizedTask queuedTask;
+
+        InFlightLoad(final String inFlightKey, final MediaRequest<T> mediaRequest) {
+            this.inFlightKey = inFlightKey;
+            requests.add(mediaRequest);
+        }
+    }
+
+    // Loads running on the media loading executor by cache id and key, protected by itself.
+    private final HashMap<String, InFlightLoad<?>> mInFlightLoads = new HashMap<>();
+
     /**
      * Requests a media resource asynchronously. Upon completion of the media loading task,
      * the listener will be notified of success/failure iff it's still bound. A refcount on the
@@ -128,6 +189,36 @@ public class MediaResourceManager {
         scheduleAsyncMediaRequest(mediaRequest, MEDIA_LOADING_EXECUTOR);
     }
 
+    /**
+     * Cancels an asynchronous request whose result is no longer wanted, such as when the view it
+     * was made for is being unbound. If no other request is waiting on the same load, the load is
+     * dropped from the queue, or left to finish into the cache if it has already started.
+     */
+    public <T extends RefCountedMediaResource> void cancelMediaRequest(
+            final BindableMediaRequest<T> mediaRequest) {
+        final String inFlightKey = getInFlightKey(mediaRequest);
+        if (inFlightKey == null) {
+            return;
+        }
+        synchronized (mInFlightLoads) {
+            final InFlightLoad<?> inFlightLoad = mInFlightLoads.get(inFlightKey);
+            if (inFlightLoad == null || !inFlightLoad.requests.remove(mediaRequest)) {
+                return;
+            }
+            for (final MediaRequest<?> request : inFlightLoad.requests) {
+                if (needsLoading(request)) {
+                    return;
+                }
+            }
+            // New requests for the same media start a new load
+            mInFlightLoads.remove(inFlightKey);
+            if (inFlightLoad.task != null) {
+                inFlightLoad.task.cancel(false /* mayInterruptIfRunning */);
+                MEDIA_LOADING_EXECUTOR.remove(inFlightLoad.queuedTask);
+            }
+        }
+    }
+
     /**
      * Requests a media resource synchronously.
      * @return the loaded resource with a refcount reserved for the caller. The caller must call
@@ -176,13 +267,147 @@ public class MediaResourceManager {
                 loadedResource = cachedResource;
             }
         } else {
-            // Actually load the media after cache miss.
-            loadedResource = loadMediaFromRequest(mediaRequest, chainedRequests);
+            final T diskResource = loadMediaFromDiskCache(mediaRequest);
+            if (diskResource != null) {
+                // Decode the cached thumbnail and keep the decoded image in the memory cache.
+                final MediaRequest<T> decodeRequest = (MediaRequest<T>) diskResource
+                        .getMediaDecodingRequest(mediaRequest);
+                diskResource.release();
+                loadedResource = loadMediaFromRequest(decodeRequest, chainedRequests);
+                addResourceToMemoryCache(mediaRequest, loadedResource);
+            } else {
+                // Actually load the media after cache miss.
+                loadedResource = loadMediaFromRequest(mediaRequest, chainedRequests);
+                maybeAddResourceToDiskCache(mediaRequest, loadedResource, chainedRequests);
+            }
         }
         return new MediaLoadingResult<>(loadedResource, cachedResource != null /* fromCache */,
                 chainedRequests);
     }
 
+    /**
+     * Look the media up in the disk tier beneath its memory cache, if it has one
+     * @return an encoded image resource with a ref held for the caller, or null on a miss
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends RefCountedMediaResource> T loadMediaFromDiskCache(
+            final MediaRequest<T> mediaRequest) {
+        if (mediaRequest.getRequestType() != MediaRequest.REQUEST_LOAD_MEDIA) {
+            return null;
+        }
+        final MediaDiskCache diskCache = getDiskCache(mediaRequest);
+        if (diskCache == null) {
+            return null;
+        }
+        final MediaDiskCache.Entry entry = diskCache.get(getDiskCacheSource(mediaRequest),
+                getDiskCacheKey(mediaRequest));
+        if (entry == null) {
+            return null;
+        }
+        if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
+            LogUtil.v(TAG, "disk cache hit, key=" +
+                    LogUtil.sanitizePII(mediaRequest.getKey()) /* key can contain phone# */);
+        }
+        final EncodedImageResource resource = new EncodedImageResource(mediaRequest.getKey(),
+                entry.bytes, entry.orientation);
+        resource.addRef();
+        return (T) resource;
+    }
+
+    /**
+     * Write a newly loaded image to the disk tier beneath its memory cache, if it has one. The
+     * image is scaled and compressed on the background executor, unless a chained encoding
+     * request will do that anyway, in which case its result is written instead.
+     */
+    private <T extends RefCountedMediaResource> void maybeAddResourceToDiskCache(
+            final MediaRequest<T> mediaRequest, final T resource,
+            final List<MediaRequest<T>> chainedRequests) {
+        final MediaDiskCache diskCache = getDiskCache(mediaRequest);
+        if (diskCache == null || !(resource instanceof ImageResource)) {
+            return;
+        }
+        final String source = getDiskCacheSource(mediaRequest);
+        final String key = getDiskCacheKey(mediaRequest);
+        final ImageResource imageResource = (ImageResource) resource;
+        if (imageResource.isEncoded()) {
+            // Encoding requests already run on the background executor
+            diskCache.put(source, key, imageResource.getBytes(),
+                    imageResource.getOrientation());
+            return;
+        }
+        if (mediaRequest.getRequestType() != MediaRequest.REQUEST_LOAD_MEDIA
+                || !(resource instanceof DecodedImageResource)
+                || !(mediaRequest.getDescriptor() instanceof ImageRequestDescriptor)) {
+            return;
+        }
+        final ImageRequestDescriptor descriptor =
+                (ImageRequestDescriptor) mediaRequest.getDescriptor();
+        if (descriptor.desiredWidth == ImageRequest.UNSPECIFIED_SIZE
+                || descriptor.desiredHeight == ImageRequest.UNSPECIFIED_SIZE) {
+            // Only thumbnails are worth the disk space, not full size images
+            return;
+        }
+        for (final MediaRequest<T> chainedRequest : chainedRequests) {
+            if (chainedRequest.getRequestType() == MediaRequest.REQUEST_ENCODE_MEDIA) {
+                return;
+            }
+        }
+        final DecodedImageResource decodedResource = (DecodedImageResource) resource;
+        // Keep the bitmap alive until it's been written
+        decodedResource.addRef();
+        MEDIA_BACKGROUND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final byte[] bytes = decodedResource.getThumbnailBytes(mediaRequest);
+                    if (bytes != null) {
+                        diskCache.put(source, key, bytes, decodedResource.getOrientation());
+                    }
+                } finally {
+                    decodedResource.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the uri the disk tier files the request's image under, so that every size of it
+     *     can be removed when the uri's content is deleted
+     */
+    private static String getDiskCacheSource(final MediaRequest<?> mediaRequest) {
+        final Uri uri = getSourceUri(mediaRequest);
+        return uri == null ? mediaRequest.getKey() : uri.toString();
+    }
+
+    /**
+     * @return the request key with the last modified time and length of the file the image is
+     *     loaded from, if any, so that a file rewritten in place misses rather than reading back
+     *     its old thumbnail
+     */
+    private static String getDiskCacheKey(final MediaRequest<?> mediaRequest) {
+        final Uri uri = getSourceUri(mediaRequest);
+        if (uri != null && ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            final File file = new File(uri.getPath());
+            return mediaRequest.getKey() + DISK_CACHE_VERSION_DELIMITER + file.lastModified()
+                    + DISK_CACHE_VERSION_DELIMITER + file.length();
+        }
+        return mediaRequest.getKey();
+    }
+
+    private static Uri getSourceUri(final MediaRequest<?> mediaRequest) {
+        final MediaRequestDescriptor<?> descriptor = mediaRequest.getDescriptor();
+        return descriptor instanceof UriImageRequestDescriptor
+                ? ((UriImageRequestDescriptor) descriptor).uri : null;
+    }
+
+    private static MediaDiskCache getDiskCache(final MediaRequest<?> mediaRequest) {
+        if (mediaRequest.getKey() == null) {
+            return null;
+        }
+        final MediaCache<?> mediaCache = mediaRequest.getMediaCache();
+        return mediaCache == null ? null : mediaCache.getDiskCache();
+    }
+
     private <T extends RefCountedMediaResource> T loadMediaFromCache(
             final MediaRequest<T> mediaRequest) {
         if (mediaRequest.getRequestType() != MediaRequest.REQUEST_LOAD_MEDIA) {
@@ -221,19 +446,36 @@ public class MediaResourceManager {
     }
 
     /**
-     * Schedule an async media request on the given <code>executor</code>.
+     * Schedule an async media request on the given <code>executor</code>. Requests to load a
+     * resource that is already being loaded on the media loading executor join that load instead
+     * of loading it again, and all of them are notified once it completes.
      * @param mediaRequest the media request to be processed asynchronously. May be either an
      * {@link AsyncMediaRequestWrapper} for listening for event callbacks, or a regular media
      * request for fire-and-forget type of behavior.
      */
+    @SuppressWarnings("unchecked")
     private <T extends RefCountedMediaResource> void scheduleAsyncMediaRequest(
             final MediaRequest<T> mediaRequest, final Executor executor) {
-        final BindableMediaRequest<T> bindableRequest =
-                (mediaRequest instanceof BindableMediaRequest<?>) ?
-                        (BindableMediaRequest<T>) mediaRequest : null;
-        if (bindableRequest != null && !bindableRequest.isBound()) {
+        if (!needsLoading(mediaRequest)) {
             return; // Request is obsolete
         }
+        final InFlightLoad<T> inFlightLoad;
+        final String inFlightKey =
+                executor == MEDIA_LOADING_EXECUTOR ? getInFlightKey(mediaRequest) : null;
+        if (inFlightKey != null) {
+            synchronized (mInFlightLoads) {
+                final InFlightLoad<T> existingLoad =
+                        (InFlightLoad<T>) mInFlightLoads.get(inFlightKey);
+                if (existingLoad != null) {
+                    existingLoad.requests.add(mediaRequest);
+                    return;
+                }
+                inFlightLoad = new InFlightLoad<>(inFlightKey, mediaRequest);
+                mInFlightLoads.put(inFlightKey, inFlightLoad);
+            }
+        } else {
+            inFlightLoad = new InFlightLoad<>(null /* inFlightKey */, mediaRequest);
+        }
         // We don't use SafeAsyncTask here since it enforces the shared thread pool executor
         // whereas we want a dedicated thread pool executor.
         AsyncTask<Void, Void, MediaLoadingResult<T>> mediaLoadingTask =
@@ -243,8 +485,8 @@ public class MediaResourceManager {
             @Override
             protected MediaLoadingResult<T> doInBackground(Void... params) {
                 // Double check the request is still valid by the time we start processing it
-                if (bindableRequest != null && !bindableRequest.isBound()) {
-                    return null; // Request is obsolete
+                if (!anyNeedsLoading(inFlightLoad)) {
+                    return null; // All requests are obsolete
                 }
                 try {
                     return processMediaRequestInternal(mediaRequest);
@@ -256,13 +498,18 @@ public class MediaResourceManager {
 
             @Override
             protected void onPostExecute(final MediaLoadingResult<T> result) {
+                final List<MediaRequest<T>> requests = finishInFlightLoad(inFlightLoad);
                 if (result != null) {
                     Assert.isNull(mException);
                     Assert.isTrue(result.loadedResource.getRefCount() > 0);
                     try {
-                        if (bindableRequest != null) {
-                            bindableRequest.onMediaResourceLoaded(
-                                    bindableRequest, result.loadedResource, result.fromCache);
+                        for (final MediaRequest<T> request : requests) {
+                            if (request instanceof BindableMediaRequest<?>) {
+                                final BindableMediaRequest<T> bindableRequest =
+                                        (BindableMediaRequest<T>) request;
+                                bindableRequest.onMediaResourceLoaded(
+                                        bindableRequest, result.loadedResource, result.fromCache);
+                            }
                         }
                     } finally {
                         result.loadedResource.release();
@@ -271,19 +518,103 @@ public class MediaResourceManager {
                 } else if (mException != null) {
                     LogUtil.e(LogUtil.BUGLE_TAG, "Asynchronous media loading failed, key=" +
                             mediaRequest.getKey(), mException);
-                    if (bindableRequest != null) {
-                        bindableRequest.onMediaResourceLoadError(bindableRequest, mException);
+                    for (final MediaRequest<T> request : requests) {
+                        if (request instanceof BindableMediaRequest<?>) {
+                            final BindableMediaRequest<T> bindableRequest =
+                                    (BindableMediaRequest<T>) request;
+                            bindableRequest.onMediaResourceLoadError(bindableRequest, mException);
+                        }
                     }
                 } else {
-                    Assert.isTrue(bindableRequest == null || !bindableRequest.isBound());
-                    if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
+                    rescheduleRequestsNeedingLoading(requests);
+                }
+            }
+
+            @Override
+            protected void onCancelled(final MediaLoadingResult<T> result) {
+                // Cancelled after it had started, the loaded media is in the cache by now
+                if (result != null) {
+                    result.loadedResource.release();
+                    result.scheduleChainedRequests();
+                }
+                rescheduleRequestsNeedingLoading(finishInFlightLoad(inFlightLoad));
+            }
+
+            private void rescheduleRequestsNeedingLoading(final List<MediaRequest<T>> requests) {
+                for (final MediaRequest<T> request : requests) {
+                    if (needsLoading(request)) {
+                        // Joined after the load was found to be obsolete, load it afresh
+                        scheduleAsyncMediaRequest(request, executor);
+                    } else if (LogUtil.isLoggable(TAG, LogUtil.VERBOSE)) {
                         LogUtil.v(TAG, "media request not processed, no longer bound; key=" +
-                                LogUtil.sanitizePII(mediaRequest.getKey()) /* key with phone# */);
+                                LogUtil.sanitizePII(request.getKey()) /* key with phone# */);
                     }
                 }
             }
         };
-        mediaLoadingTask.executeOnExecutor(executor, (Void) null);
+        if (executor == MEDIA_LOADING_EXECUTOR) {
+            final int priority = (mediaRequest instanceof BindableMediaRequest<?>) ?
+                    ((BindableMediaRequest<?>) mediaRequest).getPriority() :
+                    BindableMediaRequest.PRIORITY_DEFAULT;
+            synchronized (mInFlightLoads) {
+                inFlightLoad.task = mediaLoadingTask;
+                mediaLoadingTask.executeOnExecutor(new Executor() {
+                    @Override
+                    public void execute(final Runnable runnable) {
+                        inFlightLoad.queuedTask = new PrioritizedTask(runnable, priority);
+                        MEDIA_LOADING_EXECUTOR.execute(inFlightLoad.queuedTask);
+                    }
+                }, (Void) null);
+            }
+        } else {
+            mediaLoadingTask.executeOnExecutor(executor, (Void) null);
+        }
+    }
+
+    /**
+     * @return the key of the in-flight load the request can share, or null if it can't share one
+     */
+    private static String getInFlightKey(final MediaRequest<?> mediaRequest) {
+        if (mediaRequest.getRequestType() != MediaRequest.REQUEST_LOAD_MEDIA
+                || mediaRequest.getKey() == null) {
+            return null;
+        }
+        return mediaRequest.getCacheId() + ":" + mediaRequest.getKey();
+    }
+
+    /**
+     * @return false if the request is bound to a listener that is no longer bound, true for
+     * bound and fire-and-forget requests
+     */
+    private static boolean needsLoading(final MediaRequest<?> mediaRequest) {
+        return !(mediaRequest instanceof BindableMediaRequest<?>)
+                || ((BindableMediaRequest<?>) mediaRequest).isBound();
+    }
+
+    private boolean anyNeedsLoading(final InFlightLoad<?> inFlightLoad) {
+        synchronized (mInFlightLoads) {
+            for (final MediaRequest<?> request : inFlightLoad.requests) {
+                if (needsLoading(request)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Stop new requests from joining the load
+     * @return all requests that share the load
+     */
+    private <T extends RefCountedMediaResource> List<MediaRequest<T>> finishInFlightLoad(
+            final InFlightLoad<T> inFlightLoad) {
+        synchronized (mInFlightLoads) {
+            if (inFlightLoad.inFlightKey != null
+                    && mInFlightLoads.get(inFlightLoad.inFlightKey) == inFlightLoad) {
+                mInFlightLoads.remove(inFlightLoad.inFlightKey);
+            }
+            return new ArrayList<>(inFlightLoad.requests);
+        }
     }
 
     @VisibleForTesting
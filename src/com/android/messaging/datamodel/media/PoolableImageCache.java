@@ -23,6 +23,7 @@ import androidx.annotation.NonNull;
 import android.util.SparseArray;
 
 import com.android.messaging.Factory;
+import com.android.messaging.datamodel.BitmapPool;
 import com.android.messaging.util.Assert;
 import com.android.messaging.util.LogUtil;
 
@@ -64,14 +65,14 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
     }
 
     @Override
-    public synchronized ImageResource addResourceToCache(final String key,
+    public ImageResource addResourceToCache(final String key,
             final ImageResource imageResource) {
         mReusablePoolAccessor.onResourceEnterCache(imageResource);
         return super.addResourceToCache(key, imageResource);
     }
 
     @Override
-    protected synchronized void entryRemoved(final boolean evicted, final String key,
+    protected void entryRemoved(final boolean evicted, final String key,
             final ImageResource oldValue, final ImageResource newValue) {
         mReusablePoolAccessor.onResourceLeaveCache(oldValue);
         super.entryRemoved(evicted, key, oldValue, newValue);
@@ -87,10 +88,11 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
     /**
      * A bitmap pool representation built on top of the image cache. It treats the image resources
      * stored in the image cache as a self-contained bitmap pool and is able to create or
-     * reclaim bitmap resource as needed.
+     * reclaim bitmap resource as needed. Images are pooled by the size class of their bitmap's
+     * allocation (see {@link BitmapPool#getSizeClass}), so a bitmap is reused for any size that
+     * fits in it, not only for its own dimensions.
      */
     public class ReusableImageResourcePool {
-        private static final int MAX_SUPPORTED_IMAGE_DIMENSION = 0xFFFF;
         private static final int INVALID_POOL_KEY = 0;
 
         /**
@@ -110,13 +112,22 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
         private volatile int mSucceededBitmapReuseCount = 0;
 
         /**
-         * A sparse array from bitmap size to a list of image cache entries that match the
-         * given size. This map is used to quickly retrieve a usable bitmap to be reused by an
+         * Counts of requests that did and didn't find a reusable bitmap, guarded by mPoolLock.
+         */
+        private int mReuseHitCount;
+        private int mReuseMissCount;
+
+        /**
+         * A sparse array from bitmap size class to a list of image cache entries that match the
+         * given size class. This map is used to quickly retrieve a usable bitmap to be reused by an
          * incoming ImageRequest. We need to ensure that this sparse array always contains only
          * elements currently in the image cache with no other consumer.
          */
         private final SparseArray<LinkedList<ImageResource>> mImageListSparseArray;
 
+        // Guards the pool lists. Kept apart from the cache so that cache reads don't wait on it.
+        private final Object mPoolLock = new Object();
+
         public ReusableImageResourcePool() {
             mImageListSparseArray = new SparseArray<LinkedList<ImageResource>>();
         }
@@ -227,7 +238,7 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
         }
 
         private void addResourceToPool(final ImageResource imageResource) {
-            synchronized (PoolableImageCache.this) {
+            synchronized (mPoolLock) {
                 final int poolKey = getPoolKey(imageResource);
                 Assert.isTrue(poolKey != INVALID_POOL_KEY);
                 LinkedList<ImageResource> imageList = mImageListSparseArray.get(poolKey);
@@ -240,7 +251,7 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
         }
 
         private void removeResourceFromPool(final ImageResource imageResource) {
-            synchronized (PoolableImageCache.this) {
+            synchronized (mPoolLock) {
                 final int poolKey = getPoolKey(imageResource);
                 Assert.isTrue(poolKey != INVALID_POOL_KEY);
                 final LinkedList<ImageResource> imageList = mImageListSparseArray.get(poolKey);
@@ -255,83 +266,105 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
          * result of this call, the caller will assume ownership of the returned bitmap.
          */
         private Bitmap getReusableBitmapFromPool(final int width, final int height) {
-            synchronized (PoolableImageCache.this) {
-                final int poolKey = getPoolKey(width, height);
-                if (poolKey != INVALID_POOL_KEY) {
-                    final LinkedList<ImageResource> images = mImageListSparseArray.get(poolKey);
-                    if (images != null && images.size() > 0) {
-                        // Try to reuse the first available bitmap from the pool list. We start from
-                        // the least recently added cache entry of the given size.
-                        ImageResource imageToUse = null;
-                        for (int i = 0; i < images.size(); i++) {
-                            final ImageResource image = images.get(i);
-                            if (image.getRefCount() == 1) {
-                                image.acquireLock();
-                                if (image.getRefCount() == 1) {
-                                    // The image is only used by the cache, so it's reusable.
-                                    imageToUse = images.remove(i);
-                                    break;
-                                } else {
-                                    // Logically, this shouldn't happen, because as soon as the
-                                    // cache is the only user of this resource, it will not be
-                                    // used by anyone else until the next cache access, but we
-                                    // currently hold on to the cache lock. But technically
-                                    // future changes may violate this assumption, so warn about
-                                    // this.
-                                    LogUtil.w(LogUtil.BUGLE_IMAGE_TAG, "Image refCount changed " +
-                                            "from 1 in getReusableBitmapFromPool()");
-                                    image.releaseLock();
-                                }
-                            }
-                        }
-
-                        if (imageToUse == null) {
-                            return null;
-                        }
-
-                        try {
-                            imageToUse.assertLockHeldByCurrentThread();
-
-                            // Only reuse the bitmap if the last time we use was greater than 5s.
-                            // This allows the cache a chance to reuse instead of always taking the
-                            // oldest.
-                            final long timeSinceLastRef = SystemClock.elapsedRealtime() -
-                                    imageToUse.getLastRefAddTimestamp();
-                            if (timeSinceLastRef < MIN_TIME_IN_POOL) {
-                                if (LogUtil.isLoggable(LogUtil.BUGLE_IMAGE_TAG, LogUtil.VERBOSE)) {
-                                    LogUtil.v(LogUtil.BUGLE_IMAGE_TAG, "Not reusing reusing " +
-                                            "first available bitmap from the pool because it " +
-                                            "has not been in the pool long enough. " +
-                                            "timeSinceLastRef=" + timeSinceLastRef);
-                                }
-                                // Put back the image and return no reuseable bitmap.
-                                images.addLast(imageToUse);
-                                return null;
-                            }
-
-                            // Add a temp ref on the image resource so it won't be GC'd after
-                            // being removed from the cache.
-                            imageToUse.addRef();
-
-                            // Remove the image resource from the image cache.
-                            final ImageResource removed = remove(imageToUse.getKey());
-                            Assert.isTrue(removed == imageToUse);
-
-                            // Try to reuse the bitmap from the image resource. This will transfer
-                            // ownership of the bitmap object to the caller of this method.
-                            final Bitmap reusableBitmap = imageToUse.reuseBitmap();
-
-                            imageToUse.release();
-                            return reusableBitmap;
-                        } finally {
-                            // We are either done with the reuse operation, or decided not to use
-                            // the image. Either way, release the lock.
-                            imageToUse.releaseLock();
-                        }
+            final int byteCount = BitmapPool.getByteCount(width, height);
+            synchronized (mPoolLock) {
+                Bitmap reusableBitmap = null;
+                if (byteCount >= 0) {
+                    // Look one size class up as well, so that a request just past a class
+                    // boundary can still be served
+                    final int sizeClass = BitmapPool.getSizeClass(byteCount);
+                    reusableBitmap = takeReusableBitmap(sizeClass, byteCount);
+                    if (reusableBitmap == null && sizeClass < Integer.MAX_VALUE) {
+                        reusableBitmap = takeReusableBitmap(
+                                BitmapPool.getSizeClass(sizeClass + 1), byteCount);
+                    }
+                }
+                if (reusableBitmap != null) {
+                    mReuseHitCount++;
+                } else {
+                    mReuseMissCount++;
+                }
+                return reusableBitmap;
+            }
+        }
+
+        /**
+         * Try to take the bitmap of an image in the given size class that has at least the given
+         * number of bytes, removing the image from the cache. Must hold mPoolLock.
+         */
+        private Bitmap takeReusableBitmap(final int poolKey, final int byteCount) {
+            final LinkedList<ImageResource> images = mImageListSparseArray.get(poolKey);
+            if (images == null || images.size() == 0) {
+                return null;
+            }
+            // Try to reuse the first available bitmap from the pool list. We start from
+            // the least recently added cache entry of the given size.
+            ImageResource imageToUse = null;
+            for (int i = 0; i < images.size(); i++) {
+                final ImageResource image = images.get(i);
+                if (image.getRefCount() == 1) {
+                    image.acquireLock();
+                    final Bitmap bitmap = image.getBitmap();
+                    if (image.getRefCount() == 1 && bitmap != null
+                            && bitmap.getAllocationByteCount() >= byteCount) {
+                        // The image is only used by the cache, so it's reusable.
+                        imageToUse = images.remove(i);
+                        break;
+                    } else {
+                        // Cache reads don't take the pool lock, so the image may have been
+                        // fetched since its ref count was checked.
+                        image.releaseLock();
+                    }
+                }
+            }
+
+            if (imageToUse == null) {
+                return null;
+            }
+
+            try {
+                imageToUse.assertLockHeldByCurrentThread();
+
+                // Only reuse the bitmap if the last time we use was greater than 5s.
+                // This allows the cache a chance to reuse instead of always taking the
+                // oldest.
+                final long timeSinceLastRef = SystemClock.elapsedRealtime() -
+                        imageToUse.getLastRefAddTimestamp();
+                if (timeSinceLastRef < MIN_TIME_IN_POOL) {
+                    if (LogUtil.isLoggable(LogUtil.BUGLE_IMAGE_TAG, LogUtil.VERBOSE)) {
+                        LogUtil.v(LogUtil.BUGLE_IMAGE_TAG, "Not reusing reusing " +
+                                "first available bitmap from the pool because it " +
+                                "has not been in the pool long enough. " +
+                                "timeSinceLastRef=" + timeSinceLastRef);
                     }
+                    // Put back the image and return no reuseable bitmap.
+                    images.addLast(imageToUse);
+                    return null;
+                }
+
+                // Add a temp ref on the image resource so it won't be GC'd after
+                // being removed from the cache.
+                imageToUse.addRef();
+
+                // Remove the image resource from the image cache. The cache isn't locked by the
+                // pool, so the key may have been given a new image in the meantime, in which
+                // case the old one is released by the cache and can't be taken here.
+                if (!remove(imageToUse.getKey(), imageToUse)) {
+                    imageToUse.release();
+                    return null;
                 }
+
+                // Try to reuse the bitmap from the image resource. This will transfer
+                // ownership of the bitmap object to the caller of this method.
+                final Bitmap reusableBitmap = imageToUse.reuseBitmap();
+
+                imageToUse.release();
+                return reusableBitmap;
+            } finally {
+                // We are either done with the reuse operation, or decided not to use
+                // the image. Either way, release the lock.
+                imageToUse.releaseLock();
             }
-            return null;
         }
 
         /**
@@ -357,8 +390,13 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
             Bitmap retBitmap = null;
             try {
                 final Bitmap poolBitmap = getReusableBitmapFromPool(width, height);
-                retBitmap = (poolBitmap != null) ? poolBitmap :
-                        Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                if (poolBitmap != null) {
+                    // The pooled bitmap has enough bytes but may be of another shape
+                    poolBitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                    retBitmap = poolBitmap;
+                } else {
+                    retBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                }
                 retBitmap.eraseColor(backgroundColor);
             } catch (final OutOfMemoryError e) {
                 LogUtil.w(LogUtil.BUGLE_IMAGE_TAG, "PoolableImageCache:try to createOrReuseBitmap");
@@ -376,18 +414,7 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
         }
 
         /**
-         * @return The pool key for the provided image dimensions or 0 if either width or height is
-         * greater than the max supported image dimension.
-         */
-        private int getPoolKey(final int width, final int height) {
-            if (width > MAX_SUPPORTED_IMAGE_DIMENSION || height > MAX_SUPPORTED_IMAGE_DIMENSION) {
-                return INVALID_POOL_KEY;
-            }
-            return (width << 16) | height;
-        }
-
-        /**
-         * @return the pool key for a given image resource.
+         * @return the pool key for a given image resource, the size class of its bitmap.
          */
         private int getPoolKey(final ImageResource imageResource) {
             if (imageResource.supportsBitmapReuse()) {
@@ -395,14 +422,26 @@ public class PoolableImageCache extends MediaCache<ImageResource> {
                 if (bitmap != null && bitmap.isMutable()) {
                     final int width = bitmap.getWidth();
                     final int height = bitmap.getHeight();
-                    if (width > 0 && height > 0) {
-                        return getPoolKey(width, height);
+                    if (width > 0 && height > 0 && BitmapPool.getByteCount(width, height) >= 0) {
+                        return BitmapPool.getSizeClass(bitmap.getAllocationByteCount());
                     }
                 }
             }
             return INVALID_POOL_KEY;
         }
 
+        /**
+         * @return a summary of the pool's reuse hit rate, for debugging
+         */
+        public String getStats() {
+            synchronized (mPoolLock) {
+                final int requests = mReuseHitCount + mReuseMissCount;
+                return "bitmap reuse hits=" + mReuseHitCount + " misses=" + mReuseMissCount
+                        + " hit rate=" + (requests == 0 ? 0 : mReuseHitCount * 100 / requests)
+                        + "% failed decodes=" + mFailedBitmapReuseCount;
+            }
+        }
+
         /**
          * Called when bitmap reuse fails. Conditionally report the failure with statistics.
          */
@@ -76,6 +76,31 @@ public abstract class RefCountedMediaResource {
         }
     }
 
+    /**
+     * Adds a ref unless the last ref has already been released and the resource closed. Used
+     * by {@link MediaCache} to take a ref on an entry it found without holding a lock, which
+     * may have been evicted and released in the meantime.
+     * @return true if a ref was added
+     */
+    boolean addRefIfNotClosed() {
+        acquireLock();
+        try {
+            if (mRef <= 0) {
+                return false;
+            }
+            if (DEBUG) {
+                mRefHistory.add("Added ref current ref = " + mRef);
+                mRefHistory.add(Throwables.getStackTraceAsString(new Exception()));
+            }
+
+            mRef++;
+            mLastRefAddTimestamp = SystemClock.elapsedRealtime();
+            return true;
+        } finally {
+            releaseLock();
+        }
+    }
+
     public void release() {
         acquireLock();
         try {
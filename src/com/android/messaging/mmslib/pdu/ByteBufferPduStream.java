@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.mmslib.pdu;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteArrayInputStream} view over a {@link ByteBuffer}, so the WSP decoding helpers in
+ * {@link PduParser} can run unchanged over heap, direct or memory-mapped buffers. Unlike a
+ * plain stream it can hand out zero-copy slices of the remaining data, which the parser uses to
+ * record part bodies as offset/length views into the PDU instead of copying them.
+ *
+ * None of the inherited ByteArrayInputStream state is used; every operation is served from the
+ * buffer's position, limit and mark.
+ */
+final class ByteBufferPduStream extends ByteArrayInputStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ByteBuffer mBuffer;
+
+    /**
+     * @param buffer the PDU data between its position and limit. The stream works on a
+     *               duplicate, so the caller's position and limit are left untouched.
+     */
+    ByteBufferPduStream(final ByteBuffer buffer) {
+        super(EMPTY);
+        mBuffer = buffer.duplicate();
+    }
+
+    @Override
+    public synchronized int read() {
+        return mBuffer.hasRemaining() ? (mBuffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public synchronized int read(final byte[] b, final int off, final int len) {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (!mBuffer.hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(len, mBuffer.remaining());
+        mBuffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public synchronized long skip(final long n) {
+        final int count = (int) Math.max(0, Math.min(n, mBuffer.remaining()));
+        mBuffer.position(mBuffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public synchronized int available() {
+        return mBuffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) {
+        mBuffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+        mBuffer.reset();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns a read-only view of the next {@code length} bytes (or fewer, if the stream ends
+     * first) and advances past them. The view shares storage with the PDU buffer.
+     */
+    synchronized ByteBuffer slice(final int length) {
+        final int count = Math.min(length, mBuffer.remaining());
+        final ByteBuffer slice = mBuffer.slice();
+        slice.limit(count);
+        mBuffer.position(mBuffer.position() + count);
+        return slice.asReadOnlyBuffer();
+    }
+}
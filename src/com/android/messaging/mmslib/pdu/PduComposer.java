@@ -19,6 +19,7 @@ package com.android.messaging.mmslib.pdu;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import androidx.collection.SimpleArrayMap;
 import android.text.TextUtils;
 
@@ -26,6 +27,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class PduComposer {
@@ -84,6 +87,11 @@ public class PduComposer {
      */
     private static final int PDU_COMPOSER_BLOCK_SIZE = 1024;
 
+    /**
+     * Transfer buffer size when streaming part data to the output.
+     */
+    private static final int PDU_COMPOSER_STREAM_BUFFER_SIZE = 8192;
+
     /**
      * The output message.
      */
@@ -114,6 +122,21 @@ public class PduComposer {
      */
     private PduHeaders mPduHeader = null;
 
+    /**
+     * Destination when composing with {@link #make(OutputStream)}, null otherwise.
+     */
+    private OutputStream mOut = null;
+
+    /**
+     * Number of bytes written to mOut so far.
+     */
+    private int mOutLength = 0;
+
+    /**
+     * First I/O error hit while writing to mOut, rethrown by make(OutputStream).
+     */
+    private IOException mOutException = null;
+
     /**
      * Map of all content type
      */
@@ -151,41 +174,82 @@ public class PduComposer {
      * the PDU is invalid.
      */
     public byte[] make() {
+        if (!makePdu()) {
+            return null;
+        }
+
+        return mMessage.toByteArray();
+    }
+
+    /**
+     * Make the message and write it to a stream as it is composed. Part data is never
+     * buffered: the length of each part is worked out first (from the data itself or the
+     * size of the file behind its Uri) so the part headers can be written ahead of it, and
+     * then the data is copied straight from its source to the stream through a small fixed
+     * size buffer. Peak memory is therefore independent of attachment size.
+     *
+     * @param out the stream to write to; it is not closed
+     * @return the number of bytes written, or -1 if the PDU is invalid, in which case
+     * a partial PDU may have been written
+     * @throws IOException if writing to the stream fails
+     */
+    public int make(final OutputStream out) throws IOException {
+        mOut = out;
+        mOutLength = 0;
+        mOutException = null;
+        try {
+            final boolean success = makePdu();
+            if (mOutException != null) {
+                throw mOutException;
+            }
+            if (!success) {
+                return -1;
+            }
+            flushMessage();
+            if (mOutException != null) {
+                throw mOutException;
+            }
+            return mOutLength;
+        } finally {
+            mOut = null;
+        }
+    }
+
+    private boolean makePdu() {
         // Get Message-type.
         final int type = mPdu.getMessageType();
 
         /* make the message */
         switch (type) {
             case PduHeaders.MESSAGE_TYPE_SEND_REQ:
-                if (makeSendReqPdu() != PDU_COMPOSE_SUCCESS) {
-                    return null;
-                }
-                break;
+                return makeSendReqPdu() == PDU_COMPOSE_SUCCESS;
             case PduHeaders.MESSAGE_TYPE_NOTIFYRESP_IND:
-                if (makeNotifyResp() != PDU_COMPOSE_SUCCESS) {
-                    return null;
-                }
-                break;
+                return makeNotifyResp() == PDU_COMPOSE_SUCCESS;
             case PduHeaders.MESSAGE_TYPE_ACKNOWLEDGE_IND:
-                if (makeAckInd() != PDU_COMPOSE_SUCCESS) {
-                    return null;
-                }
-                break;
+                return makeAckInd() == PDU_COMPOSE_SUCCESS;
             case PduHeaders.MESSAGE_TYPE_READ_REC_IND:
-                if (makeReadRecInd() != PDU_COMPOSE_SUCCESS) {
-                    return null;
-                }
-                break;
+                return makeReadRecInd() == PDU_COMPOSE_SUCCESS;
             case PduHeaders.MESSAGE_TYPE_NOTIFICATION_IND:
-                if (makeNotificationInd() != PDU_COMPOSE_SUCCESS) {
-                    return null;
-                }
-                break;
+                return makeNotificationInd() == PDU_COMPOSE_SUCCESS;
             default:
-                return null;
+                return false;
         }
+    }
 
-        return mMessage.toByteArray();
+    /**
+     * Move everything composed so far at the top level of mMessage out to mOut. Only valid
+     * when no buffer is pushed on mStack.
+     */
+    private boolean flushMessage() {
+        try {
+            mMessage.writeTo(mOut);
+            mOutLength += mMessage.size();
+            mMessage.reset();
+            return true;
+        } catch (final IOException e) {
+            mOutException = e;
+            return false;
+        }
     }
 
     /**
@@ -1045,6 +1109,22 @@ public class PduComposer {
             // content
             final int headerLength = attachment.getLength();
 
+            if (mOut != null) {
+                // Streaming: the length goes ahead of the data, so find it out first
+                final int streamLength = getPartDataLength(part);
+                if (streamLength < 0) {
+                    return PDU_COMPOSE_CONTENT_ERROR;
+                }
+                mStack.pop();
+                appendUintvarInteger(headerLength);
+                appendUintvarInteger(streamLength);
+                mStack.copy();
+                if (!flushMessage() || !writePartData(part, streamLength)) {
+                    return PDU_COMPOSE_CONTENT_ERROR;
+                }
+                continue;
+            }
+
             int dataLength = 0; // Just for safety...
             final byte[] partData = part.getData();
 
@@ -1092,6 +1172,113 @@ public class PduComposer {
         return PDU_COMPOSE_SUCCESS;
     }
 
+    /**
+     * Work out how many bytes of data a part has without loading it.
+     *
+     * @return the data length, or -1 if the data can't be read
+     */
+    private int getPartDataLength(final PduPart part) {
+        if (part.hasData()) {
+            return part.getDataBuffer().remaining();
+        }
+        final AssetFileDescriptor fd;
+        try {
+            fd = mResolver.openAssetFileDescriptor(part.getDataUri(), "r");
+        } catch (final FileNotFoundException e) {
+            return -1;
+        } catch (final RuntimeException e) {
+            return -1;
+        }
+        if (fd == null) {
+            return -1;
+        }
+        long length = fd.getLength();
+        InputStream in = null;
+        try {
+            if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                // The provider doesn't know the size (e.g. it is a pipe), so count it
+                in = fd.createInputStream();
+                final byte[] buffer = new byte[PDU_COMPOSER_STREAM_BUFFER_SIZE];
+                length = 0;
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    length += len;
+                }
+            }
+        } catch (final IOException e) {
+            return -1;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                } else {
+                    fd.close();
+                }
+            } catch (final IOException e) {
+                // Nothing to do
+            }
+        }
+        return (length <= Integer.MAX_VALUE) ? (int) length : -1;
+    }
+
+    /**
+     * Copy the data of a part to mOut, checking it has the length already written ahead of it.
+     */
+    private boolean writePartData(final PduPart part, final int dataLength) {
+        final byte[] buffer = new byte[Math.max(1,
+                Math.min(PDU_COMPOSER_STREAM_BUFFER_SIZE, dataLength))];
+        int written = 0;
+        InputStream in = null;
+        try {
+            if (part.hasData()) {
+                final ByteBuffer data = part.getDataBuffer();
+                if (data.hasArray()) {
+                    mOut.write(data.array(), data.arrayOffset() + data.position(),
+                            data.remaining());
+                    written = data.remaining();
+                } else {
+                    while (data.hasRemaining()) {
+                        final int len = Math.min(buffer.length, data.remaining());
+                        data.get(buffer, 0, len);
+                        mOut.write(buffer, 0, len);
+                        written += len;
+                    }
+                }
+            } else {
+                in = mResolver.openInputStream(part.getDataUri());
+                if (in == null) {
+                    return false;
+                }
+                int len;
+                while (written <= dataLength && (len = in.read(buffer)) != -1) {
+                    mOut.write(buffer, 0, len);
+                    written += len;
+                }
+            }
+        } catch (final FileNotFoundException e) {
+            return false;
+        } catch (final IOException e) {
+            // Can't tell a failed read of the part from a failed write of the PDU
+            mOutException = e;
+            return false;
+        } catch (final RuntimeException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+
+        mOutLength += written;
+        mPosition += written;
+        // The data changed between measuring and copying it; the PDU would be corrupt
+        return written == dataLength;
+    }
+
     /**
      * Record current message informations.
      */
@@ -19,13 +19,14 @@ package com.android.messaging.mmslib.pdu;
 
 import android.util.Log;
 import android.util.SparseArray;
+import androidx.appcompat.mms.pdu.WspDecoder;
 
 import com.android.messaging.mmslib.InvalidHeaderValueException;
 import com.android.messaging.util.ContentType;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class PduParser {
@@ -113,6 +114,20 @@ public class PduParser {
         mParseContentDisposition = parseContentDisposition;
     }
 
+    /**
+     * Constructor for parsing directly out of a buffer, e.g. a {@link java.nio.MappedByteBuffer}
+     * of a downloaded PDU file. Part bodies that need no transfer decoding are not copied;
+     * the resulting parts hold read-only slices of the buffer (see {@link PduPart#getDataBuffer})
+     * so the buffer must stay valid for as long as the parsed PDU is in use.
+     *
+     * @param pduData pdu data between the buffer's position and limit
+     * @param parseContentDisposition whether to parse the Content-Disposition part header
+     */
+    public PduParser(ByteBuffer pduData, boolean parseContentDisposition) {
+        mPduDataStream = new ByteBufferPduStream(pduData);
+        mParseContentDisposition = parseContentDisposition;
+    }
+
     /**
      * Parse the pdu.
      *
@@ -928,8 +943,17 @@ public class PduParser {
 
             /* get part's data */
             if (dataLength > 0) {
-                byte[] partData = new byte[dataLength];
                 String partContentType = new String(part.getContentType());
+                if (pduDataStream instanceof ByteBufferPduStream
+                        && !partContentType.equalsIgnoreCase(
+                                ContentType.MMS_MULTIPART_ALTERNATIVE)
+                        && !needsTransferDecoding(part)) {
+                    // Keep a view into the PDU buffer rather than copying the body.
+                    part.setDataBuffer(((ByteBufferPduStream) pduDataStream).slice(dataLength));
+                    addPart(body, part);
+                    continue;
+                }
+                byte[] partData = new byte[dataLength];
                 pduDataStream.read(partData, 0, dataLength);
                 if (partContentType.equalsIgnoreCase(ContentType.MMS_MULTIPART_ALTERNATIVE)) {
                     // parse "multipart/vnd.wap.multipart.alternative".
@@ -960,18 +984,38 @@ public class PduParser {
             }
 
             /* add this part to body */
-            if (THE_FIRST_PART == checkPartPosition(part)) {
-                /* this is the first part */
-                body.addPart(0, part);
-            } else {
-                /* add the part to the end */
-                body.addPart(part);
-            }
+            addPart(body, part);
         }
 
         return body;
     }
 
+    private static void addPart(PduBody body, PduPart part) {
+        if (THE_FIRST_PART == checkPartPosition(part)) {
+            /* this is the first part */
+            body.addPart(0, part);
+        } else {
+            /* add the part to the end */
+            body.addPart(part);
+        }
+    }
+
+    /**
+     * Check whether the part body has to be decoded into "binary" before use.
+     *
+     * @param part the part whose headers have been parsed
+     * @return true if the Content-Transfer-Encoding is base64 or quoted-printable
+     */
+    private static boolean needsTransferDecoding(PduPart part) {
+        byte[] partDataEncoding = part.getContentTransferEncoding();
+        if (null == partDataEncoding) {
+            return false;
+        }
+        String encoding = new String(partDataEncoding);
+        return encoding.equalsIgnoreCase(PduPart.P_BASE64)
+                || encoding.equalsIgnoreCase(PduPart.P_QUOTED_PRINTABLE);
+    }
+
     /**
      * Log status.
      *
@@ -990,31 +1034,7 @@ public class PduParser {
      * @return the integer, -1 when failed
      */
     protected static int parseUnsignedInt(ByteArrayInputStream pduDataStream) {
-        /**
-         * From wap-230-wsp-20010705-a.pdf
-         * The maximum size of a uintvar is 32 bits.
-         * So it will be encoded in no more than 5 octets.
-         */
-        assert (null != pduDataStream);
-        int result = 0;
-        int temp = pduDataStream.read();
-        if (temp == -1) {
-            return temp;
-        }
-
-        while ((temp & 0x80) != 0) {
-            result = result << 7;
-            result |= temp & 0x7F;
-            temp = pduDataStream.read();
-            if (temp == -1) {
-                return temp;
-            }
-        }
-
-        result = result << 7;
-        result |= temp & 0x7F;
-
-        return result;
+        return WspDecoder.parseUnsignedInt(pduDataStream);
     }
 
     /**
@@ -1024,26 +1044,7 @@ public class PduParser {
      * @return the integer
      */
     protected static int parseValueLength(ByteArrayInputStream pduDataStream) {
-        /**
-         * From wap-230-wsp-20010705-a.pdf
-         * Value-length = Short-length | (Length-quote Length)
-         * Short-length = <Any octet 0-30>
-         * Length-quote = <Octet 31>
-         * Length = Uintvar-integer
-         * Uintvar-integer = 1*5 OCTET
-         */
-        assert (null != pduDataStream);
-        int temp = pduDataStream.read();
-        assert (-1 != temp);
-        int first = temp & 0xFF;
-
-        if (first <= SHORT_LENGTH_MAX) {
-            return first;
-        } else if (first == LENGTH_QUOTE) {
-            return parseUnsignedInt(pduDataStream);
-        }
-
-        throw new RuntimeException("Value length > LENGTH_QUOTE!");
+        return WspDecoder.parseValueLength(pduDataStream);
     }
 
     /**
@@ -1151,44 +1152,7 @@ public class PduParser {
      * @return true when ch is TOKEN, false when ch is not TOKEN
      */
     protected static boolean isTokenCharacter(int ch) {
-        /**
-         * Token      = 1*<any CHAR except CTLs or separators>
-         * separators = "("(40) | ")"(41) | "<"(60) | ">"(62) | "@"(64)
-         *            | ","(44) | ";"(59) | ":"(58) | "\"(92) | <">(34)
-         *            | "/"(47) | "["(91) | "]"(93) | "?"(63) | "="(61)
-         *            | "{"(123) | "}"(125) | SP(32) | HT(9)
-         * CHAR       = <any US-ASCII character (octets 0 - 127)>
-         * CTL        = <any US-ASCII control character
-         *            (octets 0 - 31) and DEL (127)>
-         * SP         = <US-ASCII SP, space (32)>
-         * HT         = <US-ASCII HT, horizontal-tab (9)>
-         */
-        if ((ch < 33) || (ch > 126)) {
-            return false;
-        }
-
-        switch (ch) {
-            case '"': /* '"' */
-            case '(': /* '(' */
-            case ')': /* ')' */
-            case ',': /* ',' */
-            case '/': /* '/' */
-            case ':': /* ':' */
-            case ';': /* ';' */
-            case '<': /* '<' */
-            case '=': /* '=' */
-            case '>': /* '>' */
-            case '?': /* '?' */
-            case '@': /* '@' */
-            case '[': /* '[' */
-            case '\\': /* '\' */
-            case ']': /* ']' */
-            case '{': /* '{' */
-            case '}': /* '}' */
-                return false;
-        }
-
-        return true;
+        return WspDecoder.isTokenCharacter(ch);
     }
 
     /**
@@ -1198,57 +1162,12 @@ public class PduParser {
      * @return true when ch is TEXT, false when ch is not TEXT
      */
     protected static boolean isText(int ch) {
-        /**
-         * TEXT = <any OCTET except CTLs,
-         *      but including LWS>
-         * CTL  = <any US-ASCII control character
-         *      (octets 0 - 31) and DEL (127)>
-         * LWS  = [CRLF] 1*( SP | HT )
-         * CRLF = CR LF
-         * CR   = <US-ASCII CR, carriage return (13)>
-         * LF   = <US-ASCII LF, linefeed (10)>
-         */
-        if (((ch >= 32) && (ch <= 126)) || ((ch >= 128) && (ch <= 255))) {
-            return true;
-        }
-
-        switch (ch) {
-            case '\t': /* '\t' */
-            case '\n': /* '\n' */
-            case '\r': /* '\r' */
-                return true;
-        }
-
-        return false;
+        return WspDecoder.isText(ch);
     }
 
     protected static byte[] getWapString(ByteArrayInputStream pduDataStream,
             int stringType) {
-        assert (null != pduDataStream);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        int temp = pduDataStream.read();
-        assert (-1 != temp);
-        while ((-1 != temp) && ('\0' != temp)) {
-            // check each of the character
-            if (stringType == TYPE_TOKEN_STRING) {
-                if (isTokenCharacter(temp)) {
-                    out.write(temp);
-                }
-            } else {
-                if (isText(temp)) {
-                    out.write(temp);
-                }
-            }
-
-            temp = pduDataStream.read();
-            assert (-1 != temp);
-        }
-
-        if (out.size() > 0) {
-            return out.toByteArray();
-        }
-
-        return null;
+        return WspDecoder.getWapString(pduDataStream, stringType);
     }
 
     /**
@@ -1258,10 +1177,7 @@ public class PduParser {
      * @return the byte
      */
     protected static int extractByteValue(ByteArrayInputStream pduDataStream) {
-        assert (null != pduDataStream);
-        int temp = pduDataStream.read();
-        assert (-1 != temp);
-        return temp & 0xFF;
+        return WspDecoder.extractByteValue(pduDataStream);
     }
 
     /**
@@ -1271,17 +1187,7 @@ public class PduParser {
      * @return the byte
      */
     protected static int parseShortInteger(ByteArrayInputStream pduDataStream) {
-        /**
-         * From wap-230-wsp-20010705-a.pdf
-         * Short-integer = OCTET
-         * Integers in range 0-127 shall be encoded as a one
-         * octet value with the most significant bit set to one (1xxx xxxx)
-         * and with the value in the remaining least significant bits.
-         */
-        assert (null != pduDataStream);
-        int temp = pduDataStream.read();
-        assert (-1 != temp);
-        return temp & 0x7F;
+        return WspDecoder.parseShortInteger(pduDataStream);
     }
 
     /**
@@ -1291,35 +1197,7 @@ public class PduParser {
      * @return long integer
      */
     protected static long parseLongInteger(ByteArrayInputStream pduDataStream) {
-        /**
-         * From wap-230-wsp-20010705-a.pdf
-         * Long-integer = Short-length Multi-octet-integer
-         * The Short-length indicates the length of the Multi-octet-integer
-         * Multi-octet-integer = 1*30 OCTET
-         * The content octets shall be an unsigned integer value
-         * with the most significant octet encoded first (big-endian representation).
-         * The minimum number of octets must be used to encode the value.
-         * Short-length = <Any octet 0-30>
-         */
-        assert (null != pduDataStream);
-        int temp = pduDataStream.read();
-        assert (-1 != temp);
-        int count = temp & 0xFF;
-
-        if (count > LONG_INTEGER_LENGTH_MAX) {
-            throw new RuntimeException("Octet count greater than 8 and I can't represent that!");
-        }
-
-        long result = 0;
-
-        for (int i = 0; i < count; i++) {
-            temp = pduDataStream.read();
-            assert (-1 != temp);
-            result <<= 8;
-            result += (temp & 0xFF);
-        }
-
-        return result;
+        return WspDecoder.parseLongInteger(pduDataStream);
     }
 
     /**
@@ -1329,20 +1207,7 @@ public class PduParser {
      * @return long integer
      */
     protected static long parseIntegerValue(ByteArrayInputStream pduDataStream) {
-        /**
-         * From wap-230-wsp-20010705-a.pdf
-         * Integer-Value = Short-integer | Long-integer
-         */
-        assert (null != pduDataStream);
-        pduDataStream.mark(1);
-        int temp = pduDataStream.read();
-        assert (-1 != temp);
-        pduDataStream.reset();
-        if (temp > SHORT_INTEGER_MAX) {
-            return parseShortInteger(pduDataStream);
-        } else {
-            return parseLongInteger(pduDataStream);
-        }
+        return WspDecoder.parseIntegerValue(pduDataStream);
     }
 
     /**
@@ -1353,14 +1218,7 @@ public class PduParser {
      * @return the values in this area
      */
     protected static int skipWapValue(ByteArrayInputStream pduDataStream, int length) {
-        assert (null != pduDataStream);
-        byte[] area = new byte[length];
-        int readLen = pduDataStream.read(area, 0, length);
-        if (readLen < length) { //The actually read length is lower than the length
-            return -1;
-        } else {
-            return readLen;
-        }
+        return WspDecoder.skipWapValue(pduDataStream, length);
     }
 
     /**
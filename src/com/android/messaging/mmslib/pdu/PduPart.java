@@ -20,6 +20,8 @@ package com.android.messaging.mmslib.pdu;
 import android.net.Uri;
 import android.util.SparseArray;
 
+import java.nio.ByteBuffer;
+
 /**
  * The pdu part.
  */
@@ -117,6 +119,11 @@ public class PduPart {
      */
     private byte[] mPartData = null;
 
+    /**
+     * Part data as a view into the buffer the PDU was parsed from.
+     */
+    private ByteBuffer mPartDataBuffer = null;
+
     private static final String TAG = "PduPart";
 
     /**
@@ -133,17 +140,57 @@ public class PduPart {
      */
     public void setData(final byte[] data) {
         mPartData = data;
+        mPartDataBuffer = null;
+    }
+
+    /**
+     * Set part data as a view into a larger buffer, without copying it.
+     * The buffer must stay valid for as long as this part is in use.
+     *
+     * @param data the data between the buffer's position and limit
+     */
+    public void setDataBuffer(final ByteBuffer data) {
+        mPartDataBuffer = data;
+        mPartData = null;
     }
 
     /**
      * @return The part data or null if the data wasn't set or
-     * the data is stored as Uri.
+     * the data is stored as Uri. If the data was set as a buffer
+     * it is copied out (once) on the first call.
      * @see #getDataUri
+     * @see #getDataBuffer
      */
     public byte[] getData() {
+        if (mPartData == null && mPartDataBuffer != null) {
+            final ByteBuffer buffer = mPartDataBuffer.duplicate();
+            final byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            mPartData = data;
+        }
         return mPartData;
     }
 
+    /**
+     * @return A view of the part data with its own position and limit, or null if the
+     * data wasn't set or the data is stored as Uri. Unlike {@link #getData} this never copies.
+     */
+    public ByteBuffer getDataBuffer() {
+        if (mPartDataBuffer != null) {
+            return mPartDataBuffer.duplicate();
+        } else if (mPartData != null) {
+            return ByteBuffer.wrap(mPartData);
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether the part data is held in memory, either as bytes or as a buffer.
+     */
+    public boolean hasData() {
+        return mPartData != null || mPartDataBuffer != null;
+    }
+
     /**
      * Set data uri. The data are stored as Uri.
      *
@@ -61,6 +61,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
@@ -778,7 +779,6 @@ public class PduPersister {
         }
 
         String contentType = getPartContentType(part);
-        final byte[] data = part.getData();
 
         if (LOCAL_LOGV) {
             LogUtil.v(TAG, "PduPersister.persistPart part: " + uri + " contentType: " +
@@ -794,12 +794,13 @@ public class PduPersister {
 
             // On somes phones, a vcard comes in as text/plain instead of text/v-card.
             // Fix it if necessary.
-            if (ContentType.TEXT_PLAIN.equals(contentType) && data != null) {
+            if (ContentType.TEXT_PLAIN.equals(contentType) && part.hasData()) {
                 // There might be a more efficient way to just check the beginning of the string
                 // without encoding the whole thing, but we're concerned that with various
                 // characters sets, just comparing the byte data to BEGIN_VCARD would not be
                 // reliable.
-                final String encodedDataString = new EncodedStringValue(charset, data).getString();
+                final String encodedDataString =
+                        new EncodedStringValue(charset, part.getData()).getString();
                 if (encodedDataString != null && encodedDataString.startsWith(BEGIN_VCARD)) {
                     contentType = ContentType.TEXT_VCARD;
                     part.setContentType(contentType.getBytes());
@@ -866,11 +867,11 @@ public class PduPersister {
         String path = null;
 
         try {
-            final byte[] data = part.getData();
             final int charset = part.getCharset();
             if (ContentType.TEXT_PLAIN.equals(contentType)
                     || ContentType.APP_SMIL.equals(contentType)
                     || ContentType.TEXT_HTML.equals(contentType)) {
+                final byte[] data = part.getData();
                 // Some phone could send MMS with a text part having empty data
                 // Let's just skip those parts.
                 // EncodedStringValue() throws NPE if data is empty
@@ -917,7 +918,7 @@ public class PduPersister {
                 if (os == null) {
                     throw new MmsException("Failed to create output stream on " + uri);
                 }
-                if (data == null) {
+                if (!part.hasData()) {
                     dataUri = part.getDataUri();
                     if ((dataUri == null) || (dataUri.equals(uri))) {
                         Log.w(TAG, "Can't find data for this part.");
@@ -956,9 +957,12 @@ public class PduPersister {
                         LogUtil.v(TAG, "Saving data to: " + uri);
                     }
                     if (!isDrm) {
-                        os.write(data);
+                        // Parts parsed from a mapped PDU are streamed out of the mapping
+                        // without first being copied onto the heap.
+                        writeBuffer(os, part.getDataBuffer());
                     } else {
                         dataUri = uri;
+                        final byte[] data = part.getData();
                         final byte[] convertedData = drmConvertSession.convert(data, data.length);
                         if (convertedData != null) {
                             os.write(convertedData, 0, convertedData.length);
@@ -1006,6 +1010,24 @@ public class PduPersister {
         }
     }
 
+    /**
+     * Write the remaining bytes of a buffer to a stream, going through a small
+     * transfer array when the buffer is not backed by an accessible array.
+     */
+    private static void writeBuffer(final OutputStream os, final ByteBuffer data)
+            throws IOException {
+        if (data.hasArray()) {
+            os.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            return;
+        }
+        final byte[] buffer = new byte[Math.min(8192, data.remaining())];
+        while (data.hasRemaining()) {
+            final int len = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, len);
+            os.write(buffer, 0, len);
+        }
+    }
+
     /**
      * This method expects uri in the following format
      *     content://media/<table_name>/<row_index> (or)
@@ -1201,7 +1223,7 @@ public class PduPersister {
         // Only update the data when:
         // 1. New binary data supplied or
         // 2. The Uri of the part is different from the current one.
-        if ((part.getData() != null)
+        if (part.hasData()
                 || (!uri.equals(part.getDataUri()))) {
             persistData(part, uri, contentType, preOpenedFiles);
         }
@@ -47,6 +47,7 @@ import com.android.messaging.util.PhoneUtils;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class that sends chat message via MMS.
@@ -179,17 +180,19 @@ public class MmsSender {
             // Ensure rawmms directory exists
             tempFile.getParentFile().mkdirs();
             writer = new FileOutputStream(tempFile);
-            final byte[] pduBytes = new PduComposer(context, pdu).make();
-            if (pduBytes == null) {
+            // Compose straight into the file so attachments are never held in memory
+            final int pduLength = new PduComposer(context, pdu).make(writer);
+            if (pduLength < 0) {
+                tempFile.delete();
                 throw new MmsFailureException(
                         MmsUtils.MMS_REQUEST_NO_RETRY, "Failed to compose PDU");
             }
-            if (pduBytes.length > MmsConfig.get(subId).getMaxMessageSize()) {
+            if (pduLength > MmsConfig.get(subId).getMaxMessageSize()) {
+                tempFile.delete();
                 throw new MmsFailureException(
                         MmsUtils.MMS_REQUEST_NO_RETRY,
                         MessageData.RAW_TELEPHONY_STATUS_MESSAGE_TOO_BIG);
             }
-            writer.write(pduBytes);
         } catch (final IOException e) {
             if (tempFile != null) {
                 tempFile.delete();
@@ -270,20 +273,37 @@ public class MmsSender {
 
     public static RetrieveConf parseRetrieveConf(byte[] data, int subId) {
         if (data != null) {
-            final GenericPdu pdu = new PduParser(
-                    data, MmsConfig.get(subId).getSupportMmsContentDisposition()).parse();
-            if (pdu != null) {
-                if (pdu instanceof RetrieveConf) {
-                    return (RetrieveConf) pdu;
-                } else {
-                    LogUtil.e(TAG, "MmsSender: downloaded pdu not RetrieveConf: "
-                            + pdu.getClass().getName());
-                }
+            return toRetrieveConf(new PduParser(
+                    data, MmsConfig.get(subId).getSupportMmsContentDisposition()).parse());
+        }
+        LogUtil.e(TAG, "MmsSender: downloaded pdu is empty");
+        return null;
+    }
+
+    /**
+     * Parse a downloaded PDU straight out of a buffer, typically a mapping of the download
+     * file. Part bodies in the result are views into the buffer rather than copies.
+     */
+    public static RetrieveConf parseRetrieveConf(ByteBuffer data, int subId) {
+        if (data != null && data.hasRemaining()) {
+            return toRetrieveConf(new PduParser(
+                    data, MmsConfig.get(subId).getSupportMmsContentDisposition()).parse());
+        }
+        LogUtil.e(TAG, "MmsSender: downloaded pdu is empty");
+        return null;
+    }
+
+    private static RetrieveConf toRetrieveConf(final GenericPdu pdu) {
+        if (pdu != null) {
+            if (pdu instanceof RetrieveConf) {
+                return (RetrieveConf) pdu;
             } else {
-                LogUtil.e(TAG, "MmsSender: downloaded pdu could not be parsed (invalid)");
+                LogUtil.e(TAG, "MmsSender: downloaded pdu not RetrieveConf: "
+                        + pdu.getClass().getName());
             }
+        } else {
+            LogUtil.e(TAG, "MmsSender: downloaded pdu could not be parsed (invalid)");
         }
-        LogUtil.e(TAG, "MmsSender: downloaded pdu is empty");
         return null;
     }
 
@@ -223,6 +223,7 @@ public class AsyncImageView extends ImageView implements MediaResourceLoadListen
     }
 
     private void requestImage(final BindableMediaRequest<ImageResource> request) {
+        request.setPriority(BindableMediaRequest.PRIORITY_VISIBLE);
         mImageRequestBinding.bind(request);
         if (mDelayLoader == null || !mDelayLoader.isDelayLoadingImage()) {
             MediaResourceManager.get().requestMediaResourceAsync(request);
@@ -398,6 +399,8 @@ public class AsyncImageView extends ImageView implements MediaResourceLoadListen
 
     private void unbindView() {
         if (mImageRequestBinding.isBound()) {
+            // Don't load the image unless someone else still wants it
+            MediaResourceManager.get().cancelMediaRequest(mImageRequestBinding.getData());
             mImageRequestBinding.unbind();
             if (mDelayLoader != null) {
                 mDelayLoader.unregisterView(this);
@@ -100,6 +100,14 @@ public final class BugleGservicesKeys {
     public static final int SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN_DEFAULT =
             SMS_SYNC_BATCH_SIZE_MAX_DEFAULT * 4;
 
+    /**
+     * Number of thread id partitions a full sync scans in parallel. 0 or 1 keeps the serial full
+     * sync, which walks all messages by date. Capped to the number of cores.
+     */
+    public static final String SMS_SYNC_PARALLEL_PARTITIONS =
+            "bugle_sms_sync_parallel_partitions";
+    public static final int SMS_SYNC_PARALLEL_PARTITIONS_DEFAULT = 0;
+
     /**
      * Time in ms for sync to backoff from "now" to the latest message that will be sync'd.
      *
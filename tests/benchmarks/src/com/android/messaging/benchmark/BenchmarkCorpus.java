@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.benchmark;
+
+import com.android.messaging.mmslib.InvalidHeaderValueException;
+import com.android.messaging.mmslib.pdu.CharacterSets;
+import com.android.messaging.mmslib.pdu.EncodedStringValue;
+import com.android.messaging.mmslib.pdu.PduBody;
+import com.android.messaging.mmslib.pdu.PduHeaders;
+import com.android.messaging.mmslib.pdu.PduPart;
+import com.android.messaging.mmslib.pdu.SendReq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmark suites. Everything here is deterministic: synthetic data is
+ * generated from a fixed seed so numbers are comparable from run to run. Captured PDUs and
+ * JPEGs can be added by pointing the {@link #CORPUS_DIR_PROPERTY} system property at a
+ * directory containing *.pdu and *.jpg files; they are never checked in since real MMS
+ * traffic carries user data.
+ */
+public final class BenchmarkCorpus {
+    public static final String CORPUS_DIR_PROPERTY = "messaging.benchmark.corpus";
+
+    private static final long SEED = 0x6d6d73L;
+
+    /** Attachment sizes for the synthetic MMS, roughly thumbnail / photo / carrier limit */
+    public static final int SIZE_SMALL = 16 * 1024;
+    public static final int SIZE_MEDIUM = 300 * 1024;
+    public static final int SIZE_LARGE = 1024 * 1024;
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * Builds an m-send.req with a SMIL part, a text part and one image part of the given size.
+     */
+    public static SendReq createSendReq(final int attachmentSize) {
+        final Random random = new Random(SEED ^ attachmentSize);
+        final SendReq sendReq = new SendReq();
+        try {
+            sendReq.setTransactionId("T1234567890abcdef".getBytes());
+            sendReq.setDate(1420070400L);
+            sendReq.setMessageSize(attachmentSize);
+            sendReq.setMessageClass(PduHeaders.MESSAGE_CLASS_PERSONAL_STR.getBytes());
+            sendReq.setExpiry(7 * 24 * 60 * 60);
+            sendReq.setPriority(PduHeaders.PRIORITY_NORMAL);
+            sendReq.setDeliveryReport(PduHeaders.VALUE_NO);
+            sendReq.setReadReport(PduHeaders.VALUE_NO);
+        } catch (final InvalidHeaderValueException e) {
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < 3; i++) {
+            sendReq.addTo(new EncodedStringValue("+1650555010" + i + "/TYPE=PLMN"));
+        }
+        sendReq.setSubject(new EncodedStringValue(CharacterSets.UTF_8, "Benchmark éè"));
+
+        final PduBody body = new PduBody();
+        body.addPart(createPart("smil.xml", "application/smil", CharacterSets.UTF_8,
+                ("<smil><head><layout><root-layout/><region id=\"Image\"/></layout></head>"
+                        + "<body><par dur=\"5000ms\"><img src=\"image.jpg\" region=\"Image\"/>"
+                        + "<text src=\"text.txt\" region=\"Text\"/></par></body></smil>")
+                        .getBytes()));
+        body.addPart(createPart("text.txt", "text/plain", CharacterSets.UTF_8,
+                createText(random, 400).getBytes()));
+        final byte[] image = new byte[attachmentSize];
+        random.nextBytes(image);
+        body.addPart(createPart("image.jpg", "image/jpeg", 0, image));
+        sendReq.setBody(body);
+        return sendReq;
+    }
+
+    private static PduPart createPart(final String name, final String contentType,
+            final int charset, final byte[] data) {
+        final PduPart part = new PduPart();
+        part.setContentType(contentType.getBytes());
+        part.setContentLocation(name.getBytes());
+        part.setContentId(("<" + name + ">").getBytes());
+        part.setName(name.getBytes());
+        if (charset != 0) {
+            part.setCharset(charset);
+        }
+        part.setData(data);
+        return part;
+    }
+
+    /**
+     * Turns a composed m-send.req into the m-retrieve.conf the recipient would download. The
+     * two share a header layout up to the message type octet, and the composer always writes a
+     * Date header when one is set, so patching the message type yields a valid retrieve-conf.
+     */
+    public static byte[] toRetrieveConf(final byte[] sendReqPdu) {
+        final byte[] pdu = sendReqPdu.clone();
+        if ((pdu[0] & 0xff) != PduHeaders.MESSAGE_TYPE
+                || (pdu[1] & 0xff) != PduHeaders.MESSAGE_TYPE_SEND_REQ) {
+            throw new IllegalArgumentException("Not an m-send.req");
+        }
+        pdu[1] = (byte) PduHeaders.MESSAGE_TYPE_RETRIEVE_CONF;
+        return pdu;
+    }
+
+    /**
+     * Builds a baseline JPEG stream (SOI, quantization table, SOS, entropy data, EOI) with no
+     * APP1 segment so that the EXIF writer has to insert one.
+     */
+    public static byte[] createBareJpeg(final int entropySize) {
+        final Random random = new Random(SEED ^ entropySize);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(entropySize + 256);
+        // SOI
+        out.write(0xff);
+        out.write(0xd8);
+        // DQT, 64 entries of table 0
+        out.write(0xff);
+        out.write(0xdb);
+        out.write(0x00);
+        out.write(0x43);
+        out.write(0x00);
+        for (int i = 0; i < 64; i++) {
+            out.write(1 + (i % 16));
+        }
+        // SOS for a single component
+        out.write(0xff);
+        out.write(0xda);
+        out.write(0x00);
+        out.write(0x08);
+        out.write(0x01);
+        out.write(0x01);
+        out.write(0x00);
+        out.write(0x00);
+        out.write(0x3f);
+        out.write(0x00);
+        for (int i = 0; i < entropySize; i++) {
+            int b = random.nextInt(256);
+            if (b == 0xff) {
+                // Stuff a zero after 0xff so the data does not look like a marker
+                out.write(b);
+                b = 0x00;
+            }
+            out.write(b);
+        }
+        // EOI
+        out.write(0xff);
+        out.write(0xd9);
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds the value of a group-concatenated, quoted column in the format produced by the
+     * conversation message query, e.g. 'a'|'b''s'|'c'.
+     */
+    public static String createQuotedString(final int count, final int length) {
+        final Random random = new Random(SEED ^ (count * 31 + length));
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append('|');
+            }
+            builder.append('\'');
+            builder.append(createText(random, length).replace("'", "''"));
+            builder.append('\'');
+        }
+        return builder.toString();
+    }
+
+    private static String createText(final Random random, final int length) {
+        final String alphabet = "abcdefghijklmnopqrstuvwxyz ',.é中";
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the captured files with the given extension from the corpus directory, or an
+     * empty list when no corpus directory was supplied.
+     */
+    public static List<byte[]> loadCaptured(final String extension) throws IOException {
+        final List<byte[]> result = new ArrayList<byte[]>();
+        final String dirName = System.getProperty(CORPUS_DIR_PROPERTY);
+        if (dirName == null) {
+            return result;
+        }
+        final File[] files = new File(dirName).listFiles();
+        if (files == null) {
+            return result;
+        }
+        final String suffix = "." + extension.toLowerCase(Locale.US);
+        for (final File file : files) {
+            if (file.isFile() && file.getName().toLowerCase(Locale.US).endsWith(suffix)) {
+                result.add(Files.readAllBytes(file.toPath()));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Entry point that runs the JMH suites from the host test harness. JMH runs in-process
+ * (no forks) so the benchmarks see the app classes and the Robolectric application set up by
+ * the test runner. The GC profiler is always attached so every run reports allocation rate
+ * (gc.alloc.rate.norm, bytes per operation) next to throughput.
+ *
+ * System properties:
+ * <ul>
+ * <li>messaging.benchmark.include - regex of benchmarks to run, defaults to all</li>
+ * <li>messaging.benchmark.corpus - directory of captured *.pdu / *.jpg inputs</li>
+ * <li>messaging.benchmark.result - file to write JSON results to</li>
+ * </ul>
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MessagingBenchmarkRunner {
+    private static final String INCLUDE_PROPERTY = "messaging.benchmark.include";
+    private static final String RESULT_PROPERTY = "messaging.benchmark.result";
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        final ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty(INCLUDE_PROPERTY, "com\\.android\\.messaging\\..*"))
+                .exclude(MessagingBenchmarkRunner.class.getName())
+                .forks(0)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(1))
+                .timeUnit(TimeUnit.SECONDS)
+                .shouldFailOnError(true)
+                .addProfiler(GCProfiler.class);
+        final String resultFile = System.getProperty(RESULT_PROPERTY);
+        if (resultFile != null) {
+            options.result(resultFile).resultFormat(ResultFormatType.JSON);
+        }
+        final Collection<RunResult> results = new Runner(options.build()).run();
+        assertFalse("No benchmarks matched", results.isEmpty());
+    }
+}
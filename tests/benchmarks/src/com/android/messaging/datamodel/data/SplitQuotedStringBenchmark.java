@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.datamodel.data;
+
+import com.android.messaging.benchmark.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of {@link ConversationMessageData#splitQuotedString}, which runs for every part column
+ * of every row bound in the conversation view.
+ */
+@State(Scope.Benchmark)
+public class SplitQuotedStringBenchmark {
+    @Param({"1", "4", "10"})
+    public int partCount;
+
+    private String mQuotedTexts;
+
+    @Setup
+    public void setUp() {
+        mQuotedTexts = BenchmarkCorpus.createQuotedString(partCount, 160);
+    }
+
+    @Benchmark
+    public String[] splitQuotedString() {
+        return ConversationMessageData.splitQuotedString(mQuotedTexts);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.mmslib.pdu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Cost of the MIBenum / MIME name lookups done for every encoded string and text part, and
+ * of decoding an {@link EncodedStringValue} through them.
+ */
+@State(Scope.Benchmark)
+public class CharacterSetsBenchmark {
+    private static final int[] MIB_ENUMS = {
+            CharacterSets.UTF_8, CharacterSets.US_ASCII, CharacterSets.ISO_8859_1,
+            CharacterSets.SHIFT_JIS, CharacterSets.BIG5, CharacterSets.UTF_16,
+    };
+
+    private static final String[] MIME_NAMES = {
+            CharacterSets.MIMENAME_UTF_8, CharacterSets.MIMENAME_US_ASCII,
+            CharacterSets.MIMENAME_ISO_8859_1, CharacterSets.MIMENAME_SHIFT_JIS,
+            CharacterSets.MIMENAME_BIG5, CharacterSets.MIMENAME_UTF_16,
+    };
+
+    private final EncodedStringValue mUtf8Value =
+            new EncodedStringValue(CharacterSets.UTF_8, "Grüße aus 東京 +16505550100");
+
+    @Benchmark
+    public void getMimeName(final Blackhole blackhole) throws UnsupportedEncodingException {
+        for (final int mibEnum : MIB_ENUMS) {
+            blackhole.consume(CharacterSets.getMimeName(mibEnum));
+        }
+    }
+
+    @Benchmark
+    public void getMibEnumValue(final Blackhole blackhole) throws UnsupportedEncodingException {
+        for (final String mimeName : MIME_NAMES) {
+            blackhole.consume(CharacterSets.getMibEnumValue(mimeName));
+        }
+    }
+
+    @Benchmark
+    public String decodeEncodedStringValue() {
+        return mUtf8Value.getString();
+    }
+}
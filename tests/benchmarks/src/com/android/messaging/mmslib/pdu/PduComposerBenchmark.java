@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.mmslib.pdu;
+
+import android.content.Context;
+
+import com.android.messaging.benchmark.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Throughput of {@link PduComposer#make()} and {@link PduComposer#make(OutputStream)} for an
+ * m-send.req with inline part data.
+ */
+@State(Scope.Benchmark)
+public class PduComposerBenchmark {
+    @Param({"" + BenchmarkCorpus.SIZE_SMALL, "" + BenchmarkCorpus.SIZE_MEDIUM,
+            "" + BenchmarkCorpus.SIZE_LARGE})
+    public int attachmentSize;
+
+    private Context mContext;
+    private SendReq mSendReq;
+
+    @Setup
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mSendReq = BenchmarkCorpus.createSendReq(attachmentSize);
+    }
+
+    @Benchmark
+    public byte[] makeSendReq() {
+        return new PduComposer(mContext, mSendReq).make();
+    }
+
+    @Benchmark
+    public int makeSendReqToStream() throws IOException {
+        return new PduComposer(mContext, mSendReq).make(DISCARD);
+    }
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    };
+}
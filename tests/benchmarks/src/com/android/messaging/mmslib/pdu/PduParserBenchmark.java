@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.mmslib.pdu;
+
+import androidx.appcompat.mms.pdu.WspDecoder;
+
+import com.android.messaging.benchmark.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Throughput of {@link PduParser#parse()} on downloaded (m-retrieve.conf) and outgoing
+ * (m-send.req) PDUs, plus any captured PDUs from the corpus directory.
+ */
+@State(Scope.Benchmark)
+public class PduParserBenchmark {
+    @Param({"" + BenchmarkCorpus.SIZE_SMALL, "" + BenchmarkCorpus.SIZE_MEDIUM,
+            "" + BenchmarkCorpus.SIZE_LARGE})
+    public int attachmentSize;
+
+    private byte[] mSendReq;
+    private byte[] mRetrieveConf;
+    private ByteBuffer mRetrieveConfBuffer;
+    private List<byte[]> mCaptured;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSendReq = new PduComposer(RuntimeEnvironment.application,
+                BenchmarkCorpus.createSendReq(attachmentSize)).make();
+        mRetrieveConf = BenchmarkCorpus.toRetrieveConf(mSendReq);
+        mRetrieveConfBuffer = ByteBuffer.allocateDirect(mRetrieveConf.length);
+        mRetrieveConfBuffer.put(mRetrieveConf).flip();
+        mCaptured = BenchmarkCorpus.loadCaptured("pdu");
+    }
+
+    @Benchmark
+    public GenericPdu parseRetrieveConf() {
+        return new PduParser(mRetrieveConf, true).parse();
+    }
+
+    /** Same PDU parsed out of a direct buffer, as done for a mapped download file */
+    @Benchmark
+    public GenericPdu parseRetrieveConfBuffer() {
+        return new PduParser(mRetrieveConfBuffer, true).parse();
+    }
+
+    /** Single header lookup, the alternative to a full parse when only a status is needed */
+    @Benchmark
+    public int findMessageType() {
+        return WspDecoder.findOctetHeader(mRetrieveConfBuffer, PduHeaders.MESSAGE_TYPE);
+    }
+
+    @Benchmark
+    public GenericPdu parseSendReq() {
+        return new PduParser(mSendReq, false).parse();
+    }
+
+    @Benchmark
+    public void parseCaptured(final Blackhole blackhole) {
+        for (final byte[] pdu : mCaptured) {
+            blackhole.consume(new PduParser(pdu, true).parse());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.messaging.util.exif;
+
+import com.android.messaging.benchmark.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Throughput of reading EXIF through {@link ExifParser} (orientation lookup as done for every
+ * attachment, and a full tag read) and of writing it back through {@link ExifOutputStream}.
+ */
+@State(Scope.Benchmark)
+public class ExifBenchmark {
+    @Param({"" + BenchmarkCorpus.SIZE_SMALL, "" + BenchmarkCorpus.SIZE_MEDIUM})
+    public int jpegSize;
+
+    private byte[] mBareJpeg;
+    private byte[] mExifJpeg;
+    private ExifInterface mExif;
+    private List<byte[]> mCaptured;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBareJpeg = BenchmarkCorpus.createBareJpeg(jpegSize);
+        mExif = new ExifInterface();
+        mExif.setTag(mExif.buildTag(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.Orientation.RIGHT_TOP));
+        mExif.setTag(mExif.buildTag(ExifInterface.TAG_MAKE, "Benchmark"));
+        mExif.setTag(mExif.buildTag(ExifInterface.TAG_MODEL, "Corpus"));
+        mExif.setTag(mExif.buildTag(ExifInterface.TAG_DATE_TIME, "2015:01:01 00:00:00"));
+        mExif.setTag(mExif.buildTag(ExifInterface.TAG_PIXEL_X_DIMENSION, 1920));
+        mExif.setTag(mExif.buildTag(ExifInterface.TAG_PIXEL_Y_DIMENSION, 1080));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(mBareJpeg.length + 1024);
+        mExif.writeExif(mBareJpeg, out);
+        mExifJpeg = out.toByteArray();
+        mCaptured = BenchmarkCorpus.loadCaptured("jpg");
+    }
+
+    @Benchmark
+    public int parseOrientation() throws IOException, ExifInvalidFormatException {
+        final ExifParser parser = ExifParser.parse(new ByteArrayInputStream(mExifJpeg),
+                ExifParser.OPTION_IFD_0, mExif);
+        int event = parser.next();
+        while (event != ExifParser.EVENT_END) {
+            if (event == ExifParser.EVENT_NEW_TAG) {
+                final ExifTag tag = parser.getTag();
+                if (tag.getTagId() == ExifInterface.getTrueTagKey(ExifInterface.TAG_ORIENTATION)) {
+                    return (int) tag.getValueAt(0);
+                }
+            }
+            event = parser.next();
+        }
+        return 0;
+    }
+
+    @Benchmark
+    public ExifInterface readExif() throws IOException {
+        final ExifInterface exif = new ExifInterface();
+        exif.readExif(mExifJpeg);
+        return exif;
+    }
+
+    @Benchmark
+    public byte[] writeExif() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(mBareJpeg.length + 1024);
+        mExif.writeExif(mBareJpeg, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public void readCaptured(final Blackhole blackhole) throws IOException {
+        for (final byte[] jpeg : mCaptured) {
+            final ExifInterface exif = new ExifInterface();
+            exif.readExif(jpeg);
+            blackhole.consume(exif);
+        }
+    }
+}
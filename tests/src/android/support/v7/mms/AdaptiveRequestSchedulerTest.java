@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.appcompat.mms;
+
+import android.test.AndroidTestCase;
+
+import androidx.test.filters.SmallTest;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * Tests how AdaptiveRequestScheduler adapts its limits and orders sends and downloads. Tasks
+ * block until the test releases them, so the in flight counts stay put while it checks them.
+ */
+@SmallTest
+public class AdaptiveRequestSchedulerTest extends AndroidTestCase {
+    private static final int SEND = AdaptiveRequestScheduler.QUEUE_SEND;
+    private static final int DOWNLOAD = AdaptiveRequestScheduler.QUEUE_DOWNLOAD;
+    private static final long FAST_MS = 100;
+    private static final long SLOW_MS = 60 * 1000;
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private AdaptiveRequestScheduler mScheduler;
+
+    private final Runnable mBlockingTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRelease.countDown();
+        if (mScheduler != null) {
+            mScheduler.shutdown();
+        }
+        super.tearDown();
+    }
+
+    public void testAdditiveIncreaseWhileLimitHoldsQueueBack() {
+        mScheduler = new AdaptiveRequestScheduler(2);
+        submit(SEND, 5);
+        assertEquals(2, mScheduler.getInFlightCount(SEND));
+        assertEquals(3, mScheduler.getQueueDepth(SEND));
+
+        // Each fast completion at the limit raises it by one and starts another queued send
+        mScheduler.onRequestComplete(SEND, false, FAST_MS);
+        assertEquals(3, mScheduler.getLimit(SEND));
+        assertEquals(3, mScheduler.getInFlightCount(SEND));
+        mScheduler.onRequestComplete(SEND, false, FAST_MS);
+        assertEquals(4, mScheduler.getLimit(SEND));
+        assertEquals(4, mScheduler.getInFlightCount(SEND));
+
+        // Never past twice the initial limit
+        mScheduler.onRequestComplete(SEND, false, FAST_MS);
+        assertEquals(4, mScheduler.getLimit(SEND));
+        assertEquals(1, mScheduler.getQueueDepth(SEND));
+    }
+
+    public void testNoIncreaseWhileBelowLimit() {
+        mScheduler = new AdaptiveRequestScheduler(2);
+        submit(SEND, 1);
+        mScheduler.onRequestComplete(SEND, false, FAST_MS);
+        assertEquals(2, mScheduler.getLimit(SEND));
+    }
+
+    public void testMultiplicativeDecreaseOnFailureOrSlowRequest() {
+        mScheduler = new AdaptiveRequestScheduler(4);
+        mScheduler.onRequestComplete(DOWNLOAD, true, FAST_MS);
+        assertEquals(2, mScheduler.getLimit(DOWNLOAD));
+        mScheduler.onRequestComplete(DOWNLOAD, false, SLOW_MS);
+        assertEquals(1, mScheduler.getLimit(DOWNLOAD));
+        // Never below one
+        mScheduler.onRequestComplete(DOWNLOAD, true, FAST_MS);
+        assertEquals(1, mScheduler.getLimit(DOWNLOAD));
+        // The other queue keeps its own limit
+        assertEquals(4, mScheduler.getLimit(SEND));
+    }
+
+    public void testDownloadsRunWhileSendsWaitOnTheirOwnLimit() {
+        // Each queue starts at one, with two threads between them
+        mScheduler = new AdaptiveRequestScheduler(1);
+        submit(SEND, 2);
+        assertEquals(1, mScheduler.getQueueDepth(SEND));
+
+        // The waiting send can't start, so it doesn't hold up a download
+        submit(DOWNLOAD, 1);
+        assertEquals(1, mScheduler.getInFlightCount(DOWNLOAD));
+        assertFalse(mScheduler.shouldYield(DOWNLOAD));
+
+        // Once the send limit grows the send waits only for a thread, and the download yields
+        mScheduler.onRequestComplete(SEND, false, FAST_MS);
+        assertEquals(2, mScheduler.getLimit(SEND));
+        assertEquals(1, mScheduler.getQueueDepth(SEND));
+        assertTrue(mScheduler.shouldYield(DOWNLOAD));
+    }
+
+    public void testShutdownReturnsQueuedTasks() {
+        mScheduler = new AdaptiveRequestScheduler(1);
+        submit(SEND, 3);
+        final List<Runnable> dropped = mScheduler.shutdown();
+        assertEquals(2, dropped.size());
+        assertEquals(0, mScheduler.getQueueDepth(SEND));
+    }
+
+    private void submit(final int queue, final int count) {
+        for (int i = 0; i < count; i++) {
+            mScheduler.submit(queue, mBlockingTask);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.appcompat.mms;
+
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import androidx.test.filters.MediumTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Tests MmsHttpClient against a local mock MMSC that counts connections and requests.
+ */
+@MediumTest
+public class MmsHttpClientTest extends AndroidTestCase {
+    private static final int DOWNLOAD_COUNT = 5;
+    private static final String USER_AGENT = "MmsHttpClientTest";
+
+    private MockMmsc mMmsc;
+    private MmsHttpClient mHttpClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMmsc = new MockMmsc();
+        mHttpClient = new MmsHttpClient(getContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mMmsc.close();
+        super.tearDown();
+    }
+
+    public void testDownloadsReuseConnection() throws Exception {
+        final byte[] body = createBody(64 * 1024);
+        mMmsc.setResponse(200, body);
+        for (int i = 0; i < DOWNLOAD_COUNT; i++) {
+            final byte[] response = download(mMmsc.getUrl("/m" + i));
+            assertTrue(Arrays.equals(body, response));
+        }
+        assertEquals(DOWNLOAD_COUNT, mMmsc.getRequestCount());
+        assertEquals(1, mMmsc.getConnectionCount());
+    }
+
+    public void testSendAndDownloadShareConnection() throws Exception {
+        final byte[] body = createBody(512);
+        mMmsc.setResponse(200, body);
+        final byte[] response = mHttpClient.execute(mMmsc.getUrl("/"), createBody(2048),
+                MmsHttpClient.METHOD_POST, false/*isProxySet*/, null, 0, new Bundle(),
+                USER_AGENT, null/*uaProfUrl*/);
+        assertTrue(Arrays.equals(body, response));
+        download(mMmsc.getUrl("/m"));
+        assertEquals(2, mMmsc.getRequestCount());
+        assertEquals(1, mMmsc.getConnectionCount());
+    }
+
+    public void testStreamedDownload() throws Exception {
+        final byte[] body = createBody(300 * 1024);
+        mMmsc.setResponse(200, body);
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final long size = mHttpClient.execute(mMmsc.getUrl("/m"), null/*pdu*/,
+                MmsHttpClient.METHOD_GET, false/*isProxySet*/, null, 0, new Bundle(), USER_AGENT,
+                null/*uaProfUrl*/, sink);
+        assertEquals(body.length, size);
+        assertTrue(Arrays.equals(body, sink.toByteArray()));
+    }
+
+    public void testHttpFailureNotReused() throws Exception {
+        mMmsc.setResponse(404, new byte[0]);
+        try {
+            download(mMmsc.getUrl("/missing"));
+            fail("Expected MmsHttpException");
+        } catch (MmsHttpException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+        final byte[] body = createBody(128);
+        mMmsc.setResponse(200, body);
+        assertTrue(Arrays.equals(body, download(mMmsc.getUrl("/m"))));
+        assertEquals(2, mMmsc.getRequestCount());
+        assertEquals(2, mMmsc.getConnectionCount());
+    }
+
+    private byte[] download(final String url) throws MmsHttpException {
+        return mHttpClient.execute(url, null/*pdu*/, MmsHttpClient.METHOD_GET,
+                false/*isProxySet*/, null, 0, new Bundle(), USER_AGENT, null/*uaProfUrl*/);
+    }
+
+    private static byte[] createBody(final int size) {
+        final byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    /**
+     * A minimal HTTP/1.1 server standing in for an MMSC. It answers every request with the
+     * configured response and keeps connections alive.
+     */
+    private static class MockMmsc implements Runnable {
+        private final ServerSocket mServerSocket;
+        private final AtomicInteger mConnectionCount = new AtomicInteger();
+        private final AtomicInteger mRequestCount = new AtomicInteger();
+        private volatile int mStatusCode;
+        private volatile byte[] mBody;
+
+        MockMmsc() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            final Thread thread = new Thread(this, "MockMmsc");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String getUrl(final String path) {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+        }
+
+        void setResponse(final int statusCode, final byte[] body) {
+            mStatusCode = statusCode;
+            mBody = body;
+        }
+
+        int getConnectionCount() {
+            return mConnectionCount.get();
+        }
+
+        int getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    mConnectionCount.incrementAndGet();
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    }, "MockMmscConnection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        }
+
+        private void serve(final Socket socket) {
+            try {
+                final InputStream in = socket.getInputStream();
+                final OutputStream out = socket.getOutputStream();
+                String line;
+                while ((line = readLine(in)) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    int contentLength = 0;
+                    while ((line = readLine(in)) != null && !line.isEmpty()) {
+                        final String header = line.toLowerCase(Locale.US);
+                        if (header.startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(header.substring(15).trim());
+                        }
+                    }
+                    for (int i = 0; i < contentLength; i++) {
+                        in.read();
+                    }
+                    mRequestCount.incrementAndGet();
+                    final byte[] body = mBody;
+                    final String head = "HTTP/1.1 " + mStatusCode + " Mock\r\n"
+                            + "Content-Type: application/vnd.wap.mms-message\r\n"
+                            + "Content-Length: " + body.length + "\r\n\r\n";
+                    out.write(head.getBytes("US-ASCII"));
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection dropped by the client
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        private static String readLine(final InputStream in) throws IOException {
+            final StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) {
+                    return sb.length() > 0 ? sb.toString() : null;
+                }
+                if (c != '\r') {
+                    sb.append((char) c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
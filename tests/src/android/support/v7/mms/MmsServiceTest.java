@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.appcompat.mms;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import androidx.test.filters.MediumTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Tests how MmsService batches queued downloads per MMSC, using fake download requests that
+ * take the MMS network as real ones would and a network manager that counts how often the
+ * network is brought up and torn down.
+ */
+@MediumTest
+public class MmsServiceTest extends AndroidTestCase {
+    private static final String MMSC = "http://mmsc.example.com/";
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private FakeNetworkManager mNetworkManager;
+    private MmsService mService;
+
+    /**
+     * Counts the times the MMS network is brought up and torn down, without touching the real
+     * network
+     */
+    private static class FakeNetworkManager extends MmsNetworkManager {
+        int mUseCount;
+        boolean mConnected;
+        int mConnectCount;
+        int mTeardownCount;
+        final CountDownLatch mTornDown = new CountDownLatch(1);
+
+        FakeNetworkManager(final Context context) {
+            super(context);
+        }
+
+        @Override
+        synchronized void acquireNetwork() {
+            mUseCount++;
+            if (!mConnected) {
+                mConnected = true;
+                mConnectCount++;
+            }
+        }
+
+        @Override
+        synchronized void retainNetwork() {
+            mUseCount++;
+        }
+
+        @Override
+        synchronized void releaseNetwork() {
+            mUseCount--;
+            if (mUseCount == 0) {
+                mConnected = false;
+                mTeardownCount++;
+                mTornDown.countDown();
+            }
+        }
+
+        synchronized boolean isConnected() {
+            return mConnected;
+        }
+    }
+
+    /**
+     * A download that holds the network until the test lets it finish
+     */
+    private static class FakeDownloadRequest extends DownloadRequest {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mFinish = new CountDownLatch(1);
+
+        FakeDownloadRequest(final String locationUrl) {
+            super(locationUrl, null/*pduUri*/, null/*sentIntent*/);
+            setUseWakeLock(false);
+        }
+
+        @Override
+        int execute(final Context context, final MmsNetworkManager networkManager,
+                final ApnSettingsLoader apnSettingsLoader,
+                final CarrierConfigValuesLoader carrierConfigValuesLoader,
+                final UserAgentInfoLoader userAgentInfoLoader) {
+            try {
+                networkManager.acquireNetwork();
+            } catch (MmsNetworkException e) {
+                throw new AssertionError(e);
+            }
+            try {
+                mStarted.countDown();
+                mFinish.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                networkManager.releaseNetwork();
+            }
+            return Activity.RESULT_OK;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The service's stop handler needs a looper, though it never runs in these tests
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        // One batch worker per MMSC, so queued downloads line up behind it
+        MmsService.setThreadPoolSize(1);
+        mNetworkManager = new FakeNetworkManager(getContext());
+        mService = new MmsService() {
+            {
+                attachBaseContext(MmsServiceTest.this.getContext());
+            }
+
+            @Override
+            MmsNetworkManager createNetworkManager() {
+                return mNetworkManager;
+            }
+        };
+        mService.onCreate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mService.onDestroy();
+        MmsService.setThreadPoolSize(4);
+        super.tearDown();
+    }
+
+    public void testDownloadsToSameMmscShareOneNetworkRequest() throws Exception {
+        final FakeDownloadRequest[] requests = new FakeDownloadRequest[3];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new FakeDownloadRequest(MMSC + i);
+            start(requests[i], i);
+        }
+        for (final FakeDownloadRequest request : requests) {
+            request.mFinish.countDown();
+        }
+
+        assertTrue(mNetworkManager.mTornDown.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (final FakeDownloadRequest request : requests) {
+            assertEquals(0, request.mStarted.getCount());
+        }
+        synchronized (mNetworkManager) {
+            assertEquals(1, mNetworkManager.mConnectCount);
+            assertEquals(1, mNetworkManager.mTeardownCount);
+        }
+    }
+
+    public void testNetworkReleasedOnceQueueDrains() throws Exception {
+        final FakeDownloadRequest first = new FakeDownloadRequest(MMSC + "first");
+        final FakeDownloadRequest second = new FakeDownloadRequest(MMSC + "second");
+        start(first, 0);
+        start(second, 1);
+
+        assertTrue(first.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        first.mFinish.countDown();
+        // Between downloads the batch worker still holds the network
+        assertTrue(second.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(mNetworkManager.isConnected());
+        assertEquals(1, mNetworkManager.mTornDown.getCount());
+
+        second.mFinish.countDown();
+        assertTrue(mNetworkManager.mTornDown.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        synchronized (mNetworkManager) {
+            assertEquals(0, mNetworkManager.mUseCount);
+            assertFalse(mNetworkManager.mConnected);
+            assertEquals(1, mNetworkManager.mConnectCount);
+        }
+    }
+
+    private void start(final MmsRequest request, final int startId) {
+        mService.onStartCommand(MmsService.makeRequestIntent(getContext(), request),
+                0/*flags*/, startId);
+    }
+}
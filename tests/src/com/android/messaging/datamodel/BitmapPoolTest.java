@@ -81,6 +81,44 @@ public class BitmapPoolTest extends BugleTestCase {
         assertTrue(returnedBitmaps.contains(overflowBitmap));
     }
 
+    public void testReusesBitmapOfAnotherShapeWithEnoughBytes() {
+        final BitmapPool pool = new BitmapPool(POOL_SIZE, NAME);
+        final Bitmap bitmap = pool.createOrReuseBitmap(40, 30);
+        pool.reclaimBitmap(bitmap);
+
+        // Fewer bytes than the pooled bitmap, in the same size class
+        final Bitmap reused = pool.createOrReuseBitmap(31, 37);
+        assertSame(bitmap, reused);
+        assertEquals(31, reused.getWidth());
+        assertEquals(37, reused.getHeight());
+
+        // Too many bytes for anything pooled
+        pool.reclaimBitmap(reused);
+        assertNotSame(reused, pool.createOrReuseBitmap(80, 60));
+        assertTrue(pool.getStats().contains("hits=1 misses=2"));
+    }
+
+    public void testRecyclesOldestBitmapsBeyondByteBudget() {
+        final int bitmapBytes = 64 * 64 * 4;
+        final BitmapPool pool = new BitmapPool(POOL_SIZE, 2 * bitmapBytes, NAME);
+        final Bitmap first = pool.createOrReuseBitmap(64, 64);
+        final Bitmap second = pool.createOrReuseBitmap(64, 64);
+        final Bitmap third = pool.createOrReuseBitmap(64, 64);
+        pool.reclaimBitmap(first);
+        pool.reclaimBitmap(second);
+        pool.reclaimBitmap(third);
+        assertTrue(first.isRecycled());
+        assertFalse(second.isRecycled());
+        assertFalse(third.isRecycled());
+    }
+
+    public void testSizeClasses() {
+        assertEquals(BitmapPool.getSizeClass(1), BitmapPool.getSizeClass(4096));
+        assertEquals(5120, BitmapPool.getSizeClass(4097));
+        assertEquals(8192, BitmapPool.getSizeClass(8192));
+        assertEquals(10240, BitmapPool.getSizeClass(8193));
+    }
+
     /**
      * Make sure that we have the correct options to create mutable for bitmap pool reuse.
      */
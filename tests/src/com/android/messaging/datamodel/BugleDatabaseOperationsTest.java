@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import android.content.ContentValues;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.FakeContext;
+import com.android.messaging.FakeFactory;
+import com.android.messaging.datamodel.DatabaseHelper.ConversationColumns;
+import com.android.messaging.datamodel.DatabaseHelper.ParticipantColumns;
+import com.android.messaging.datamodel.data.MessageData;
+import com.android.messaging.datamodel.data.MessagePartData;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/*
+ * Tests the multi-row inserts of insertNewMessagesInTransaction: how batches are split into
+ * statements, and that the ids worked out from each statement's last row id match the rows.
+ */
+@SmallTest
+public class BugleDatabaseOperationsTest extends BugleTestCase {
+    private static final int MESSAGES_PER_INSERT =
+            DatabaseWrapper.MAX_BIND_ARGS / MessageData.INSERT_COLUMN_COUNT;
+    private static final int PARTS_PER_INSERT =
+            DatabaseWrapper.MAX_BIND_ARGS / MessagePartData.INSERT_COLUMN_COUNT;
+
+    private DatabaseWrapper mDb;
+    private String mConversationId;
+    private String mSelfId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final FakeContext context = new FakeContext(getTestContext());
+        final FakeDataModel dataModel = new FakeDataModel(context);
+        FakeFactory.registerWithFakeContext(getTestContext(), context)
+                .withDataModel(dataModel);
+        mDb = dataModel.getDatabase();
+
+        final ContentValues participant = new ContentValues();
+        participant.put(ParticipantColumns.SUB_ID, -1);
+        participant.put(ParticipantColumns.NORMALIZED_DESTINATION, "+15551230000");
+        mSelfId = Long.toString(mDb.insert(DatabaseHelper.PARTICIPANTS_TABLE, null,
+                participant));
+        final ContentValues conversation = new ContentValues();
+        conversation.put(ConversationColumns.NAME, "BugleDatabaseOperationsTest");
+        mConversationId = Long.toString(mDb.insert(DatabaseHelper.CONVERSATIONS_TABLE, null,
+                conversation));
+    }
+
+    public void testInsertRowCountAtChunkBoundaries() {
+        assertEquals(MESSAGES_PER_INSERT, BugleDatabaseOperations.getInsertRowCount(
+                MESSAGES_PER_INSERT, MESSAGES_PER_INSERT));
+        assertEquals(MESSAGES_PER_INSERT, BugleDatabaseOperations.getInsertRowCount(
+                MESSAGES_PER_INSERT + 1, MESSAGES_PER_INSERT));
+        assertEquals(BugleDatabaseOperations.SMALL_INSERT_ROWS,
+                BugleDatabaseOperations.getInsertRowCount(MESSAGES_PER_INSERT - 1,
+                        MESSAGES_PER_INSERT));
+        assertEquals(1, BugleDatabaseOperations.getInsertRowCount(
+                BugleDatabaseOperations.SMALL_INSERT_ROWS - 1, MESSAGES_PER_INSERT));
+
+        // Whatever the batch size, only three statement sizes are used
+        final HashSet<Integer> sizes = new HashSet<Integer>();
+        for (int rows = 1; rows <= MESSAGES_PER_INSERT * 3; rows++) {
+            int inserted = 0;
+            while (inserted < rows) {
+                final int count = BugleDatabaseOperations.getInsertRowCount(rows - inserted,
+                        MESSAGES_PER_INSERT);
+                assertTrue(count <= rows - inserted);
+                sizes.add(count);
+                inserted += count;
+            }
+        }
+        assertEquals(3, sizes.size());
+    }
+
+    public void testMessageIdsAtChunkBoundaries() {
+        insertAndCheck(MESSAGES_PER_INSERT - 1, 1);
+        insertAndCheck(MESSAGES_PER_INSERT, 1);
+        insertAndCheck(MESSAGES_PER_INSERT + 1, 1);
+    }
+
+    public void testPartIdsAtChunkBoundaries() {
+        insertAndCheck(PARTS_PER_INSERT - 1, 1);
+        insertAndCheck(PARTS_PER_INSERT, 1);
+        insertAndCheck(PARTS_PER_INSERT + 1, 1);
+    }
+
+    public void testPartsMapToTheirMessages() {
+        // One to three parts a message, so part statements don't line up with message ones
+        insertAndCheck(MESSAGES_PER_INSERT * 2 + 3, 3);
+    }
+
+    /**
+     * Insert messages with one up to the given number of parts each, then check each id against
+     * the row read back
+     */
+    private void insertAndCheck(final int messageCount, final int maxPartsPerMessage) {
+        final ArrayList<MessageData> messages = new ArrayList<MessageData>();
+        for (int i = 0; i < messageCount; i++) {
+            final MessageData message = MessageData.createDraftSmsMessage(mConversationId,
+                    mSelfId, getPartText(i, 0));
+            final int partCount = 1 + i % maxPartsPerMessage;
+            for (int j = 1; j < partCount; j++) {
+                message.addPart(MessagePartData.createTextMessagePart(getPartText(i, j)));
+            }
+            messages.add(message);
+        }
+
+        mDb.beginTransaction();
+        try {
+            BugleDatabaseOperations.insertNewMessagesInTransaction(mDb, messages);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        final long firstId = Long.parseLong(messages.get(0).getMessageId());
+        for (int i = 0; i < messageCount; i++) {
+            final MessageData message = messages.get(i);
+            // Ids follow the order of the list
+            assertEquals(Long.toString(firstId + i), message.getMessageId());
+            final MessageData read = BugleDatabaseOperations.readMessage(mDb,
+                    message.getMessageId());
+            assertNotNull(read);
+            int j = 0;
+            for (final MessagePartData part : message.getParts()) {
+                final MessagePartData readPart = BugleDatabaseOperations.readMessagePartData(
+                        mDb, part.getPartId());
+                assertEquals(getPartText(i, j), readPart.getText());
+                assertEquals(message.getMessageId(), readPart.getMessageId());
+                j++;
+            }
+        }
+    }
+
+    private static String getPartText(final int message, final int part) {
+        return "message " + message + " part " + part;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import android.net.Uri;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.FakeContext;
+import com.android.messaging.FakeFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SmallTest
+public class ContentChangeNotifierTest extends BugleTestCase {
+    private static final Uri PARENT_URI = Uri.parse("content://test/conversations");
+    private static final Uri CHILD_URI = Uri.parse("content://test/conversations/1");
+    private static final Uri OTHER_URI = Uri.parse("content://test/messages/1");
+    private static final Uri OTHER_AUTHORITY_URI = Uri.parse("content://other/conversations/1");
+
+    private DatabaseWrapper mDb;
+    private RecordingSink mSink;
+
+    /**
+     * Records every notification sent, as a string per notification
+     */
+    private static class RecordingSink implements ContentChangeNotifier.Sink {
+        final ArrayList<String> mSent = new ArrayList<String>();
+        volatile CountDownLatch mLatch = new CountDownLatch(0);
+
+        @Override
+        public synchronized void notifyChange(final Uri uri) {
+            record(uri.toString());
+        }
+
+        @Override
+        public synchronized void notifyConversationListWidget() {
+            record("list widget");
+        }
+
+        @Override
+        public synchronized void notifyConversationWidget(final String conversationId) {
+            record("widget " + conversationId);
+        }
+
+        private void record(final String notification) {
+            mSent.add(notification);
+            mLatch.countDown();
+        }
+
+        synchronized ArrayList<String> getSent() {
+            return new ArrayList<String>(mSent);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final FakeContext context = new FakeContext(getTestContext());
+        final FakeDataModel dataModel = new FakeDataModel(context);
+        FakeFactory.registerWithFakeContext(getTestContext(), context)
+                .withDataModel(dataModel);
+        mDb = dataModel.getDatabase();
+        mSink = new RecordingSink();
+        ContentChangeNotifier.setSinkForTesting(mSink);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ContentChangeNotifier.setSinkForTesting(null);
+        super.tearDown();
+    }
+
+    public void testTransactionSendsEachDistinctUriOnce() {
+        mDb.beginTransaction();
+        try {
+            ContentChangeNotifier.notifyChange(OTHER_URI);
+            ContentChangeNotifier.notifyChange(OTHER_URI);
+            mDb.beginTransaction();
+            try {
+                ContentChangeNotifier.notifyChange(OTHER_AUTHORITY_URI);
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            // Nothing is sent until the outermost transaction ends
+            assertTrue(mSink.getSent().isEmpty());
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        assertEquals(Arrays.asList(OTHER_URI.toString(), OTHER_AUTHORITY_URI.toString()),
+                mSink.getSent());
+    }
+
+    public void testDescendantOfPendingUriIsSkipped() {
+        mDb.beginTransaction();
+        try {
+            // The child comes first but its ancestor still covers it
+            ContentChangeNotifier.notifyChange(CHILD_URI);
+            ContentChangeNotifier.notifyChange(PARENT_URI);
+            ContentChangeNotifier.notifyChange(OTHER_URI);
+            ContentChangeNotifier.notifyChange(OTHER_AUTHORITY_URI);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        assertEquals(Arrays.asList(PARENT_URI.toString(), OTHER_URI.toString(),
+                OTHER_AUTHORITY_URI.toString()), mSink.getSent());
+    }
+
+    public void testWidgetNotificationsCollapse() {
+        mDb.beginTransaction();
+        try {
+            ContentChangeNotifier.notifyConversationListWidget();
+            ContentChangeNotifier.notifyConversationListWidget();
+            ContentChangeNotifier.notifyConversationWidget("1");
+            ContentChangeNotifier.notifyConversationWidget("1");
+            ContentChangeNotifier.notifyConversationWidget("2");
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        final ArrayList<String> sent = mSink.getSent();
+        assertEquals(3, sent.size());
+        assertEquals("list widget", sent.get(0));
+        assertTrue(sent.contains("widget 1"));
+        assertTrue(sent.contains("widget 2"));
+
+        // One notification for all conversations replaces the per conversation ones
+        mDb.beginTransaction();
+        try {
+            ContentChangeNotifier.notifyConversationWidget("1");
+            ContentChangeNotifier.notifyConversationWidget(null);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        assertEquals("widget null", mSink.getSent().get(3));
+        assertEquals(4, mSink.getSent().size());
+    }
+
+    public void testNotificationsOutsideTransactionAreBatchedInWindow() throws Exception {
+        mSink.mLatch = new CountDownLatch(3);
+        ContentChangeNotifier.notifyChange(OTHER_URI);
+        ContentChangeNotifier.notifyChange(CHILD_URI);
+        ContentChangeNotifier.notifyChange(OTHER_URI);
+        ContentChangeNotifier.notifyChange(PARENT_URI);
+        ContentChangeNotifier.notifyConversationListWidget();
+        // Held for the window rather than sent right away
+        assertTrue(mSink.getSent().isEmpty());
+
+        assertTrue(mSink.mLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(OTHER_URI.toString(), PARENT_URI.toString(), "list widget"),
+                mSink.getSent());
+
+        // A later notification opens a new window
+        mSink.mLatch = new CountDownLatch(1);
+        ContentChangeNotifier.notifyChange(OTHER_URI);
+        assertTrue(mSink.mLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(4, mSink.getSent().size());
+    }
+}
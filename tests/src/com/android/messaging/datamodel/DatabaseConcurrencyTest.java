@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.test.filters.LargeTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.FakeContext;
+import com.android.messaging.FakeFactory;
+import com.android.messaging.datamodel.data.ConversationListItemData;
+import com.android.messaging.datamodel.data.MessageData;
+import com.android.messaging.datamodel.data.ParticipantData;
+import com.android.messaging.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Loads the conversation list through {@link MessagingContentProvider} while sync sized write
+ * transactions run on another thread, and logs the query latency seen under that write load.
+ */
+@LargeTest
+public class DatabaseConcurrencyTest extends BugleTestCase {
+    private static final String TAG = LogUtil.BUGLE_DATABASE_TAG;
+
+    private static final int CONVERSATIONS = 20;
+    private static final int BATCHES = 50;
+    private static final int MESSAGES_PER_BATCH = 200;
+
+    private MessagingContentProvider mProvider;
+    private DatabaseWrapper mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final FakeContext context = new FakeContext(getTestContext());
+        mProvider = new MessagingContentProvider();
+        final ProviderInfo providerInfo = new ProviderInfo();
+        providerInfo.authority = MessagingContentProvider.AUTHORITY;
+        mProvider.attachInfo(context, providerInfo);
+        context.addContentProvider(MessagingContentProvider.AUTHORITY, mProvider);
+        final FakeDataModel dataModel = new FakeDataModel(context);
+        FakeFactory.registerWithFakeContext(getTestContext(), context)
+                .withDataModel(dataModel);
+        mDb = dataModel.getDatabase();
+        mProvider.setDatabaseForTest(mDb);
+    }
+
+    public void testConversationListLatencyDuringSync() throws Exception {
+        final String selfId = getOrCreateParticipant(
+                ParticipantData.getSelfParticipant(ParticipantData.DEFAULT_SELF_SUB_ID));
+        final String[] conversationIds = new String[CONVERSATIONS];
+        final String[] participantIds = new String[CONVERSATIONS];
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            final String number = "555000" + (1000 + i);
+            final ArrayList<ParticipantData> participants = new ArrayList<ParticipantData>();
+            participants.add(ParticipantData.getFromRawPhoneBySystemLocale(number));
+            conversationIds[i] = BugleDatabaseOperations.getOrCreateConversation(mDb, 1000 + i,
+                    false /*archived*/, participants, false, false, null);
+            participantIds[i] = getOrCreateParticipant(
+                    ParticipantData.getFromRawPhoneBySystemLocale(number));
+        }
+
+        final Throwable[] writerFailure = new Throwable[1];
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long timestamp = 1;
+                    for (int batch = 0; batch < BATCHES; batch++) {
+                        mDb.beginTransaction();
+                        try {
+                            for (int i = 0; i < MESSAGES_PER_BATCH; i++) {
+                                final int conversation = i % CONVERSATIONS;
+                                final MessageData message = MessageData.createReceivedSmsMessage(
+                                        Uri.parse("content://sms/" + timestamp),
+                                        conversationIds[conversation],
+                                        participantIds[conversation], selfId,
+                                        "Message " + timestamp, null /*subject*/, timestamp,
+                                        timestamp, true /*seen*/, true /*read*/);
+                                BugleDatabaseOperations.insertNewMessageInTransaction(mDb,
+                                        message);
+                                BugleDatabaseOperations.refreshConversationMetadataOnCommit(mDb,
+                                        conversationIds[conversation],
+                                        true /*onlyIfLatestMessageChanged*/,
+                                        false /*shouldAutoSwitchSelfId*/,
+                                        false /*keepArchived*/);
+                                timestamp++;
+                            }
+                            mDb.setTransactionSuccessful();
+                        } finally {
+                            mDb.endTransaction();
+                        }
+                    }
+                } catch (final Throwable t) {
+                    writerFailure[0] = t;
+                }
+            }
+        }, "DatabaseConcurrencyTest.writer");
+
+        // FakeDataModel seeds the database with test messages
+        final long initialMessageCount =
+                mDb.queryNumEntries(DatabaseHelper.MESSAGES_TABLE, null, null);
+        final long[] latencies = new long[10000];
+        int queries = 0;
+        writer.start();
+        while (writer.isAlive() && queries < latencies.length) {
+            final long startNanos = SystemClock.elapsedRealtimeNanos();
+            final Cursor cursor = mProvider.query(MessagingContentProvider.CONVERSATIONS_URI,
+                    ConversationListItemData.PROJECTION, null, null, null);
+            try {
+                // Fill the window, as a loader would before handing the cursor to the UI
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+            latencies[queries++] = SystemClock.elapsedRealtimeNanos() - startNanos;
+        }
+        writer.join();
+        if (writerFailure[0] != null) {
+            throw new AssertionError(writerFailure[0]);
+        }
+        assertTrue("No queries ran during the sync", queries > 0);
+
+        final long[] sorted = Arrays.copyOf(latencies, queries);
+        Arrays.sort(sorted);
+        LogUtil.i(TAG, "DatabaseConcurrencyTest: " + queries + " conversation list queries"
+                + " during " + BATCHES * MESSAGES_PER_BATCH + " message sync, median "
+                + sorted[queries / 2] / 1000 + "us, 95th percentile "
+                + sorted[queries * 95 / 100] / 1000 + "us, max "
+                + sorted[queries - 1] / 1000 + "us, write-ahead logging "
+                + mDb.getDatabase().isWriteAheadLoggingEnabled());
+        assertEquals(BATCHES * MESSAGES_PER_BATCH,
+                mDb.queryNumEntries(DatabaseHelper.MESSAGES_TABLE, null, null)
+                        - initialMessageCount);
+    }
+
+    private String getOrCreateParticipant(final ParticipantData participant) {
+        mDb.beginTransaction();
+        try {
+            final String participantId =
+                    BugleDatabaseOperations.getOrCreateParticipantInTransaction(mDb, participant);
+            mDb.setTransactionSuccessful();
+            return participantId;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+}
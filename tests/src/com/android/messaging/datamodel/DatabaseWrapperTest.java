@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.FakeContext;
+import com.android.messaging.FakeFactory;
+import com.android.messaging.datamodel.DatabaseHelper.ParticipantColumns;
+import com.android.messaging.util.LogUtil;
+
+@SmallTest
+public class DatabaseWrapperTest extends BugleTestCase {
+    private static final String TAG = LogUtil.BUGLE_DATABASE_TAG;
+
+    private static final String INSERT_PARTICIPANT_SQL = "INSERT INTO "
+            + DatabaseHelper.PARTICIPANTS_TABLE + " (" + ParticipantColumns.SUB_ID + ","
+            + ParticipantColumns.NORMALIZED_DESTINATION + ") VALUES (?,?)";
+
+    private DatabaseWrapper mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final FakeContext context = new FakeContext(getTestContext());
+        final FakeDataModel dataModel = new FakeDataModel(context);
+        FakeFactory.registerWithFakeContext(getTestContext(), context)
+                .withDataModel(dataModel);
+        mDb = dataModel.getDatabase();
+    }
+
+    public void testStatementsCachedBySql() {
+        mDb.beginTransaction();
+        try {
+            final Object first = mDb.getStatementInTransaction(INSERT_PARTICIPANT_SQL);
+            assertSame(first, mDb.getStatementInTransaction(INSERT_PARTICIPANT_SQL));
+            assertNotSame(first, mDb.getStatementInTransaction(
+                    "SELECT COUNT(*) FROM " + DatabaseHelper.PARTICIPANTS_TABLE));
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    public void testUpdateRowIfExistsInTransaction() {
+        final ContentValues values = new ContentValues();
+        values.put(ParticipantColumns.SUB_ID, -1);
+        values.put(ParticipantColumns.NORMALIZED_DESTINATION, "+15551230000");
+        final String participantId =
+                Long.toString(mDb.insert(DatabaseHelper.PARTICIPANTS_TABLE, null, values));
+
+        final ContentValues update = new ContentValues();
+        update.put(ParticipantColumns.FULL_NAME, "Alice");
+        update.putNull(ParticipantColumns.FIRST_NAME);
+        mDb.beginTransaction();
+        try {
+            BugleDatabaseOperations.updateRowIfExists(mDb, DatabaseHelper.PARTICIPANTS_TABLE,
+                    ParticipantColumns._ID, participantId, update);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        final Cursor cursor = mDb.query(DatabaseHelper.PARTICIPANTS_TABLE,
+                new String[] { ParticipantColumns.FULL_NAME }, ParticipantColumns._ID + "=?",
+                new String[] { participantId }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Alice", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testBeforeCommitTaskRunsOnceOnCommit() {
+        final int[] runs = new int[1];
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        };
+        mDb.beginTransaction();
+        try {
+            mDb.putBeforeCommitTask("key", task);
+            mDb.beginTransaction();
+            try {
+                mDb.putBeforeCommitTask("key", task);
+                assertSame(task, mDb.getBeforeCommitTask("key"));
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            // Nested commits don't run it
+            assertEquals(0, runs[0]);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        assertEquals(1, runs[0]);
+
+        // Dropped when the transaction fails
+        mDb.beginTransaction();
+        try {
+            mDb.putBeforeCommitTask("key", task);
+        } finally {
+            mDb.endTransaction();
+        }
+        assertEquals(1, runs[0]);
+    }
+
+    public void testAfterTransactionTaskRunsWhenOutermostEnds() {
+        final int[] runs = new int[1];
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        };
+        assertFalse(DatabaseWrapper.putAfterTransactionTask("key", task));
+        mDb.beginTransaction();
+        try {
+            assertTrue(DatabaseWrapper.putAfterTransactionTask("key", task));
+            mDb.beginTransaction();
+            try {
+                assertSame(task, DatabaseWrapper.getAfterTransactionTask("key"));
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            assertEquals(0, runs[0]);
+        } finally {
+            // Runs even though the transaction failed
+            mDb.endTransaction();
+        }
+        assertEquals(1, runs[0]);
+        assertNull(DatabaseWrapper.getAfterTransactionTask("key"));
+    }
+
+    /**
+     * Compares inserting rows with ContentValues against the statement cache and logs the
+     * inserts per second of each
+     */
+    @MediumTest
+    public void testInsertThroughput() {
+        final int rows = 2000;
+
+        long startTimeMillis = SystemClock.elapsedRealtime();
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                final ContentValues values = new ContentValues();
+                values.put(ParticipantColumns.SUB_ID, -1);
+                values.put(ParticipantColumns.NORMALIZED_DESTINATION, "+1555000" + i);
+                mDb.insert(DatabaseHelper.PARTICIPANTS_TABLE, null, values);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        final long contentValuesMillis = SystemClock.elapsedRealtime() - startTimeMillis;
+
+        startTimeMillis = SystemClock.elapsedRealtime();
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                mDb.executeInsertInTransaction(INSERT_PARTICIPANT_SQL,
+                        new Object[] { -1, "+1555100" + i });
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        final long cachedMillis = SystemClock.elapsedRealtime() - startTimeMillis;
+
+        LogUtil.i(TAG, "DatabaseWrapperTest: ContentValues inserts/s = "
+                + rows * 1000L / Math.max(1, contentValuesMillis)
+                + ", cached statement inserts/s = " + rows * 1000L / Math.max(1, cachedMillis)
+                + ", " + mDb.getStatementCacheStats());
+        assertEquals(2 * rows, mDb.queryNumEntries(DatabaseHelper.PARTICIPANTS_TABLE,
+                ParticipantColumns.NORMALIZED_DESTINATION + " LIKE '+1555_00%'", null));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.FakeFactory;
+import com.android.messaging.util.BugleGservicesKeys;
+
+@SmallTest
+public class SyncBatchSizerTest extends BugleTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FakeFactory.register(getTestContext());
+    }
+
+    public void testConfiguredLimitsUntilMeasured() {
+        final SyncBatchSizer sizer = new SyncBatchSizer();
+        assertEquals(0, sizer.getTargetBatchSize());
+        assertEquals(BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MIN_DEFAULT,
+                sizer.getMaxMessagesToUpdate(0));
+        assertEquals(BugleGservicesKeys.SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN_DEFAULT,
+                sizer.getMaxMessagesToScan(BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MIN_DEFAULT));
+    }
+
+    public void testTargetFollowsWriteThroughput() {
+        final SyncBatchSizer sizer = new SyncBatchSizer();
+        // 1 message per ms
+        sizer.onBatchComplete(1000L, 200, 100, 100 * 1024, 10, 100);
+        assertEquals(BugleGservicesKeys.SMS_SYNC_BATCH_TIME_LIMIT_MILLIS_DEFAULT,
+                sizer.getTargetBatchSize());
+        // Clamped to the configured maximum
+        assertEquals(BugleGservicesKeys.SMS_SYNC_BATCH_SIZE_MAX_DEFAULT,
+                sizer.getMaxMessagesToUpdate(Integer.MAX_VALUE));
+    }
+
+    public void testScanLimitGrowsWithScanThroughput() {
+        final SyncBatchSizer sizer = new SyncBatchSizer();
+        sizer.onBatchComplete(1000L, 1000000, 100, 100 * 1024, 10, 100);
+        assertEquals(BugleGservicesKeys.SMS_SYNC_BATCH_MAX_MESSAGES_TO_SCAN_DEFAULT * 4,
+                sizer.getMaxMessagesToScan(100));
+    }
+
+    public void testLargeMessagesShrinkBatch() {
+        final SyncBatchSizer sizer = new SyncBatchSizer();
+        // Messages so large only the minimum fits in the heap budget
+        sizer.onBatchComplete(1000L, 10, 10, Long.MAX_VALUE / 2, 10, 10);
+        assertEquals(10, sizer.getMaxMessagesToUpdate(Integer.MAX_VALUE));
+    }
+}
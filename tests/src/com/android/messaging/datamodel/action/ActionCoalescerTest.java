@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import android.os.Parcel;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.datamodel.action.ActionTestHelpers.StubChatActionMonitor;
+
+@SmallTest
+public class ActionCoalescerTest extends BugleTestCase {
+
+    public void testRepeatedStartIsDroppedWhileQueued() {
+        final int dropped = ActionCoalescer.getDroppedCount(CoalescingAction.class);
+        final CoalescingAction first = new CoalescingAction("repeated");
+        final CoalescingAction second = new CoalescingAction("repeated");
+
+        assertTrue(ActionCoalescer.onStart(first));
+        assertFalse(ActionCoalescer.onStart(second));
+        assertEquals(dropped + 1, ActionCoalescer.getDroppedCount(CoalescingAction.class));
+        assertTrue(ActionCoalescer.getStats().contains("CoalescingAction " + (dropped + 1)));
+
+        // Once the first starts executing, a new start has to run again
+        ActionCoalescer.onExecute(first);
+        assertTrue(ActionCoalescer.onStart(second));
+        ActionCoalescer.onExecute(second);
+    }
+
+    public void testDifferentKeysAreNotCoalesced() {
+        final CoalescingAction one = new CoalescingAction("one");
+        final CoalescingAction two = new CoalescingAction("two");
+
+        assertTrue(ActionCoalescer.onStart(one));
+        assertTrue(ActionCoalescer.onStart(two));
+        ActionCoalescer.onExecute(one);
+        ActionCoalescer.onExecute(two);
+    }
+
+    public void testMonitoredActionAlwaysRuns() {
+        final CoalescingAction queued = new CoalescingAction("monitored");
+        final StubChatActionMonitor monitor = new StubChatActionMonitor(
+                ActionMonitor.STATE_CREATED, Action.generateUniqueActionKey("monitored"), null);
+        final CoalescingAction monitored =
+                new CoalescingAction(monitor.getActionKey(), "monitored");
+        ActionMonitor.registerActionMonitor(monitored.actionKey, monitor);
+        try {
+            assertTrue(ActionCoalescer.onStart(queued));
+            assertTrue(ActionCoalescer.onStart(monitored));
+        } finally {
+            ActionMonitor.unregisterActionMonitor(monitored.actionKey, monitor);
+            ActionCoalescer.onExecute(queued);
+        }
+    }
+
+    private static class CoalescingAction extends Action {
+        private final String mCoalescingKey;
+
+        CoalescingAction(final String coalescingKey) {
+            mCoalescingKey = coalescingKey;
+        }
+
+        CoalescingAction(final String actionKey, final String coalescingKey) {
+            super(actionKey);
+            mCoalescingKey = coalescingKey;
+        }
+
+        @Override
+        protected String getCoalescingKey() {
+            return "ActionCoalescerTest:" + mCoalescingKey;
+        }
+
+        @Override
+        public void writeToParcel(final Parcel parcel, final int flags) {
+            writeActionToParcel(parcel, flags);
+        }
+    }
+}
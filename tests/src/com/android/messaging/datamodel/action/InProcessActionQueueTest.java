@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+
+import java.util.ArrayList;
+
+/*
+ * Tests which work InProcessActionQueue hands to the running job and which it sends in Intents,
+ * and that the job sees it in the order it was sent either way.
+ */
+@SmallTest
+public class InProcessActionQueueTest extends BugleTestCase {
+    private static final int START = ActionServiceImpl.OP_START_ACTION;
+    private static final int RESPONSE = ActionServiceImpl.OP_RECEIVE_BACKGROUND_RESPONSE;
+
+    private RecordingIntentSender mSender;
+    private InProcessActionQueue mQueue;
+
+    /**
+     * Records the work sent in Intents, optionally failing the next send
+     */
+    private static class RecordingIntentSender implements InProcessActionQueue.IntentSender {
+        final ArrayList<Action> mSent = new ArrayList<Action>();
+        boolean mFailNext;
+
+        @Override
+        public void sendIntent(final int opcode, final Action action, final Bundle response) {
+            if (mFailNext) {
+                mFailNext = false;
+                throw new IllegalStateException("Can't start service");
+            }
+            mSent.add(action);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSender = new RecordingIntentSender();
+        mQueue = new InProcessActionQueue(mSender);
+    }
+
+    public void testStartAndResponseRunInOrder() {
+        final QueueAction action = new QueueAction(true);
+        final Bundle response = new Bundle();
+        mQueue.beginWork(false);
+        mQueue.queue(START, action, null);
+        mQueue.queue(RESPONSE, action, response);
+
+        InProcessActionQueue.PendingOp op = mQueue.next();
+        assertEquals(START, op.mOpcode);
+        assertSame(action, op.mAction);
+        op = mQueue.next();
+        assertEquals(RESPONSE, op.mOpcode);
+        assertSame(action, op.mAction);
+        assertSame(response, op.mResponse);
+        assertNull(mQueue.next());
+        assertTrue(mSender.mSent.isEmpty());
+    }
+
+    public void testWorkSentAfterAnIntentWaitsBehindIt() {
+        final QueueAction first = new QueueAction(true);
+        final QueueAction durable = new QueueAction(false);
+        final QueueAction behindDurable = new QueueAction(true);
+        mQueue.beginWork(false);
+        mQueue.queue(START, first, null);
+        mQueue.queue(START, durable, null);
+        mQueue.queue(START, behindDurable, null);
+
+        // Work that could go in process follows the durable action into an Intent
+        assertSame(first, mQueue.next().mAction);
+        assertNull(mQueue.next());
+        assertEquals(2, mSender.mSent.size());
+        assertSame(durable, mSender.mSent.get(0));
+        assertSame(behindDurable, mSender.mSent.get(1));
+
+        // Until the job for the last of those Intents begins
+        mQueue.beginWork(true);
+        final QueueAction stillBehind = new QueueAction(true);
+        mQueue.queue(START, stillBehind, null);
+        assertSame(stillBehind, mSender.mSent.get(2));
+        mQueue.beginWork(true);
+        mQueue.beginWork(true);
+        final QueueAction inProcess = new QueueAction(true);
+        mQueue.queue(START, inProcess, null);
+        assertEquals(3, mSender.mSent.size());
+        assertSame(inProcess, mQueue.next().mAction);
+    }
+
+    public void testWorkQueuedWhileDrainingIsDrained() {
+        final QueueAction first = new QueueAction(true);
+        final QueueAction second = new QueueAction(true);
+        mQueue.beginWork(false);
+        mQueue.queue(START, first, null);
+        assertSame(first, mQueue.next().mAction);
+        // Queued by the first action as it runs
+        mQueue.queue(START, second, null);
+        assertSame(second, mQueue.next().mAction);
+        assertNull(mQueue.next());
+
+        // Once the job has found the queue empty it may finish, so work goes in an Intent
+        final QueueAction afterDrain = new QueueAction(true);
+        mQueue.queue(START, afterDrain, null);
+        assertEquals(1, mSender.mSent.size());
+        assertSame(afterDrain, mSender.mSent.get(0));
+    }
+
+    public void testWorkLeftByFailedJobIsSentInOrder() {
+        final QueueAction first = new QueueAction(true);
+        final QueueAction second = new QueueAction(true);
+        final QueueAction third = new QueueAction(true);
+        mQueue.beginWork(false);
+        mQueue.queue(START, first, null);
+        mQueue.queue(START, second, null);
+        mQueue.queue(START, third, null);
+        assertSame(first, mQueue.next().mAction);
+
+        // The job dies handling the first action
+        mQueue.abandonWork();
+        assertEquals(2, mSender.mSent.size());
+        assertSame(second, mSender.mSent.get(0));
+        assertSame(third, mSender.mSent.get(1));
+        assertNull(mQueue.next());
+
+        // The next job drains work sent after those Intents only once it has handled them
+        mQueue.beginWork(true);
+        final QueueAction later = new QueueAction(true);
+        mQueue.queue(START, later, null);
+        assertSame(later, mSender.mSent.get(2));
+    }
+
+    public void testFailedSendDoesNotHoldBackLaterWork() {
+        mSender.mFailNext = true;
+        try {
+            mQueue.queue(START, new QueueAction(false), null);
+            fail("Expected the send to fail");
+        } catch (final IllegalStateException e) {
+            // Expected
+        }
+
+        mQueue.beginWork(false);
+        final QueueAction action = new QueueAction(true);
+        mQueue.queue(START, action, null);
+        assertTrue(mSender.mSent.isEmpty());
+        assertSame(action, mQueue.next().mAction);
+    }
+
+    private static class QueueAction extends Action {
+        private final boolean mCanQueueInProcess;
+
+        QueueAction(final boolean canQueueInProcess) {
+            mCanQueueInProcess = canQueueInProcess;
+        }
+
+        @Override
+        protected boolean canQueueInProcess() {
+            return mCanQueueInProcess;
+        }
+
+        @Override
+        public void writeToParcel(final Parcel parcel, final int flags) {
+            writeActionToParcel(parcel, flags);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.Telephony.Mms;
+import android.provider.Telephony.Sms;
+import android.test.mock.MockContentProvider;
+import android.text.TextUtils;
+import androidx.collection.LongSparseArray;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.FakeContext;
+import com.android.messaging.FakeFactory;
+import com.android.messaging.datamodel.DatabaseWrapper;
+import com.android.messaging.datamodel.FakeDataModel;
+import com.android.messaging.datamodel.SyncManager.ThreadInfoCache;
+import com.android.messaging.datamodel.action.ThreadFingerprints.Fingerprint;
+import com.android.messaging.sms.DatabaseMessages.LocalDatabaseMessage;
+import com.android.messaging.sms.DatabaseMessages.MmsMessage;
+import com.android.messaging.sms.DatabaseMessages.SmsMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Runs the steps of a delta sync against a fake telephony provider: fingerprinting the threads,
+ * finding the changed ones, comparing them in bounded batches and storing their fingerprints.
+ */
+@SmallTest
+public class SyncMessagesActionTest extends BugleTestCase {
+    private static final long THREAD_1 = 9001;
+    private static final long THREAD_2 = 9002;
+    private static final long UPPER_BOUND = 6000;
+
+    private DatabaseWrapper mDb;
+    private TelephonyProvider mSmsProvider;
+    private final ThreadInfoCache mCache = new ThreadInfoCache() {
+        @Override
+        public List<String> getThreadRecipients(final long threadId) {
+            return Arrays.asList("5551234567");
+        }
+    };
+
+    /**
+     * Answers telephony queries from an in memory table, so that selections work as they would
+     * against the real provider
+     */
+    private static class TelephonyProvider extends MockContentProvider {
+        private final SQLiteDatabase mDatabase = SQLiteDatabase.create(null);
+
+        TelephonyProvider(final String[] projection, final String... extraColumns) {
+            final LinkedHashSet<String> columns = new LinkedHashSet<String>();
+            columns.addAll(Arrays.asList(projection));
+            columns.addAll(Arrays.asList(extraColumns));
+            mDatabase.execSQL("CREATE TABLE messages (" + TextUtils.join(", ", columns) + ")");
+        }
+
+        void addMessage(final long id, final long threadId, final long date) {
+            final ContentValues values = new ContentValues();
+            values.put(Sms._ID, id);
+            values.put(Sms.THREAD_ID, threadId);
+            values.put(Sms.DATE, date);
+            values.put(Sms.TYPE, Sms.MESSAGE_TYPE_INBOX);
+            mDatabase.insert("messages", null, values);
+        }
+
+        @Override
+        public Cursor query(final Uri uri, final String[] projection, final String selection,
+                final String[] selectionArgs, final String sortOrder) {
+            return mDatabase.query("messages", projection, selection, selectionArgs, null, null,
+                    sortOrder);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final FakeContext context = new FakeContext(getTestContext());
+        final FakeDataModel dataModel = new FakeDataModel(context);
+        FakeFactory.registerWithFakeContext(getTestContext(), context)
+                .withDataModel(dataModel);
+        mDb = dataModel.getDatabase();
+        mSmsProvider = new TelephonyProvider(SmsMessage.getProjection(), Sms.TYPE);
+        context.addContentProvider(Sms.CONTENT_URI.getAuthority(), mSmsProvider);
+        context.addContentProvider(Mms.CONTENT_URI.getAuthority(),
+                new TelephonyProvider(MmsMessage.getProjection()));
+        ThreadFingerprints.clearStored(mDb);
+    }
+
+    public void testDeltaSyncComparesChangedThreadsInBoundedBatches() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            mSmsProvider.addMessage(i, THREAD_1, i * 1000);
+        }
+        // Arrived after the sync started, left for the next sync
+        mSmsProvider.addMessage(6, THREAD_1, 9000);
+        mSmsProvider.addMessage(7, THREAD_2, 1000);
+        mSmsProvider.addMessage(8, THREAD_2, 2000);
+
+        LongSparseArray<Fingerprint> remote = ThreadFingerprints.queryRemote();
+        long[] changed = ThreadFingerprints.getChangedThreads(remote,
+                ThreadFingerprints.queryStored(mDb));
+        Arrays.sort(changed);
+        assertTrue(Arrays.equals(new long[] { THREAD_1, THREAD_2 }, changed));
+
+        // The scan limit stops the first batch part way through the first thread
+        final ArrayList<SmsMessage> firstBatch = new ArrayList<SmsMessage>();
+        ThreadPartitionScanner.Progress progress = scan(changed,
+                new LongSparseArray<Long>(), 3 /* maxMessagesToScan */, firstBatch);
+        assertEquals(0, progress.mCompletedThreadIds.length);
+        assertEquals(Long.valueOf(3001), progress.mResumeUpperBounds.get(THREAD_1));
+        assertTrue(Arrays.equals(new long[] { 5000, 4000, 3000 }, getDates(firstBatch)));
+
+        // The next batch resumes the thread where it stopped, then goes on to the other one
+        changed = SyncMessagesAction.putResumedThreadsFirst(new long[] { THREAD_2, THREAD_1 },
+                progress.mResumeUpperBounds);
+        assertTrue(Arrays.equals(new long[] { THREAD_1, THREAD_2 }, changed));
+        final ArrayList<SmsMessage> secondBatch = new ArrayList<SmsMessage>();
+        progress = scan(changed, progress.mResumeUpperBounds, 100 /* maxMessagesToScan */,
+                secondBatch);
+        assertTrue(Arrays.equals(new long[] { THREAD_1, THREAD_2 },
+                progress.mCompletedThreadIds));
+        assertEquals(0, progress.mResumeUpperBounds.size());
+        assertTrue(Arrays.equals(new long[] { 3000, 2000, 1000, 2000, 1000 },
+                getDates(secondBatch)));
+
+        // Once their fingerprints are stored only a thread that changes again is compared
+        for (final long threadId : progress.mCompletedThreadIds) {
+            ThreadFingerprints.store(mDb, threadId, remote.get(threadId));
+        }
+        assertEquals(0, ThreadFingerprints.getChangedThreads(remote,
+                ThreadFingerprints.queryStored(mDb)).length);
+        mSmsProvider.addMessage(9, THREAD_2, 3000);
+        remote = ThreadFingerprints.queryRemote();
+        assertTrue(Arrays.equals(new long[] { THREAD_2 }, ThreadFingerprints.getChangedThreads(
+                remote, ThreadFingerprints.queryStored(mDb))));
+    }
+
+    public void testResumeBoundsOfThreadsNotReachedAreKept() throws Exception {
+        mSmsProvider.addMessage(1, THREAD_1, 1000);
+        mSmsProvider.addMessage(2, THREAD_1, 2000);
+        mSmsProvider.addMessage(3, THREAD_2, 1000);
+        final LongSparseArray<Long> resumeUpperBounds =
+                SyncMessagesAction.getResumeUpperBounds(new long[] { THREAD_2 },
+                        new long[] { 1001 });
+
+        // Thread 1 uses up the scan limit so thread 2 isn't reached
+        final ArrayList<SmsMessage> sms = new ArrayList<SmsMessage>();
+        final ThreadPartitionScanner.Progress progress = scan(
+                new long[] { THREAD_1, THREAD_2 }, resumeUpperBounds,
+                2 /* maxMessagesToScan */, sms);
+        assertEquals(Long.valueOf(1001), progress.mResumeUpperBounds.get(THREAD_2));
+        assertEquals(2, sms.size());
+    }
+
+    private ThreadPartitionScanner.Progress scan(final long[] threadIds,
+            final LongSparseArray<Long> resumeUpperBounds, final int maxMessagesToScan,
+            final ArrayList<SmsMessage> smsToAdd) throws Exception {
+        return ThreadPartitionScanner.scan(mDb, threadIds, -1L, UPPER_BOUND, resumeUpperBounds,
+                maxMessagesToScan, 100 /* maxMessagesToUpdate */, 1 /* partitions */, smsToAdd,
+                new LongSparseArray<MmsMessage>(), new ArrayList<LocalDatabaseMessage>(),
+                mCache);
+    }
+
+    private static long[] getDates(final List<SmsMessage> messages) {
+        final long[] dates = new long[messages.size()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = messages.get(i).getTimestampInMillis();
+        }
+        return dates;
+    }
+}
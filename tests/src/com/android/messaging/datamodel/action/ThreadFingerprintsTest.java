@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.action;
+
+import androidx.collection.LongSparseArray;
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.datamodel.action.ThreadFingerprints.Fingerprint;
+import com.android.messaging.datamodel.data.MessageData;
+
+import java.util.Arrays;
+
+@SmallTest
+public class ThreadFingerprintsTest extends BugleTestCase {
+
+    public void testFingerprintIgnoresOrder() {
+        final Fingerprint forward = new Fingerprint();
+        forward.add(MessageData.PROTOCOL_SMS, 1, 1000L);
+        forward.add(MessageData.PROTOCOL_MMS, 1, 2L);
+        forward.add(MessageData.PROTOCOL_SMS, 2, 3000L);
+        final Fingerprint backward = new Fingerprint();
+        backward.add(MessageData.PROTOCOL_SMS, 2, 3000L);
+        backward.add(MessageData.PROTOCOL_MMS, 1, 2L);
+        backward.add(MessageData.PROTOCOL_SMS, 1, 1000L);
+        assertEquals(forward, backward);
+    }
+
+    public void testFingerprintDetectsReplacedMessage() {
+        // Same count and max id, one message swapped for another
+        final Fingerprint before = new Fingerprint();
+        before.add(MessageData.PROTOCOL_SMS, 1, 1000L);
+        before.add(MessageData.PROTOCOL_SMS, 5, 5000L);
+        final Fingerprint after = new Fingerprint();
+        after.add(MessageData.PROTOCOL_SMS, 2, 2000L);
+        after.add(MessageData.PROTOCOL_SMS, 5, 5000L);
+        assertFalse(before.equals(after));
+    }
+
+    public void testChangedThreads() {
+        final LongSparseArray<Fingerprint> stored = new LongSparseArray<Fingerprint>();
+        stored.put(1, new Fingerprint(1, 10, 100));
+        stored.put(2, new Fingerprint(1, 20, 200));
+        stored.put(3, new Fingerprint(1, 30, 300));
+        final LongSparseArray<Fingerprint> remote = new LongSparseArray<Fingerprint>();
+        // Unchanged
+        remote.put(1, new Fingerprint(1, 10, 100));
+        // New message
+        remote.put(2, new Fingerprint(2, 21, 400));
+        // Thread 3 deleted, thread 4 new
+        remote.put(4, new Fingerprint(1, 40, 400));
+
+        final long[] changed = ThreadFingerprints.getChangedThreads(remote, stored);
+        Arrays.sort(changed);
+        assertTrue(Arrays.equals(new long[] { 2, 3, 4 }, changed));
+    }
+}
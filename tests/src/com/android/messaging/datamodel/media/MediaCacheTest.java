@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.media;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.util.LogUtil;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+@SmallTest
+public class MediaCacheTest extends BugleTestCase {
+    private static final String TAG = LogUtil.BUGLE_IMAGE_TAG;
+    private static final int KB = 1024;
+
+    private static final int THREADS = 10;
+    private static final int OPERATIONS_PER_THREAD = 20000;
+    private static final int KEYS = 256;
+
+    public void testEvictsUnreferencedEntriesFirst() {
+        final MediaCache<FakeImageResource> cache =
+                new MediaCache<FakeImageResource>(3, 0, "TestCache");
+        final FakeImageResource a = add(cache, "a");
+        final FakeImageResource b = add(cache, "b");
+        final FakeImageResource c = add(cache, "c");
+        // The hand gives every new entry a second chance, then takes the oldest
+        final FakeImageResource d = add(cache, "d");
+        assertTrue(a.isClosed());
+        assertNull(cache.fetchResourceFromCache("a"));
+
+        // A hit on b saves it from the next pass of the hand
+        cache.fetchResourceFromCache("b").release();
+        final FakeImageResource e = add(cache, "e");
+        assertTrue(c.isClosed());
+        assertFalse(b.isClosed());
+        assertFalse(d.isClosed());
+        assertFalse(e.isClosed());
+        assertEquals(3, cache.size());
+
+        cache.evictAll();
+        assertTrue(b.isClosed());
+        assertTrue(d.isClosed());
+        assertTrue(e.isClosed());
+        assertEquals(0, cache.size());
+    }
+
+    public void testReplacedEntryIsReleased() {
+        final MediaCache<FakeImageResource> cache =
+                new MediaCache<FakeImageResource>(3, 0, "TestCache");
+        final FakeImageResource first = add(cache, "a");
+        final FakeImageResource second = add(cache, "a");
+        assertTrue(first.isClosed());
+        assertFalse(cache.remove("a", first));
+        assertTrue(cache.remove("a", second));
+        assertTrue(second.isClosed());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Fetches and adds entries from ten threads at once against a cache that holds half of the
+     * keys, first on a synchronized LruCache as the cache used to be and then on MediaCache, and
+     * logs the operations per second of each. Every resource must be closed once the cache is
+     * emptied.
+     */
+    @MediumTest
+    public void testConcurrentAccess() throws Exception {
+        final int resourceSize = 32 * KB;
+        final int cacheSizeInKilobytes = KEYS / 2 * resourceSize / KB;
+
+        final LruCache<String, FakeImageResource> lruCache =
+                new LruCache<String, FakeImageResource>(cacheSizeInKilobytes) {
+            @Override
+            protected void entryRemoved(final boolean evicted, final String key,
+                    final FakeImageResource oldValue, final FakeImageResource newValue) {
+                oldValue.release();
+            }
+
+            @Override
+            protected int sizeOf(final String key, final FakeImageResource value) {
+                return value.getMediaSize() / KB;
+            }
+        };
+        final long lruMillis = runConcurrently(new CacheOperations() {
+            @Override
+            public FakeImageResource fetch(final String key) {
+                synchronized (lruCache) {
+                    final FakeImageResource resource = lruCache.get(key);
+                    if (resource != null) {
+                        resource.addRef();
+                    }
+                    return resource;
+                }
+            }
+
+            @Override
+            public void add(final String key, final FakeImageResource resource) {
+                synchronized (lruCache) {
+                    resource.addRef();
+                    lruCache.put(key, resource);
+                }
+            }
+
+            @Override
+            public void evictAll() {
+                lruCache.evictAll();
+            }
+        }, resourceSize);
+
+        final MediaCache<FakeImageResource> mediaCache =
+                new MediaCache<FakeImageResource>(cacheSizeInKilobytes, 0, "TestCache");
+        final long mediaCacheMillis = runConcurrently(new CacheOperations() {
+            @Override
+            public FakeImageResource fetch(final String key) {
+                return mediaCache.fetchResourceFromCache(key);
+            }
+
+            @Override
+            public void add(final String key, final FakeImageResource resource) {
+                mediaCache.addResourceToCache(key, resource);
+            }
+
+            @Override
+            public void evictAll() {
+                mediaCache.evictAll();
+            }
+        }, resourceSize);
+
+        final long operations = (long) THREADS * OPERATIONS_PER_THREAD;
+        LogUtil.i(TAG, "MediaCacheTest: " + THREADS + " threads, synchronized LruCache "
+                + operations * 1000 / Math.max(1, lruMillis) + " ops/s, MediaCache "
+                + operations * 1000 / Math.max(1, mediaCacheMillis) + " ops/s, hit rate "
+                + mediaCache.hitCount() * 100
+                        / Math.max(1, mediaCache.hitCount() + mediaCache.missCount()) + "%");
+    }
+
+    private interface CacheOperations {
+        FakeImageResource fetch(String key);
+        void add(String key, FakeImageResource resource);
+        void evictAll();
+    }
+
+    /**
+     * @return the time taken in milliseconds
+     */
+    private static long runConcurrently(final CacheOperations cache, final int resourceSize)
+            throws Exception {
+        final ConcurrentLinkedQueue<FakeImageResource> created =
+                new ConcurrentLinkedQueue<FakeImageResource>();
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int seed = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Random random = new Random(seed);
+                        for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                            final String key = "key" + random.nextInt(KEYS);
+                            FakeImageResource resource = cache.fetch(key);
+                            if (resource == null) {
+                                // As a loader would, holding its own ref while caching
+                                resource = new FakeImageResource(resourceSize, key);
+                                resource.addRef();
+                                created.add(resource);
+                                cache.add(key, resource);
+                            }
+                            assertFalse(resource.isClosed());
+                            resource.release();
+                        }
+                    } catch (final Throwable t) {
+                        synchronized (failure) {
+                            failure[0] = t;
+                        }
+                    }
+                }
+            }, "MediaCacheTest" + i);
+        }
+
+        final long startTimeMillis = SystemClock.elapsedRealtime();
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final long elapsedMillis = SystemClock.elapsedRealtime() - startTimeMillis;
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+        }
+
+        cache.evictAll();
+        for (final FakeImageResource resource : created) {
+            assertTrue(resource.isClosed());
+            assertEquals(0, resource.getRefCount());
+        }
+        return elapsedMillis;
+    }
+
+    private static FakeImageResource add(final MediaCache<FakeImageResource> cache,
+            final String key) {
+        final FakeImageResource resource = new FakeImageResource(KB, key);
+        cache.addResourceToCache(key, resource);
+        return resource;
+    }
+}
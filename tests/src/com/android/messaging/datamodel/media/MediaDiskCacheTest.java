@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.messaging.datamodel.media;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.filters.SmallTest;
+
+import com.android.messaging.BugleTestCase;
+import com.android.messaging.Factory;
+import com.android.messaging.FakeFactory;
+import com.android.messaging.datamodel.MemoryCacheManager;
+import com.android.messaging.util.LogUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+@SmallTest
+public class MediaDiskCacheTest extends BugleTestCase {
+    private static final String TAG = LogUtil.BUGLE_IMAGE_TAG;
+    private static final String SOURCE = "content://test/1";
+    private static final String OTHER_SOURCE = "content://test/2";
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FakeFactory.register(getTestContext())
+                .withMemoryCacheManager(new MemoryCacheManager())
+                .withMediaCacheManager(new BugleMediaCacheManager());
+        mDirectory = new File(Factory.get().getApplicationContext().getCacheDir(), "media_cache");
+        deleteRecursively(mDirectory);
+    }
+
+    public void testRoundTrip() {
+        final MediaDiskCache cache = new MediaDiskCache(new File(mDirectory, "test"), 1024);
+        assertNull(cache.get(SOURCE, "key1"));
+        cache.put(SOURCE, "key1", new byte[] { 1, 2, 3 }, 6);
+        final MediaDiskCache.Entry entry = cache.get(SOURCE, "key1");
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, entry.bytes));
+        assertEquals(6, entry.orientation);
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        final MediaDiskCache cache = new MediaDiskCache(new File(mDirectory, "test"), 1024);
+        cache.put(SOURCE, "key1", new byte[400], 0);
+        cache.put(SOURCE, "key2", new byte[400], 0);
+        // Touch key1 so that key2 is the least recently used
+        assertNotNull(cache.get(SOURCE, "key1"));
+        cache.put(SOURCE, "key3", new byte[400], 0);
+        assertNotNull(cache.get(SOURCE, "key1"));
+        assertNull(cache.get(SOURCE, "key2"));
+        assertNotNull(cache.get(SOURCE, "key3"));
+    }
+
+    public void testJournalRestoresEntriesAndOrder() {
+        final File directory = new File(mDirectory, "test");
+        MediaDiskCache cache = new MediaDiskCache(directory, 1024);
+        cache.put(SOURCE, "key1", new byte[400], 0);
+        cache.put(SOURCE, "key2", new byte[400], 0);
+        assertNotNull(cache.get(SOURCE, "key1"));
+
+        // As after a process restart
+        cache = new MediaDiskCache(directory, 1024);
+        cache.put(SOURCE, "key3", new byte[400], 0);
+        assertNotNull(cache.get(SOURCE, "key1"));
+        assertNull(cache.get(SOURCE, "key2"));
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    public void testRemoveSourcesRemovesEverySize() {
+        final MediaDiskCache cache = new MediaDiskCache(new File(mDirectory, "test"), 1024);
+        cache.put(SOURCE, "key1", new byte[10], 0);
+        cache.put(SOURCE, "key2", new byte[10], 0);
+        cache.put(OTHER_SOURCE, "key3", new byte[10], 0);
+        cache.removeSources(Arrays.asList(SOURCE));
+        assertNull(cache.get(SOURCE, "key1"));
+        assertNull(cache.get(SOURCE, "key2"));
+        assertNotNull(cache.get(OTHER_SOURCE, "key3"));
+        assertEquals(1, cache.getEntryCount());
+
+        // The removals are journaled
+        final MediaDiskCache reopened = new MediaDiskCache(new File(mDirectory, "test"), 1024);
+        assertNull(reopened.get(SOURCE, "key1"));
+        assertEquals(1, reopened.getEntryCount());
+    }
+
+    public void testExpiredEntryIsAMiss() throws Exception {
+        final MediaDiskCache cache = new MediaDiskCache(new File(mDirectory, "test"), 1024,
+                10 /* maxAgeMillis */);
+        cache.put(SOURCE, "key1", new byte[10], 0);
+        Thread.sleep(50);
+        assertNull(cache.get(SOURCE, "key1"));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    public void testCorruptLengthIsAMiss() throws Exception {
+        final File directory = new File(mDirectory, "test");
+        final MediaDiskCache cache = new MediaDiskCache(directory, 1024);
+        cache.put(SOURCE, "key1", new byte[10], 0);
+        File entryFile = null;
+        for (final File file : directory.listFiles()) {
+            if (!file.getName().equals("journal")) {
+                entryFile = file;
+            }
+        }
+        // Version, key, write time and orientation come before the length
+        final RandomAccessFile file = new RandomAccessFile(entryFile, "rw");
+        try {
+            file.seek(4 + 2 + "key1".length() + 8 + 4);
+            file.writeInt(Integer.MAX_VALUE);
+        } finally {
+            file.close();
+        }
+        assertNull(cache.get(SOURCE, "key1"));
+        assertEquals(0, cache.getEntryCount());
+        assertFalse(entryFile.exists());
+    }
+
+    /**
+     * Loads conversation list sized thumbnails of a large photo, drops the memory caches as a
+     * process restart would, and loads them again from the disk cache, logging both timings
+     */
+    @MediumTest
+    public void testColdStartThumbnailLoad() throws Exception {
+        final int thumbnails = 20;
+        final File source = new File(getTestContext().getCacheDir(), "disk_cache_source.jpg");
+        final Bitmap bitmap = Bitmap.createBitmap(2048, 1536, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(0xff336699);
+        final FileOutputStream out = new FileOutputStream(source);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+
+        final MediaResourceManager manager = new MediaResourceManager();
+        final long decodeMillis = loadThumbnails(manager, Uri.fromFile(source), thumbnails);
+        final MediaDiskCache diskCache = MediaCacheManager.get().getOrCreateMediaCacheById(
+                BugleMediaCacheManager.DEFAULT_IMAGE_CACHE).getDiskCache();
+        // Thumbnails are written in the background
+        final long deadline = SystemClock.elapsedRealtime() + 10000;
+        while (diskCache.getEntryCount() < thumbnails
+                && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(thumbnails, diskCache.getEntryCount());
+
+        MediaCacheManager.get().reclaim();
+        final long diskMillis = loadThumbnails(manager, Uri.fromFile(source), thumbnails);
+        assertEquals(thumbnails, diskCache.getHitCount());
+        LogUtil.i(TAG, "MediaDiskCacheTest: " + thumbnails + " thumbnails decoded from source in "
+                + decodeMillis + "ms, loaded from disk cache in " + diskMillis + "ms, "
+                + diskCache.getStats());
+        source.delete();
+    }
+
+    private static long loadThumbnails(final MediaResourceManager manager, final Uri uri,
+            final int thumbnails) {
+        final long startTimeMillis = SystemClock.elapsedRealtime();
+        for (int i = 0; i < thumbnails; i++) {
+            // Distinct sizes make distinct keys
+            final UriImageRequestDescriptor descriptor =
+                    new UriImageRequestDescriptor(uri, 96 + i, 96 + i);
+            final ImageResource resource = manager.requestMediaResourceSync(
+                    descriptor.buildSyncMediaRequest(Factory.get().getApplicationContext()));
+            assertNotNull(resource);
+            resource.release();
+        }
+        return SystemClock.elapsedRealtime() - startTimeMillis;
+    }
+
+    private static void deleteRecursively(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
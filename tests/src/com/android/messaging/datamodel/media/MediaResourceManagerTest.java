@@ -22,7 +22,12 @@ import com.android.messaging.FakeFactory;
 import com.android.messaging.datamodel.MemoryCacheManager;
 import com.android.messaging.datamodel.media.MediaResourceManager.MediaResourceLoadListener;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SmallTest
 public class MediaResourceManagerTest extends BugleTestCase {
@@ -130,6 +135,150 @@ public class MediaResourceManagerTest extends BugleTestCase {
         assertNull(mediaResourceManager.requestMediaResourceSync(invalidRequest));
     }
 
+    public void testConcurrentRequestsShareOneLoad() throws InterruptedException {
+        final MediaResourceManager mediaResourceManager =
+                new MediaResourceManager();
+        MediaCacheManager.get().reclaim();
+
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch firstLoadStarted = new CountDownLatch(1);
+        final CountDownLatch secondRequested = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(2);
+        final FakeImageResource[] resources = new FakeImageResource[2];
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            final FakeImageRequest imageRequest = new FakeImageRequest("image1", 1 * KB) {
+                @Override
+                public FakeImageResource loadMediaBlocking(
+                        final List<MediaRequest<FakeImageResource>> chainedTask)
+                        throws Exception {
+                    loads.incrementAndGet();
+                    firstLoadStarted.countDown();
+                    // Hold the load until the second request has been made
+                    secondRequested.await();
+                    return super.loadMediaBlocking(chainedTask);
+                }
+            };
+            final BindableMediaRequest<FakeImageResource> bindableRequest =
+                    AsyncMediaRequestWrapper.createWith(imageRequest,
+                            new MediaResourceLoadListener<FakeImageResource>() {
+                                @Override
+                                public void onMediaResourceLoaded(
+                                        final MediaRequest<FakeImageResource> request,
+                                        final FakeImageResource resource,
+                                        final boolean isCached) {
+                                    assertNotSame(0, resource.getRefCount());
+                                    resources[index] = resource;
+                                    loaded.countDown();
+                                }
+
+                                @Override
+                                public void onMediaResourceLoadError(
+                                        final MediaRequest<FakeImageResource> request,
+                                        final Exception exception) {
+                                    fail("Shared load failed");
+                                }});
+            bindableRequest.bind("1");
+            mediaResourceManager.requestMediaResourceAsync(bindableRequest);
+            if (i == 0) {
+                firstLoadStarted.await();
+            }
+        }
+        secondRequested.countDown();
+        loaded.await();
+
+        assertEquals(1, loads.get());
+        assertSame(resources[0], resources[1]);
+    }
+
+    public void testLoadsVisibleAndNewestFirstAndDropsCancelled() throws InterruptedException {
+        final MediaResourceManager mediaResourceManager =
+                new MediaResourceManager();
+        MediaCacheManager.get().reclaim();
+
+        // Occupy every loading thread so that the requests below queue up
+        final int loadingThreads = 10;
+        final CountDownLatch blockersStarted = new CountDownLatch(loadingThreads);
+        final CountDownLatch[] releaseBlockers = new CountDownLatch[loadingThreads];
+        try {
+            for (int i = 0; i < loadingThreads; i++) {
+                final CountDownLatch release = new CountDownLatch(1);
+                releaseBlockers[i] = release;
+                mediaResourceManager.requestMediaResourceAsync(
+                        new FakeImageRequest("blocker" + i, 1 * KB) {
+                            @Override
+                            public FakeImageResource loadMediaBlocking(
+                                    final List<MediaRequest<FakeImageResource>> chainedTask)
+                                    throws Exception {
+                                blockersStarted.countDown();
+                                release.await();
+                                return super.loadMediaBlocking(chainedTask);
+                            }
+                        });
+            }
+            blockersStarted.await();
+
+            final List<String> loadOrder = Collections.synchronizedList(new ArrayList<String>());
+            final CountDownLatch loaded = new CountDownLatch(3);
+            final BindableMediaRequest<FakeImageResource> first =
+                    createRecordingRequest("first", loadOrder, loaded);
+            final BindableMediaRequest<FakeImageResource> second =
+                    createRecordingRequest("second", loadOrder, loaded);
+            final BindableMediaRequest<FakeImageResource> visible =
+                    createRecordingRequest("visible", loadOrder, loaded);
+            visible.setPriority(BindableMediaRequest.PRIORITY_VISIBLE);
+            final BindableMediaRequest<FakeImageResource> cancelled =
+                    createRecordingRequest("cancelled", loadOrder, loaded);
+            mediaResourceManager.requestMediaResourceAsync(first);
+            mediaResourceManager.requestMediaResourceAsync(second);
+            mediaResourceManager.requestMediaResourceAsync(visible);
+            mediaResourceManager.requestMediaResourceAsync(cancelled);
+            mediaResourceManager.cancelMediaRequest(cancelled);
+
+            // Free a single thread, which then takes the queued loads in order
+            releaseBlockers[0].countDown();
+            loaded.await();
+            assertEquals(Arrays.asList("visible", "second", "first"),
+                    new ArrayList<String>(loadOrder));
+        } finally {
+            for (final CountDownLatch release : releaseBlockers) {
+                if (release != null) {
+                    release.countDown();
+                }
+            }
+        }
+    }
+
+    private static BindableMediaRequest<FakeImageResource> createRecordingRequest(
+            final String key, final List<String> loadOrder, final CountDownLatch loaded) {
+        final BindableMediaRequest<FakeImageResource> request = AsyncMediaRequestWrapper.createWith(
+                new FakeImageRequest(key, 1 * KB) {
+                    @Override
+                    public FakeImageResource loadMediaBlocking(
+                            final List<MediaRequest<FakeImageResource>> chainedTask)
+                            throws Exception {
+                        loadOrder.add(key);
+                        return super.loadMediaBlocking(chainedTask);
+                    }
+                },
+                new MediaResourceLoadListener<FakeImageResource>() {
+                    @Override
+                    public void onMediaResourceLoaded(
+                            final MediaRequest<FakeImageResource> request,
+                            final FakeImageResource resource, final boolean isCached) {
+                        loaded.countDown();
+                    }
+
+                    @Override
+                    public void onMediaResourceLoadError(
+                            final MediaRequest<FakeImageResource> request,
+                            final Exception exception) {
+                        fail("Load failed");
+                    }});
+        request.bind("1");
+        return request;
+    }
+
     private void loadImage(final MediaResourceManager manager, final String key,
             final int size, final boolean shouldBeCached, final boolean shouldFail) {
         try {